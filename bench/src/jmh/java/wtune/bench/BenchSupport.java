@@ -0,0 +1,112 @@
+package wtune.bench;
+
+import wtune.common.io.FileUtils;
+import wtune.sql.SqlSupport;
+import wtune.sql.ast.SqlNode;
+import wtune.sql.plan.PlanContext;
+import wtune.sql.plan.PlanSupport;
+import wtune.sql.schema.Schema;
+import wtune.stmt.App;
+import wtune.superopt.substitution.SubstitutionBank;
+import wtune.superopt.substitution.SubstitutionSupport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static wtune.sql.support.action.NormalizationSupport.normalizeAst;
+
+/**
+ * Fixtures shared by the benchmarks. Everything is read from the resources and wtune_data, the
+ * database (wtune.db) is never touched, thus schemas are not patched.
+ */
+public abstract class BenchSupport {
+  private BenchSupport() {}
+
+  /** A fixed statement of statements.tsv. */
+  public static class BenchStmt {
+    public final String appName;
+    public final String dbType;
+    public final String sql;
+
+    private BenchStmt(String appName, String sql) {
+      this.appName = appName;
+      this.dbType = App.of(appName).dbType();
+      this.sql = sql;
+    }
+
+    public Schema schema() {
+      return App.of(appName).schema("base", false);
+    }
+
+    public SqlNode parse() {
+      return SqlSupport.parseSql(dbType, sql);
+    }
+
+    public PlanContext plan() {
+      final SqlNode ast = parse();
+      final Schema schema = schema();
+      ast.context().setSchema(schema);
+      normalizeAst(ast);
+      return PlanSupport.assemblePlan(ast, schema);
+    }
+  }
+
+  public static List<BenchStmt> statements() {
+    final List<BenchStmt> stmts = new ArrayList<>();
+    try (final BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                BenchSupport.class.getResourceAsStream("statements.tsv"),
+                StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isBlank() || line.startsWith("#")) continue;
+        final String[] fields = line.split("\t", 2);
+        stmts.add(new BenchStmt(fields[0], fields[1]));
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return stmts;
+  }
+
+  public static List<BenchStmt> statements(String dbType) {
+    final List<BenchStmt> stmts = statements();
+    stmts.removeIf(it -> !it.dbType.equals(dbType));
+    return stmts;
+  }
+
+  public static SubstitutionBank loadBank(String fileName) {
+    try {
+      return SubstitutionSupport.loadBank(rulesFile(fileName));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  public static Path rulesFile(String fileName) {
+    return FileUtils.dataFile("prepared", fileName);
+  }
+
+  /**
+   * Loads libz3 ahead of the Java binding, whose native part depends on it. Otherwise the forked
+   * benchmark JVM would need LD_LIBRARY_PATH in addition to java.library.path.
+   */
+  public static void loadZ3() {
+    final String libPath = System.getProperty("java.library.path", "");
+    for (String dir : libPath.split(java.io.File.pathSeparator)) {
+      final Path lib = Path.of(dir, System.mapLibraryName("z3"));
+      if (Files.exists(lib)) {
+        System.load(lib.toAbsolutePath().toString());
+        return;
+      }
+    }
+  }
+}
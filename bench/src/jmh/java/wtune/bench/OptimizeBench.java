@@ -0,0 +1,45 @@
+package wtune.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wtune.bench.BenchSupport.BenchStmt;
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.optimizer.Optimizer;
+import wtune.superopt.substitution.SubstitutionBank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** {@link Optimizer#optimize} of the fixed statements with the prepared rules. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OptimizeBench {
+  @Param({"rules.txt"})
+  public String rules;
+
+  // Per statement. Generous enough that the fixed statements never hit it.
+  @Param({"10000"})
+  public long timeout;
+
+  private SubstitutionBank bank;
+  private List<PlanContext> plans;
+
+  @Setup
+  public void setup() {
+    bank = BenchSupport.loadBank(rules);
+    plans = new ArrayList<>();
+    for (BenchStmt stmt : BenchSupport.statements()) plans.add(stmt.plan());
+  }
+
+  @Benchmark
+  public void optimize(Blackhole bh) {
+    for (PlanContext plan : plans) {
+      // The optimizer works on a copy of the plan, so the plans can be reused.
+      final Optimizer optimizer = Optimizer.mk(bank);
+      optimizer.setTimeout(timeout);
+      bh.consume(optimizer.optimize(plan));
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package wtune.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wtune.bench.BenchSupport.BenchStmt;
+import wtune.sql.SqlSupport;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static wtune.common.datasource.DbSupport.MySQL;
+import static wtune.common.datasource.DbSupport.PostgreSQL;
+
+/** {@link SqlSupport#parseSql} over the fixed statements of one dialect. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBench {
+  @Param({MySQL, PostgreSQL})
+  public String dbType;
+
+  private List<BenchStmt> stmts;
+
+  @Setup
+  public void setup() {
+    stmts = BenchSupport.statements(dbType);
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    for (BenchStmt stmt : stmts) bh.consume(SqlSupport.parseSql(dbType, stmt.sql));
+  }
+}
@@ -0,0 +1,43 @@
+package wtune.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wtune.bench.BenchSupport.BenchStmt;
+import wtune.sql.ast.SqlNode;
+import wtune.sql.plan.PlanSupport;
+import wtune.sql.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static wtune.sql.support.action.NormalizationSupport.normalizeAst;
+
+/** {@link PlanSupport#assemblePlan} over the fixed statements, parsed and normalized up-front. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlanBench {
+  private List<SqlNode> asts;
+  private List<Schema> schemas;
+
+  @Setup
+  public void setup() {
+    asts = new ArrayList<>();
+    schemas = new ArrayList<>();
+    for (BenchStmt stmt : BenchSupport.statements()) {
+      final SqlNode ast = stmt.parse();
+      final Schema schema = stmt.schema();
+      ast.context().setSchema(schema);
+      normalizeAst(ast);
+      asts.add(ast);
+      schemas.add(schema);
+    }
+  }
+
+  @Benchmark
+  public void assemblePlan(Blackhole bh) {
+    for (int i = 0, bound = asts.size(); i < bound; ++i)
+      bh.consume(PlanSupport.assemblePlan(asts.get(i), schemas.get(i)));
+  }
+}
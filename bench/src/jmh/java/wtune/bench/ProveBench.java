@@ -0,0 +1,40 @@
+package wtune.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wtune.superopt.logic.LogicSupport;
+import wtune.superopt.substitution.Substitution;
+import wtune.superopt.uexpr.UExprSupport;
+import wtune.superopt.uexpr.UExprTranslationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** {@link LogicSupport#proveEq} of a fixed set of rules, including their U-expr translation. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProveBench {
+  @Param({"rules.example.txt"})
+  public String rules;
+
+  private List<Substitution> ruleList;
+
+  @Setup
+  public void setup() {
+    BenchSupport.loadZ3();
+    ruleList = new ArrayList<>();
+    // Only rules that are translatable, so that each round does the same work.
+    for (Substitution rule : BenchSupport.loadBank(rules).rules())
+      if (UExprSupport.translateToUExpr(rule) != null) ruleList.add(rule);
+  }
+
+  @Benchmark
+  public void proveEq(Blackhole bh) {
+    for (Substitution rule : ruleList) {
+      final UExprTranslationResult uExprs = UExprSupport.translateToUExpr(rule);
+      bh.consume(LogicSupport.proveEq(uExprs));
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package wtune.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import wtune.bench.BenchSupport.BenchStmt;
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.substitution.Substitution;
+import wtune.superopt.substitution.SubstitutionBank;
+import wtune.superopt.substitution.SubstitutionSupport;
+import wtune.superopt.util.Fingerprint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Loading the prepared rules and fingerprinting rules and plans. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RuleBench {
+  @Param({"rules.txt"})
+  public String rules;
+
+  private List<Substitution> ruleList;
+  private List<PlanContext> plans;
+
+  @Setup
+  public void setup() {
+    ruleList = new ArrayList<>(BenchSupport.loadBank(rules).rules());
+    plans = new ArrayList<>();
+    for (BenchStmt stmt : BenchSupport.statements()) plans.add(stmt.plan());
+  }
+
+  @Benchmark
+  public SubstitutionBank loadBank() throws Exception {
+    return SubstitutionSupport.loadBank(BenchSupport.rulesFile(rules));
+  }
+
+  @Benchmark
+  public void fingerprintRules(Blackhole bh) {
+    for (Substitution rule : ruleList) bh.consume(Fingerprint.mk(rule._0()));
+  }
+
+  @Benchmark
+  public void fingerprintPlans(Blackhole bh) {
+    for (PlanContext plan : plans) bh.consume(Fingerprint.mk(plan, plan.root()));
+  }
+}
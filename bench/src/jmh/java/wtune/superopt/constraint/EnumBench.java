@@ -0,0 +1,49 @@
+package wtune.superopt.constraint;
+
+import org.openjdk.jmh.annotations.*;
+import wtune.bench.BenchSupport;
+import wtune.superopt.fragment.Fragment;
+import wtune.superopt.substitution.Substitution;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static wtune.superopt.constraint.ConstraintSupport.enumConstraints;
+
+/**
+ * {@link ConstraintSupport#enumConstraints} on small template pairs. Placed in this package since
+ * the entry point is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnumBench {
+  @Param({
+    "Proj(InnerJoin(Input,Input))|Proj(Input)",
+    "Proj*(InnerJoin(Input,Input))|Proj*(Input)",
+    "Filter(InnerJoin(Input,Input))|InnerJoin(Filter(Input),Input)",
+    "InSubFilter(Input,Proj(Input))|Input",
+  })
+  public String templates;
+
+  @Param({"900000"})
+  public long timeout;
+
+  private String fragment0, fragment1;
+
+  @Setup
+  public void setup() {
+    BenchSupport.loadZ3();
+    final String[] split = templates.split("\\|");
+    fragment0 = split[0];
+    fragment1 = split[1];
+  }
+
+  @Benchmark
+  public List<Substitution> enumConstraints() {
+    // Parsed in each invocation, so that no state is carried over between invocations.
+    final Fragment f0 = Fragment.parse(fragment0, null);
+    final Fragment f1 = Fragment.parse(fragment1, null);
+    return enumConstraints(f0, f1, timeout);
+  }
+}
@@ -4,6 +4,7 @@ data_dir="${WETUNE_DATA_DIR:-wtune_data}"
 rules_dir='rules'
 out="${rules_dir}/rules.txt"
 in="${rules_dir}/rules.raw.txt"
+parallelism=1
 if ! [ -f "${in}" ]; then
   in="${rules_dir}/rules.local.txt"
 fi
@@ -19,6 +20,10 @@ while [[ $# -gt 0 ]]; do
     out="${2}"
     shift 2
     ;;
+  "-p" | "-parallelism")
+    parallelism="${2}"
+    shift 2
+    ;;
   "-spes")
     out="${rules_dir}/rules.spes.txt"
     shift
@@ -31,5 +36,5 @@ while [[ $# -gt 0 ]]; do
 done
 
 echo "Begin rule reducing."
-gradle :superopt:run --args="ReduceRules -R=${in} -o=${out}"
+gradle :superopt:run --args="ReduceRules -R=${in} -o=${out} -parallelism=${parallelism}"
 echo "$(wc -l "${data_dir}/${out}" | cut -f1 -d' ') non-reducible rules discovered."
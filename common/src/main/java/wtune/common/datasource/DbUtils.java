@@ -5,21 +5,110 @@ import wtune.common.io.FileUtils;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 public class DbUtils {
   private static Connection conn;
+  // SQLite connections must not be shared between threads. Each thread gets its own one.
+  private static final ThreadLocal<Connection> THREAD_CONN = new ThreadLocal<>();
+  // All connections handed out by `threadConnection`, so that they are closed eventually.
+  private static final Map<Thread, Connection> THREAD_CONNS = new HashMap<>(); // guarded by class
+  private static boolean closeOnExit; // guarded by class
 
   public static Connection connection() {
     try {
       if (conn == null || conn.isClosed())
         synchronized (DbUtils.class) {
-          Class.forName("org.sqlite.JDBC");
-          if (conn == null || conn.isClosed())
-            conn = DriverManager.getConnection("jdbc:sqlite://" + FileUtils.dbPath());
+          if (conn == null || conn.isClosed()) conn = open();
         }
 
       return conn;
 
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * The connection dedicated to the calling thread. It is closed by {@link
+   * #closeThreadConnection()}, or else once the thread is dead and another thread opens its own
+   * one, or upon JVM exit.
+   */
+  public static Connection threadConnection() {
+    try {
+      Connection c = THREAD_CONN.get();
+      if (c == null || c.isClosed()) {
+        THREAD_CONN.set(c = open());
+        registerThreadConnection(c);
+      }
+      return c;
+
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /** Close the connection dedicated to the calling thread, if any. */
+  public static void closeThreadConnection() {
+    final Connection c = THREAD_CONN.get();
+    if (c == null) return;
+    THREAD_CONN.remove();
+    synchronized (DbUtils.class) {
+      THREAD_CONNS.remove(Thread.currentThread());
+    }
+    closeQuietly(c);
+  }
+
+  private static synchronized void registerThreadConnection(Connection c) {
+    // Connections of dead threads would otherwise be leaked along with their thread-locals.
+    final Iterator<Map.Entry<Thread, Connection>> iter = THREAD_CONNS.entrySet().iterator();
+    while (iter.hasNext()) {
+      final Map.Entry<Thread, Connection> entry = iter.next();
+      if (entry.getKey().isAlive()) continue;
+      closeQuietly(entry.getValue());
+      iter.remove();
+    }
+
+    final Connection replaced = THREAD_CONNS.put(Thread.currentThread(), c);
+    if (replaced != null && replaced != c) closeQuietly(replaced);
+
+    if (!closeOnExit) {
+      closeOnExit = true;
+      Runtime.getRuntime().addShutdownHook(new Thread(DbUtils::closeThreadConnections));
+    }
+  }
+
+  private static synchronized void closeThreadConnections() {
+    for (Connection c : THREAD_CONNS.values()) closeQuietly(c);
+    THREAD_CONNS.clear();
+  }
+
+  private static void closeQuietly(Connection c) {
+    try {
+      c.close();
+    } catch (SQLException ignored) {
+      // Best-effort, the connection is abandoned anyway.
+    }
+  }
+
+  /**
+   * Open a new connection to wtune.db. The database is switched to WAL mode, in which readers never
+   * block the writer (and vice versa), so connections on different threads can work concurrently.
+   */
+  public static Connection open() {
+    try {
+      Class.forName("org.sqlite.JDBC");
+      final Connection c = DriverManager.getConnection("jdbc:sqlite://" + FileUtils.dbPath());
+      try (final Statement stmt = c.createStatement()) {
+        stmt.execute("PRAGMA journal_mode=WAL");
+        stmt.execute("PRAGMA synchronous=NORMAL");
+        stmt.execute("PRAGMA busy_timeout=30000");
+      }
+      return c;
+
     } catch (SQLException | ClassNotFoundException ex) {
       throw new RuntimeException(ex);
     }
@@ -0,0 +1,272 @@
+package wtune.common.io;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Asynchronous, append-only sink of a result file. A drop-in for {@link
+ * wtune.common.utils.IOSupport#appendTo(java.nio.file.Path, Consumer)} in hot loops.
+ *
+ * <p>There is one sink, and thus one background writer, per file. A record is formatted on the
+ * caller's thread and queued; the writer drains the queue in batches through a large buffer and
+ * forces the file to the disk periodically. The queue is bounded: appending blocks when the writer
+ * falls behind. Records of a file are written in the order they are appended, exactly as {@code
+ * appendTo} would write them.
+ *
+ * <p>{@link #flush()} waits until everything appended is on the disk, and the callbacks of it have
+ * run. Sinks are closed by {@link #closeAll()}, which also runs upon JVM shutdown.
+ */
+public class ResultSink {
+  private static final int QUEUE_CAPACITY = 8192;
+  private static final int BUFFER_SIZE = 1 << 18;
+  private static final long SYNC_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+  private static final ConcurrentMap<Path, ResultSink> SINKS = new ConcurrentHashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(ResultSink::closeAll, "result-sink-shutdown"));
+  }
+
+  private final Path path;
+  private final BlockingQueue<Record> queue;
+  private final Thread writer;
+  private final ExecutorService callbackRunner; // unbounded, thus never blocks the writer
+  private volatile boolean closed;
+  private volatile IOException failure;
+  private boolean callbackFailed; // touched by the callback runner only
+
+  private ResultSink(Path path) {
+    this.path = path;
+    this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    this.writer = new Thread(this::writeLoop, "result-sink-" + path.getFileName());
+    this.writer.setDaemon(true);
+    this.callbackRunner =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, "result-sink-callback-" + path.getFileName());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.writer.start();
+  }
+
+  public static ResultSink of(Path path) {
+    return SINKS.computeIfAbsent(path.toAbsolutePath().normalize(), ResultSink::new);
+  }
+
+  /** Flush and close all sinks. A failed sink doesn't prevent the others from being closed. */
+  public static void closeAll() {
+    RuntimeException failure = null;
+    // Flush first, `onWritten` of one sink may append to another.
+    for (ResultSink sink : SINKS.values())
+      try {
+        sink.flush();
+      } catch (RuntimeException ex) {
+        failure = suppress(failure, ex);
+      }
+    for (ResultSink sink : SINKS.values())
+      try {
+        sink.close();
+      } catch (RuntimeException ex) {
+        failure = suppress(failure, ex);
+      }
+    if (failure != null) throw failure;
+  }
+
+  public void append(Consumer<PrintWriter> writer) {
+    append(writer, null);
+  }
+
+  /**
+   * Append a record. `onWritten`, if non-null, is run once the record is handed to the file system,
+   * in the order of appending. Thus, a record appended to another sink in `onWritten` never lands
+   * ahead of this one (e.g., a checkpoint after the results it covers). Callbacks run on a thread
+   * of their own rather than the writer, so that sinks appending to each other in callbacks can't
+   * block each other's writer. An exception thrown by `onWritten` fails this sink, as a failed
+   * write would.
+   */
+  public void append(Consumer<PrintWriter> writer, Runnable onWritten) {
+    final StringWriter str = new StringWriter(128);
+    try (final PrintWriter out = new PrintWriter(str)) {
+      writer.accept(out);
+    }
+    // The platform charset, as a PrintWriter over a file stream.
+    enqueue(new Record(str.toString().getBytes(Charset.defaultCharset()), onWritten, null));
+  }
+
+  /** Wait until all records appended so far are on the disk. */
+  public void flush() {
+    if (closed) return; // everything has been flushed upon closing
+    final CountDownLatch latch = new CountDownLatch(1);
+    enqueue(new Record(null, null, latch));
+    await(latch);
+    checkFailure();
+  }
+
+  public void close() {
+    try {
+      synchronized (this) {
+        if (closed) return;
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+          enqueue(new Record(null, null, latch));
+        } finally {
+          closed = true; // the writer exits after the last barrier
+        }
+        await(latch);
+      }
+      writer.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      SINKS.remove(path, this);
+    }
+    checkFailure();
+  }
+
+  private void enqueue(Record record) {
+    // Fail fast rather than queueing onto a dead writer.
+    checkFailure();
+    if (!writer.isAlive()) throw new IllegalStateException("sink is closed: " + path);
+    try {
+      while (!queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+        if (!writer.isAlive()) throw new IllegalStateException("sink is closed: " + path);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted when appending to " + path);
+    }
+    if (closed && record.barrier() == null)
+      throw new IllegalStateException("sink is closed: " + path);
+  }
+
+  private void checkFailure() {
+    if (failure != null) throw new UncheckedIOException(failure);
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      while (!latch.await(100, TimeUnit.MILLISECONDS)) if (!writer.isAlive()) return;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLoop() {
+    final List<Record> batch = new ArrayList<>(256);
+    final List<Runnable> callbacks = new ArrayList<>();
+    try (final FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND)) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      long lastSync = System.nanoTime();
+      boolean dirty = false;
+
+      while (true) {
+        final Record first = queue.poll(SYNC_INTERVAL, TimeUnit.NANOSECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+        }
+
+        for (Record record : batch)
+          if (record.bytes() != null) {
+            write(channel, buffer, record.bytes());
+            if (record.onWritten() != null) callbacks.add(record.onWritten());
+            dirty = true;
+          } else {
+            drain(channel, buffer, callbacks);
+            if (dirty) channel.force(false);
+            dirty = false;
+            lastSync = System.nanoTime();
+            // After the callbacks of the records before it.
+            callbackRunner.execute(record.barrier()::countDown);
+          }
+        batch.clear();
+        drain(channel, buffer, callbacks);
+
+        if (closed && queue.isEmpty()) return;
+        if (dirty && System.nanoTime() - lastSync >= SYNC_INTERVAL) {
+          channel.force(false);
+          dirty = false;
+          lastSync = System.nanoTime();
+        }
+      }
+
+    } catch (IOException ex) {
+      failure = ex;
+    } catch (RuntimeException ex) {
+      failure = new IOException("failed to write " + path, ex);
+    } catch (InterruptedException ex) {
+      failure = new IOException("writer of " + path + " is interrupted", ex);
+    } finally {
+      // Nobody waits forever on a dead writer.
+      batch.clear();
+      queue.drainTo(batch);
+      for (Record record : batch) if (record.barrier() != null) record.barrier().countDown();
+      callbackRunner.shutdown(); // after running those already handed to it
+    }
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer, byte[] bytes)
+      throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      if (!buffer.hasRemaining()) flushBuffer(channel, buffer);
+      final int length = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  private void drain(FileChannel channel, ByteBuffer buffer, List<Runnable> callbacks)
+      throws IOException {
+    flushBuffer(channel, buffer);
+    for (Runnable callback : callbacks) callbackRunner.execute(() -> runCallback(callback));
+    callbacks.clear();
+  }
+
+  private void runCallback(Runnable callback) {
+    // Later callbacks are skipped, otherwise a checkpoint could be appended past a missing one.
+    if (callbackFailed) return;
+    try {
+      callback.run();
+    } catch (RuntimeException ex) {
+      // Typically appending to another sink that has failed.
+      callbackFailed = true;
+      failure = new IOException("callback of " + path + " failed", ex);
+    }
+  }
+
+  private static void flushBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) channel.write(buffer);
+    buffer.clear();
+  }
+
+  private static RuntimeException suppress(RuntimeException first, RuntimeException ex) {
+    if (first == null) return ex;
+    first.addSuppressed(ex);
+    return first;
+  }
+
+  private record Record(byte[] bytes, Runnable onWritten, CountDownLatch barrier) {}
+}
@@ -3,18 +3,39 @@ package wtune.common.tree;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import wtune.common.field.FieldKey;
+import wtune.common.utils.DelegatedMap;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
-class ImmutableLabeledTreeFields<Kind> extends MutableLabeledTreeFields<Kind>
+class ImmutableLabeledTreeFields<Kind> extends DelegatedMap<FieldKey<?>, Object>
     implements LabeledTreeFields<Kind> {
+  private final LabeledTreeFields<Kind> fields;
 
-  ImmutableLabeledTreeFields(
-      LabeledTreeContext<Kind> context, int nodeId, Map<FieldKey<?>, Object> fields) {
-    super(context, nodeId, fields);
+  ImmutableLabeledTreeFields(LabeledTreeFields<Kind> fields) {
+    this.fields = fields;
+  }
+
+  @Override
+  protected Map<FieldKey<?>, Object> delegation() {
+    return fields;
+  }
+
+  @Override
+  public <T> T field(FieldKey<T> field) {
+    return fields.field(field);
+  }
+
+  @Override
+  public Kind kind() {
+    return fields.kind();
+  }
+
+  @Override
+  public int parent() {
+    return fields.parent();
   }
 
   @Override
@@ -2,9 +2,14 @@ package wtune.common.tree;
 
 import wtune.common.field.FieldKey;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-
-import static wtune.common.utils.MapSupport.mkLate;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 
 public class LabeledTreeContextBase<Kind>
     extends TreeContextBase<Kind, LabeledTreeContextBase.Nd<Kind>>
@@ -21,7 +26,13 @@ public class LabeledTreeContextBase<Kind>
   @Override
   public LabeledTreeFields<Kind> fieldsOf(int nodeId) {
     TreeSupport.checkNodePresent(this, nodeId);
-    return new ImmutableLabeledTreeFields<>(this, nodeId, nodes[nodeId].fields);
+    return nodes[nodeId].view();
+  }
+
+  @Override
+  public <T> T fieldOf(int nodeId, FieldKey<T> field) {
+    TreeSupport.checkNodePresent(this, nodeId);
+    return nodes[nodeId].field(field);
   }
 
   @Override
@@ -33,14 +44,14 @@ public class LabeledTreeContextBase<Kind>
       return (T) setChildren(nodeId, (FieldKey) field, (LabeledTreeNodes) value);
     } else {
       TreeSupport.checkNodePresent(this, nodeId);
-      return field.setTo(new MutableLabeledTreeFields<>(this, nodeId, nodes[nodeId].fields), value);
+      return field.setTo(nodes[nodeId], value);
     }
   }
 
   @Override
   public <T> T unsetFieldOf(int nodeId, FieldKey<T> fieldKey) {
     TreeSupport.checkNodePresent(this, nodeId);
-    return (T) nodes[nodeId].fields.remove(fieldKey);
+    return (T) nodes[nodeId].remove(fieldKey);
   }
 
   @Override
@@ -51,7 +62,7 @@ public class LabeledTreeContextBase<Kind>
     TreeSupport.checkParentNotSet(this, childId);
 
     setParentOf(childId, nodeId);
-    final N n = key.setTo(new MutableLabeledTreeFields<>(this, nodeId, nodes[nodeId].fields), v);
+    final N n = key.setTo(nodes[nodeId], v);
     if (n != null && n.nodeId() != NO_SUCH_NODE) detachNode(n.nodeId());
     return n;
   }
@@ -71,8 +82,7 @@ public class LabeledTreeContextBase<Kind>
       setParentOf(child.nodeId(), nodeId);
     }
 
-    final Ns existing =
-        key.setTo(new MutableLabeledTreeFields<>(this, nodeId, nodes[nodeId].fields), v);
+    final Ns existing = key.setTo(nodes[nodeId], v);
 
     if (existing != null) {
       for (LabeledTreeNode<Kind, ?, ?> removed : (LabeledTreeNodes<Kind, ?, ?>) existing)
@@ -93,12 +103,12 @@ public class LabeledTreeContextBase<Kind>
     nodes[nodeId].parentId = NO_SUCH_NODE;
 
     final Nd<Kind> parent = nodes[parentId];
-    for (Map.Entry<FieldKey<?>, Object> pair : parent.fields.entrySet()) {
-      final Object value = pair.getValue();
+    for (int i = 1, bound = parent.size << 1; i < bound; i += 2) {
+      final Object value = parent.slots[i];
 
       if (value instanceof LabeledTreeNode) {
         if (((LabeledTreeNode<?, ?, ?>) value).nodeId() == nodeId) {
-          pair.setValue(null);
+          parent.slots[i] = null;
           break;
         }
       }
@@ -119,13 +129,13 @@ public class LabeledTreeContextBase<Kind>
 
       if (node.parentId == from) node.parentId = to;
 
-      for (Map.Entry<FieldKey<?>, Object> pair : node.fields.entrySet()) {
-        final Object value = pair.getValue();
+      for (int i = 1, bound = node.size << 1; i < bound; i += 2) {
+        final Object value = node.slots[i];
 
         if (value instanceof LabeledTreeNode) {
           final LabeledTreeNodeBase treeNode = (LabeledTreeNodeBase) value;
           if (treeNode.nodeId() == from) {
-            pair.setValue(treeNode.mk(this, to));
+            node.slots[i] = treeNode.mk(this, to);
             break;
           }
         }
@@ -147,19 +157,55 @@ public class LabeledTreeContextBase<Kind>
     nodes[childId].parentId = parentId;
   }
 
-  protected static final class Nd<Kind> implements NdBase<Kind> {
+  /**
+   * A node, which also serves as the storage of its fields.
+   *
+   * <p>A node has only a handful of fields, thus they are kept inline in a flat array, with keys at
+   * the even slots and values at the odd ones, instead of in a hash map. Lookup is a linear scan
+   * comparing the keys by identity (and by equality as fallback). Field access never allocates,
+   * and the immutable view returned by {@link LabeledTreeContextBase#fieldsOf(int)} is created once per node.
+   */
+  protected static final class Nd<Kind> extends AbstractMap<FieldKey<?>, Object>
+      implements NdBase<Kind>, LabeledTreeFields<Kind> {
+    private static final Object[] EMPTY_SLOTS = new Object[0];
+
     private final Kind kind;
     private int parentId;
-    private final Map<FieldKey<?>, Object> fields;
+    private Object[] slots;
+    private int size;
+    private LabeledTreeFields<Kind> view;
 
     private Nd(Kind kind) {
       this.kind = kind;
       this.parentId = NO_SUCH_NODE;
-      this.fields = mkLate();
+      this.slots = EMPTY_SLOTS;
     }
 
     public Map<FieldKey<?>, Object> fields() {
-      return fields;
+      return this;
+    }
+
+    private LabeledTreeFields<Kind> view() {
+      if (view == null) view = new ImmutableLabeledTreeFields<>(this);
+      return view;
+    }
+
+    private int indexOf(Object key) {
+      if (key == null) return -1;
+      final int hash = key.hashCode();
+      for (int i = 0, bound = size << 1; i < bound; i += 2) {
+        final Object k = slots[i];
+        if (k == key || (k.hashCode() == hash && k.equals(key))) return i;
+      }
+      return -1;
+    }
+
+    private void removeAt(int index) {
+      final int end = size << 1;
+      System.arraycopy(slots, index + 2, slots, index, end - index - 2);
+      slots[end - 2] = null;
+      slots[end - 1] = null;
+      --size;
     }
 
     @Override
@@ -172,9 +218,169 @@ public class LabeledTreeContextBase<Kind>
       return kind;
     }
 
+    @Override
+    public int parent() {
+      return parentId;
+    }
+
     @Override
     public int parentId() {
       return parentId;
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T field(FieldKey<T> field) {
+      return (T) get(field);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T setField(FieldKey<T> field, T value) {
+      return (T) put(field, value);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+      final int index = indexOf(key);
+      return index < 0 ? null : slots[index + 1];
+    }
+
+    @Override
+    public Object put(FieldKey<?> key, Object value) {
+      final int index = indexOf(key);
+      if (index >= 0) {
+        final Object old = slots[index + 1];
+        slots[index + 1] = value;
+        return old;
+      }
+
+      final int end = size << 1;
+      if (end == slots.length) slots = Arrays.copyOf(slots, end == 0 ? 8 : end << 1);
+      slots[end] = key;
+      slots[end + 1] = value;
+      ++size;
+      return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+      final int index = indexOf(key);
+      if (index < 0) return null;
+      final Object old = slots[index + 1];
+      removeAt(index);
+      return old;
+    }
+
+    @Override
+    public void clear() {
+      Arrays.fill(slots, 0, size << 1, null);
+      size = 0;
+    }
+
+    @Override
+    public Set<Entry<FieldKey<?>, Object>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public Iterator<Entry<FieldKey<?>, Object>> iterator() {
+          return new SlotIterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+
+    // Nodes are compared by identity, as before.
+    @Override
+    public boolean equals(Object o) {
+      return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this);
+    }
+
+    private final class SlotIterator implements Iterator<Entry<FieldKey<?>, Object>> {
+      private int next = 0; // index of the next key slot
+      private int last = -1; // index of the key slot last returned
+
+      @Override
+      public boolean hasNext() {
+        return next < size << 1;
+      }
+
+      @Override
+      public Entry<FieldKey<?>, Object> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        last = next;
+        next += 2;
+        return new SlotEntry(last);
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) throw new IllegalStateException();
+        removeAt(last);
+        next = last;
+        last = -1;
+      }
+    }
+
+    private final class SlotEntry implements Entry<FieldKey<?>, Object> {
+      private final int index;
+
+      private SlotEntry(int index) {
+        this.index = index;
+      }
+
+      @Override
+      public FieldKey<?> getKey() {
+        return (FieldKey<?>) slots[index];
+      }
+
+      @Override
+      public Object getValue() {
+        return slots[index + 1];
+      }
+
+      @Override
+      public Object setValue(Object value) {
+        final Object old = slots[index + 1];
+        slots[index + 1] = value;
+        return old;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (!(o instanceof Entry)) return false;
+        final Entry<?, ?> that = (Entry<?, ?>) o;
+        return Objects.equals(getKey(), that.getKey())
+            && Objects.equals(getValue(), that.getValue());
+      }
+
+      @Override
+      public int hashCode() {
+        return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+      }
+
+      @Override
+      public String toString() {
+        return getKey() + "=" + getValue();
+      }
+    }
   }
 }
@@ -0,0 +1,154 @@
+package wtune.common.io;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("fast")
+@Timeout(30)
+class ResultSinkTest {
+  private static List<String> expectedLines(int count) {
+    return IntStream.range(0, count).mapToObj(String::valueOf).collect(Collectors.toList());
+  }
+
+  @Test
+  void testOrder(@TempDir Path dir) throws Exception {
+    final Path file = dir.resolve("out.txt");
+    final ResultSink sink = ResultSink.of(file);
+    // More than the queue capacity, so that appending blocks now and then.
+    for (int i = 0; i < 20000; ++i) {
+      final int n = i;
+      sink.append(out -> out.println(n));
+    }
+    sink.flush();
+    assertEquals(expectedLines(20000), Files.readAllLines(file));
+    sink.close();
+  }
+
+  @Test
+  void testFlushAndClose(@TempDir Path dir) throws Exception {
+    final Path file = dir.resolve("out.txt");
+    final ResultSink sink = ResultSink.of(file);
+    assertSame(sink, ResultSink.of(dir.resolve(".").resolve("out.txt")));
+
+    sink.append(out -> out.println("a"));
+    sink.flush();
+    assertEquals(List.of("a"), Files.readAllLines(file));
+
+    sink.append(out -> out.println("b"));
+    sink.close();
+    assertEquals(List.of("a", "b"), Files.readAllLines(file));
+    assertThrows(IllegalStateException.class, () -> sink.append(out -> out.println("c")));
+    sink.flush(); // no-op
+    sink.close(); // no-op
+
+    // A closed sink is replaced by a new one, which appends to the file.
+    final ResultSink reopened = ResultSink.of(file);
+    assertNotSame(sink, reopened);
+    reopened.append(out -> out.println("c"));
+    reopened.close();
+    assertEquals(List.of("a", "b", "c"), Files.readAllLines(file));
+  }
+
+  @Test
+  void testCallbackOrder(@TempDir Path dir) throws Exception {
+    final Path resultFile = dir.resolve("result.txt");
+    final Path checkpointFile = dir.resolve("checkpoint.txt");
+    final ResultSink results = ResultSink.of(resultFile);
+    final ResultSink checkpoints = ResultSink.of(checkpointFile);
+
+    // Both touched by the writer of `results` only.
+    final List<Integer> written = new ArrayList<>();
+    final List<Long> sizes = new ArrayList<>();
+    for (int i = 0; i < 1000; ++i) {
+      final int n = i;
+      results.append(
+          out -> out.println(n),
+          () -> {
+            written.add(n);
+            sizes.add(resultFile.toFile().length());
+            checkpoints.append(out -> out.println(n));
+          });
+    }
+
+    results.flush();
+    checkpoints.flush();
+    assertEquals(expectedLines(1000), Files.readAllLines(resultFile));
+    assertEquals(expectedLines(1000), Files.readAllLines(checkpointFile));
+    assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), written);
+    // A result is on the file by the time its callback runs.
+    long length = 0;
+    for (int i = 0; i < 1000; ++i) {
+      length += (i + System.lineSeparator()).length();
+      assertTrue(sizes.get(i) >= length);
+    }
+    results.close();
+    checkpoints.close();
+  }
+
+  @Test
+  void testCrossCallbacks(@TempDir Path dir) throws Exception {
+    final ResultSink sink0 = ResultSink.of(dir.resolve("out0.txt"));
+    final ResultSink sink1 = ResultSink.of(dir.resolve("out1.txt"));
+    // Each floods the other in callbacks, far beyond the queue capacity. The writers of both must
+    // keep on draining, rather than wait on each other.
+    final int count = 10000, fanout = 8;
+    for (int i = 0; i < count; ++i) {
+      final int n = i;
+      sink0.append(out -> out.println(n), () -> appendRepeatedly(sink1, n, fanout));
+      sink1.append(out -> out.println(n), () -> appendRepeatedly(sink0, n, fanout));
+    }
+    sink0.flush();
+    sink1.flush();
+    sink0.flush();
+    for (String name : new String[] {"out0.txt", "out1.txt"}) {
+      final List<String> lines = Files.readAllLines(dir.resolve(name));
+      assertEquals(count * (1 + fanout), lines.size(), name);
+      // Lines appended by the caller are in order, and so are those appended by callbacks.
+      assertEquals(expectedLines(count), lines.stream().distinct().collect(Collectors.toList()));
+    }
+    sink0.close();
+    sink1.close();
+  }
+
+  private static void appendRepeatedly(ResultSink sink, int n, int times) {
+    for (int i = 0; i < times; ++i) sink.append(out -> out.println(n));
+  }
+
+  @Test
+  void testFailure(@TempDir Path dir) throws Exception {
+    // A directory can't be opened for writing, thus the writer fails at once.
+    final Path bad = Files.createDirectory(dir.resolve("bad"));
+    final ResultSink failed = ResultSink.of(bad);
+    assertThrows(UncheckedIOException.class, failed::flush);
+    assertThrows(UncheckedIOException.class, () -> failed.append(out -> out.println("x")));
+
+    // A callback appending to the failed sink fails this one as well, after writing the record.
+    final Path file = dir.resolve("out.txt");
+    final ResultSink sink = ResultSink.of(file);
+    sink.append(out -> out.println("a"), () -> failed.append(out -> out.println("a")));
+    final UncheckedIOException ex = assertThrows(UncheckedIOException.class, sink::flush);
+    assertTrue(ex.getCause().getCause() instanceof UncheckedIOException);
+    assertEquals(List.of("a"), Files.readAllLines(file));
+    assertThrows(UncheckedIOException.class, () -> sink.append(out -> out.println("b")));
+    assertThrows(UncheckedIOException.class, sink::close);
+    assertNotSame(sink, ResultSink.of(file)); // removed upon closing
+    ResultSink.of(file).close();
+
+    assertThrows(UncheckedIOException.class, failed::close);
+    final ResultSink again = ResultSink.of(bad);
+    assertNotSame(failed, again); // removed upon closing
+    assertThrows(UncheckedIOException.class, again::close);
+  }
+}
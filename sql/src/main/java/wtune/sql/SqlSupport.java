@@ -1,13 +1,18 @@
 package wtune.sql;
 
+import com.google.common.hash.HashCode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import wtune.common.field.FieldKey;
 import wtune.common.tree.LabeledTreeFields;
 import wtune.sql.ast.constants.*;
 import wtune.sql.parser.AstParser;
+import wtune.sql.parser.ParserSupport;
+import wtune.sql.util.ByteBufferAppender;
+import wtune.sql.util.HashingAppender;
 import wtune.sql.util.SqlCopier;
 import wtune.sql.ast.*;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +40,39 @@ public abstract class SqlSupport {
     }
   }
 
+  /** Whether to try SLL prediction before falling back to full LL. Enabled by default. */
+  public static void setTwoStageParsing(boolean enabled) {
+    ParserSupport.setTwoStageEnabled(enabled);
+  }
+
+  /**
+   * Parse the given statements once and discard the results. The DFA cache of the generated parsers
+   * is shared across threads and grows on-demand, so warming it up ahead of time avoids paying the
+   * cost of full-context prediction in the first (possibly latency-critical) requests.
+   */
+  public static void warmUpParser(String dbType, Iterable<String> sqls) {
+    final AstParser parser = AstParser.ofDb(dbType);
+    for (String sql : sqls)
+      try {
+        parser.parse(sql);
+      } catch (ParseCancellationException ignored) {
+      }
+  }
+
+  /** Stable 128-bit digest of the one-line SQL of the node, computed without materializing it. */
+  public static HashCode digestSql(SqlNode node) {
+    final HashingAppender appender = new HashingAppender();
+    node.formatTo(appender, true);
+    return appender.hash();
+  }
+
+  /** Encode the one-line SQL of the node as UTF-8 into the buffer. */
+  public static ByteBuffer encodeSql(SqlNode node, ByteBuffer out) {
+    final ByteBufferAppender appender = new ByteBufferAppender(out);
+    node.formatTo(appender, true);
+    return appender.finish();
+  }
+
   public static String quoted(String dbType, String name) {
     if (MySQL.equals(dbType)) return '`' + name + '`';
     else if (PostgreSQL.equals(dbType)) return '"' + name + '"';
@@ -55,6 +55,11 @@ class SqlDataTypeImpl implements SqlDataType {
     return unsigned;
   }
 
+  @Override
+  public String intervalField() {
+    return intervalField;
+  }
+
   @Override
   public List<String> valuesList() {
     return valuesList;
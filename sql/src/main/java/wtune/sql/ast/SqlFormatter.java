@@ -2,6 +2,8 @@ package wtune.sql.ast;
 
 import wtune.sql.ast.constants.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import static wtune.common.utils.Commons.coalesce;
@@ -17,13 +19,84 @@ public class SqlFormatter implements SqlVisitor{
   private static final String INDENT_STR = "  ";
   private static final String UNKNOWN_PLACEHOLDER = "<??>";
 
-  protected final StringBuilder builder = new StringBuilder();
+  // When streaming to a sink, the buffer is drained once it reaches this size.
+  private static final int DRAIN_THRESHOLD = 2048;
+  // Chars never drained until the end, since the formatter may remove a few trailing chars.
+  private static final int RETAINED_TAIL = 8;
+  // A thread-local buffer grown beyond this size is not retained.
+  private static final int MAX_CACHED_BUFFER = 1 << 16;
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<>();
+
+  protected final StringBuilder builder;
+  private final Appendable sink;
   private final boolean oneLine;
 
   private int indent = 0;
 
   public SqlFormatter(boolean oneLine) {
+    this(oneLine, null, new StringBuilder());
+  }
+
+  /**
+   * Streams the formatted SQL into {@code sink}, instead of accumulating it in memory. {@link
+   * #flush()} must be called after the node is visited.
+   */
+  public SqlFormatter(boolean oneLine, Appendable sink) {
+    this(oneLine, sink, new StringBuilder(DRAIN_THRESHOLD + RETAINED_TAIL));
+  }
+
+  private SqlFormatter(boolean oneLine, Appendable sink, StringBuilder builder) {
     this.oneLine = oneLine;
+    this.sink = sink;
+    this.builder = builder;
+  }
+
+  /** Format the node using a thread-local buffer, which saves the growing of a fresh one. */
+  static String format(SqlNode node, boolean oneLine) {
+    StringBuilder buffer = BUFFER.get();
+    if (buffer == null) buffer = new StringBuilder(256);
+    else BUFFER.set(null); // in case of reentrance
+
+    try {
+      final SqlFormatter formatter = new SqlFormatter(oneLine, null, buffer);
+      node.accept(formatter);
+      return buffer.toString();
+
+    } finally {
+      if (buffer.capacity() <= MAX_CACHED_BUFFER) {
+        buffer.setLength(0);
+        BUFFER.set(buffer);
+      }
+    }
+  }
+
+  static void format(SqlNode node, boolean oneLine, Appendable sink) {
+    final SqlFormatter formatter = new SqlFormatter(oneLine, sink);
+    node.accept(formatter);
+    formatter.flush();
+  }
+
+  /** Write all the buffered chars to the sink. */
+  public void flush() {
+    if (sink != null) drain(0);
+  }
+
+  private void drainIfFull() {
+    if (sink != null && builder.length() >= DRAIN_THRESHOLD) drain(RETAINED_TAIL);
+  }
+
+  private void drain(int retained) {
+    int end = builder.length() - retained;
+    // Never split a surrogate pair, so that the sink can always encode what it receives.
+    if (end > 0 && retained > 0 && Character.isHighSurrogate(builder.charAt(end - 1))) --end;
+    if (end <= 0) return;
+
+    try {
+      sink.append(builder, 0, end);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    builder.delete(0, end);
   }
 
   private static char quotation(SqlNode node) {
@@ -44,21 +117,25 @@ public class SqlFormatter implements SqlVisitor{
 
   protected SqlFormatter append(Object o) {
     builder.append(o);
+    drainIfFull();
     return this;
   }
 
   protected SqlFormatter append(int i) {
     builder.append(i);
+    drainIfFull();
     return this;
   }
 
   protected SqlFormatter append(char c) {
     builder.append(c);
+    drainIfFull();
     return this;
   }
 
   protected SqlFormatter append(String s) {
     builder.append(s);
+    drainIfFull();
     return this;
   }
 
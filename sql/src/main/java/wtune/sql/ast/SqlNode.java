@@ -8,6 +8,9 @@ public interface SqlNode extends LabeledTreeNode<SqlKind, SqlContext, SqlNode> {
 
   String toString(boolean oneLine);
 
+  /** Stream the formatted SQL into {@code out}. Equivalent to appending toString(oneLine). */
+  void formatTo(Appendable out, boolean oneLine);
+
   default String dbType() {
     return context().dbType();
   }
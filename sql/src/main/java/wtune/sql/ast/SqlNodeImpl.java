@@ -20,9 +20,12 @@ class SqlNodeImpl extends LabeledTreeNodeBase<SqlKind, SqlContext, SqlNode> impl
 
   @Override
   public String toString(boolean oneLine) {
-    final SqlFormatter formatter = new SqlFormatter(oneLine);
-    accept(formatter);
-    return formatter.toString();
+    return SqlFormatter.format(this, oneLine);
+  }
+
+  @Override
+  public void formatTo(Appendable out, boolean oneLine) {
+    SqlFormatter.format(this, oneLine, out);
   }
 
   @Override
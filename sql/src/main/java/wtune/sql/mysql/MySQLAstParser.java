@@ -8,12 +8,18 @@ import wtune.sql.ast.SqlNode;
 import wtune.sql.mysql.internal.MySQLLexer;
 import wtune.sql.mysql.internal.MySQLParser;
 import wtune.sql.parser.AstParser;
+import wtune.sql.parser.ParserSupport;
 import wtune.sql.parser.ThrowingErrorListener;
 
 import java.util.Properties;
 import java.util.function.Function;
 
 public class MySQLAstParser implements AstParser {
+  // The generated recognizers are heavy to construct and not thread-safe, so reuse them per thread.
+  // The ATN and DFA cache are static in the generated classes, and thus shared by all threads.
+  private static final ThreadLocal<Recognizers> RECOGNIZERS =
+      ThreadLocal.withInitial(Recognizers::new);
+
   private long serverVersion = 0;
   private int sqlMode = MySQLRecognizerCommon.NoMode;
 
@@ -26,22 +32,10 @@ public class MySQLAstParser implements AstParser {
   }
 
   public SqlNode parse(String str, Function<MySQLParser, ParserRuleContext> rule) {
-    final MySQLLexer lexer = new MySQLLexer(CharStreams.fromString(str));
-    lexer.setServerVersion(serverVersion);
-    lexer.setSqlMode(sqlMode);
-    if (str.contains("OVER (")) lexer.setServerVersion(Integer.MAX_VALUE);
-
-      final MySQLParser parser = new MySQLParser(new CommonTokenStream(lexer));
-    parser.setServerVersion(serverVersion);
-    parser.setSqlMode(sqlMode);
-    if (str.contains("OVER (")) parser.setServerVersion(Integer.MAX_VALUE);
-
-    lexer.removeErrorListeners();
-    lexer.addErrorListener(ThrowingErrorListener.instance());
-    parser.removeErrorListeners();
-    parser.addErrorListener(ThrowingErrorListener.instance());
-
-    return rule.apply(parser).accept(new MySQLAstBuilder());
+    // Window functions are only recognized by recent server versions.
+    final long serverVersion = str.contains("OVER (") ? Integer.MAX_VALUE : this.serverVersion;
+    final MySQLParser parser = RECOGNIZERS.get().reset(str, serverVersion, sqlMode);
+    return ParserSupport.parseTwoStage(parser, rule).accept(new MySQLAstBuilder());
   }
 
   @Override
@@ -57,4 +51,29 @@ public class MySQLAstParser implements AstParser {
     setServerVersion((int) props.getOrDefault("serverVersion", this.serverVersion));
     setSqlMode((int) props.getOrDefault("sqlMode", this.sqlMode));
   }
+
+  private static class Recognizers {
+    private final MySQLLexer lexer;
+    private final CommonTokenStream tokens;
+    private final MySQLParser parser;
+
+    private Recognizers() {
+      lexer = new MySQLLexer(null);
+      tokens = new CommonTokenStream(lexer);
+      parser = new MySQLParser(tokens);
+      lexer.removeErrorListeners();
+      lexer.addErrorListener(ThrowingErrorListener.instance());
+    }
+
+    private MySQLParser reset(String str, long serverVersion, int sqlMode) {
+      lexer.setInputStream(CharStreams.fromString(str));
+      lexer.setServerVersion(serverVersion);
+      lexer.setSqlMode(sqlMode);
+      tokens.setTokenSource(lexer);
+      parser.setTokenStream(tokens);
+      parser.setServerVersion(serverVersion);
+      parser.setSqlMode(sqlMode);
+      return parser;
+    }
+  }
 }
@@ -0,0 +1,51 @@
+package wtune.sql.parser;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BufferedTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.util.function.Function;
+
+public abstract class ParserSupport {
+  private static boolean TWO_STAGE_ENABLED = true;
+
+  private ParserSupport() {}
+
+  public static void setTwoStageEnabled(boolean enabled) {
+    TWO_STAGE_ENABLED = enabled;
+  }
+
+  /**
+   * Parse with the two-stage strategy: first try the faster SLL prediction, bailing out on the
+   * first syntax error; only if that fails, rewind and re-parse with full LL prediction.
+   *
+   * <p>SLL is sufficient for the vast majority of statements, and a genuinely malformed statement
+   * is still reported by the LL stage. The token stream is filled beforehand, so a lexing error
+   * is thrown immediately instead of triggering a pointless second stage.
+   */
+  public static <P extends Parser> ParserRuleContext parseTwoStage(
+      P parser, Function<P, ? extends ParserRuleContext> rule) {
+    ((BufferedTokenStream) parser.getTokenStream()).fill();
+
+    if (TWO_STAGE_ENABLED) {
+      parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+      parser.setErrorHandler(new BailErrorStrategy());
+      parser.removeErrorListeners();
+      try {
+        return rule.apply(parser);
+      } catch (ParseCancellationException ignored) {
+        parser.reset(); // also rewinds the token stream
+      }
+    }
+
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    parser.setErrorHandler(new DefaultErrorStrategy());
+    parser.removeErrorListeners();
+    parser.addErrorListener(ThrowingErrorListener.instance());
+    return rule.apply(parser);
+  }
+}
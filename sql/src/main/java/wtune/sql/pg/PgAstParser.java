@@ -6,6 +6,7 @@ import org.antlr.v4.runtime.ParserRuleContext;
 import wtune.common.datasource.DbSupport;
 import wtune.sql.ast.SqlNode;
 import wtune.sql.parser.AstParser;
+import wtune.sql.parser.ParserSupport;
 import wtune.sql.parser.ThrowingErrorListener;
 import wtune.sql.pg.internal.PGLexer;
 import wtune.sql.pg.internal.PGParser;
@@ -13,18 +14,13 @@ import wtune.sql.pg.internal.PGParser;
 import java.util.function.Function;
 
 public class PgAstParser implements AstParser {
-  public SqlNode parse(String str, Function<PGParser, ParserRuleContext> rule) {
-    final PGLexer lexer = new PGLexer(CharStreams.fromString(str));
-    final PGParser parser = new PGParser(new CommonTokenStream(lexer));
-
-    lexer.removeErrorListeners();
-    lexer.addErrorListener(ThrowingErrorListener.instance());
-    parser.removeErrorListeners();
-    parser.addErrorListener(ThrowingErrorListener.instance());
+  // See MySQLAstParser.
+  private static final ThreadLocal<Recognizers> RECOGNIZERS =
+      ThreadLocal.withInitial(Recognizers::new);
 
-    //    lexer.getInterpreter().clearDFA();
-    //    parser.getInterpreter().clearDFA();
-    return rule.apply(parser).accept(new PgAstBuilder());
+  public SqlNode parse(String str, Function<PGParser, ParserRuleContext> rule) {
+    final PGParser parser = RECOGNIZERS.get().reset(str);
+    return ParserSupport.parseTwoStage(parser, rule).accept(new PgAstBuilder());
   }
 
   @Override
@@ -34,4 +30,25 @@ public class PgAstParser implements AstParser {
     ast.context().setDbType(DbSupport.PostgreSQL);
     return ast;
   }
+
+  private static class Recognizers {
+    private final PGLexer lexer;
+    private final CommonTokenStream tokens;
+    private final PGParser parser;
+
+    private Recognizers() {
+      lexer = new PGLexer(null);
+      tokens = new CommonTokenStream(lexer);
+      parser = new PGParser(tokens);
+      lexer.removeErrorListeners();
+      lexer.addErrorListener(ThrowingErrorListener.instance());
+    }
+
+    private PGParser reset(String str) {
+      lexer.setInputStream(CharStreams.fromString(str));
+      tokens.setTokenSource(lexer);
+      parser.setTokenStream(tokens);
+      return parser;
+    }
+  }
 }
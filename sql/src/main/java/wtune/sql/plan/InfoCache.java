@@ -21,6 +21,14 @@ public interface InfoCache {
 
   Pair<List<Value>, List<Value>> getJoinKeyOf(int nodeId);
 
+  /**
+   * Returns the cached per-kind operator counts of the subtree rooted at `nodeId`, or null if not
+   * cached. The array must not be modified.
+   *
+   * <p>The cached value is invalidated when the subtree is mutated.
+   */
+  int[] getOpCountsOf(int nodeId);
+
   void putDeduplicatedOf(int projNodeId, boolean flag);
 
   void putJoinKeyOf(int joinNodeId, List<Value> lhsKeys, List<Value> rhsKeys);
@@ -33,6 +41,8 @@ public interface InfoCache {
 
   void putVirtualExpr(Expression compoundExpr, int... nodes);
 
+  void putOpCountsOf(int nodeId, int[] opCounts);
+
   default List<Value> lhsJoinKeyOf(int nodeId) {
     return getJoinKeyOf(nodeId).getLeft();
   }
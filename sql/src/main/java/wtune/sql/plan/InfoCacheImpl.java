@@ -18,34 +18,41 @@ import java.util.Map;
 import static wtune.common.tree.TreeContext.NO_SUCH_NODE;
 
 public class InfoCacheImpl implements InfoCache {
+  private final PlanContext plan;
   private final COW<TIntIntMap> deduplicated;
   private final COW<TIntObjectMap<Pair<List<Value>, List<Value>>>> joinKeys;
   private final COW<TIntObjectMap<JoinKind>> joinKinds;
   private final COW<TIntObjectMap<Expression>> subqueryExprs;
   private final COW<TIntObjectMap<TIntList>> dependentNodes;
   private final COW<Map<Expression, int[]>> virtualExprs;
+  private final COW<TIntObjectMap<int[]>> opCounts;
 
-  InfoCacheImpl() {
+  InfoCacheImpl(PlanContext plan) {
+    this.plan = plan;
     this.deduplicated = new COW<>(new TIntIntHashMap(4), null);
     this.joinKeys = new COW<>(new TIntObjectHashMap<>(4), null);
     this.joinKinds = new COW<>(new TIntObjectHashMap<>(4), null);
     this.subqueryExprs = new COW<>(new TIntObjectHashMap<>(4), null);
     this.dependentNodes = new COW<>(new TIntObjectHashMap<>(4), null);
     this.virtualExprs = new COW<>(new IdentityHashMap<>(4), null);
+    this.opCounts = new COW<>(new TIntObjectHashMap<>(4), null);
   }
 
-  InfoCacheImpl(InfoCacheImpl toCopy) {
+  InfoCacheImpl(InfoCacheImpl toCopy, PlanContext plan) {
+    this.plan = plan;
     this.deduplicated = new COW<>(toCopy.deduplicated.forRead(), TIntIntHashMap::new);
     this.joinKeys = new COW<>(toCopy.joinKeys.forRead(), TIntObjectHashMap::new);
     this.joinKinds = new COW<>(toCopy.joinKinds.forRead(), TIntObjectHashMap::new);
     this.subqueryExprs = new COW<>(toCopy.subqueryExprs.forRead(), TIntObjectHashMap::new);
     this.dependentNodes = new COW<>(toCopy.dependentNodes.forRead(), TIntObjectHashMap::new);
     this.virtualExprs = new COW<>(toCopy.virtualExprs.forRead(), HashMap::new);
+    this.opCounts = new COW<>(toCopy.opCounts.forRead(), TIntObjectHashMap::new);
   }
 
   @Override
   public void putDeduplicatedOf(int projNodeId, boolean flag) {
     deduplicated.forWrite().put(projNodeId, flag ? 2 : 1);
+    invalidateOpCounts(projNodeId);
   }
 
   @Override
@@ -56,6 +63,7 @@ public class InfoCacheImpl implements InfoCache {
   @Override
   public void putJoinKindOf(int joinNodeId, JoinKind joinKind) {
     joinKinds.forWrite().put(joinNodeId, joinKind);
+    invalidateOpCounts(joinNodeId);
   }
 
   @Override
@@ -73,6 +81,11 @@ public class InfoCacheImpl implements InfoCache {
     virtualExprs.forWrite().put(compoundExpr, nodes);
   }
 
+  @Override
+  public void putOpCountsOf(int nodeId, int[] opCounts) {
+    this.opCounts.forWrite().put(nodeId, opCounts);
+  }
+
   @Override
   public Boolean getDeduplicatedOf(int projNodeId) {
     final int value = deduplicated.forRead().get(projNodeId);
@@ -106,6 +119,11 @@ public class InfoCacheImpl implements InfoCache {
     return dependentNodes.forRead().get(nodeId);
   }
 
+  @Override
+  public int[] getOpCountsOf(int nodeId) {
+    return opCounts.forRead().get(nodeId);
+  }
+
   @Override
   public int[] getVirtualExprComponents(Expression expr) {
     return virtualExprs.forRead().get(expr);
@@ -116,6 +134,16 @@ public class InfoCacheImpl implements InfoCache {
     if (joinKinds.forRead().containsKey(nodeId)) joinKinds.forWrite().remove(nodeId);
     if (subqueryExprs.forRead().containsKey(nodeId)) subqueryExprs.forWrite().remove(nodeId);
     if (deduplicated.forRead().containsKey(nodeId)) deduplicated.forWrite().remove(nodeId);
+    if (opCounts.forRead().containsKey(nodeId)) opCounts.forWrite().remove(nodeId);
+  }
+
+  /* Invalidate the op counts of `nodeId` and its ancestors, whose subtrees are mutated. */
+  void invalidateOpCounts(int nodeId) {
+    // If a node is cached, so are all its descendants. Thus, stop at the first uncached one.
+    while (nodeId != NO_SUCH_NODE && opCounts.forRead().containsKey(nodeId)) {
+      opCounts.forWrite().remove(nodeId);
+      nodeId = plan.parentOf(nodeId);
+    }
   }
 
   void renumberNode(int from, int to) {
@@ -137,6 +165,12 @@ public class InfoCacheImpl implements InfoCache {
       subqueryExprs.forWrite().remove(from);
     }
 
+    final int[] opCounts = this.opCounts.forRead().get(from);
+    if (opCounts != null) {
+      this.opCounts.forWrite().put(to, opCounts);
+      this.opCounts.forWrite().remove(from);
+    }
+
     final int deduplicated = this.deduplicated.forRead().get(from);
     if (deduplicated != 0) {
       this.deduplicated.forWrite().put(to, deduplicated);
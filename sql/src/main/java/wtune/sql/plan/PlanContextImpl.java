@@ -21,7 +21,7 @@ class PlanContextImpl extends UniformTreeContextBase<PlanKind> implements PlanCo
     this.schema = schema;
     this.nodeReg = new COW<>(mkIdentityMap(), null);
     this.valuesReg = new ValuesRegistryImpl(this);
-    this.infoCache = new InfoCacheImpl();
+    this.infoCache = new InfoCacheImpl(this);
   }
 
   private PlanContextImpl(PlanContextImpl other) {
@@ -31,7 +31,7 @@ class PlanContextImpl extends UniformTreeContextBase<PlanKind> implements PlanCo
     this.schema = other.schema;
     this.nodeReg = new COW<>(other.nodeReg.forRead(), PlanContextImpl::copyIdentityMap);
     this.valuesReg = new ValuesRegistryImpl(other.valuesReg, this);
-    this.infoCache = new InfoCacheImpl(other.infoCache);
+    this.infoCache = new InfoCacheImpl(other.infoCache, this);
   }
 
   @Override
@@ -69,6 +69,18 @@ class PlanContextImpl extends UniformTreeContextBase<PlanKind> implements PlanCo
     return newNodeId;
   }
 
+  @Override
+  public void setChild(int parentNodeId, int childIndex, int childNodeId) {
+    infoCache.invalidateOpCounts(parentNodeId);
+    super.setChild(parentNodeId, childIndex, childNodeId);
+  }
+
+  @Override
+  public void detachNode(int nodeId) {
+    infoCache.invalidateOpCounts(parentOf(nodeId));
+    super.detachNode(nodeId);
+  }
+
   @Override
   public void deleteNode(int nodeId) {
     nodeReg.forWrite().remove(nodeId);
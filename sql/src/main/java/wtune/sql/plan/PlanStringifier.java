@@ -1,9 +1,16 @@
 package wtune.sql.plan;
 
 import wtune.sql.ast.constants.JoinKind;
+import wtune.sql.schema.Column;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static wtune.sql.plan.PlanSupport.SYN_NAME_PREFIX;
 import static wtune.sql.plan.PlanSupport.joinKindOf;
 
 class PlanStringifier {
@@ -12,6 +19,10 @@ class PlanStringifier {
   private final StringBuilder builder;
   private final boolean oneLine;
   private final boolean compact;
+  // Renaming of qualifications and synthetic names in canonical mode, otherwise null.
+  private final Map<String, String> renaming;
+  // Values defined within the stringified tree in canonical mode, otherwise null.
+  private final Set<Value> innerValues;
   private int indentLevel;
 
   PlanStringifier(PlanContext plan, StringBuilder builder, boolean oneLine, boolean compact) {
@@ -20,6 +31,18 @@ class PlanStringifier {
     this.builder = builder;
     this.oneLine = oneLine;
     this.compact = compact;
+    this.renaming = null;
+    this.innerValues = null;
+  }
+
+  private PlanStringifier(PlanContext plan, StringBuilder builder) {
+    this.plan = plan;
+    this.values = plan.valuesReg();
+    this.builder = builder;
+    this.oneLine = true;
+    this.compact = true;
+    this.renaming = new HashMap<>();
+    this.innerValues = Collections.newSetFromMap(new IdentityHashMap<>());
   }
 
   static String stringifyNode(PlanContext ctx, int id, boolean oneLine, boolean compact) {
@@ -34,6 +57,21 @@ class PlanStringifier {
     return stringifier.builder.toString();
   }
 
+  static String stringifyCanonical(PlanContext ctx, int id) {
+    final PlanStringifier stringifier = new PlanStringifier(ctx, new StringBuilder());
+    stringifier.collectInnerValues(id);
+    stringifier.stringifyTree(id);
+    return stringifier.builder.toString();
+  }
+
+  private void collectInnerValues(int rootId) {
+    final PlanKind kind = plan.kindOf(rootId);
+    if (kind == PlanKind.Input || kind == PlanKind.Proj || kind == PlanKind.Agg)
+      innerValues.addAll(values.valuesOf(rootId));
+    for (int i = 0, bound = kind.numChildren(); i < bound; ++i)
+      collectInnerValues(plan.childOf(rootId, i));
+  }
+
   private void stringifyTree(int rootId) {
     stringifyNode(rootId);
     final int numChildren = plan.kindOf(rootId).numChildren();
@@ -122,7 +160,7 @@ class PlanStringifier {
     if (having != null) appendRefs(having);
     builder.append("]");
     if (agg.qualification() != null) {
-      builder.append(",qual=").append(agg.qualification());
+      builder.append(",qual=").append(rename(agg.qualification()));
     }
     builder.append("}");
   }
@@ -141,7 +179,7 @@ class PlanStringifier {
     for (Expression expr : exprs) appendRefs(expr);
     builder.append("]");
     if (proj.qualification() != null) {
-      builder.append(",qual=").append(proj.qualification());
+      builder.append(",qual=").append(rename(proj.qualification()));
     }
     builder.append("}");
   }
@@ -186,7 +224,7 @@ class PlanStringifier {
     builder.append("Input");
     appendNodeId(nodeId);
     builder.append('{').append(input.table().name());
-    builder.append(" AS ").append(input.qualification()).append("}");
+    builder.append(" AS ").append(rename(input.qualification())).append("}");
   }
 
   private void appendNodeId(int nodeId) {
@@ -197,12 +235,51 @@ class PlanStringifier {
     for (int i = 0, bound = exprs.size(); i < bound; i++) {
       final StringBuilder builder = this.builder.append(exprs.get(i));
       // if (!names.get(i).startsWith(SYN_NAME_PREFIX))
-      builder.append(" AS ").append(names.get(i)).append(',');
+      builder.append(" AS ").append(renameSyn(names.get(i))).append(',');
     }
   }
 
   private void appendRefs(Expression expr) {
-    for (Value ref : values.valueRefsOf(expr)) builder.append(ref).append(',');
+    for (Value ref : values.valueRefsOf(expr)) {
+      if (renaming == null) builder.append(ref).append(',');
+      else {
+        builder.append(rename(ref.qualification())).append('.').append(renameSyn(ref.name()));
+        // An outer one is told apart by where it comes from, since its alias is renamed.
+        if (!innerValues.contains(ref)) {
+          builder.append('@');
+          appendOrigin(ref);
+        }
+        builder.append(',');
+      }
+    }
+  }
+
+  // The table of a column, or the expression of a derived value and the origins of its refs.
+  private void appendOrigin(Value value) {
+    final Column column = values.columnOf(value);
+    if (column != null) {
+      builder.append(column.tableName());
+      return;
+    }
+    final Expression expr = values.exprOf(value);
+    if (expr == null) return;
+    builder.append(expr).append('[');
+    for (Value ref : values.valueRefsOf(expr)) {
+      appendOrigin(ref);
+      builder.append(',');
+    }
+    builder.append(']');
+  }
+
+  private String rename(String name) {
+    if (renaming == null || name == null) return name;
+    // Named by the order of first occurrence, thus the same up to renaming <=> the same string.
+    return renaming.computeIfAbsent(name, ignored -> "q" + renaming.size());
+  }
+
+  private String renameSyn(String name) {
+    if (renaming == null || name == null || !name.startsWith(SYN_NAME_PREFIX)) return name;
+    return renaming.computeIfAbsent(name, ignored -> SYN_NAME_PREFIX + renaming.size());
   }
 
   private void appendIndent() {
@@ -134,6 +134,16 @@ public abstract class PlanSupport {
     return PlanStringifier.stringifyTree(ctx, id, compact, compact);
   }
 
+  /**
+   * Stringify the tree in the compact form, with the qualifications and the synthetic names
+   * renamed by the order of their first occurrence. Thus, two trees get the same string if they
+   * are identical but for the table aliases and the synthetic names. A ref to a value defined
+   * outside the tree (e.g., of a correlated subquery) comes with the table it originates from.
+   */
+  public static String stringifyCanonical(PlanContext ctx, int id) {
+    return PlanStringifier.stringifyCanonical(ctx, id);
+  }
+
   public static String stringifyTree(PlanContext ctx, int id, boolean compact, boolean oneLine) {
     return PlanStringifier.stringifyTree(ctx, id, oneLine, compact);
   }
@@ -49,6 +49,16 @@ class ColumnImpl implements Column {
     this.flags.addAll(Arrays.asList(flags));
   }
 
+  int flagBits() {
+    int bits = 0;
+    for (Flag flag : flags) bits |= 1 << flag.ordinal();
+    return bits;
+  }
+
+  void setFlagBits(int bits) {
+    for (Flag flag : Flag.values()) if ((bits & (1 << flag.ordinal())) != 0) flags.add(flag);
+  }
+
   @Override
   public String tableName() {
     return table;
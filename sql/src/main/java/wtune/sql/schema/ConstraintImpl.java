@@ -1,8 +1,6 @@
 package wtune.sql.schema;
 
 import wtune.common.utils.Commons;
-import wtune.sql.ast.SqlNode;
-import wtune.sql.ast.SqlNodes;
 import wtune.sql.ast.constants.ConstraintKind;
 import wtune.sql.ast.constants.IndexKind;
 import wtune.sql.ast.constants.KeyDirection;
@@ -19,8 +17,8 @@ class ConstraintImpl implements Constraint {
   private List<KeyDirection> directions;
   private IndexKind indexType;
 
-  private SqlNode refTableName;
-  private SqlNodes refColNames;
+  private String refTableName;
+  private List<String> refColNames;
 
   private Table refTable;
   private List<Column> refColumns;
@@ -59,14 +57,18 @@ class ConstraintImpl implements Constraint {
     return refColumns;
   }
 
-  SqlNode refTableName() {
+  String refTableName() {
     return refTableName;
   }
 
-  SqlNodes refColNames() {
+  List<String> refColNames() {
     return refColNames;
   }
 
+  IndexKind indexType() {
+    return indexType;
+  }
+
   void setRefTable(Table refTable) {
     this.refTable = refTable;
   }
@@ -75,11 +77,11 @@ class ConstraintImpl implements Constraint {
     this.refColumns = refColumns;
   }
 
-  void setRefTableName(SqlNode refTableName) {
+  void setRefTableName(String refTableName) {
     this.refTableName = refTableName;
   }
 
-  void setRefColNames(SqlNodes refColNames) {
+  void setRefColNames(List<String> refColNames) {
     this.refColNames = refColNames;
   }
 
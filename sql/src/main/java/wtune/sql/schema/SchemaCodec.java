@@ -0,0 +1,219 @@
+package wtune.sql.schema;
+
+import wtune.sql.ast.SqlDataType;
+import wtune.sql.ast.constants.Category;
+import wtune.sql.ast.constants.ConstraintKind;
+import wtune.sql.ast.constants.IndexKind;
+import wtune.sql.ast.constants.KeyDirection;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of a schema as parsed from DDL, i.e., before patches. Decoding is much cheaper than
+ * parsing the DDL again, and each decoding yields a fresh schema that can be patched separately.
+ */
+abstract class SchemaCodec {
+  private static final int MAGIC = 0x5754534d; // "WTSM"
+  // Bump whenever the layout, or any enum involved, changes.
+  private static final int FORMAT = 1;
+
+  private SchemaCodec() {}
+
+  // Layout: magic, format, dbType, #tables, tables.
+  // A table is (schema, name, engine, #columns, columns, #constraints, constraints).
+  // A column is (name, rawDataType, dataType, flags). Constraints refer to columns by position.
+  // A string is the length of its UTF-8 bytes (-1 for null), followed by the bytes.
+  // An enum is its ordinal (-1 for null). A list is its length (-1 for null), followed by elements.
+
+  static byte[] encode(Schema schema) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 14);
+    try (final DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT);
+      writeString(out, schema.dbType());
+      out.writeInt(schema.tables().size());
+      for (Table table : schema.tables()) writeTable(out, table);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  static SchemaImpl decode(byte[] bytes) {
+    try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT)
+        throw new IllegalArgumentException("not an encoded schema");
+
+      final SchemaImpl schema = new SchemaImpl(readString(in));
+      for (int i = 0, numTables = in.readInt(); i < numTables; ++i) schema.addTable(readTable(in));
+      schema.buildRef();
+      return schema;
+
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("malformed schema", ex);
+    }
+  }
+
+  private static void writeTable(DataOutputStream out, Table table) throws IOException {
+    writeString(out, table.schema());
+    writeString(out, table.name());
+    writeString(out, table.engine());
+
+    final Map<Column, Integer> positions = new HashMap<>();
+    out.writeInt(table.columns().size());
+    for (Column column : table.columns()) {
+      positions.put(column, positions.size());
+      writeString(out, column.name());
+      writeString(out, column.rawDataType());
+      writeDataType(out, column.dataType());
+      out.writeInt(((ColumnImpl) column).flagBits());
+    }
+
+    out.writeInt(table.constraints().size());
+    for (Constraint constraint : table.constraints()) {
+      final ConstraintImpl c = (ConstraintImpl) constraint;
+      writeEnum(out, c.kind());
+      out.writeInt(c.columns().size());
+      for (Column column : c.columns()) out.writeInt(positions.getOrDefault(column, -1));
+
+      final List<KeyDirection> directions = c.directions();
+      out.writeInt(directions == null ? -1 : directions.size());
+      if (directions != null) for (KeyDirection direction : directions) writeEnum(out, direction);
+
+      writeEnum(out, c.indexType());
+      writeString(out, c.refTableName());
+      writeStrings(out, c.refColNames());
+    }
+  }
+
+  private static TableImpl readTable(DataInputStream in) throws IOException {
+    final TableImpl table = new TableImpl(readString(in), readString(in), readString(in));
+
+    final int numColumns = in.readInt();
+    final List<ColumnImpl> columns = new ArrayList<>(numColumns);
+    for (int i = 0; i < numColumns; ++i) {
+      final String name = readString(in);
+      final String rawDataType = readString(in);
+      final SqlDataType dataType = readDataType(in);
+      final ColumnImpl column = new ColumnImpl(table.name(), name, rawDataType, dataType);
+      column.setFlagBits(in.readInt());
+      table.addColumn(column);
+      columns.add(column);
+    }
+
+    final ConstraintKind[] kinds = ConstraintKind.values();
+    final KeyDirection[] keyDirections = KeyDirection.values();
+    final IndexKind[] indexKinds = IndexKind.values();
+    for (int i = 0, numConstraints = in.readInt(); i < numConstraints; ++i) {
+      final ConstraintKind kind = readEnum(in, kinds);
+
+      final int numKeys = in.readInt();
+      final List<Column> keys = new ArrayList<>(numKeys);
+      for (int j = 0; j < numKeys; ++j) {
+        final int pos = in.readInt();
+        keys.add(pos < 0 ? null : columns.get(pos));
+      }
+
+      final ConstraintImpl c = ConstraintImpl.build(kind, keys);
+      final int numDirections = in.readInt();
+      if (numDirections >= 0) {
+        final List<KeyDirection> directions = new ArrayList<>(numDirections);
+        for (int j = 0; j < numDirections; ++j) directions.add(readEnum(in, keyDirections));
+        c.setDirections(directions);
+      }
+      c.setIndexType(readEnum(in, indexKinds));
+      c.setRefTableName(readString(in));
+      c.setRefColNames(readStrings(in));
+
+      table.addConstraint(c);
+      for (Column key : keys) if (key != null) ((ColumnImpl) key).addConstraint(c);
+    }
+
+    return table;
+  }
+
+  private static void writeDataType(DataOutputStream out, SqlDataType type) throws IOException {
+    if (type == null) {
+      writeEnum(out, null);
+      return;
+    }
+    writeEnum(out, type.category());
+    writeString(out, type.name());
+    out.writeInt(type.width());
+    out.writeInt(type.precision());
+    out.writeBoolean(type.unsigned());
+    writeString(out, type.intervalField());
+    writeStrings(out, type.valuesList());
+
+    final int[] dimensions = type.dimensions();
+    out.writeInt(dimensions == null ? -1 : dimensions.length);
+    if (dimensions != null) for (int dimension : dimensions) out.writeInt(dimension);
+  }
+
+  private static SqlDataType readDataType(DataInputStream in) throws IOException {
+    final Category category = readEnum(in, Category.values());
+    if (category == null) return null;
+
+    final String name = readString(in);
+    final int width = in.readInt(), precision = in.readInt();
+    final SqlDataType type = SqlDataType.mk(category, name, width, precision);
+    type.setUnsigned(in.readBoolean());
+    type.setIntervalField(readString(in));
+    type.setValuesList(readStrings(in));
+
+    final int numDimensions = in.readInt();
+    if (numDimensions >= 0) {
+      final int[] dimensions = new int[numDimensions];
+      for (int i = 0; i < numDimensions; ++i) dimensions[i] = in.readInt();
+      type.setDimensions(dimensions);
+    } else {
+      type.setDimensions(null);
+    }
+    return type;
+  }
+
+  private static void writeEnum(DataOutputStream out, Enum<?> e) throws IOException {
+    out.writeInt(e == null ? -1 : e.ordinal());
+  }
+
+  private static <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+    final int ordinal = in.readInt();
+    return ordinal < 0 ? null : values[ordinal];
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strs) throws IOException {
+    out.writeInt(strs == null ? -1 : strs.size());
+    if (strs != null) for (String str : strs) writeString(out, str);
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    final int size = in.readInt();
+    if (size < 0) return null;
+    final List<String> strs = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) strs.add(readString(in));
+    return strs;
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) return null;
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -6,15 +6,15 @@ import wtune.sql.ast.SqlNode;
 import wtune.sql.ast.SqlNodeFields;
 
 import java.util.*;
-import java.util.function.Function;
 
 import static wtune.sql.SqlSupport.simpleName;
 
 class SchemaImpl implements Schema {
   private final String dbType;
   private final Map<String, TableImpl> tables;
+  private boolean frozen;
 
-  private SchemaImpl(String dbType) {
+  SchemaImpl(String dbType) {
     this.dbType = dbType;
     this.tables = new HashMap<>();
   }
@@ -66,18 +66,17 @@ class SchemaImpl implements Schema {
     if (builder != null) builder.fromCreateIndex(node);
   }
 
-  private void buildRef() {
+  void buildRef() {
     for (TableImpl table : tables.values())
       if (table.constraints() != null)
         for (Constraint constraint0 : table.constraints()) {
           final ConstraintImpl constraint = (ConstraintImpl) constraint0;
-          final SqlNode refTableName = constraint.refTableName();
+          final String refTableName = constraint.refTableName();
           if (refTableName != null) {
-            final Table ref = table(refTableName.$(SqlNodeFields.TableName_Table));
+            final Table ref = table(refTableName);
             if (ref == null) continue;
             constraint.setRefTable(ref);
-            constraint.setRefColumns(
-                    ListSupport.map((Iterable<SqlNode>) constraint.refColNames(), (Function<? super SqlNode, ? extends Column>) it -> ref.column(it.$(SqlNodeFields.ColName_Col))));
+            constraint.setRefColumns(ListSupport.map(constraint.refColNames(), ref::column));
           }
         }
   }
@@ -99,6 +98,7 @@ class SchemaImpl implements Schema {
 
   @Override
   public void patch(Iterable<SchemaPatch> patches) {
+    if (frozen) throw new UnsupportedOperationException("the schema is shared and immutable");
     for (SchemaPatch patch : patches) {
       final TableImpl table = table(patch.table());
       if (table != null) table.addPatch(patch);
@@ -106,10 +106,16 @@ class SchemaImpl implements Schema {
     buildRef();
   }
 
-  private void addTable(TableImpl table) {
+  void addTable(TableImpl table) {
     tables.put(table.name(), table);
   }
 
+  /** Makes the schema immutable, so that it can be shared across threads. See SchemaRegistry. */
+  void freeze() {
+    for (TableImpl table : tables.values()) table.buildIndex();
+    frozen = true;
+  }
+
   @Override
   public StringBuilder toDdl(String dbType, StringBuilder buffer) {
     for (TableImpl value : tables.values()) {
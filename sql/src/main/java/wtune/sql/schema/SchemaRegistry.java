@@ -0,0 +1,118 @@
+package wtune.sql.schema;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Thread-safe registry of compiled schemas.
+ *
+ * <p>A schema is identified by the hash of its DDL and the version of the patches applied to it,
+ * i.e., the hash of the patches. The DDL is parsed only once per hash, even across JVM runs if a
+ * cache directory is given, and kept in a compact binary form from which each patched variant is
+ * decoded. The schemas returned are frozen: they are shared by all callers, thus {@link
+ * Schema#patch(Iterable)} is rejected, and their constraint indexes are pre-built.
+ */
+public class SchemaRegistry {
+  private final Path cacheDir;
+  private final ConcurrentMap<HashCode, byte[]> encoded;
+  private final ConcurrentMap<String, Schema> compiled;
+
+  private SchemaRegistry(Path cacheDir) {
+    this.cacheDir = cacheDir;
+    this.encoded = new ConcurrentHashMap<>();
+    this.compiled = new ConcurrentHashMap<>();
+  }
+
+  /** `cacheDir` is where the binary schemas are persisted. Null means in-memory only. */
+  public static SchemaRegistry mk(Path cacheDir) {
+    return new SchemaRegistry(cacheDir);
+  }
+
+  public Schema get(String dbType, String ddl, Iterable<SchemaPatch> patches) {
+    final List<SchemaPatch> patchList = new ArrayList<>();
+    patches.forEach(patchList::add);
+
+    final HashCode ddlHash = hashDdl(dbType, ddl);
+    final String key = ddlHash + ":" + patchVersion(patchList);
+    return compiled.computeIfAbsent(key, ignored -> compile(ddlHash, dbType, ddl, patchList));
+  }
+
+  public void clear() {
+    compiled.clear();
+    encoded.clear();
+  }
+
+  private Schema compile(HashCode ddlHash, String dbType, String ddl, List<SchemaPatch> patches) {
+    final byte[] bytes = encoded.computeIfAbsent(ddlHash, ignored -> load(ddlHash, dbType, ddl));
+    final SchemaImpl schema = SchemaCodec.decode(bytes);
+    if (!patches.isEmpty()) schema.patch(patches);
+    schema.freeze();
+    return schema;
+  }
+
+  private byte[] load(HashCode ddlHash, String dbType, String ddl) {
+    final Path cacheFile = cacheDir == null ? null : cacheDir.resolve(ddlHash + ".schema.bin");
+    if (cacheFile != null && Files.exists(cacheFile)) {
+      try {
+        final byte[] bytes = Files.readAllBytes(cacheFile);
+        SchemaCodec.decode(bytes); // validate
+        return bytes;
+      } catch (IOException | RuntimeException ex) {
+        // A corrupted cache is simply rebuilt.
+      }
+    }
+
+    final byte[] bytes = SchemaCodec.encode(Schema.parse(dbType, ddl));
+    if (cacheFile != null) {
+      try {
+        Files.createDirectories(cacheDir);
+        final Path tmpFile = Files.createTempFile(cacheDir, ddlHash.toString(), ".tmp");
+        Files.write(tmpFile, bytes);
+        Files.move(tmpFile, cacheFile, REPLACE_EXISTING, ATOMIC_MOVE);
+      } catch (IOException ignored) {
+        // The cache is only an optimization.
+      }
+    }
+    return bytes;
+  }
+
+  private static HashCode hashDdl(String dbType, String ddl) {
+    return Hashing.murmur3_128()
+        .newHasher()
+        .putString(dbType, StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(ddl, StandardCharsets.UTF_8)
+        .hash();
+  }
+
+  private static HashCode patchVersion(List<SchemaPatch> patches) {
+    // Order matters: patches are applied in turn.
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (SchemaPatch patch : patches) {
+      hasher.putInt(patch.type().ordinal());
+      putNullable(hasher, patch.table());
+      for (String column : patch.columns()) putNullable(hasher, column);
+      hasher.putByte((byte) 1);
+      putNullable(hasher, patch.reference());
+    }
+    return hasher.hash();
+  }
+
+  private static void putNullable(Hasher hasher, String str) {
+    if (str == null) hasher.putByte((byte) 2);
+    else hasher.putString(str, StandardCharsets.UTF_8).putByte((byte) 0);
+  }
+}
@@ -21,6 +21,7 @@ public class SchemaSupport {
 
     final Table table = schema.table(ownerTable);
     if (table == null) throw new NoSuchElementException("no such table: " + ownerTable);
+    if (table instanceof TableImpl) return ((TableImpl) table).constraintsOn(columns, type);
 
     final Iterable<Constraint> constraints = table.constraints(type);
     return ListSupport.filter(constraints, it -> it.columns().equals(columns));
@@ -31,6 +32,7 @@ public class SchemaSupport {
     final String ownerTable = column.tableName();
     final Table table = schema.table(ownerTable);
     if (table == null) throw new NoSuchElementException("no such table: " + ownerTable);
+    if (table instanceof TableImpl) return ((TableImpl) table).constraintsInvolving(column, type);
     return lazyFilter(table.constraints(type), it -> it.columns().contains(column));
   }
 
@@ -1,5 +1,6 @@
 package wtune.sql.schema;
 
+import wtune.common.utils.ListSupport;
 import wtune.sql.ast.SqlNode;
 import wtune.sql.ast.SqlNodes;
 import wtune.sql.ast.constants.ConstraintKind;
@@ -65,8 +66,7 @@ class TableBuilder {
     final SqlNode references = colDef.$(SqlNodeFields.ColDef_Ref);
     if (references != null) {
       final ConstraintImpl c = ConstraintImpl.build(FOREIGN, singletonList(column));
-      c.setRefTableName(references.$(SqlNodeFields.Reference_Table));
-      c.setRefColNames(references.$(SqlNodeFields.Reference_Cols));
+      setReference(c, references);
 
       table.addConstraint(c);
       column.addConstraint(c);
@@ -90,12 +90,17 @@ class TableBuilder {
     c.setDirections(directions);
 
     final SqlNode refs = constraintDef.$(SqlNodeFields.IndexDef_Refs);
-    if (refs != null) {
-      c.setRefTableName(refs.$(SqlNodeFields.Reference_Table));
-      c.setRefColNames(refs.$(SqlNodeFields.Reference_Cols));
-    }
+    if (refs != null) setReference(c, refs);
 
     columns.forEach(col -> ((ColumnImpl) col).addConstraint(c));
     table.addConstraint(c);
   }
+
+  private static void setReference(ConstraintImpl c, SqlNode reference) {
+    final SqlNode refTable = reference.$(SqlNodeFields.Reference_Table);
+    final SqlNodes refCols = reference.$(SqlNodeFields.Reference_Cols);
+    c.setRefTableName(refTable.$(SqlNodeFields.TableName_Table));
+    c.setRefColNames(
+        ListSupport.map((Iterable<SqlNode>) refCols, it -> it.$(SqlNodeFields.ColName_Col)));
+  }
 }
@@ -3,11 +3,10 @@ package wtune.sql.schema;
 import wtune.common.datasource.DbSupport;
 import wtune.common.utils.ListSupport;
 import wtune.sql.SqlSupport;
-import wtune.sql.ast.SqlContext;
 import wtune.sql.ast.SqlNode;
-import wtune.sql.ast.SqlNodes;
 import wtune.sql.schema.SchemaPatch.Type;
 import wtune.sql.ast.*;
+import wtune.sql.ast.constants.ConstraintKind;
 
 import java.util.*;
 import java.util.function.Function;
@@ -24,6 +23,8 @@ class TableImpl implements Table {
   private final String engine;
   private final Map<String, Column> columns;
   private List<Constraint> constraints;
+  // Built on demand, dropped whenever a constraint is added.
+  private volatile ConstraintIndex index;
 
   TableImpl(String schema, String name, String engine) {
     this.schema = schema;
@@ -95,14 +96,8 @@ class TableImpl implements Table {
       final String[] split = patch.reference().split("\\.");
       if (split.length != 2) throw new IllegalArgumentException("illegal patch: " + patch);
 
-      final SqlContext ctx = SqlContext.mk(4);
-      final SqlNode tableName = SqlNode.mk(ctx, SqlKind.TableName);
-      tableName.$(SqlNodeFields.TableName_Table, split[0]);
-      constraint.setRefTableName(tableName);
-
-      final SqlNode colName = SqlNode.mk(ctx, SqlKind.ColName);
-      colName.$(SqlNodeFields.ColName_Col, split[1]);
-      constraint.setRefColNames(SqlNodes.mk(ctx, Collections.singletonList(colName)));
+      constraint.setRefTableName(split[0]);
+      constraint.setRefColNames(Collections.singletonList(split[1]));
 
       addConstraint(constraint);
       columns.forEach(it -> ((ColumnImpl) it).addConstraint(constraint));
@@ -116,6 +111,65 @@ class TableImpl implements Table {
   void addConstraint(ConstraintImpl constraint) {
     if (constraints == null) constraints = new ArrayList<>();
     constraints.add(constraint);
+    index = null;
+  }
+
+  /** Constraints of the kind (see {@link Table#constraints(ConstraintKind)}) on exactly `cols`. */
+  List<Constraint> constraintsOn(List<Column> cols, ConstraintKind kind) {
+    return index().byColumns[slotOf(kind)].getOrDefault(cols, Collections.emptyList());
+  }
+
+  /** Constraints of the kind (see {@link Table#constraints(ConstraintKind)}) involving `col`. */
+  List<Constraint> constraintsInvolving(Column col, ConstraintKind kind) {
+    return index().byColumn[slotOf(kind)].getOrDefault(col, Collections.emptyList());
+  }
+
+  void buildIndex() {
+    index();
+  }
+
+  private ConstraintIndex index() {
+    ConstraintIndex index = this.index;
+    if (index == null) this.index = index = new ConstraintIndex(constraints());
+    return index;
+  }
+
+  private static int slotOf(ConstraintKind kind) {
+    return kind == null ? 0 : kind.ordinal() + 1; // null for plain index
+  }
+
+  private static class ConstraintIndex {
+    private final Map<List<Column>, List<Constraint>>[] byColumns;
+    private final Map<Column, List<Constraint>>[] byColumn;
+
+    @SuppressWarnings("unchecked")
+    private ConstraintIndex(Collection<Constraint> constraints) {
+      final int numSlots = ConstraintKind.values().length + 1;
+      this.byColumns = new Map[numSlots];
+      this.byColumn = new Map[numSlots];
+      for (int i = 0; i < numSlots; ++i) {
+        byColumns[i] = new HashMap<>(4);
+        byColumn[i] = new HashMap<>(4);
+      }
+
+      for (Constraint c : constraints) {
+        add(slotOf(c.kind()), c);
+        // constraints(UNIQUE) includes the primary key.
+        if (c.kind() == ConstraintKind.PRIMARY) add(slotOf(ConstraintKind.UNIQUE), c);
+      }
+
+      // The lists are handed out as is, e.g., by SchemaSupport.findIC.
+      for (int i = 0; i < numSlots; ++i) {
+        byColumns[i].replaceAll((ignored, list) -> Collections.unmodifiableList(list));
+        byColumn[i].replaceAll((ignored, list) -> Collections.unmodifiableList(list));
+      }
+    }
+
+    private void add(int slot, Constraint c) {
+      byColumns[slot].computeIfAbsent(c.columns(), ignored -> new ArrayList<>(1)).add(c);
+      for (Column col : new LinkedHashSet<>(c.columns()))
+        byColumn[slot].computeIfAbsent(col, ignored -> new ArrayList<>(2)).add(c);
+    }
   }
 
   @Override
@@ -0,0 +1,65 @@
+package wtune.sql.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An Appendable that encodes the chars fed to it as UTF-8 directly into a ByteBuffer.
+ *
+ * <p>Throws {@link BufferOverflowException} if the buffer runs out of space. A surrogate pair must
+ * not be split across two appends.
+ */
+public class ByteBufferAppender implements Appendable {
+  private final ByteBuffer out;
+  private final CharsetEncoder encoder;
+
+  public ByteBufferAppender(ByteBuffer out) {
+    this.out = out;
+    this.encoder = StandardCharsets.UTF_8.newEncoder();
+  }
+
+  @Override
+  public ByteBufferAppender append(CharSequence csq) {
+    if (csq == null) csq = "null";
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public ByteBufferAppender append(CharSequence csq, int start, int end) {
+    if (csq == null) csq = "null";
+    encode(CharBuffer.wrap(csq, start, end), false);
+    return this;
+  }
+
+  @Override
+  public ByteBufferAppender append(char c) {
+    encode(CharBuffer.wrap(new char[] {c}), false);
+    return this;
+  }
+
+  /** Finish the encoding. Returns the buffer, with position after the last written byte. */
+  public ByteBuffer finish() {
+    encode(CharBuffer.allocate(0), true);
+    final CoderResult result = encoder.flush(out);
+    if (result.isOverflow()) throw new BufferOverflowException();
+    encoder.reset();
+    return out;
+  }
+
+  private void encode(CharBuffer in, boolean endOfInput) {
+    final CoderResult result = encoder.encode(in, out, endOfInput);
+    if (result.isOverflow()) throw new BufferOverflowException();
+    if (result.isError()) {
+      try {
+        result.throwException();
+      } catch (CharacterCodingException ex) {
+        throw new IllegalArgumentException(ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package wtune.sql.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * An Appendable that digests the chars fed to it instead of storing them.
+ *
+ * <p>The digest only depends on the whole char sequence, not on how it is chunked, and equals
+ * {@code Hashing.murmur3_128().hashUnencodedChars(str)} of the concatenated string.
+ */
+public class HashingAppender implements Appendable {
+  private final Hasher hasher = Hashing.murmur3_128().newHasher();
+
+  @Override
+  public HashingAppender append(CharSequence csq) {
+    hasher.putUnencodedChars(csq == null ? "null" : csq);
+    return this;
+  }
+
+  @Override
+  public HashingAppender append(CharSequence csq, int start, int end) {
+    if (csq == null) csq = "null";
+    for (int i = start; i < end; ++i) hasher.putChar(csq.charAt(i));
+    return this;
+  }
+
+  @Override
+  public HashingAppender append(char c) {
+    hasher.putChar(c);
+    return this;
+  }
+
+  /** The digest of the chars appended so far. The appender must not be used afterwards. */
+  public HashCode hash() {
+    return hasher.hash();
+  }
+}
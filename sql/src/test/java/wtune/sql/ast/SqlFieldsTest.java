@@ -0,0 +1,121 @@
+package wtune.sql.ast;
+
+import org.junit.jupiter.api.Test;
+import wtune.common.field.FieldKey;
+import wtune.common.tree.LabeledTreeFields;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.common.tree.TreeContext.NO_SUCH_NODE;
+import static wtune.sql.TestHelper.parseSql;
+
+class SqlFieldsTest {
+  private static final String[] SQLS = {
+    "SELECT DISTINCT a.i AS x, COUNT(b.y) FROM a INNER JOIN b ON a.i = b.x "
+        + "WHERE a.j IN (1, 2) AND b.z LIKE 'abc%' OR NOT a.k IS NULL "
+        + "GROUP BY a.i HAVING COUNT(b.y) > 1 ORDER BY a.i DESC LIMIT 10 OFFSET 2",
+    "SELECT t.u, CASE WHEN t.v = 'x' THEN 1 ELSE 0 END FROM (SELECT c.u, c.v FROM c) AS t "
+        + "LEFT JOIN d ON t.u = d.p WHERE EXISTS (SELECT 1 FROM a WHERE a.i = t.u)",
+    "SELECT a.i FROM a WHERE a.j = ? UNION ALL SELECT b.x FROM b WHERE b.y BETWEEN 1 AND 3",
+    "UPDATE a SET a.j = a.j + 1 WHERE a.i = 1",
+    "CREATE TABLE e ( m INT NOT NULL AUTO_INCREMENT, n CHAR(10), PRIMARY KEY (m) )",
+  };
+
+  // The previous storage was a plain map per node, which `reference` stands for.
+  private static void assertFields(
+      SqlContext ctx, int nodeId, Map<FieldKey<?>, Object> reference) {
+    final LabeledTreeFields<SqlKind> fields = ctx.fieldsOf(nodeId);
+    assertEquals(reference, fields);
+    assertEquals(reference.size(), fields.size());
+    assertEquals(reference.keySet(), fields.keySet());
+    assertEquals(reference.entrySet(), fields.entrySet());
+
+    int count = 0;
+    for (Map.Entry<FieldKey<?>, Object> entry : fields.entrySet()) {
+      assertSame(reference.get(entry.getKey()), entry.getValue());
+      ++count;
+    }
+    assertEquals(reference.size(), count);
+
+    for (Map.Entry<FieldKey<?>, Object> entry : reference.entrySet()) {
+      final FieldKey<?> key = entry.getKey();
+      assertTrue(fields.containsKey(key));
+      assertSame(entry.getValue(), fields.get(key));
+      assertSame(entry.getValue(), ctx.fieldOf(nodeId, key));
+      assertSame(entry.getValue(), key.getFrom(fields));
+    }
+  }
+
+  @Test
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  void testSameAsMap() {
+    final Set<Class<?>> keyKinds = new HashSet<>();
+    final Set<Class<?>> valueKinds = new HashSet<>();
+
+    for (String sql : SQLS) {
+      final SqlContext ctx = parseSql(sql).context();
+      for (int nodeId = 1; nodeId <= ctx.maxNodeId(); ++nodeId) {
+        if (!ctx.isPresent(nodeId)) continue;
+
+        final Map<FieldKey<?>, Object> reference = new HashMap<>(ctx.fieldsOf(nodeId));
+        assertFields(ctx, nodeId, reference);
+        final int id = nodeId;
+        assertThrows(
+            UnsupportedOperationException.class,
+            () -> ctx.fieldsOf(id).put(SqlNodeFields.TableName_Table, "t"));
+
+        final List<Map.Entry<FieldKey<?>, Object>> entries = new ArrayList<>(reference.entrySet());
+        for (Map.Entry<FieldKey<?>, Object> entry : entries) {
+          final FieldKey key = entry.getKey();
+          final Object value = entry.getValue();
+          if (value == null) continue;
+          keyKinds.add(key.getClass());
+          valueKinds.add(value instanceof Enum ? Enum.class : value.getClass());
+
+          if (value instanceof SqlNode) {
+            // Detaching a child leaves the field with a null value.
+            final int childId = ((SqlNode) value).nodeId();
+            assertEquals(nodeId, ctx.parentOf(childId));
+            ctx.detachNode(childId);
+            assertEquals(NO_SUCH_NODE, ctx.parentOf(childId));
+            reference.put(key, null);
+
+          } else if (value instanceof SqlNodes) {
+            final SqlNodes children = (SqlNodes) value;
+            if (children.isEmpty()) continue;
+            final int size = children.size();
+            ctx.detachNode(children.get(0).nodeId());
+            assertEquals(size - 1, ((SqlNodes) ctx.fieldOf(nodeId, key)).size());
+
+          } else {
+            assertSame(value, ctx.setFieldOf(nodeId, key, value));
+            // The kinds decide which of the other fields are visible, keep them.
+            if (key == SqlNodeFields.Expr_Kind || key == SqlNodeFields.TableSource_Kind) continue;
+
+            assertSame(value, ctx.unsetFieldOf(nodeId, key));
+            reference.remove(key);
+            assertFields(ctx, nodeId, reference);
+            assertNull(ctx.unsetFieldOf(nodeId, key));
+
+            assertNull(ctx.setFieldOf(nodeId, key, value));
+            reference.put(key, value);
+          }
+          assertFields(ctx, nodeId, reference);
+        }
+      }
+    }
+
+    assertTrue(keyKinds.contains(SqlNodeField.class));
+    assertTrue(keyKinds.contains(ExprField.class));
+    assertTrue(keyKinds.contains(TableSourceField.class));
+    assertTrue(valueKinds.contains(String.class));
+    assertTrue(valueKinds.contains(Boolean.class));
+    assertTrue(valueKinds.contains(Enum.class));
+  }
+}
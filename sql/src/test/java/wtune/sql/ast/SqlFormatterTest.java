@@ -0,0 +1,48 @@
+package wtune.sql.ast;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.Test;
+import wtune.sql.SqlSupport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static wtune.sql.TestHelper.parseSql;
+
+class SqlFormatterTest {
+  // Long enough to make the formatter drain its buffer several times.
+  private static String mkLongSql() {
+    final StringBuilder builder = new StringBuilder("SELECT a.i FROM a WHERE a.i IN (");
+    for (int i = 0; i < 1000; ++i) builder.append(i).append(", ");
+    builder.append("'中文') AND a.j = 'x'");
+    return builder.toString();
+  }
+
+  @Test
+  void testStreaming() {
+    final SqlNode ast = parseSql(mkLongSql());
+    for (boolean oneLine : new boolean[] {true, false}) {
+      final StringBuilder out = new StringBuilder();
+      ast.formatTo(out, oneLine);
+      assertEquals(ast.toString(oneLine), out.toString());
+    }
+  }
+
+  @Test
+  void testDigest() {
+    final SqlNode ast = parseSql(mkLongSql());
+    assertEquals(
+        Hashing.murmur3_128().hashUnencodedChars(ast.toString()), SqlSupport.digestSql(ast));
+  }
+
+  @Test
+  void testEncode() {
+    final SqlNode ast = parseSql(mkLongSql());
+    final ByteBuffer buffer = SqlSupport.encodeSql(ast, ByteBuffer.allocate(1 << 16));
+    final byte[] bytes = Arrays.copyOf(buffer.array(), buffer.position());
+    assertArrayEquals(ast.toString().getBytes(StandardCharsets.UTF_8), bytes);
+  }
+}
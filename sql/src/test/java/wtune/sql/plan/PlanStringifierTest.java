@@ -0,0 +1,58 @@
+package wtune.sql.plan;
+
+import org.junit.jupiter.api.Test;
+import wtune.common.datasource.DbSupport;
+import wtune.sql.SqlSupport;
+import wtune.sql.schema.Schema;
+import wtune.sql.schema.SchemaSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class PlanStringifierTest {
+  private static final Schema SCHEMA =
+      SchemaSupport.parseSchema(
+          DbSupport.MySQL, "Create Table t (i int NOT NULL, j int); Create Table s (m int, n int);"
+              + " Create Table r (i int NOT NULL, j int)");
+
+  private static PlanContext planOf(String sql) {
+    return PlanSupport.assemblePlan(SqlSupport.parseSql(DbSupport.MySQL, sql), SCHEMA);
+  }
+
+  private static String canonicalOf(String sql) {
+    final PlanContext plan = planOf(sql);
+    return PlanSupport.stringifyCanonical(plan, plan.root());
+  }
+
+  // The canonical form of the subquery, which is the only one.
+  private static String canonicalOfSubquery(String sql) {
+    final PlanContext plan = planOf(sql);
+    for (int node = 1; node <= plan.maxNodeId(); ++node)
+      if (plan.isPresent(node) && plan.kindOf(node) == PlanKind.Exists)
+        return PlanSupport.stringifyCanonical(plan, plan.childOf(node, 1));
+    throw new IllegalArgumentException("no subquery: " + sql);
+  }
+
+  @Test
+  void testCanonical() {
+    final String s0 = canonicalOf("Select a.i From t As a Inner Join s As b On a.i = b.m");
+    final String s1 = canonicalOf("Select x.i From t As x Inner Join s As y On x.i = y.m");
+    final String s2 = canonicalOf("Select y.i From t As y Inner Join s As x On y.i = x.m");
+    final String s3 = canonicalOf("Select a.i From t As a Inner Join s As b On a.i = b.n");
+    assertEquals(s0, s1);
+    assertEquals(s0, s2);
+    assertNotEquals(s0, s3);
+  }
+
+  @Test
+  void testCanonicalOuterRefs() {
+    final String sql =
+        "Select %2$s.i From %1$s As %2$s Where Exists (Select 1 From s As b Where b.m = %2$s.i)";
+    final String s0 = canonicalOfSubquery(sql.formatted("t", "a"));
+    final String s1 = canonicalOfSubquery(sql.formatted("t", "x"));
+    final String s2 = canonicalOfSubquery(sql.formatted("r", "a"));
+    assertEquals(s0, s1);
+    // The same but for the table of the outer attribute.
+    assertNotEquals(s0, s2);
+  }
+}
@@ -0,0 +1,62 @@
+package wtune.sql.schema;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import wtune.common.datasource.DbSupport;
+
+import java.util.List;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.sql.ast.constants.ConstraintKind.*;
+
+public class SchemaRegistryTest {
+  private static final String DDL =
+      "create table t ("
+          + "i int(10) primary key references b(x),"
+          + "j varchar(512) NOT NULL DEFAULT 'a',"
+          + "k int unsigned AUTO_INCREMENT,"
+          + "e enum('a', 'b'),"
+          + "index (j(100)),"
+          + "unique (j DESC, k) using rtree,"
+          + "constraint fk_cons foreign key fk (k) references b(y)"
+          + ") ENGINE = 'myisam';"
+          + "create table b (x int(10) primary key, y int);";
+
+  @Test
+  @DisplayName("[Stmt.Schema] registry")
+  void test() {
+    final SchemaRegistry registry = SchemaRegistry.mk(null);
+    final Schema parsed = SchemaSupport.parseSchema(DbSupport.MySQL, DDL);
+    final Schema schema = registry.get(DbSupport.MySQL, DDL, emptyList());
+
+    assertSame(schema, registry.get(DbSupport.MySQL, DDL, emptyList()));
+    assertEquals(
+        parsed.toDdl(DbSupport.MySQL, new StringBuilder()).toString(),
+        schema.toDdl(DbSupport.MySQL, new StringBuilder()).toString());
+    assertTrue(schema.table("t").column("k").dataType().unsigned());
+    assertThrows(UnsupportedOperationException.class, () -> schema.patch(emptyList()));
+
+    final Table t = schema.table("t"), b = schema.table("b");
+    final List<Column> jk = List.of(t.column("j"), t.column("k"));
+    assertEquals(1, SchemaSupport.findIC(schema, jk, UNIQUE).size());
+    assertEquals(1, SchemaSupport.findIC(schema, List.of(b.column("x")), UNIQUE).size());
+    assertEquals(1, SchemaSupport.findIC(schema, List.of(t.column("k")), FOREIGN).size());
+
+    final Constraint fk =
+        getOnlyElement(SchemaSupport.findRelatedIC(schema, t.column("i"), FOREIGN));
+    assertSame(b, fk.refTable());
+    assertSame(b.column("x"), fk.refColumns().get(0));
+
+    final SchemaPatch patch =
+        SchemaPatch.build(SchemaPatch.Type.FOREIGN_KEY, "test", "b", List.of("y"), "t.i");
+    final Schema patched = registry.get(DbSupport.MySQL, DDL, List.of(patch));
+    assertNotSame(schema, patched);
+    assertTrue(patched.table("b").column("y").isFlag(Column.Flag.FOREIGN_KEY));
+    assertFalse(schema.table("b").column("y").isFlag(Column.Flag.FOREIGN_KEY));
+    final Column y = patched.table("b").column("y");
+    final Constraint patchedFk = getOnlyElement(SchemaSupport.findRelatedIC(patched, y, FOREIGN));
+    assertSame(patched.table("t"), patchedFk.refTable());
+  }
+}
@@ -15,6 +15,9 @@ public interface StmtProfile {
 
   double p99Improve();
 
+  /** Number of cycles the pair was profiled for. 0 if unknown. */
+  int cycles();
+
   static StmtProfile mk(String appName,
                         int stmtId,
                         String workloadType,
@@ -24,6 +27,30 @@ public interface StmtProfile {
                         long p50OptLatency,
                         long p90OptLatency,
                         long p99OptLatency) {
+    return mk(
+        appName,
+        stmtId,
+        workloadType,
+        p50BaseLatency,
+        p90BaseLatency,
+        p99BaseLatency,
+        p50OptLatency,
+        p90OptLatency,
+        p99OptLatency,
+        0);
+  }
+
+  static StmtProfile mk(
+      String appName,
+      int stmtId,
+      String workloadType,
+      long p50BaseLatency,
+      long p90BaseLatency,
+      long p99BaseLatency,
+      long p50OptLatency,
+      long p90OptLatency,
+      long p99OptLatency,
+      int cycles) {
     return new StmtProfileImpl(
         appName,
         stmtId,
@@ -33,6 +60,7 @@ public interface StmtProfile {
         p99BaseLatency,
         p50OptLatency,
         p90OptLatency,
-        p99OptLatency);
+        p99OptLatency,
+        cycles);
   }
 }
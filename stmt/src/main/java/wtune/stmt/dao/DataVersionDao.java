@@ -0,0 +1,15 @@
+package wtune.stmt.dao;
+
+import wtune.stmt.dao.internal.DbDataVersionDao;
+
+public interface DataVersionDao {
+  /**
+   * A stamp of the contents of the statement, opt-statement and timing tables. It changes
+   * whenever any of their rows is inserted, updated or deleted, by whichever process.
+   */
+  long version();
+
+  static DataVersionDao instance() {
+    return DbDataVersionDao.instance();
+  }
+}
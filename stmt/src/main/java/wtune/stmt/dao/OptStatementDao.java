@@ -8,6 +8,9 @@ import wtune.stmt.support.OptimizerType;
 import java.util.List;
 
 public interface OptStatementDao {
+  /** Whether the table of this optimizer is present. Not every database has all of them. */
+  boolean exists();
+
   Statement findOne(String appName, int stmtId);
 
   List<Statement> findByApp(String appName);
@@ -20,6 +23,12 @@ public interface OptStatementDao {
 
   void updateStmtProfile(StmtProfile stmtProfile);
 
+  /**
+   * Wait until the updates issued so far by the calling thread are written. Updates are applied
+   * asynchronously, a failed one is reported here.
+   */
+  void flush();
+
   static OptStatementDao instance(OptimizerType type) {
     return DbOptStatementDao.instance(type);
   }
@@ -8,6 +8,8 @@ import java.util.List;
 public interface TimingDao {
   List<Timing> findByStmt(String appName, int stmtId);
 
+  List<Timing> findAll();
+
   void save(Timing timing);
 
   void beginBatch();
@@ -4,28 +4,44 @@ import wtune.common.datasource.DbUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
 public abstract class DbDao {
-  private final Map<String, PreparedStatement> caches = new HashMap<>();
-  private Connection connection = null;
+  // DAOs are shared singletons. Statements are bound to the connection of the preparing thread,
+  // thus cached per thread as well.
+  private final ThreadLocal<Map<String, PreparedStatement>> caches =
+      ThreadLocal.withInitial(HashMap::new);
 
   protected Connection connection() {
-    if (connection == null) connection = DbUtils.connection();
-    return connection;
+    return DbUtils.threadConnection();
   }
 
   protected PreparedStatement prepare(String sql) throws SQLException {
-    PreparedStatement ps = caches.get(sql);
-    if (ps != null) return ps;
+    final Map<String, PreparedStatement> cache = caches.get();
+    PreparedStatement ps = cache.get(sql);
+    if (ps != null && !ps.isClosed()) return ps;
 
     final Connection conn = connection();
-    caches.put(sql, ps = conn.prepareStatement(sql));
+    cache.put(sql, ps = conn.prepareStatement(sql));
     return ps;
   }
 
+  protected boolean tableExists(String table) {
+    try {
+      final PreparedStatement ps =
+          prepare("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?");
+      ps.setString(1, table);
+      try (final ResultSet rs = ps.executeQuery()) {
+        return rs.next();
+      }
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
   protected void begin() {
     try {
       final Connection conn = connection();
@@ -44,4 +60,14 @@ public abstract class DbDao {
       throw new RuntimeException(throwables);
     }
   }
+
+  /** Queue a write to be committed together with others. See {@link GroupCommitWriter}. */
+  protected static void submitWrite(String sql, Object... params) {
+    GroupCommitWriter.instance().submit(sql, params);
+  }
+
+  /** Wait until all queued writes are committed. Call before reading what was written. */
+  protected static void flushWrites() {
+    GroupCommitWriter.instance().flush();
+  }
 }
@@ -0,0 +1,94 @@
+package wtune.stmt.dao.internal;
+
+import wtune.stmt.dao.DataVersionDao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A counter in the database, bumped by triggers on every change of the tracked tables. The
+ * triggers are installed on demand, for the tracked tables present at the time.
+ *
+ * <p>The counter alone does not cover tables that are dropped and re-created, thus the stamp also
+ * includes the schema version. Both are persistent, unlike `PRAGMA data_version`, which is only
+ * comparable within one connection.
+ */
+public class DbDataVersionDao extends DbDao implements DataVersionDao {
+  private static final DbDataVersionDao INSTANCE = new DbDataVersionDao();
+
+  private DbDataVersionDao() {}
+
+  public static DataVersionDao instance() {
+    return INSTANCE;
+  }
+
+  private static final List<String> TRACKED_TABLES =
+      List.of(
+          "wtune_stmts",
+          "wtune_opt_stmts",
+          "wtune_opt_stmts_wtune",
+          "wtune_opt_stmts_spes",
+          "wtune_opt_stmts_wtune_spes",
+          "wtune_opt_stmts_calcite",
+          "wtune_stmt_perf");
+  private static final String[] TRIGGERING_OPS = {"INSERT", "UPDATE", "DELETE"};
+
+  private static final String CREATE_COUNTER =
+      "CREATE TABLE IF NOT EXISTS wtune_data_version (version INTEGER NOT NULL)";
+  private static final String INIT_COUNTER =
+      "INSERT INTO wtune_data_version SELECT 0"
+          + " WHERE NOT EXISTS (SELECT 1 FROM wtune_data_version)";
+  private static final String CREATE_TRIGGER =
+      "CREATE TRIGGER IF NOT EXISTS %s AFTER %s ON %s"
+          + " BEGIN UPDATE wtune_data_version SET version = version + 1; END";
+  private static final String FIND_TRIGGER =
+      "SELECT 1 FROM sqlite_master WHERE type = 'trigger' AND name = ?";
+  private static final String FIND_COUNTER = "SELECT version FROM wtune_data_version";
+  private static final String FIND_SCHEMA_VERSION = "PRAGMA schema_version";
+
+  @Override
+  public long version() {
+    flushWrites();
+    try {
+      installTriggers();
+      return (queryLong(FIND_SCHEMA_VERSION) << 32) ^ queryLong(FIND_COUNTER);
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private void installTriggers() throws SQLException {
+    boolean installed = false;
+    if (!tableExists("wtune_data_version")) {
+      submitWrite(CREATE_COUNTER);
+      submitWrite(INIT_COUNTER);
+      installed = true;
+    }
+    for (String table : TRACKED_TABLES) {
+      if (!tableExists(table)) continue;
+      for (String op : TRIGGERING_OPS) {
+        final String trigger = "wtune_data_version_%s_%s".formatted(table, op.toLowerCase());
+        if (triggerExists(trigger)) continue;
+        submitWrite(CREATE_TRIGGER.formatted(trigger, op, table));
+        installed = true;
+      }
+    }
+    if (installed) flushWrites();
+  }
+
+  private boolean triggerExists(String trigger) throws SQLException {
+    final PreparedStatement ps = prepare(FIND_TRIGGER);
+    ps.setString(1, trigger);
+    try (final ResultSet rs = ps.executeQuery()) {
+      return rs.next();
+    }
+  }
+
+  private long queryLong(String sql) throws SQLException {
+    try (final ResultSet rs = prepare(sql).executeQuery()) {
+      return rs.next() ? rs.getLong(1) : 0;
+    }
+  }
+}
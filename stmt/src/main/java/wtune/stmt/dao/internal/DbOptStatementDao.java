@@ -8,7 +8,6 @@ import wtune.stmt.support.OptimizerType;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +27,17 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
           "opt_app_name AS %s, opt_stmt_id AS %s, opt_raw_sql AS %s, trace AS %s ",
           KEY_APP_NAME, KEY_STMT_ID, KEY_RAW_SQL, KEY_TRACE);
 
+  // Cycles are kept aside, so that the positional inserts into the opt-stmts tables are intact.
+  private static final String CREATE_CYCLES =
+      "CREATE TABLE IF NOT EXISTS wtune_opt_stmts_cycles ("
+          + "cycles_app_name TEXT, cycles_stmt_id INT, cycles_optimizer TEXT,"
+          + " cycles_workload TEXT, cycles_count INT,"
+          + " PRIMARY KEY (cycles_app_name, cycles_stmt_id, cycles_optimizer, cycles_workload))";
+  private static final String UPSERT_CYCLES =
+      "INSERT OR REPLACE INTO wtune_opt_stmts_cycles "
+          + "(cycles_app_name, cycles_stmt_id, cycles_optimizer, cycles_workload, cycles_count) "
+          + "VALUES (?, ?, ?, ?, ?)";
+
   private String OPT_STMTS_TABLE;
   private String FIND_ALL;
   private String FIND_ONE;
@@ -38,6 +48,9 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
   private String ADD_OPT_STMTS;
   private String UPDATE_PROFILE_TEMPLATE;
 
+  // Instances are made per call of `instance`, thus the flag is shared by all of them.
+  private static volatile boolean cyclesTableCreated;
+
   private OptimizerType optimizerType;
 
   private DbOptStatementDao(OptimizerType kind) {
@@ -72,8 +85,15 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
     return stmt;
   }
 
+  @Override
+  public boolean exists() {
+    flushWrites();
+    return tableExists(OPT_STMTS_TABLE);
+  }
+
   @Override
   public Statement findOne(String appName, int stmtId) {
+    flushWrites();
     try {
       final PreparedStatement ps = prepare(FIND_ONE);
       ps.setString(1, appName);
@@ -91,6 +111,7 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
 
   @Override
   public List<Statement> findByApp(String appName) {
+    flushWrites();
     try {
       final PreparedStatement ps = prepare(FIND_BY_APP);
       ps.setString(1, appName);
@@ -109,6 +130,7 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
 
   @Override
   public List<Statement> findAll() {
+    flushWrites();
     try {
       final PreparedStatement ps = prepare(FIND_ALL);
       final ResultSet rs = ps.executeQuery();
@@ -125,47 +147,38 @@ public class DbOptStatementDao extends DbDao implements OptStatementDao {
 
   @Override
   public void cleanOptStmts() {
-    try {
-      final PreparedStatement clean0 = prepare(CLEAN_OPT_STMT);
-      clean0.executeUpdate();
-    } catch (SQLException throwables) {
-      throw new RuntimeException(throwables);
-    }
+    submitWrite(CLEAN_OPT_STMT);
   }
 
   @Override
   public void updateOptStmts(Statement stmt) {
-    try {
-      final PreparedStatement insert0 = prepare(ADD_OPT_STMTS);
-
-      insert0.setString(1, stmt.appName());
-      insert0.setInt(2, stmt.stmtId());
-
-      insert0.setString(3, stmt.rawSql());
-      if (stmt.stackTrace() == null)
-        insert0.setNull(4, Types.VARCHAR);
-      else
-        insert0.setString(4, stmt.stackTrace());
-
-      insert0.executeUpdate();
-    } catch (SQLException throwables) {
-      throw new RuntimeException(throwables);
-    }
+    submitWrite(ADD_OPT_STMTS, stmt.appName(), stmt.stmtId(), stmt.rawSql(), stmt.stackTrace());
   }
 
   @Override
   public void updateStmtProfile(StmtProfile stmtProfile) {
-    try {
-      final String updateQuery = UPDATE_PROFILE_TEMPLATE.formatted(stmtProfile.workloadType());
-      final PreparedStatement update0 = prepare(updateQuery);
-
-      update0.setDouble(1, stmtProfile.p50Improve());
-      update0.setString(2, stmtProfile.appName());
-      update0.setInt(3, stmtProfile.stmtId());
-
-      update0.executeUpdate();
-    } catch (SQLException throwables) {
-      throw new RuntimeException(throwables);
+    final String updateQuery = UPDATE_PROFILE_TEMPLATE.formatted(stmtProfile.workloadType());
+    submitWrite(
+        updateQuery, stmtProfile.p50Improve(), stmtProfile.appName(), stmtProfile.stmtId());
+
+    if (stmtProfile.cycles() > 0) {
+      if (!cyclesTableCreated) {
+        submitWrite(CREATE_CYCLES);
+        flushWrites(); // throws if the table cannot be created, so that a later call retries
+        cyclesTableCreated = true;
+      }
+      submitWrite(
+          UPSERT_CYCLES,
+          stmtProfile.appName(),
+          stmtProfile.stmtId(),
+          optimizerType.name(),
+          stmtProfile.workloadType(),
+          stmtProfile.cycles());
     }
   }
+
+  @Override
+  public void flush() {
+    flushWrites();
+  }
 }
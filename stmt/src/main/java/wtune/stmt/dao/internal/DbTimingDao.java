@@ -33,23 +33,23 @@ public class DbTimingDao extends DbDao implements TimingDao {
               + "perf_p90 AS %s, perf_P99 AS %s",
           KEY_APP_NAME, KEY_STMT_ID, KEY_TAG, KEY_P50, KEY_P90, KEY_P99);
 
+  private static final String FIND_ALL = "SELECT " + SELECT_ITEMS + " FROM wtune_stmt_perf";
+
   private static final String FIND_BY_STMT =
       "SELECT "
           + SELECT_ITEMS
           + " FROM wtune_stmt_perf"
           + " WHERE perf_app_name = ? AND perf_stmt_id = ?";
 
-  private static final String FIND_ONE =
-      "SELECT "
-          + SELECT_ITEMS
-          + " FROM wtune_stmt_perf"
-          + " WHERE perf_app_name = ? AND perf_stmt_id = ? AND perf_tag = ?";
-
+  // Archive the current record, if it is going to be changed by the following upsert.
   private static final String INSERT_HISTORY =
       "INSERT INTO wtune_stmt_perf_history "
           + "(history_app_name, history_stmt_id, history_tag,"
           + " history_p50, history_p90, history_p99) "
-          + "VALUES (?, ?, ?, ?, ?, ?)";
+          + "SELECT perf_app_name, perf_stmt_id, perf_tag, perf_p50, perf_p90, perf_p99"
+          + " FROM wtune_stmt_perf"
+          + " WHERE perf_app_name = ? AND perf_stmt_id = ? AND perf_tag = ?"
+          + " AND (perf_p50 <> ? OR perf_p90 <> ? OR perf_p99 <> ?)";
 
   private static final String UPSERT_PERF =
       "INSERT OR REPLACE INTO wtune_stmt_perf "
@@ -69,6 +69,7 @@ public class DbTimingDao extends DbDao implements TimingDao {
 
   @Override
   public List<Timing> findByStmt(String appName, int stmtId) {
+    flushWrites();
     try {
       final PreparedStatement ps = prepare(FIND_BY_STMT);
       ps.setString(1, appName);
@@ -86,51 +87,39 @@ public class DbTimingDao extends DbDao implements TimingDao {
   }
 
   @Override
-  public void beginBatch() {
-    begin();
+  public List<Timing> findAll() {
+    flushWrites();
+    try {
+      final ResultSet rs = prepare(FIND_ALL).executeQuery();
+
+      final List<Timing> timings = new ArrayList<>(4096);
+      while (rs.next()) timings.add(inflate(rs));
+
+      return timings;
+
+    } catch (SQLException throwables) {
+      throw new RuntimeException(throwables);
+    }
   }
 
+  @Override
+  public void beginBatch() {}
+
   @Override
   public void endBatch() {
-    commit();
+    flushWrites();
   }
 
   @Override
   public void save(Timing timing) {
-
-    try {
-      final PreparedStatement find = prepare(FIND_ONE);
-      final PreparedStatement insertHistory = prepare(INSERT_HISTORY);
-      final PreparedStatement upsert = prepare(UPSERT_PERF);
-
-      find.setString(1, timing.app());
-      find.setInt(2, timing.stmtId());
-      find.setString(3, timing.tag());
-
-      final ResultSet rs = find.executeQuery();
-      if (rs.next()) {
-        final Timing existing = inflate(rs);
-        if (existing.p50() == timing.p50()
-            && existing.p90() == timing.p90()
-            && existing.p99() == timing.p99()) return;
-
-        fillParamAndExec(existing, insertHistory);
-      }
-
-      fillParamAndExec(timing, upsert);
-
-    } catch (SQLException throwables) {
-      throwables.printStackTrace();
-    }
+    // Both are applied by the group-commit writer, in order, without reading back.
+    submitWrite(INSERT_HISTORY, paramsOf(timing));
+    submitWrite(UPSERT_PERF, paramsOf(timing));
   }
 
-  private void fillParamAndExec(Timing timing, PreparedStatement upsert) throws SQLException {
-    upsert.setString(1, timing.app());
-    upsert.setInt(2, timing.stmtId());
-    upsert.setString(3, timing.tag());
-    upsert.setLong(4, timing.p50());
-    upsert.setLong(5, timing.p90());
-    upsert.setLong(6, timing.p99());
-    upsert.executeUpdate();
+  private static Object[] paramsOf(Timing timing) {
+    return new Object[] {
+      timing.app(), timing.stmtId(), timing.tag(), timing.p50(), timing.p90(), timing.p99()
+    };
   }
 }
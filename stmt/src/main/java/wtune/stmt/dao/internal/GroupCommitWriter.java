@@ -0,0 +1,183 @@
+package wtune.stmt.dao.internal;
+
+import wtune.common.datasource.DbUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+/**
+ * Applies writes to wtune.db on a background thread, in submission order.
+ *
+ * <p>Writes queued up while the previous transaction is being committed are applied together in
+ * a single transaction, and consecutive writes of the same SQL are sent as one JDBC batch. This
+ * amortizes the per-commit cost of SQLite across callers, and lets callers on any thread write
+ * without waiting for the disk. Pending writes are flushed when the JVM exits normally, but a
+ * failure by then can only be logged. Thus, callers should {@link #flush()} once they are done.
+ *
+ * <p>The pending batch is executed before the next SQL is prepared, thus a write may refer to a
+ * table created by an earlier write of the same transaction (SQLite fails to prepare otherwise).
+ *
+ * <p>A failed transaction is rolled back and its failure is reported by the next {@link #flush()}
+ * of each thread that submitted a write to it. Should the writer itself die (e.g., wtune.db cannot
+ * be opened), pending writes are dropped, and every later {@link #submit} or {@link #flush()}
+ * fails at once instead of waiting for it.
+ */
+class GroupCommitWriter implements Runnable {
+  private static final System.Logger LOG = System.getLogger("wtune.db");
+  private static final int MAX_WRITES_PER_COMMIT = 1024;
+  private static GroupCommitWriter INSTANCE;
+
+  private final Supplier<Connection> connector;
+  private final BlockingQueue<Write> queue;
+  private long numSubmitted; // guarded by this
+  private long numCommitted; // guarded by this
+  private final Map<Thread, Throwable> failures; // guarded by this
+  private Throwable death; // guarded by this
+
+  GroupCommitWriter(Supplier<Connection> connector) {
+    this.connector = connector;
+    this.queue = new LinkedBlockingQueue<>();
+    this.failures = new WeakHashMap<>();
+  }
+
+  static synchronized GroupCommitWriter instance() {
+    if (INSTANCE == null) {
+      INSTANCE = new GroupCommitWriter(DbUtils::open).start("wtune-db-writer");
+      Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::flushOnExit));
+    }
+    return INSTANCE;
+  }
+
+  GroupCommitWriter start(String threadName) {
+    final Thread thread = new Thread(this, threadName);
+    thread.setDaemon(true);
+    thread.start();
+    return this;
+  }
+
+  synchronized void submit(String sql, Object... params) {
+    checkAlive();
+    queue.add(new Write(sql, params, ++numSubmitted, Thread.currentThread()));
+  }
+
+  /** Wait until the writes submitted so far are committed. */
+  synchronized void flush() {
+    final long target = numSubmitted;
+    try {
+      while (numCommitted < target && death == null) wait();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    }
+
+    final Throwable failure = failures.remove(Thread.currentThread());
+    if (failure != null) throw new RuntimeException("failed to write wtune.db", failure);
+    checkAlive();
+  }
+
+  private void flushOnExit() {
+    try {
+      flush();
+    } catch (RuntimeException ex) {
+      // Nobody to throw to upon exit.
+      LOG.log(ERROR, "pending writes to wtune.db are lost", ex);
+    }
+  }
+
+  private void checkAlive() {
+    if (death != null) throw new IllegalStateException("wtune.db writer is dead", death);
+  }
+
+  @Override
+  public void run() {
+    final Map<String, PreparedStatement> stmts = new HashMap<>();
+    final List<Write> writes = new ArrayList<>(MAX_WRITES_PER_COMMIT);
+    try (final Connection conn = connector.get()) {
+      while (true) {
+        try {
+          writes.add(queue.take());
+        } catch (InterruptedException ex) {
+          throw new IllegalStateException("interrupted", ex);
+        }
+        queue.drainTo(writes, MAX_WRITES_PER_COMMIT - 1);
+
+        Throwable error = null;
+        try {
+          commit(conn, stmts, writes);
+        } catch (Throwable ex) {
+          error = ex;
+          try {
+            for (PreparedStatement ps : stmts.values()) ps.clearBatch();
+            conn.rollback();
+            conn.setAutoCommit(true);
+          } catch (SQLException ignored) {
+          }
+        }
+
+        synchronized (this) {
+          numCommitted = writes.get(writes.size() - 1).seq;
+          if (error != null)
+            for (Write write : writes) failures.putIfAbsent(write.submitter, error);
+          notifyAll();
+        }
+        writes.clear();
+        if (error instanceof Error) throw (Error) error;
+      }
+
+    } catch (Throwable ex) {
+      synchronized (this) {
+        death = ex;
+        numCommitted = numSubmitted;
+        queue.clear();
+        notifyAll();
+      }
+    }
+  }
+
+  private static void commit(
+      Connection conn, Map<String, PreparedStatement> stmts, List<Write> writes)
+      throws SQLException {
+    conn.setAutoCommit(false);
+
+    PreparedStatement pending = null;
+    for (Write write : writes) {
+      PreparedStatement ps = stmts.get(write.sql);
+      // Flush before preparing, a write may refer to a table created by the pending one.
+      if (pending != null && pending != ps) pending.executeBatch();
+      if (ps == null) stmts.put(write.sql, ps = conn.prepareStatement(write.sql));
+
+      for (int i = 0; i < write.params.length; ++i) ps.setObject(i + 1, write.params[i]);
+      ps.addBatch();
+      pending = ps;
+    }
+    if (pending != null) pending.executeBatch();
+
+    conn.commit();
+    conn.setAutoCommit(true);
+  }
+
+  private static class Write {
+    private final String sql;
+    private final Object[] params;
+    private final long seq;
+    private final Thread submitter;
+
+    private Write(String sql, Object[] params, long seq, Thread submitter) {
+      this.sql = sql;
+      this.params = params;
+      this.seq = seq;
+      this.submitter = submitter;
+    }
+  }
+}
@@ -2,12 +2,14 @@ package wtune.stmt.internal;
 
 import wtune.common.datasource.DbSupport;
 import wtune.sql.schema.Schema;
-import wtune.sql.schema.SchemaSupport;
+import wtune.sql.schema.SchemaPatch;
+import wtune.sql.schema.SchemaRegistry;
 import wtune.stmt.App;
 import wtune.stmt.dao.SchemaPatchDao;
 import wtune.common.io.FileUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static java.util.function.Function.identity;
@@ -15,15 +17,20 @@ import static wtune.common.datasource.DbSupport.MySQL;
 import static wtune.common.datasource.DbSupport.PostgreSQL;
 
 public class AppImpl implements App {
+  // Compiled schemas are also cached on disk, see SchemaRegistry.
+  private static final SchemaRegistry SCHEMAS =
+      SchemaRegistry.mk(FileUtils.dataFile("schema_cache"));
+
   private final String name;
-  private String dbType;
+  private volatile String dbType;
+  // Keyed by "<tag>" for schemas set explicitly, "<tag>+" and "<tag>-" for (un)patched ones.
   private final Map<String, Schema> schemas;
   private Properties connProps;
 
   private AppImpl(String name, String dbType) {
     this.name = name;
     this.dbType = dbType;
-    this.schemas = new HashMap<>();
+    this.schemas = new ConcurrentHashMap<>();
   }
 
   public static App of(String name) {
@@ -43,14 +50,17 @@ public class AppImpl implements App {
   }
 
   public Schema schema(String tag, boolean patched) {
-    final Schema existing = schemas.get(tag);
-    if (existing == null) {
-      final Schema schema = readSchema(tag);
-      if (schema == null) return null;
-      if (patched) schema.patch(SchemaPatchDao.instance().findByApp(name));
-      schemas.put(tag, schema);
-      return schema;
-    } else return existing;
+    final Schema explicit = schemas.get(tag);
+    if (explicit != null) return explicit;
+
+    final String key = tag + (patched ? '+' : '-');
+    final Schema existing = schemas.get(key);
+    if (existing != null) return existing;
+
+    final Schema schema = readSchema(tag, patched);
+    if (schema == null) return null; // absent ones are not cached, in case the file shows up later
+    final Schema racing = schemas.putIfAbsent(key, schema);
+    return racing != null ? racing : schema;
   }
 
   @Override
@@ -78,10 +88,12 @@ public class AppImpl implements App {
     this.connProps = props;
   }
 
-  private Schema readSchema(String tag) {
+  private Schema readSchema(String tag, boolean patched) {
     final String str = FileUtils.readFile("schemas", name + "." + tag + ".schema.sql");
     if (str == null) return null;
-    return SchemaSupport.parseSchema(dbType, str);
+    final List<SchemaPatch> patches =
+        patched ? SchemaPatchDao.instance().findByApp(name) : Collections.emptyList();
+    return SCHEMAS.get(dbType, str, patches);
   }
 
   private static final String[] APP_NAMES = {
@@ -113,5 +125,5 @@ public class AppImpl implements App {
   private static final Map<String, App> KNOWN_APPS =
       Arrays.stream(APP_NAMES)
           .map(it -> new AppImpl(it, (PG_APPS.contains(it) ? PostgreSQL : MySQL)))
-          .collect(Collectors.toMap(App::name, identity()));
+          .collect(Collectors.toConcurrentMap(App::name, identity()));
 }
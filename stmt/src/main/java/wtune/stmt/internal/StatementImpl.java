@@ -113,6 +113,16 @@ public class StatementImpl implements Statement {
     this.optimizerType = type;
   }
 
+  /** Pre-populate the rewritten version, sparing the lookup in rewritten(). Null means absent. */
+  public void setRewrittenVersion(OptimizerType type, Statement rewritten) {
+    rewrittenVersions.put(type, rewritten);
+  }
+
+  /** Pre-populate the original version, sparing the lookup in original(). */
+  public void setOriginal(Statement original) {
+    this.original = original;
+  }
+
   @Override
   public String toString() {
     return "%s-%d".formatted(appName(), stmtId());
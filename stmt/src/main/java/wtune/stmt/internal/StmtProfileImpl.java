@@ -15,6 +15,8 @@ public class StmtProfileImpl implements StmtProfile {
   private final long p90OptLatency;
   private final long p99OptLatency;
 
+  private final int cycles;
+
   public StmtProfileImpl(
       String appName,
       int stmtId,
@@ -24,7 +26,8 @@ public class StmtProfileImpl implements StmtProfile {
       long p99BaseLatency,
       long p50OptLatency,
       long p90OptLatency,
-      long p99OptLatency) {
+      long p99OptLatency,
+      int cycles) {
     this.appName = appName;
     this.stmtId = stmtId;
     this.workloadType = workloadType;
@@ -34,6 +37,7 @@ public class StmtProfileImpl implements StmtProfile {
     this.p50OptLatency = p50OptLatency;
     this.p90OptLatency = p90OptLatency;
     this.p99OptLatency = p99OptLatency;
+    this.cycles = cycles;
   }
 
   @Override
@@ -65,4 +69,9 @@ public class StmtProfileImpl implements StmtProfile {
   public double p99Improve() {
     return 1.0 - ((double) p99OptLatency) / ((double) p99BaseLatency);
   }
+
+  @Override
+  public int cycles() {
+    return cycles;
+  }
 }
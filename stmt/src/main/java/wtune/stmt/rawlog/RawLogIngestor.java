@@ -0,0 +1,423 @@
+package wtune.stmt.rawlog;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parallel counterpart of {@link RawLog} that collapses the logged statements by shape.
+ *
+ * <p>Both logs are memory-mapped and split into line-aligned chunks that are scanned in parallel.
+ * Each statement is fingerprinted by its token stream with literals replaced by "?" (and lists of
+ * them collapsed into one), without being decoded or parsed. For each shape, only the statement
+ * with the smallest id is kept, together with the number of occurrences and the ids of a few
+ * samples. The trace log is scanned afterwards, and only the stack traces of the samples are
+ * materialized.
+ *
+ * <p>Unlike {@link RawLog}, which pairs the two logs in lockstep, stack traces are matched to
+ * statements by id. The result does not depend on the parallelism nor the chunk size.
+ */
+public class RawLogIngestor {
+  private static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+  private final int parallelism;
+  private int chunkSize;
+  private byte[][] prefixes;
+
+  private RawLogIngestor(int parallelism) {
+    if (parallelism <= 0) throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+    this.parallelism = parallelism;
+    this.chunkSize = DEFAULT_CHUNK_SIZE;
+    this.prefixes = new byte[0][];
+  }
+
+  public static RawLogIngestor mk() {
+    return mk(Runtime.getRuntime().availableProcessors());
+  }
+
+  public static RawLogIngestor mk(int parallelism) {
+    return new RawLogIngestor(parallelism);
+  }
+
+  public RawLogIngestor setChunkSize(int chunkSize) {
+    if (chunkSize <= 0) throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /** Only keep the statements whose SQL starts with one of the prefixes (case-sensitive). */
+  public RawLogIngestor setPrefixes(String... prefixes) {
+    this.prefixes = new byte[prefixes.length][];
+    for (int i = 0; i < prefixes.length; i++)
+      this.prefixes[i] = prefixes[i].getBytes(StandardCharsets.UTF_8);
+    return this;
+  }
+
+  /**
+   * Returns one shape per distinct statement fingerprint, ordered by the id of the representative.
+   * `traceLog` may be null or absent, in which case no stack trace is attached.
+   */
+  public List<RawShape> ingest(Path stmtLog, Path traceLog) throws IOException {
+    final ExecutorService threadPool = Executors.newFixedThreadPool(parallelism, daemonThread());
+    try {
+      final List<RawShape> shapes = scanStmts(threadPool, stmtLog);
+      if (traceLog != null && Files.exists(traceLog)) scanTraces(threadPool, traceLog, shapes);
+      return shapes;
+    } finally {
+      threadPool.shutdownNow();
+    }
+  }
+
+  private List<RawShape> scanStmts(ExecutorService threadPool, Path path) throws IOException {
+    final List<Future<Map<Long, RawShape>>> futures = new ArrayList<>();
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      for (long[] chunk : split(channel, false)) {
+        final MappedByteBuffer buf = map(channel, chunk);
+        futures.add(threadPool.submit(() -> new StmtScanner(buf).scan()));
+      }
+    }
+
+    // Merge in chunk order into the first one.
+    Map<Long, RawShape> merged = null;
+    for (Future<Map<Long, RawShape>> future : futures) {
+      final Map<Long, RawShape> shapes = await(future);
+      if (merged == null) merged = shapes;
+      else
+        for (RawShape shape : shapes.values())
+          merged.merge(shape.fingerprint(), shape, RawLogIngestor::mergeShapes);
+    }
+    if (merged == null) return new ArrayList<>();
+
+    final List<RawShape> shapes = new ArrayList<>(merged.values());
+    shapes.sort(Comparator.comparingInt(it -> it.representative().id()));
+    return shapes;
+  }
+
+  private void scanTraces(ExecutorService threadPool, Path path, List<RawShape> shapes)
+      throws IOException {
+    final Map<Integer, RawShape> samples = new HashMap<>(shapes.size() * RawShape.MAX_SAMPLES * 2);
+    for (RawShape shape : shapes) for (int id : shape.sampleIds()) samples.put(id, shape);
+
+    final List<Future<List<StackTrace>>> futures = new ArrayList<>();
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      for (long[] chunk : split(channel, true)) {
+        final MappedByteBuffer buf = map(channel, chunk);
+        futures.add(threadPool.submit(() -> new TraceScanner(buf, samples.keySet()).scan()));
+      }
+    }
+
+    final Set<Integer> attached = new HashSet<>();
+    for (Future<List<StackTrace>> future : futures)
+      for (StackTrace trace : await(future))
+        if (attached.add(trace.id())) samples.get(trace.id()).addStackTrace(trace);
+
+    for (RawShape shape : shapes) shape.sortStackTraces();
+  }
+
+  private static RawShape mergeShapes(RawShape x, RawShape y) {
+    x.merge(y);
+    return x;
+  }
+
+  //// Chunking
+
+  /**
+   * Splits the file into [start, end) ranges of roughly `chunkSize` bytes, each begins at a line
+   * start. For the trace log, a range further begins at a line that is not a frame, so that a
+   * stack trace never spans two chunks.
+   */
+  private List<long[]> split(FileChannel channel, boolean isTraceLog) throws IOException {
+    final long size = channel.size();
+    final List<long[]> chunks = new ArrayList<>();
+    final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+    long start = 0;
+    while (start < size) {
+      final long end = nextBoundary(channel, buf, Math.min(start + chunkSize, size), isTraceLog);
+      chunks.add(new long[] {start, end});
+      start = end;
+    }
+    return chunks;
+  }
+
+  private static long nextBoundary(
+      FileChannel channel, ByteBuffer buf, long pos, boolean isTraceLog) throws IOException {
+    final long size = channel.size();
+    boolean afterNewLine = false;
+
+    while (pos < size) {
+      buf.clear();
+      final int n = channel.read(buf, pos);
+      if (n <= 0) break;
+
+      for (int i = 0; i < n; ++i) {
+        final byte b = buf.get(i);
+        if (afterNewLine && (!isTraceLog || b != ' ')) return pos + i;
+        afterNewLine = b == '\n';
+      }
+      pos += n;
+    }
+
+    return size;
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long[] chunk) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+  }
+
+  private static ThreadFactory daemonThread() {
+    return runnable -> {
+      final Thread thread = new Thread(runnable, "rawlog-ingestor");
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  //// Scanning
+
+  private abstract static class LineScanner {
+    protected final ByteBuffer buf;
+    protected byte[] line;
+    protected int length;
+
+    private LineScanner(ByteBuffer buf) {
+      this.buf = buf;
+      this.line = new byte[4096];
+    }
+
+    /** Copies the next line, without the line terminator, into `line`. */
+    protected boolean nextLine() {
+      if (!buf.hasRemaining()) return false;
+
+      length = 0;
+      while (buf.hasRemaining()) {
+        final byte b = buf.get();
+        if (b == '\n') break;
+        if (length == line.length) line = Arrays.copyOf(line, line.length << 1);
+        line[length++] = b;
+      }
+      if (length > 0 && line[length - 1] == '\r') --length;
+      return true;
+    }
+
+    /** Parses the decimal integer at the beginning of the line. Returns -1 if absent. */
+    protected int parseId(int end) {
+      if (end <= 0 || end > 10) return -1;
+      long id = 0;
+      for (int i = 0; i < end; ++i) {
+        final byte b = line[i];
+        if (b < '0' || b > '9') return -1;
+        id = id * 10 + (b - '0');
+      }
+      return id > Integer.MAX_VALUE ? -1 : (int) id;
+    }
+
+    protected String decode(int offset) {
+      return new String(line, offset, length - offset, StandardCharsets.UTF_8);
+    }
+  }
+
+  private class StmtScanner extends LineScanner {
+    private final ShapeTokenizer tokenizer = new ShapeTokenizer();
+    private final Map<Long, RawShape> shapes = new HashMap<>(4096);
+
+    private StmtScanner(ByteBuffer buf) {
+      super(buf);
+    }
+
+    private Map<Long, RawShape> scan() {
+      while (nextLine()) {
+        // Format: "<id> <sql>"
+        int sep = 0;
+        while (sep < length && line[sep] != ' ') ++sep;
+        final int id = parseId(sep);
+        if (id < 0 || sep == length) continue;
+
+        final int sqlStart = sep + 1;
+        if (!isAccepted(sqlStart)) continue;
+
+        final long fingerprint = tokenizer.fingerprint(line, sqlStart, length);
+        final RawShape shape = shapes.get(fingerprint);
+        if (shape == null) {
+          shapes.put(fingerprint, new RawShape(fingerprint, new RawStmt(id, decode(sqlStart))));
+        } else if (id < shape.representative().id()) {
+          shape.add(new RawStmt(id, decode(sqlStart)));
+        } else {
+          shape.add(id);
+        }
+      }
+      return shapes;
+    }
+
+    private boolean isAccepted(int offset) {
+      if (prefixes.length == 0) return true;
+      for (byte[] prefix : prefixes) {
+        if (prefix.length > length - offset) continue;
+        if (Arrays.equals(line, offset, offset + prefix.length, prefix, 0, prefix.length))
+          return true;
+      }
+      return false;
+    }
+  }
+
+  private static class TraceScanner extends LineScanner {
+    private final Set<Integer> wanted;
+    private final List<StackTrace> traces;
+
+    private TraceScanner(ByteBuffer buf, Set<Integer> wanted) {
+      super(buf);
+      this.wanted = wanted;
+      this.traces = new ArrayList<>();
+    }
+
+    private List<StackTrace> scan() {
+      // Same format as RawTraceLog: an id line followed by frame lines indented by two spaces.
+      StackTrace current = null;
+      while (nextLine()) {
+        if (length >= 2 && line[0] == ' ' && line[1] == ' ') {
+          if (current == null) continue;
+          if (length == 5 && line[2] == '.' && line[3] == '.' && line[4] == '.') current.segment();
+          else current.addFrame(decode(0));
+
+        } else {
+          final int id = parseId(length);
+          current = id >= 0 && wanted.contains(id) ? new StackTrace(id) : null;
+          if (current != null) traces.add(current);
+        }
+      }
+      return traces;
+    }
+  }
+
+  /**
+   * Computes the fingerprint of a SQL in bytes. The token stream is normalized as follows: tokens
+   * are separated by a single space, words outside quotes are lower-cased, string and numeric
+   * literals become "?", and "?, ?, ..." becomes "?". Non-ASCII bytes are treated as part of words.
+   */
+  static class ShapeTokenizer {
+    private byte[] out = new byte[1024];
+    private int length;
+
+    long fingerprint(byte[] sql, int start, int end) {
+      length = 0;
+
+      int i = start;
+      while (i < end) {
+        final byte b = sql[i];
+        if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+          ++i;
+        } else if (b == '\'') {
+          i = skipQuoted(sql, i, end, b);
+          emitParam();
+        } else if (b == '"' || b == '`') {
+          final int j = skipQuoted(sql, i, end, b);
+          emit(sql, i, j, false);
+          i = j;
+        } else if (isDigit(b) || (b == '.' && i + 1 < end && isDigit(sql[i + 1]))) {
+          i = skipNumber(sql, i, end);
+          emitParam();
+        } else if (isWordStart(b)) {
+          int j = i + 1;
+          while (j < end && isWordPart(sql[j])) ++j;
+          emit(sql, i, j, true);
+          i = j;
+        } else if (b == '?') {
+          ++i;
+          emitParam();
+        } else {
+          emit(sql, i, i + 1, false);
+          ++i;
+        }
+      }
+
+      return Hashing.murmur3_128().hashBytes(out, 0, length).asLong();
+    }
+
+    private void emitParam() {
+      // "? , ?" => "?"
+      if (length >= 3
+          && out[length - 1] == ','
+          && out[length - 2] == ' '
+          && out[length - 3] == '?'
+          && (length == 3 || out[length - 4] == ' ')) {
+        length -= 2;
+        return;
+      }
+      ensureCapacity(length + 2);
+      if (length > 0) out[length++] = ' ';
+      out[length++] = '?';
+    }
+
+    private void emit(byte[] bytes, int start, int end, boolean lowerCase) {
+      ensureCapacity(length + 1 + end - start);
+      if (length > 0) out[length++] = ' ';
+      for (int i = start; i < end; ++i) {
+        final byte b = bytes[i];
+        out[length++] = lowerCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (out.length < capacity) out = Arrays.copyOf(out, Math.max(capacity, out.length << 1));
+    }
+
+    private static int skipQuoted(byte[] sql, int i, int end, byte quote) {
+      int j = i + 1;
+      while (j < end) {
+        final byte b = sql[j];
+        if (b == '\\') j += 2;
+        else if (b != quote) ++j;
+        else if (j + 1 < end && sql[j + 1] == quote) j += 2; // escaped by doubling
+        else return j + 1;
+      }
+      return end;
+    }
+
+    private static int skipNumber(byte[] sql, int i, int end) {
+      int j = i;
+      while (j < end) {
+        final byte b = sql[j];
+        if (isWordPart(b) || b == '.') ++j;
+        else if ((b == '+' || b == '-') && (sql[j - 1] == 'e' || sql[j - 1] == 'E')) ++j;
+        else break;
+      }
+      return j;
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWordStart(byte b) {
+      return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == '$' || b < 0;
+    }
+
+    private static boolean isWordPart(byte b) {
+      return isWordStart(b) || isDigit(b);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package wtune.stmt.rawlog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A group of logged statements that are identical modulo literals. See {@link RawLogIngestor}.
+ *
+ * <p>The statement with the smallest id represents the group. The ids of up to {@link
+ * #MAX_SAMPLES} statements (the smallest ones) are kept as samples, with their stack traces.
+ */
+public class RawShape {
+  public static final int MAX_SAMPLES = 3;
+
+  private final long fingerprint;
+  private RawStmt representative;
+  private long count;
+  private int[] sampleIds;
+  private final List<StackTrace> stackTraces;
+
+  RawShape(long fingerprint, RawStmt stmt) {
+    this.fingerprint = fingerprint;
+    this.representative = stmt;
+    this.count = 1;
+    this.sampleIds = new int[] {stmt.id()};
+    this.stackTraces = new ArrayList<>(MAX_SAMPLES);
+  }
+
+  public long fingerprint() {
+    return fingerprint;
+  }
+
+  public RawStmt representative() {
+    return representative;
+  }
+
+  /** Number of logged statements of this shape. */
+  public long count() {
+    return count;
+  }
+
+  public int[] sampleIds() {
+    return sampleIds;
+  }
+
+  /** Stack traces of the samples that have one, ordered by statement id. */
+  public List<StackTrace> stackTraces() {
+    return stackTraces;
+  }
+
+  void add(int id) {
+    ++count;
+    addSample(id);
+  }
+
+  void add(RawStmt stmt) {
+    add(stmt.id());
+    if (stmt.id() < representative.id()) representative = stmt;
+  }
+
+  void merge(RawShape other) {
+    count += other.count;
+    if (other.representative.id() < representative.id()) representative = other.representative;
+    for (int id : other.sampleIds) addSample(id);
+  }
+
+  void addStackTrace(StackTrace trace) {
+    stackTraces.add(trace);
+  }
+
+  void sortStackTraces() {
+    stackTraces.sort((x, y) -> Integer.compare(x.id(), y.id()));
+    // Only its own trace. The representative may have none while other samples do.
+    for (StackTrace trace : stackTraces)
+      if (trace.id() == representative.id()) {
+        representative.setStackTrace(trace);
+        break;
+      }
+  }
+
+  private void addSample(int id) {
+    // sampleIds is sorted and short, keep the MAX_SAMPLES smallest ones.
+    int pos = Arrays.binarySearch(sampleIds, id);
+    if (pos >= 0) return;
+    pos = -pos - 1;
+    if (pos >= MAX_SAMPLES) return;
+
+    final int newLength = Math.min(sampleIds.length + 1, MAX_SAMPLES);
+    final int[] newIds = new int[newLength];
+    System.arraycopy(sampleIds, 0, newIds, 0, pos);
+    newIds[pos] = id;
+    System.arraycopy(sampleIds, pos, newIds, pos + 1, newLength - pos - 1);
+    sampleIds = newIds;
+  }
+
+  @Override
+  public String toString() {
+    return count + " " + representative;
+  }
+}
@@ -0,0 +1,71 @@
+package wtune.stmt.support;
+
+import wtune.sql.ast.SqlNode;
+import wtune.stmt.Statement;
+import wtune.stmt.dao.StatementDao;
+import wtune.stmt.rawlog.RawStmt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static wtune.sql.support.action.NormalizationSupport.installParamMarkers;
+
+/**
+ * Saves logged statements of an app, skipping those identical (modulo parameters) to a statement
+ * already saved, either before or by this saver. Shared by {@link Workflow#loadSQL} and {@link
+ * Workflow#ingestSQL}.
+ */
+class DistinctStmtSaver implements AutoCloseable {
+  private static final int BATCH_SIZE = 100;
+
+  private final String appName;
+  private final StatementDao dao;
+  private final Map<String, Integer> ids;
+  private int nextId, numAdded;
+
+  DistinctStmtSaver(String appName) {
+    this.appName = appName;
+    this.dao = StatementDao.instance();
+
+    final List<Statement> existing = dao.findByApp(appName);
+    this.ids = new HashMap<>(existing.size() << 1);
+    for (Statement stmt : existing) {
+      final SqlNode ast = stmt.ast();
+      installParamMarkers(ast);
+      ids.putIfAbsent(ast.toString(), stmt.stmtId());
+      nextId = Math.max(nextId, stmt.stmtId());
+    }
+
+    dao.beginBatch();
+  }
+
+  /** Returns the id of the saved statement, or of the existing one identical to it. */
+  int save(RawStmt log) {
+    final String stackTrace = log.stackTrace() == null ? "" : log.stackTrace().toString();
+    final Statement stmt = Statement.mk(appName, log.sql(), stackTrace);
+    final SqlNode ast = stmt.ast();
+    ast.context().setSchema(stmt.app().schema("base"));
+    installParamMarkers(ast);
+
+    final Integer existingId = ids.putIfAbsent(ast.toString(), nextId + 1);
+    if (existingId != null) return existingId;
+
+    stmt.setStmtId(++nextId);
+    dao.save(stmt);
+    if (++numAdded % BATCH_SIZE == 0) {
+      dao.endBatch();
+      dao.beginBatch();
+    }
+    return nextId;
+  }
+
+  int numAdded() {
+    return numAdded;
+  }
+
+  @Override
+  public void close() {
+    dao.endBatch();
+  }
+}
@@ -0,0 +1,75 @@
+package wtune.stmt.support;
+
+import wtune.sql.ast.SqlNode;
+import wtune.sql.plan.PlanContext;
+import wtune.stmt.Statement;
+
+/** A statement parsed, normalized and planned by {@link StmtPipeline}. */
+public class PreparedStmt {
+  public enum Status {
+    OK,
+    PARSE_FAILED,
+    UNSUPPORTED,
+    PLAN_FAILED,
+    EXCEPTION
+  }
+
+  private final Statement stmt;
+  private final SqlNode ast;
+  private final PlanContext plan;
+  private final Status status;
+  private final String error;
+  private final Throwable exception;
+
+  PreparedStmt(
+      Statement stmt,
+      SqlNode ast,
+      PlanContext plan,
+      Status status,
+      String error,
+      Throwable exception) {
+    this.stmt = stmt;
+    this.ast = ast;
+    this.plan = plan;
+    this.status = status;
+    this.error = error;
+    this.exception = exception;
+  }
+
+  public Statement stmt() {
+    return stmt;
+  }
+
+  /** The normalized AST. Null if the statement cannot be parsed. */
+  public SqlNode ast() {
+    return ast;
+  }
+
+  /** The plan. Null unless the status is OK. */
+  public PlanContext plan() {
+    return plan;
+  }
+
+  public Status status() {
+    return status;
+  }
+
+  public boolean isOk() {
+    return status == Status.OK;
+  }
+
+  /** Human-readable reason of the failure, or null if the status is OK. */
+  public String error() {
+    return error;
+  }
+
+  /** The exception thrown during preparation, if the status is EXCEPTION. */
+  public Throwable exception() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return stmt.toString() + (isOk() ? "" : " [" + status + "] " + error);
+  }
+}
@@ -0,0 +1,148 @@
+package wtune.stmt.support;
+
+import wtune.sql.SqlSupport;
+import wtune.sql.ast.SqlNode;
+import wtune.sql.plan.PlanContext;
+import wtune.sql.plan.PlanSupport;
+import wtune.sql.schema.Schema;
+import wtune.stmt.Statement;
+import wtune.stmt.support.PreparedStmt.Status;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import static wtune.sql.support.action.NormalizationSupport.normalizeAst;
+
+/**
+ * Parses, normalizes and plans statements in parallel.
+ *
+ * <p>Statements are prepared by a pool of worker threads, while the results are handed to the
+ * consumer on the calling thread, in the order of the input. At most {@code window} statements
+ * are in-flight at any moment, so the memory taken by ASTs and plans is bounded regardless of the
+ * corpus size. To keep it so, a statement is parsed afresh into its {@link PreparedStmt}, rather
+ * than through {@link Statement#ast()}, which caches the AST on the statement for as long as the
+ * statement lives (typically, the whole run). The statements themselves are still loaded up-front
+ * by the caller (e.g., via {@link Statement#findAll()}), but they only hold the raw SQL.
+ *
+ * <p>Only {@code RewriteQuery} prepares statements this way. The other runners either look up the
+ * statements one by one ({@code GatherAccessedTables}, {@code UpdateOptStmts}) or prepare them
+ * alongside the profiling set-up ({@code Profile}).
+ *
+ * <p>Schemas and db types are resolved on the calling thread before a statement is dispatched,
+ * since {@link wtune.stmt.App} caches them without synchronization.
+ */
+public class StmtPipeline {
+  private final int parallelism;
+  private int window;
+  private String schemaTag;
+  private boolean patchSchema;
+
+  private StmtPipeline(int parallelism) {
+    this.parallelism = parallelism;
+    this.window = parallelism << 2;
+    this.schemaTag = "base";
+    this.patchSchema = true;
+  }
+
+  public static StmtPipeline mk() {
+    return mk(Runtime.getRuntime().availableProcessors());
+  }
+
+  public static StmtPipeline mk(int parallelism) {
+    if (parallelism <= 0) throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+    return new StmtPipeline(parallelism);
+  }
+
+  /** Max number of statements being prepared or waiting to be consumed. */
+  public StmtPipeline setWindow(int window) {
+    if (window <= 0) throw new IllegalArgumentException("invalid window: " + window);
+    this.window = window;
+    return this;
+  }
+
+  public StmtPipeline setSchema(String tag, boolean patched) {
+    this.schemaTag = tag;
+    this.patchSchema = patched;
+    return this;
+  }
+
+  public void forEach(Iterable<Statement> stmts, Consumer<? super PreparedStmt> consumer) {
+    if (parallelism == 1) {
+      for (Statement stmt : stmts) consumer.accept(prepare(stmt));
+      return;
+    }
+
+    final ExecutorService threadPool = Executors.newFixedThreadPool(parallelism, daemonThread());
+    final Deque<Future<PreparedStmt>> inFlight = new ArrayDeque<>(window);
+    try {
+      for (Statement stmt : stmts) {
+        final String dbType = stmt.app().dbType();
+        final Schema schema = schemaOf(stmt);
+        inFlight.addLast(threadPool.submit(() -> prepare(stmt, dbType, schema)));
+        if (inFlight.size() >= window) consumer.accept(await(inFlight.removeFirst()));
+      }
+      while (!inFlight.isEmpty()) consumer.accept(await(inFlight.removeFirst()));
+
+    } finally {
+      threadPool.shutdownNow();
+    }
+  }
+
+  public PreparedStmt prepare(Statement stmt) {
+    return prepare(stmt, stmt.app().dbType(), schemaOf(stmt));
+  }
+
+  private Schema schemaOf(Statement stmt) {
+    return stmt.app().schema(schemaTag, patchSchema);
+  }
+
+  private static PreparedStmt prepare(Statement stmt, String dbType, Schema schema) {
+    SqlNode ast = null;
+    try {
+      ast = SqlSupport.parseSql(dbType, stmt.rawSql());
+      if (ast == null) return failed(stmt, null, Status.PARSE_FAILED, "fail to parse sql");
+      if (!PlanSupport.isSupported(ast))
+        return failed(stmt, ast, Status.UNSUPPORTED, "unsupported SQL feature");
+
+      ast.context().setSchema(schema);
+      normalizeAst(ast);
+
+      final PlanContext plan = PlanSupport.assemblePlan(ast, schema);
+      if (plan == null) return failed(stmt, ast, Status.PLAN_FAILED, PlanSupport.getLastError());
+
+      return new PreparedStmt(stmt, ast, plan, Status.OK, null, null);
+
+    } catch (Throwable ex) {
+      return new PreparedStmt(stmt, ast, null, Status.EXCEPTION, ex.toString(), ex);
+    }
+  }
+
+  private static PreparedStmt failed(Statement stmt, SqlNode ast, Status status, String error) {
+    return new PreparedStmt(stmt, ast, null, status, error, null);
+  }
+
+  private static PreparedStmt await(Future<PreparedStmt> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+  }
+
+  private static ThreadFactory daemonThread() {
+    return runnable -> {
+      final Thread thread = new Thread(runnable, "stmt-pipeline");
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,272 @@
+package wtune.stmt.support;
+
+import wtune.common.io.FileUtils;
+import wtune.stmt.Statement;
+import wtune.stmt.dao.DataVersionDao;
+import wtune.stmt.dao.OptStatementDao;
+import wtune.stmt.dao.StatementDao;
+import wtune.stmt.dao.TimingDao;
+import wtune.stmt.internal.StatementImpl;
+import wtune.stmt.support.internal.TimingImpl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Read-only in-memory snapshot of the statements, their rewritten versions and their timings.
+ *
+ * <p>Everything is bulk-loaded at once and indexed by (app, stmtId), so that lookups, including
+ * {@link Statement#original()} and {@link Statement#rewritten(OptimizerType)} of the snapshot's
+ * statements, never hit the database. The snapshot is cached as a binary file next to wtune.db,
+ * stamped with the {@link DataVersionDao data version} of the database, and is reloaded from the
+ * database whenever the statements or the timings change.
+ */
+public class StmtSnapshot {
+  private static final long MAGIC = 0x57544e534e415032L; // "WTNSNAP2"
+  private static final int ORIGINAL = -1;
+
+  private final List<Statement> originals;
+  private final EnumMap<OptimizerType, List<Statement>> rewritten;
+  private final Index<Statement> originalIndex;
+  private final EnumMap<OptimizerType, Index<Statement>> rewrittenIndex;
+  private final Index<List<Timing>> timingIndex;
+  private final List<Timing> timings;
+
+  private StmtSnapshot() {
+    this.originals = new ArrayList<>(8192);
+    this.rewritten = new EnumMap<>(OptimizerType.class);
+    this.originalIndex = new Index<>();
+    this.rewrittenIndex = new EnumMap<>(OptimizerType.class);
+    this.timingIndex = new Index<>();
+    this.timings = new ArrayList<>(8192);
+  }
+
+  /** Load the snapshot from the cache file if it is up-to-date, otherwise from the database. */
+  public static StmtSnapshot load() {
+    final Path dbPath = FileUtils.dbPath();
+    final Path cachePath = dbPath.resolveSibling(dbPath.getFileName() + ".snapshot");
+    final long version = DataVersionDao.instance().version();
+
+    if (Files.exists(cachePath)) {
+      try {
+        final StmtSnapshot snapshot = readFrom(cachePath, version);
+        if (snapshot != null) return snapshot;
+      } catch (IOException | RuntimeException ex) {
+        // A corrupted cache is simply rebuilt.
+      }
+    }
+
+    final StmtSnapshot snapshot = loadFromDb();
+    try {
+      snapshot.writeTo(cachePath, version);
+    } catch (IOException ignored) {
+      // The cache is only an optimization.
+    }
+    return snapshot;
+  }
+
+  public static StmtSnapshot loadFromDb() {
+    final StmtSnapshot snapshot = new StmtSnapshot();
+    for (Statement stmt : StatementDao.instance().findAll()) snapshot.addOriginal(stmt);
+    for (OptimizerType type : OptimizerType.values())
+      for (Statement stmt : findAllRewritten(type)) snapshot.addRewritten(type, stmt);
+    for (Timing timing : TimingDao.instance().findAll()) snapshot.addTiming(timing);
+    snapshot.link();
+    return snapshot;
+  }
+
+  public List<Statement> originals() {
+    return unmodifiableList(originals);
+  }
+
+  public List<Statement> rewritten(OptimizerType type) {
+    return unmodifiableList(rewritten.getOrDefault(type, emptyList()));
+  }
+
+  public Statement original(String appName, int stmtId) {
+    return originalIndex.get(appName, stmtId);
+  }
+
+  public Statement rewritten(String appName, int stmtId, OptimizerType type) {
+    final Index<Statement> index = rewrittenIndex.get(type);
+    return index == null ? null : index.get(appName, stmtId);
+  }
+
+  public List<Timing> timingsOf(String appName, int stmtId) {
+    final List<Timing> timings = timingIndex.get(appName, stmtId);
+    return timings == null ? emptyList() : unmodifiableList(timings);
+  }
+
+  private static List<Statement> findAllRewritten(OptimizerType type) {
+    final OptStatementDao dao = OptStatementDao.instance(type);
+    return dao.exists() ? dao.findAll() : emptyList();
+  }
+
+  private void addOriginal(Statement stmt) {
+    originals.add(stmt);
+    originalIndex.put(stmt.appName(), stmt.stmtId(), stmt);
+  }
+
+  private void addRewritten(OptimizerType type, Statement stmt) {
+    rewritten.computeIfAbsent(type, ignored -> new ArrayList<>(4096)).add(stmt);
+    rewrittenIndex
+        .computeIfAbsent(type, ignored -> new Index<>())
+        .put(stmt.appName(), stmt.stmtId(), stmt);
+  }
+
+  private void addTiming(Timing timing) {
+    timings.add(timing);
+    List<Timing> list = timingIndex.get(timing.app(), timing.stmtId());
+    if (list == null) timingIndex.put(timing.app(), timing.stmtId(), list = new ArrayList<>(4));
+    list.add(timing);
+  }
+
+  private void link() {
+    for (Statement original : originals) {
+      if (!(original instanceof StatementImpl)) continue;
+      for (OptimizerType type : OptimizerType.values()) {
+        final Statement opt = rewritten(original.appName(), original.stmtId(), type);
+        ((StatementImpl) original).setRewrittenVersion(type, opt);
+        if (opt instanceof StatementImpl) ((StatementImpl) opt).setOriginal(original);
+      }
+    }
+  }
+
+  //// Binary cache
+  // Layout: magic, version, #statement-sections, sections, #timings, timings.
+  // A statement section is the table (-1 for original, otherwise the ordinal of the optimizer),
+  // followed by #statements and (app, stmtId, rawSql, stackTrace) for each.
+  // A timing is (app, stmtId, tag, p50, p90, p99).
+  // A string is the length of its UTF-8 bytes (-1 for null), followed by the bytes.
+
+  private void writeTo(Path path, long version) throws IOException {
+    final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+    try (final DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+      out.writeLong(MAGIC);
+      out.writeLong(version);
+
+      out.writeInt(rewritten.size() + 1);
+      writeSection(out, ORIGINAL, originals);
+      for (var pair : rewritten.entrySet())
+        writeSection(out, pair.getKey().ordinal(), pair.getValue());
+
+      out.writeInt(timings.size());
+      for (Timing timing : timings) {
+        writeString(out, timing.app());
+        out.writeInt(timing.stmtId());
+        writeString(out, timing.tag());
+        out.writeLong(timing.p50());
+        out.writeLong(timing.p90());
+        out.writeLong(timing.p99());
+      }
+    }
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeSection(DataOutputStream out, int table, List<Statement> stmts)
+      throws IOException {
+    out.writeInt(table);
+    out.writeInt(stmts.size());
+    for (Statement stmt : stmts) {
+      writeString(out, stmt.appName());
+      out.writeInt(stmt.stmtId());
+      writeString(out, stmt.rawSql());
+      writeString(out, stmt.stackTrace());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static StmtSnapshot readFrom(Path path, long version) throws IOException {
+    final MappedByteBuffer buf;
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buf.getLong() != MAGIC || buf.getLong() != version) return null;
+
+    final StmtSnapshot snapshot = new StmtSnapshot();
+    final Map<String, String> appNames = new HashMap<>(); // share the string instances
+
+    final OptimizerType[] types = OptimizerType.values();
+    for (int i = 0, numSections = buf.getInt(); i < numSections; ++i) {
+      final int table = buf.getInt();
+      final OptimizerType type = table == ORIGINAL ? null : types[table];
+
+      for (int j = 0, numStmts = buf.getInt(); j < numStmts; ++j) {
+        final String app = appNames.computeIfAbsent(readString(buf), it -> it);
+        final int stmtId = buf.getInt();
+        final Statement stmt = Statement.mk(app, stmtId, readString(buf), readString(buf));
+        if (type == null) snapshot.addOriginal(stmt);
+        else {
+          stmt.setRewritten(true);
+          stmt.setOptimizerType(type);
+          snapshot.addRewritten(type, stmt);
+        }
+      }
+    }
+
+    for (int i = 0, numTimings = buf.getInt(); i < numTimings; ++i) {
+      final String app = appNames.computeIfAbsent(readString(buf), it -> it);
+      final int stmtId = buf.getInt();
+      final String tag = readString(buf);
+      final long p50 = buf.getLong(), p90 = buf.getLong(), p99 = buf.getLong();
+      snapshot.addTiming(new TimingImpl(app, stmtId, tag, p50, p90, p99));
+    }
+
+    snapshot.link();
+    return snapshot;
+  }
+
+  private static String readString(ByteBuffer buf) {
+    final int length = buf.getInt();
+    if (length < 0) return null;
+    final byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Maps (app, stmtId) to a value. Statement ids are dense in each app, thus backed by arrays. */
+  private static class Index<T> {
+    private final Map<String, Object[]> byApp = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private T get(String appName, int stmtId) {
+      final Object[] values = byApp.get(appName);
+      if (values == null || stmtId < 0 || stmtId >= values.length) return null;
+      return (T) values[stmtId];
+    }
+
+    private void put(String appName, int stmtId, T value) {
+      if (stmtId < 0) throw new IllegalArgumentException("invalid stmtId: " + stmtId);
+      Object[] values = byApp.get(appName);
+      if (values == null || values.length <= stmtId) {
+        final int capacity = Math.max(stmtId + 1, values == null ? 64 : values.length << 1);
+        values = values == null ? new Object[capacity] : Arrays.copyOf(values, capacity);
+        byApp.put(appName, values);
+      }
+      values[stmtId] = value;
+    }
+  }
+}
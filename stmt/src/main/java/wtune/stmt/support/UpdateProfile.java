@@ -17,4 +17,9 @@ public interface UpdateProfile {
   static void updateProfile(StmtProfile stmtProfile, OptimizerType type) {
     OptStatementDao.instance(type).updateStmtProfile(stmtProfile);
   }
+
+  /** Wait until the updates so far are written. Throws if any of them failed. */
+  static void flushProfile(OptimizerType type) {
+    OptStatementDao.instance(type).flush();
+  }
 }
@@ -13,6 +13,11 @@ public interface UpdateStmts {
     OptStatementDao.instance(type).updateOptStmts(stmt);
   }
 
+  /** Wait until the updates so far are written. Throws if any of them failed. */
+  static void flushOptStmts(OptimizerType type) {
+    OptStatementDao.instance(type).flush();
+  }
+
   static void cleanCalciteOptStmts() {
     CalciteOptStatementDao.instance().cleanOptStmts();
   }
@@ -1,6 +1,5 @@
 package wtune.stmt.support;
 
-import wtune.sql.ast.SqlContext;
 import wtune.sql.ast.SqlNode;
 import wtune.sql.schema.Column;
 import wtune.sql.schema.Column.Flag;
@@ -11,20 +10,23 @@ import wtune.sql.schema.Table;
 import wtune.stmt.App;
 import wtune.stmt.Statement;
 import wtune.stmt.dao.SchemaPatchDao;
-import wtune.stmt.dao.StatementDao;
 import wtune.stmt.dao.TimingDao;
 import wtune.stmt.rawlog.RawLog;
+import wtune.stmt.rawlog.RawLogIngestor;
+import wtune.stmt.rawlog.RawShape;
 import wtune.stmt.rawlog.RawStmt;
 import wtune.common.io.FileUtils;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Stream;
 
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.joining;
 import static wtune.sql.schema.SchemaPatch.Type.FOREIGN_KEY;
-import static wtune.sql.support.action.NormalizationSupport.installParamMarkers;
 
 public interface Workflow {
   static void inferForeignKeys(String appName) {
@@ -73,62 +75,65 @@ public interface Workflow {
 
   static void loadTiming(String appName, String tag) {
     final Stream<String> records = FileUtils.readLines("timing", appName + "." + tag + ".timing");
-    Timing.fromLines(appName, tag, records).forEach(TimingDao.instance()::save);
+    final TimingDao dao = TimingDao.instance();
+    dao.beginBatch();
+    Timing.fromLines(appName, tag, records).forEach(dao::save);
+    dao.endBatch();
   }
 
   static void loadSQL(String appName, Path logPath, Path tracePath, int rangeStart, int rangeEnd)
       throws IOException {
-    final RawLog logs = RawLog.open(appName, logPath, tracePath).skip(rangeStart);
     final int total = rangeEnd - rangeStart;
+    int count = 0;
+
+    try (final RawLog logs = RawLog.open(appName, logPath, tracePath).skip(rangeStart);
+        final DistinctStmtSaver saver = new DistinctStmtSaver(appName)) {
+      for (RawStmt log : logs) {
+        ++count;
+        if (count > total) break;
+        if (count % 1000 == 0) System.out.println("~ " + count);
+
+        final String sql = log.sql();
+        if (!sql.startsWith("select") && !sql.startsWith("SELECT")) continue;
+        saver.save(log);
+      }
 
-    final StatementDao dao = StatementDao.instance();
-    final List<Statement> existing = dao.findByApp(appName);
-
-    final Set<String> keys = new HashSet<>();
-    for (Statement stmt : existing) {
-      final SqlNode ast = stmt.ast();
-      installParamMarkers(ast);
-      keys.add(ast.toString());
+      System.out.println(saver.numAdded() + " statements added to " + appName);
     }
+  }
 
-    int nextId = maxId(existing);
-    int count = 0, added = 0;
-
-    dao.beginBatch();
-
-    for (RawStmt log : logs) {
-      ++count;
-      if (count > total) break;
-      if (count % 1000 == 0) System.out.println("~ " + count);
-
-      final String sql = log.sql();
-      if (!sql.startsWith("select") && !sql.startsWith("SELECT")) continue;
-
-      final String stackTrace = log.stackTrace() == null ? "" : log.stackTrace().toString();
-      final Statement stmt = Statement.mk(appName, sql, stackTrace);
-      final SqlContext ctx = stmt.ast().context();
-      ctx.setSchema(stmt.app().schema("base"));
-      installParamMarkers(stmt.ast());
-      final String key = stmt.ast().toString();
-
-      if (keys.add(key)) {
-        stmt.setStmtId(++nextId);
-        dao.save(stmt);
-        ++added;
-        if (added % 100 == 0) {
-          dao.endBatch();
-          dao.beginBatch();
-        }
+  /**
+   * Like {@link #loadSQL}, but reads the whole log with {@link RawLogIngestor}, so that only one
+   * statement per shape is parsed and saved.
+   *
+   * <p>The shapes are recorded in "shapes/&lt;app&gt;.shapes" under the data dir, a line per shape:
+   * the id of the statement it is saved as (several shapes may be saved as one statement), the
+   * number of its occurrences in the log, and the log ids of its samples.
+   */
+  static void ingestSQL(String appName, Path logPath, Path tracePath, int parallelism)
+      throws IOException {
+    logPath = logPath != null ? logPath : FileUtils.dataFile("logs", appName, "stmts.log");
+    tracePath = tracePath != null ? tracePath : FileUtils.dataFile("logs", appName, "traces.log");
+    final List<RawShape> shapes =
+        RawLogIngestor.mk(parallelism).setPrefixes("select", "SELECT").ingest(logPath, tracePath);
+
+    final Path shapesFile = FileUtils.dataFile("shapes", appName + ".shapes");
+    Files.createDirectories(shapesFile.getParent());
+
+    long total = 0;
+    try (final DistinctStmtSaver saver = new DistinctStmtSaver(appName);
+        final PrintWriter out = new PrintWriter(Files.newBufferedWriter(shapesFile))) {
+      for (RawShape shape : shapes) {
+        total += shape.count();
+        final int stmtId = saver.save(shape.representative());
+        final String samples =
+            Arrays.stream(shape.sampleIds()).mapToObj(String::valueOf).collect(joining(","));
+        out.printf("%d\t%d\t%s\n", stmtId, shape.count(), samples);
       }
-    }
 
-    dao.endBatch();
-    logs.close();
-
-    System.out.println(added + " statements added to " + appName);
-  }
-
-  private static int maxId(List<Statement> stmts) {
-    return stmts.stream().mapToInt(Statement::stmtId).max().orElse(0);
+      System.out.printf(
+          "%d statements of %d shapes (%d added) to %s\n",
+          total, shapes.size(), saver.numAdded(), appName);
+    }
   }
 }
@@ -0,0 +1,97 @@
+package wtune.stmt.dao.internal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class GroupCommitWriterTest {
+  private static Supplier<Connection> connector(Path db) {
+    return () -> {
+      try {
+        return DriverManager.getConnection("jdbc:sqlite:" + db);
+      } catch (SQLException ex) {
+        throw new RuntimeException(ex);
+      }
+    };
+  }
+
+  private static int count(Path db) throws SQLException {
+    try (final Connection conn = connector(db).get();
+        final Statement stmt = conn.createStatement();
+        final ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  void testFailedWrite(@TempDir Path dir) throws Exception {
+    final Path db = dir.resolve("test.db");
+    final GroupCommitWriter writer = new GroupCommitWriter(connector(db)).start("test-writer");
+    writer.submit("CREATE TABLE t (x INTEGER)");
+    writer.submit("INSERT INTO t VALUES (?)", 1);
+    writer.flush();
+
+    writer.submit("INSERT INTO no_such_table VALUES (?)", 2);
+    assertThrows(RuntimeException.class, writer::flush);
+
+    // The failure is reported once, and the writer goes on.
+    writer.submit("INSERT INTO t VALUES (?)", 3);
+    writer.flush();
+    assertEquals(2, count(db));
+  }
+
+  @Test
+  void testFailureReportedToSubmitter(@TempDir Path dir) throws Exception {
+    final GroupCommitWriter writer =
+        new GroupCommitWriter(connector(dir.resolve("test.db"))).start("test-writer");
+
+    final Throwable[] reported = new Throwable[1];
+    final Thread other =
+        new Thread(
+            () -> {
+              writer.submit("INSERT INTO no_such_table VALUES (?)", 1);
+              try {
+                writer.flush();
+              } catch (RuntimeException ex) {
+                reported[0] = ex;
+              }
+            });
+    other.start();
+    other.join();
+
+    assertNotNull(reported[0]);
+    assertDoesNotThrow(writer::flush);
+  }
+
+  @Test
+  void testDeadWriter() {
+    final GroupCommitWriter writer =
+        new GroupCommitWriter(
+                () -> {
+                  throw new RuntimeException("cannot open");
+                })
+            .start("test-writer");
+
+    // Either rejected at once, or reported by the flush. Never hangs.
+    assertThrows(
+        IllegalStateException.class,
+        () -> {
+          writer.submit("CREATE TABLE t (x INTEGER)");
+          writer.flush();
+        });
+    assertThrows(IllegalStateException.class, () -> writer.submit("CREATE TABLE t (x INTEGER)"));
+    assertThrows(IllegalStateException.class, writer::flush);
+  }
+}
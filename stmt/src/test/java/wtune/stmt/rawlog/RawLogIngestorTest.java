@@ -0,0 +1,122 @@
+package wtune.stmt.rawlog;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wtune.stmt.rawlog.RawLogIngestor.ShapeTokenizer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("fast")
+class RawLogIngestorTest {
+  private static long fingerprint(String sql) {
+    final byte[] bytes = sql.getBytes(StandardCharsets.UTF_8);
+    return new ShapeTokenizer().fingerprint(bytes, 0, bytes.length);
+  }
+
+  @Test
+  void testTokenizer() {
+    final long fp = fingerprint("SELECT a.x FROM t AS a WHERE a.y = 1 AND a.z = 'abc'");
+    assertEquals(fp, fingerprint("select  a.x\tfrom t as a\nwhere a.y = 20 and a.z = 'it''s'"));
+    assertEquals(fp, fingerprint("SELECT a.x FROM t AS a WHERE a.y = ? AND a.z = ?"));
+    assertEquals(fp, fingerprint("SELECT a.x FROM t AS a WHERE a.y = 1.5e-3 AND a.z = 'a\\'b'"));
+    assertNotEquals(fp, fingerprint("SELECT a.x FROM t AS a WHERE a.y = 1 OR a.z = 'abc'"));
+    assertNotEquals(fp, fingerprint("SELECT a.x FROM t AS a WHERE a.w = 1 AND a.z = 'abc'"));
+    assertNotEquals(fp, fingerprint("SELECT a.x1 FROM t AS a WHERE a.y = 1 AND a.z = 'abc'"));
+
+    // Lists of literals are collapsed.
+    final long in = fingerprint("SELECT x FROM t WHERE y IN (1)");
+    assertEquals(in, fingerprint("SELECT x FROM t WHERE y IN (1, 2, 3)"));
+    assertEquals(in, fingerprint("SELECT x FROM t WHERE y IN ('a','b')"));
+    assertEquals(in, fingerprint("SELECT x FROM t WHERE y IN (?, ?)"));
+    assertNotEquals(in, fingerprint("SELECT x FROM t WHERE y IN (z, 2)"));
+
+    // Quoted identifiers are kept as is.
+    assertNotEquals(fingerprint("SELECT `A` FROM t"), fingerprint("SELECT `a` FROM t"));
+    assertEquals(fingerprint("SELECT `a` FROM T"), fingerprint("SELECT `a` FROM t"));
+  }
+
+  @Test
+  void testChunking(@TempDir Path dir) throws Exception {
+    final Path stmtLog = dir.resolve("stmts.log");
+    final Path traceLog = dir.resolve("traces.log");
+    final StringBuilder stmts = new StringBuilder(), traces = new StringBuilder();
+    for (int i = 1; i <= 300; ++i) {
+      stmts.append(i).append(' ');
+      switch (i % 4) {
+        case 0 -> stmts.append("SELECT a FROM t WHERE b = ").append(i);
+        case 1 -> stmts.append("SELECT a FROM t WHERE c IN (").append(i).append(", 1)");
+        case 2 -> stmts.append("select a from s where b = '").append(i).append("'\r");
+        default -> stmts.append("UPDATE t SET a = ").append(i);
+      }
+      stmts.append('\n');
+
+      if (i % 3 == 0 || i == 4) continue;
+      traces.append(i).append('\n');
+      traces.append("  a.b.C.m(C.java:").append(i).append(")\n");
+      if (i % 2 == 0) traces.append("  ...\n");
+      traces.append("  a.b.D.n(D.java:1)\n");
+    }
+    Files.writeString(stmtLog, stmts);
+    Files.writeString(traceLog, traces);
+
+    final List<RawShape> expected =
+        RawLogIngestor.mk(1).setPrefixes("select", "SELECT").ingest(stmtLog, traceLog);
+    assertEquals(3, expected.size());
+    assertEquals(List.of(1, 2, 4), map(expected, it -> it.representative().id()));
+    assertEquals(List.of(75L, 75L, 75L), map(expected, RawShape::count));
+    assertArrayEquals(new int[] {1, 5, 9}, expected.get(0).sampleIds());
+    assertEquals(List.of(1, 5), map(expected.get(0).stackTraces(), StackTrace::id));
+    assertEquals(2, expected.get(1).representative().stackTrace().frames().size());
+    assertNull(expected.get(2).representative().stackTrace()); // 4 has no trace, but 8 does
+
+    // Small chunks split the logs in the middle of statements and traces.
+    for (int chunkSize : new int[] {1, 7, 64, 1000}) {
+      final List<RawShape> actual =
+          RawLogIngestor.mk(4)
+              .setChunkSize(chunkSize)
+              .setPrefixes("select", "SELECT")
+              .ingest(stmtLog, traceLog);
+      assertEquals(map(expected, RawShape::fingerprint), map(actual, RawShape::fingerprint));
+      assertEquals(map(expected, RawShape::count), map(actual, RawShape::count));
+      for (int i = 0; i < expected.size(); ++i) {
+        final RawShape x = expected.get(i), y = actual.get(i);
+        assertEquals(x.representative(), y.representative());
+        assertEquals(x.representative().sql(), y.representative().sql());
+        assertEquals(x.representative().stackTrace(), y.representative().stackTrace());
+        assertArrayEquals(x.sampleIds(), y.sampleIds());
+        assertEquals(x.stackTraces(), y.stackTraces());
+      }
+    }
+  }
+
+  @Test
+  void testRepresentativeTrace(@TempDir Path dir) throws Exception {
+    final Path stmtLog = dir.resolve("stmts.log");
+    final Path traceLog = dir.resolve("traces.log");
+    Files.writeString(stmtLog, "1 SELECT a FROM t WHERE b = 1\n2 SELECT a FROM t WHERE b = 2\n");
+    Files.writeString(traceLog, "2\n  a.b.C.m(C.java:2)\n");
+
+    final List<RawShape> shapes = RawLogIngestor.mk(2).ingest(stmtLog, traceLog);
+    assertEquals(1, shapes.size());
+    final RawShape shape = shapes.get(0);
+    assertEquals(1, shape.representative().id());
+    assertArrayEquals(new int[] {1, 2}, shape.sampleIds());
+    assertEquals(List.of(2), map(shape.stackTraces(), StackTrace::id));
+    // The trace of statement 2 is not that of the representative.
+    assertNull(shape.representative().stackTrace());
+  }
+
+  private static <T, R> List<R> map(List<T> list, Function<T, R> func) {
+    final List<R> result = new ArrayList<>(list.size());
+    for (T t : list) result.add(func.apply(t));
+    return result;
+  }
+}
@@ -0,0 +1,63 @@
+package wtune.stmt.support;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.stmt.Statement;
+import wtune.stmt.support.PreparedStmt.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.sql.plan.PlanSupport.stringifyTree;
+
+@Tag("fast")
+class StmtPipelineTest {
+  private static final String[] SQLS = {
+    "SELECT a.admin_role_id FROM blc_admin_role AS a WHERE a.name = 'x'",
+    "SELECT a.name, COUNT(*) FROM blc_admin_role AS a GROUP BY a.name ORDER BY a.name LIMIT 10",
+    "SELECT FROM WHERE", // parse error
+    "SELECT 1", // unsupported: no FROM
+    "SELECT a.admin_role_id FROM blc_admin_role AS a "
+        + "WHERE a.admin_role_id IN (SELECT b.admin_role_id FROM blc_admin_role AS b)",
+  };
+
+  private static List<Statement> stmts(int copies) {
+    final List<Statement> stmts = new ArrayList<>(SQLS.length * copies);
+    for (int i = 0; i < copies; ++i)
+      for (int j = 0; j < SQLS.length; ++j)
+        stmts.add(Statement.mk("broadleaf", i * SQLS.length + j + 1, SQLS[j], null));
+    return stmts;
+  }
+
+  private static void assertPrepared(PreparedStmt expected, PreparedStmt actual) {
+    assertEquals(expected.stmt(), actual.stmt());
+    assertEquals(expected.status(), actual.status(), expected.stmt().toString());
+    assertEquals(expected.error(), actual.error());
+    assertEquals(String.valueOf(expected.ast()), String.valueOf(actual.ast()));
+    if (expected.plan() == null) assertNull(actual.plan());
+    else
+      assertEquals(
+          stringifyTree(expected.plan(), expected.plan().root()),
+          stringifyTree(actual.plan(), actual.plan().root()));
+  }
+
+  @Test
+  void testSameAsSerial() {
+    final List<Statement> stmts = stmts(8);
+    final StmtPipeline serial = StmtPipeline.mk(1).setSchema("base", false);
+    final List<PreparedStmt> expected = new ArrayList<>(stmts.size());
+    for (Statement stmt : stmts) expected.add(serial.prepare(stmt));
+
+    assertEquals(Status.OK, expected.get(0).status());
+    assertEquals(Status.PARSE_FAILED, expected.get(2).status());
+    assertEquals(Status.UNSUPPORTED, expected.get(3).status());
+
+    for (int window : new int[] {1, 3, 64}) {
+      final List<PreparedStmt> actual = new ArrayList<>(stmts.size());
+      StmtPipeline.mk(4).setWindow(window).setSchema("base", false).forEach(stmts, actual::add);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); ++i) assertPrepared(expected.get(i), actual.get(i));
+    }
+  }
+}
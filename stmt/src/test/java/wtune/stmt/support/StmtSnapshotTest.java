@@ -0,0 +1,145 @@
+package wtune.stmt.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import wtune.common.datasource.DbUtils;
+import wtune.common.io.FileUtils;
+import wtune.stmt.Statement;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(60)
+class StmtSnapshotTest {
+  private static final String[] SCHEMA = {
+    "CREATE TABLE wtune_stmts (stmt_app_name TEXT, stmt_id INT, stmt_raw_sql TEXT,"
+        + " stmt_trace TEXT, PRIMARY KEY (stmt_app_name, stmt_id))",
+    "CREATE TABLE wtune_opt_stmts_wtune (opt_app_name TEXT, opt_stmt_id INT, opt_raw_sql TEXT,"
+        + " trace TEXT, base_improve REAL, zipf_improve REAL, large_improve REAL,"
+        + " large_zipf_improve REAL)",
+    "CREATE TABLE wtune_stmt_perf (perf_app_name TEXT, perf_stmt_id INT, perf_tag TEXT,"
+        + " perf_p50 INT, perf_p90 INT, perf_p99 INT,"
+        + " PRIMARY KEY (perf_app_name, perf_stmt_id, perf_tag))",
+    "INSERT INTO wtune_stmts VALUES ('a', 1, 'SELECT 1', 'trace1'), ('a', 2, 'SELECT 2', null)",
+    "INSERT INTO wtune_opt_stmts_wtune VALUES ('a', 1, 'SELECT 1 AS x', '1,2', null, null,"
+        + " null, null)",
+    "INSERT INTO wtune_stmt_perf VALUES ('a', 1, 'base', 10, 20, 30)",
+  };
+
+  private final Path defaultDataDir = FileUtils.dataDir();
+
+  // Changes by other processes, which do not go through the DAOs.
+  private static void execute(Path dir, String... sqls) throws SQLException {
+    try (final Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbOf(dir));
+        final java.sql.Statement stmt = conn.createStatement()) {
+      for (String sql : sqls) stmt.execute(sql);
+    }
+  }
+
+  private static Path dbOf(Path dir) {
+    return dir.resolve("wtune.db");
+  }
+
+  private static Path cacheOf(Path dir) {
+    return dir.resolve("wtune.db.snapshot");
+  }
+
+  // Set an old modification time, which is kept as long as the cache is not rewritten.
+  private static void markCache(Path dir) throws Exception {
+    Files.setLastModifiedTime(cacheOf(dir), FileTime.fromMillis(0));
+  }
+
+  private static boolean isCacheRewritten(Path dir) throws Exception {
+    return Files.getLastModifiedTime(cacheOf(dir)).toMillis() != 0;
+  }
+
+  private static void assertLookups(StmtSnapshot snapshot) {
+    final Statement original = snapshot.original("a", 1);
+    assertNotNull(original);
+    assertEquals("SELECT 1", original.rawSql());
+    assertEquals("trace1", original.stackTrace());
+    assertNull(snapshot.original("a", 3));
+    assertNull(snapshot.original("b", 1));
+    assertEquals(2, snapshot.originals().size());
+
+    final Statement opt = snapshot.rewritten("a", 1, OptimizerType.WeTune);
+    assertNotNull(opt);
+    assertEquals("SELECT 1 AS x", opt.rawSql());
+    assertTrue(opt.isRewritten());
+    assertSame(opt, original.rewritten(OptimizerType.WeTune));
+    assertSame(original, opt.original());
+    assertNull(snapshot.rewritten("a", 2, OptimizerType.WeTune));
+    assertNull(snapshot.original("a", 2).rewritten(OptimizerType.WeTune));
+    // The table of this optimizer is absent.
+    assertNull(snapshot.rewritten("a", 1, OptimizerType.SPES));
+    assertTrue(snapshot.rewritten(OptimizerType.SPES).isEmpty());
+
+    final List<Timing> timings = snapshot.timingsOf("a", 1);
+    assertEquals(1, timings.size());
+    assertEquals("base", timings.get(0).tag());
+    assertEquals(10, timings.get(0).p50());
+    assertEquals(30, timings.get(0).p99());
+    assertTrue(snapshot.timingsOf("a", 2).isEmpty());
+  }
+
+  @AfterEach
+  void restoreDataDir() {
+    DbUtils.closeThreadConnection();
+    FileUtils.setDataDir(defaultDataDir.toString());
+  }
+
+  // The DAOs share one writer of wtune.db per JVM, thus only this test may switch the data dir.
+  @Test
+  void testLoadAndInvalidate(@TempDir Path dir) throws Exception {
+    FileUtils.setDataDir(dir.toString());
+    DbUtils.closeThreadConnection();
+    execute(dir, SCHEMA);
+
+    final StmtSnapshot fromDb = StmtSnapshot.load();
+    assertLookups(fromDb);
+    assertTrue(Files.exists(cacheOf(dir)));
+
+    markCache(dir);
+    final StmtSnapshot fromCache = StmtSnapshot.load();
+    assertFalse(isCacheRewritten(dir));
+    assertLookups(fromCache);
+
+    // A statement is replaced by one of the same size, a timing is updated in place.
+    execute(
+        dir,
+        "DELETE FROM wtune_stmts WHERE stmt_id = 2",
+        "INSERT INTO wtune_stmts VALUES ('a', 2, 'SELECT 3', null)",
+        "UPDATE wtune_stmt_perf SET perf_p50 = 11");
+    StmtSnapshot snapshot = StmtSnapshot.load();
+    assertTrue(isCacheRewritten(dir));
+    assertEquals("SELECT 3", snapshot.original("a", 2).rawSql());
+    assertEquals(11, snapshot.timingsOf("a", 1).get(0).p50());
+
+    // A table created afterwards is tracked as well.
+    markCache(dir);
+    execute(dir, SCHEMA[1].replace("wtune_opt_stmts_wtune", "wtune_opt_stmts_spes"));
+    snapshot = StmtSnapshot.load();
+    assertTrue(isCacheRewritten(dir));
+    assertTrue(snapshot.rewritten(OptimizerType.SPES).isEmpty());
+
+    markCache(dir);
+    execute(dir, SCHEMA[4].replace("wtune_opt_stmts_wtune", "wtune_opt_stmts_spes"));
+    snapshot = StmtSnapshot.load();
+    assertTrue(isCacheRewritten(dir));
+    assertEquals("SELECT 1 AS x", snapshot.rewritten("a", 1, OptimizerType.SPES).rawSql());
+
+    // Unchanged since the last load.
+    markCache(dir);
+    StmtSnapshot.load();
+    assertFalse(isCacheRewritten(dir));
+  }
+}
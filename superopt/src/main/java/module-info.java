@@ -9,6 +9,8 @@ module wtune.superopt {
   requires com.google.common;
   requires org.apache.commons.lang3;
   requires java.logging;
+  requires java.management;
+  requires jdk.jfr;
   requires wtune.common;
   requires wtune.sql;
   requires wtune.stmt;
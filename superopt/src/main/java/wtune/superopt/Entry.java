@@ -1,5 +1,6 @@
 package wtune.superopt;
 
+import wtune.common.io.ResultSink;
 import wtune.superopt.runner.Runner;
 
 import java.io.ByteArrayInputStream;
@@ -33,8 +34,12 @@ public class Entry {
     }
 
     final Runner runner = (Runner) cls.getConstructor().newInstance();
-    runner.prepare(args);
-    runner.run();
-    runner.stop();
+    try {
+      runner.prepare(args);
+      runner.run();
+      runner.stop();
+    } finally {
+      ResultSink.closeAll();
+    }
   }
 }
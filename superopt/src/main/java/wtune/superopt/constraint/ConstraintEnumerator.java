@@ -6,6 +6,7 @@ import wtune.superopt.logic.LogicSupport;
 import wtune.superopt.substitution.Substitution;
 import wtune.superopt.uexpr.UExprTranslationResult;
 import wtune.superopt.uexpr.UExprSupport;
+import wtune.superopt.util.StageEvent;
 
 import java.util.*;
 
@@ -146,7 +147,13 @@ class ConstraintEnumerator {
           System.out.println();
         }
 
-        stages[0].enumerate();
+        final StageEvent event = StageEvent.begin(StageEvent.ENUMERATE);
+        String outcome = "ERROR";
+        try {
+          outcome = stringifyAnswer(stages[0].enumerate());
+        } finally {
+          StageEvent.end(event, outcome);
+        }
 
         metric.numTotalConstraintSets.set(I.size());
 
@@ -579,6 +586,15 @@ class ConstraintEnumerator {
 
   //// helper methods ////
 
+  // The outcome of a stage in the StageEvent, covering the codes private to the enumerator.
+  private static String stringifyAnswer(int answer) {
+    return switch (answer) {
+      case TIMEOUT -> "TIMEOUT";
+      case CONFLICT -> "CONFLICT";
+      default -> LogicSupport.stringifyResult(answer);
+    };
+  }
+
   private static PartialOrder compareBitset(BitSet bs0, BitSet bs1) {
     assert bs0.size() == bs1.size();
 
@@ -1321,14 +1337,22 @@ class ConstraintEnumerator {
 
     @Override
     public int enumerate() {
-      final Substitution rule = I.mkRule(enabled);
-      if (!useSpes) {
-        final UExprTranslationResult uExprs = UExprSupport.translateToUExpr(rule);
-        final int answer = LogicSupport.proveEq(uExprs);
-        assert answer != LogicSupport.FAST_REJECTED; // fast rejection should be checked early.
+      final StageEvent event = StageEvent.begin(StageEvent.VERIFY);
+      String outcome = "ERROR";
+      try {
+        final Substitution rule = I.mkRule(enabled);
+        final int answer;
+        if (!useSpes) {
+          final UExprTranslationResult uExprs = UExprSupport.translateToUExpr(rule);
+          answer = LogicSupport.proveEq(uExprs);
+          assert answer != LogicSupport.FAST_REJECTED; // fast rejection should be checked early.
+        } else {
+          answer = LogicSupport.proveEqBySpes(rule);
+        }
+        outcome = stringifyAnswer(answer);
         return answer;
-      } else {
-        return LogicSupport.proveEqBySpes(rule);
+      } finally {
+        StageEvent.end(event, outcome);
       }
     }
 
@@ -19,7 +19,9 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -67,9 +69,22 @@ public class DaemonContextImpl implements DaemonContext {
     final ThreadPoolExecutor executor =
         new ThreadPoolExecutor(1, maxWorkers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024));
 
+    final int numWarmUpStmts = Integer.parseInt(config.getProperty("warm_up_stmts", "0"));
+    if (numWarmUpStmts > 0) warmUpParsers(numWarmUpStmts);
+
     return new DaemonContextImpl(bank, server, executor);
   }
 
+  private static void warmUpParsers(int numStmts) {
+    final Map<String, List<String>> sqls = new HashMap<>();
+    for (Statement stmt : Statement.findAll()) {
+      final List<String> group =
+          sqls.computeIfAbsent(stmt.app().dbType(), ignored -> new ArrayList<>());
+      if (group.size() < numStmts) group.add(stmt.rawSql());
+    }
+    sqls.forEach(SqlSupport::warmUpParser);
+  }
+
   @Override
   public App appOf(String contextName) {
     return appMap.computeIfAbsent(contextName, App::of);
@@ -1,41 +1,44 @@
 package wtune.superopt.daemon;
 
+import com.google.common.hash.HashCode;
 import wtune.sql.ast.SqlNode;
 import wtune.stmt.Statement;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static wtune.sql.SqlSupport.digestSql;
 import static wtune.sql.support.action.NormalizationSupport.installParamMarkers;
 
 public class RegistrationBase implements Registration {
   private static final long TTL = 50 * 60 * 1000; // 50 min
 
-  private final Map<String, Status> registration = new ConcurrentHashMap<>();
+  // Keyed by the digest of the SQL, so that lookups need not materialize the SQL text.
+  private final Map<HashCode, Status> registration = new ConcurrentHashMap<>();
 
   @Override
   public void register(Statement stmt, SqlNode optimized) {
-    final String query = stmt.ast().toString();
+    final HashCode key = digestSql(stmt.ast());
 
     if (optimized == null) {
       // remember a query that is unable to optimize
-      registration.put(query, new Status(-1, System.currentTimeMillis() + TTL));
+      registration.put(key, new Status(-1, System.currentTimeMillis() + TTL));
       return;
     }
 
     // assume the the original and optimized queries are both parameterize
 
-    final Status existing = registration.get(query);
+    final Status existing = registration.get(key);
     if (existing != null) uninstall(existing.id);
 
-    final int id = install(stmt.appName(), query, optimized.toString());
-    if (id != -1) registration.put(query, new Status(id, System.currentTimeMillis() + TTL));
+    final int id = install(stmt.appName(), stmt.ast().toString(), optimized.toString());
+    if (id != -1) registration.put(key, new Status(id, System.currentTimeMillis() + TTL));
   }
 
   @Override
   public boolean contains(Statement stmt) {
     installParamMarkers(stmt.ast());
-    final Status status = registration.get(stmt.ast().toString());
+    final Status status = registration.get(digestSql(stmt.ast()));
     return status != null && status.expiration <= System.currentTimeMillis();
   }
 
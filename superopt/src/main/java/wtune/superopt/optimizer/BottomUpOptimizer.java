@@ -1,14 +1,18 @@
 package wtune.superopt.optimizer;
 
+import wtune.common.utils.ArraySupport;
 import wtune.common.utils.Lazy;
 import wtune.common.utils.ListSupport;
 import wtune.sql.plan.PlanContext;
 import wtune.sql.plan.PlanKind;
 import wtune.sql.plan.PlanNode;
 import wtune.sql.plan.PlanSupport;
+import wtune.superopt.fragment.OpKind;
 import wtune.superopt.substitution.Substitution;
 import wtune.superopt.substitution.SubstitutionBank;
+import wtune.superopt.util.Complexity;
 import wtune.superopt.util.Fingerprint;
+import wtune.superopt.util.StageEvent;
 
 import java.util.*;
 
@@ -23,11 +27,17 @@ class BottomUpOptimizer implements Optimizer {
   private final SubstitutionBank rules;
 
   private Memo memo;
+  private ConstraintCache constraintCache;
 
   private long startAt;
   private long timeout;
+  private int budget, explored;
+  private int memoCapacity;
+  private boolean memoFull;
 
-  private boolean tracing, verbose, extended, keepOriginal;
+  private boolean tracing, verbose, extended, keepOriginal, adaptiveRuleOrder;
+  private RuleStatistics statistics;
+  private RewriteCache rewriteCache;
   private final Lazy<Map<String, OptimizationStep>> traces;
 
   BottomUpOptimizer(SubstitutionBank rules) {
@@ -47,6 +57,21 @@ class BottomUpOptimizer implements Optimizer {
     this.timeout = timeout;
   }
 
+  @Override
+  public void setBudget(int budget) {
+    this.budget = budget;
+  }
+
+  @Override
+  public void setMemoCapacity(int capacity) {
+    this.memoCapacity = capacity;
+  }
+
+  @Override
+  public int memoPeakSize() {
+    return memo == null ? 0 : memo.peakSize();
+  }
+
   @Override
   public void setExtended(boolean extension) {
     this.extended = extension;
@@ -62,6 +87,21 @@ class BottomUpOptimizer implements Optimizer {
     this.keepOriginal = keepOriginal;
   }
 
+  @Override
+  public void setRuleStatistics(RuleStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  @Override
+  public void setAdaptiveRuleOrder(boolean flag) {
+    this.adaptiveRuleOrder = flag;
+  }
+
+  @Override
+  public void setRewriteCache(RewriteCache cache) {
+    this.rewriteCache = cache;
+  }
+
   @Override
   public List<OptimizationStep> traceOf(PlanContext plan) {
     return collectTrace(plan);
@@ -77,8 +117,11 @@ class BottomUpOptimizer implements Optimizer {
     plan = plan.copy();
     int planRoot = preprocess(plan);
 
-    memo = new Memo();
+    memo = new Memo(memoCapacity);
+    constraintCache = new ConstraintCache();
+    memoFull = false;
     startAt = System.currentTimeMillis();
+    explored = 0;
 
     final Set<SubPlan> results = optimize0(new SubPlan(plan, planRoot));
     return collectRewritten(originalPlan, results);
@@ -98,8 +141,11 @@ class BottomUpOptimizer implements Optimizer {
 
     final int subTreeRoot = plan.nodeIdOf(subTreeRootNode);
 
-    memo = new Memo();
+    memo = new Memo(memoCapacity);
+    constraintCache = new ConstraintCache();
+    memoFull = false;
     startAt = System.currentTimeMillis();
+    explored = 0;
 
     final Set<SubPlan> results = optimize0(new SubPlan(plan, subTreeRoot));
     return collectRewritten(originalPlan, results);
@@ -119,7 +165,7 @@ class BottomUpOptimizer implements Optimizer {
     // Now, P1 cannot be further transformed (nor its children), thus "fully-optimized"
     // Obviously, P1 and P3 is equivalent. P1 and P3 thus reside in the same group.
     // Then, when P2 are transformed to P3, the group is accordingly updated.
-    if (isTimedOut() || isFullyOptimized(subPlan)) return memo.eqClassOf(subPlan);
+    if (isExhausted() || isFullyOptimized(subPlan)) return memo.eqClassOf(subPlan);
     else return dispatch(subPlan);
   }
 
@@ -143,7 +189,8 @@ class BottomUpOptimizer implements Optimizer {
     if (numChildren >= 1) lhsOpts = optimize0(n.child(0));
     if (numChildren >= 2) rhsOpts = optimize0(n.child(1));
 
-    Set<SubPlan> opts = new HashSet<>(lhsOpts.size());
+    // Linked sets keep the exploration order (and thus the budgeted result) deterministic.
+    Set<SubPlan> opts = new LinkedHashSet<>(lhsOpts.size());
     if (numChildren >= 1) {
       for (SubPlan lhsOpt : lhsOpts) {
         final SubPlan replaced = replaceChild(n, 0, lhsOpt);
@@ -151,7 +198,7 @@ class BottomUpOptimizer implements Optimizer {
       }
     }
     if (numChildren >= 2) {
-      final Set<SubPlan> newOpts = new HashSet<>(opts.size() * rhsOpts.size());
+      final Set<SubPlan> newOpts = new LinkedHashSet<>(opts.size() * rhsOpts.size());
       for (SubPlan opt : opts) {
         for (SubPlan rhsOpt : rhsOpts) {
           final SubPlan replaced = replaceChild(opt, 1, rhsOpt);
@@ -185,31 +232,99 @@ class BottomUpOptimizer implements Optimizer {
 
   /* find eligible substitutions and use them to transform `n` and generate new plans */
   private Set<SubPlan> transform(SubPlan subPlan) {
-    if (isTimedOut()) return emptySet();
+    if (budget > 0) return transformBestFirst(subPlan);
+
+    final Set<SubPlan> transformed = transformOnce(subPlan);
+    transformed.addAll(ListSupport.flatMap(transformed, this::transform));
+    return transformed;
+  }
+
+  /*
+   * Anytime variant of `transform`: instead of recursing depth-first, always expand the cheapest
+   * plan discovered so far. Each expansion consumes one unit of the budget. Once the budget runs
+   * out, the cheapest plans found so far are what remains in the memo.
+   */
+  private Set<SubPlan> transformBestFirst(SubPlan subPlan) {
+    final Set<SubPlan> transformed = new MinCostSet();
+    final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+    queue.add(new Candidate(subPlan));
+
+    while (!queue.isEmpty() && !isExhausted()) {
+      final Set<SubPlan> expanded = transformOnce(queue.poll().subPlan);
+      for (SubPlan newSubPlan : expanded) queue.add(new Candidate(newSubPlan));
+      transformed.addAll(expanded);
+    }
+
+    return transformed;
+  }
+
+  /* apply eligible substitutions to `subPlan` once, returns the new plans not seen before */
+  private Set<SubPlan> transformOnce(SubPlan subPlan) {
+    if (!memoFull && !memo.ensureCapacity()) memoFull = true;
+    if (isExhausted()) return new MinCostSet();
+    ++explored;
 
     final PlanContext plan = subPlan.plan();
     final PlanKind kind = subPlan.rootKind();
     final int root = subPlan.nodeId();
-    if (kind.isFilter() && plan.kindOf(plan.parentOf(root)).isFilter()) return emptySet();
+    if (kind.isFilter() && plan.kindOf(plan.parentOf(root)).isFilter()) return new MinCostSet();
 
     final Set<SubPlan> group = memo.eqClassOf(subPlan);
     final Set<SubPlan> transformed = new MinCostSet();
-    // 1. fast search for candidate substitution by fingerprint
-    final Iterable<Substitution> rules = fastMatchRules(subPlan);
+    // 1. fast search for candidate substitution by fingerprint,
+    //    or the rules known to match the same sub-plan of another statement
+    final String cacheKey = rewriteCache == null ? null : rewriteCache.keyOf(plan, root);
+    final List<Substitution> knownRules = cacheKey == null ? null : rewriteCache.lookup(cacheKey);
+    final Iterable<Substitution> rules = knownRules != null ? knownRules : fastMatchRules(subPlan);
+    final List<Substitution> matchedRules = cacheKey == null ? null : new ArrayList<>(2);
+    boolean complete = true;
+    Complexity cost = null;
     for (Substitution rule : rules) {
-      if (isTimedOut()) break;
+      if (isExhausted()) {
+        complete = false;
+        break;
+      }
+
+      final RuleMetrics metrics = statistics == null ? null : statistics.metricsOf(rule);
+      if (metrics != null) metrics.numProbed.increment();
+      long begin = metrics == null ? 0 : System.nanoTime();
 
       // 2. full match
-      final Match baseMatch = new Match(rule).setSourcePlan(plan).setMatchRootNode(root);
+      final StageEvent matchEvent = StageEvent.begin(StageEvent.MATCH);
+      final Match baseMatch =
+          new Match(rule, constraintCache).setSourcePlan(plan).setMatchRootNode(root);
       final List<Match> fullMatches = Match.match(baseMatch, rule._0().root(), root);
+      StageEvent.end(matchEvent, rule.id(), fullMatches.isEmpty() ? "unmatched" : "matched");
+
+      if (metrics != null) {
+        metrics.elapsedMatch.add(System.nanoTime() - begin);
+        metrics.numMatched.add(fullMatches.size());
+      }
+      // Only a failed match is decided by the sub-plan alone. Instantiation rebinds the refs
+      // against the whole plan and normalization works on the whole plan, thus a rule failing
+      // there may succeed in another statement, and must be tried again.
+      if (matchedRules != null && !fullMatches.isEmpty() && !matchedRules.contains(rule))
+        matchedRules.add(rule);
 
       for (Match match : fullMatches) {
-        if (match.assembleModifiedPlan()) {
+        if (metrics != null) begin = System.nanoTime();
+        final StageEvent instantiateEvent = StageEvent.begin(StageEvent.INSTANTIATE);
+        final boolean instantiated = match.assembleModifiedPlan();
+        StageEvent.end(instantiateEvent, rule.id(), instantiated ? "ok" : "failed");
+        if (metrics != null) {
+          metrics.elapsedInstantiate.add(System.nanoTime() - begin);
+          metrics.numInstantiated.incrementIf(instantiated);
+        }
+
+        if (instantiated) {
           // 3. generate new plan according to match
           final PlanContext newPlan = match.modifiedPlan();
           int newSubPlanRoot = match.modifiedRootNode();
 
+          final StageEvent normalizeEvent = StageEvent.begin(StageEvent.NORMALIZE);
           final int normalizedRoot = normalizePlan(newPlan, newSubPlanRoot);
+          StageEvent.end(
+              normalizeEvent, rule.id(), normalizedRoot == NO_SUCH_NODE ? "failed" : "ok");
           if (normalizedRoot == NO_SUCH_NODE) continue;
 
           final SubPlan newSubPlan = new SubPlan(newPlan, normalizedRoot);
@@ -219,6 +334,13 @@ class BottomUpOptimizer implements Optimizer {
           if (group.add(newSubPlan)) {
             if (!registered) transformed.add(newSubPlan);
             traceStep(subPlan.plan(), newSubPlan.plan(), rule);
+
+            if (metrics != null) {
+              if (cost == null) cost = Complexity.mk(plan, root);
+              metrics.numFired.increment();
+              metrics.numImproved.incrementIf(
+                  Complexity.mk(newPlan, normalizedRoot).compareTo(cost) < 0);
+            }
           }
 
         } else if (verbose) {
@@ -227,7 +349,9 @@ class BottomUpOptimizer implements Optimizer {
       }
     }
 
-    transformed.addAll(ListSupport.flatMap(transformed, this::transform));
+    if (knownRules == null && matchedRules != null && complete)
+      rewriteCache.record(cacheKey, matchedRules);
+
     return transformed;
   }
 
@@ -306,8 +430,13 @@ class BottomUpOptimizer implements Optimizer {
   }
 
   private Iterable<Substitution> fastMatchRules(SubPlan subPlan) {
+    final StageEvent event = StageEvent.begin(StageEvent.FAST_MATCH);
     final Set<Fingerprint> fingerprints = Fingerprint.mk(subPlan.plan(), subPlan.nodeId());
-    return ListSupport.flatMap(fingerprints, rules::ruleOfFingerprint);
+    final List<Substitution> candidates =
+        ListSupport.flatMap(fingerprints, rules::ruleOfFingerprint);
+    StageEvent.end(event, candidates.isEmpty() ? "none" : "found");
+    if (adaptiveRuleOrder && statistics != null) return statistics.arrange(candidates);
+    return candidates;
   }
 
   private List<OptimizationStep> collectTrace(PlanContext plan) {
@@ -343,6 +472,7 @@ class BottomUpOptimizer implements Optimizer {
   }
 
   private int preprocess(PlanContext plan) {
+    final StageEvent event = StageEvent.begin(StageEvent.PREPROCESS);
     int planRoot = plan.root();
 
     if ((optimizerTweaks & TWEAK_SORT_FILTERS_DURING_REWRITE) != 0)
@@ -353,6 +483,7 @@ class BottomUpOptimizer implements Optimizer {
     planRoot = reduceDedup(plan, planRoot);
     planRoot = convertExists(plan, planRoot);
     planRoot = flipRightJoin(plan, planRoot);
+    StageEvent.end(event, null);
     return planRoot;
   }
 
@@ -420,6 +551,10 @@ class BottomUpOptimizer implements Optimizer {
     return rewritings;
   }
 
+  private boolean isExhausted() {
+    return memoFull || (budget > 0 && explored >= budget) || isTimedOut();
+  }
+
   private boolean isTimedOut() {
     return System.currentTimeMillis() - startAt >= timeout;
   }
@@ -435,4 +570,31 @@ class BottomUpOptimizer implements Optimizer {
     final String key = stringifyTree(target, target.root(), true);
     traces.get().computeIfAbsent(key, ignored -> new OptimizationStep(source, target, null, extra));
   }
+
+  private static class Candidate implements Comparable<Candidate> {
+    private final SubPlan subPlan;
+    private final int numInputs, numOps;
+    private String key; // tie-breaker, stringified on the first tie only
+
+    private Candidate(SubPlan subPlan) {
+      this.subPlan = subPlan;
+      final int[] opCounts = Complexity.mk(subPlan.plan(), subPlan.nodeId()).opCounts();
+      this.numInputs = opCounts[OpKind.INPUT.ordinal()];
+      this.numOps = ArraySupport.sum(opCounts);
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      // `Complexity` is only a partial order, linearize it as (#input, #op, string).
+      int res = Integer.compare(numInputs, o.numInputs);
+      if (res == 0) res = Integer.compare(numOps, o.numOps);
+      if (res == 0) res = key().compareTo(o.key());
+      return res;
+    }
+
+    private String key() {
+      if (key == null) key = subPlan.toString();
+      return key;
+    }
+  }
 }
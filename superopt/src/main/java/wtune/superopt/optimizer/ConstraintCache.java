@@ -0,0 +1,33 @@
+package wtune.superopt.optimizer;
+
+import wtune.superopt.constraint.Constraint;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Negative results of constraint checks, scoped to one optimization.
+ *
+ * <p>Only the schema lookups of a check are cached, keyed by the resolved columns. Column
+ * resolution itself is not: it goes through the values registry of a plan, which differs from
+ * plan to plan (refs are rebound after each rewrite), so the same values may resolve in one plan
+ * and not in another. The same columns are thus rejected at once when the constraint is checked
+ * again for another plan or another alternative.
+ */
+class ConstraintCache {
+  private final Set<Key> failed = new HashSet<>();
+
+  boolean isFailed(Constraint constraint, Object values0, Object values1) {
+    return !failed.isEmpty() && failed.contains(new Key(constraint, values0, values1));
+  }
+
+  void setFailed(Constraint constraint, Object values0, Object values1) {
+    failed.add(new Key(constraint, values0, values1));
+  }
+
+  int size() {
+    return failed.size();
+  }
+
+  private record Key(Constraint constraint, Object values0, Object values1) {}
+}
@@ -62,8 +62,10 @@ class FilterMatcher {
     assert assignments.numUnused() == 0;
     final FilterChain chain = assignments.mkChain(true);
     final PlanContext newPlan = chain.assemble();
-    final Match derivedMatch = match.derive().setSourcePlan(newPlan);
-    return tryMatch(opChain.get(0), chain.at(0), derivedMatch);
+    final Filter op = opChain.get(0);
+    final Match derivedMatch = match.deriveIfMatch(op, chain.at(0), newPlan);
+    if (derivedMatch == null) return emptyList();
+    return matchSubquery(op, chain.at(0), derivedMatch);
   }
 
   private static List<Filter> mkOpChain(Op op) {
@@ -173,18 +175,21 @@ class FilterMatcher {
 
       final int opIdx = indices[opOrdinal];
       final Op op = opChain.get(opIdx);
+      final Model model = whatIf.model();
 
       boolean ret = false;
       for (int nodeIdx = nextNodeIdx, bound = nodeChain.size(); nodeIdx < bound; ++nodeIdx) {
         if (assignments.isUsed(nodeIdx)) continue;
 
-        final Match derivedMatch = whatIf.derive();
+        // `whatIf` is only a hypothesis: try in place and roll back.
+        final int mark = model.mark();
         final int filterNode = nodeChain.at(nodeIdx);
-        if (derivedMatch.matchOne(op, filterNode)) {
+        if (whatIf.probeOne(op, filterNode)) {
           assignments.setExact(opIdx, nodeIdx);
-          ret |= match0(derivedMatch, opOrdinal + 1, nodeIdx + 1);
+          ret |= match0(whatIf, opOrdinal + 1, nodeIdx + 1);
           assignments.unset(opIdx);
         }
+        model.rollback(mark);
       }
 
       return ret;
@@ -241,7 +246,7 @@ class FilterMatcher {
         }
 
         assignments.setCombined(opIdx, toMergeFilters.toArray());
-        ret |= next.match(match.derive());
+        ret |= next.match(match);
         assignments.unset(opIdx);
       }
 
@@ -350,6 +355,10 @@ class FilterMatcher {
 
   private List<Match> tryMatch(Op op, int nodeId, Match match) {
     if (!match.matchOne(op, nodeId)) return emptyList();
+    return matchSubquery(op, nodeId, match);
+  }
+
+  private List<Match> matchSubquery(Op op, int nodeId, Match match) {
     if (!op.kind().isSubquery()) return singletonList(match);
     else return Match.match(match, op.predecessors()[1], match.sourcePlan().childOf(nodeId, 1));
   }
@@ -34,14 +34,15 @@ class JoinMatcher {
     if (rootJoineeIdx < 0 && !allowFlip()) return null;
     if (!joinTree.isEligibleRoot(rootJoineeIdx)) return null;
 
-    final PlanContext newPlan = joinTree.mkRootedBy(rootJoineeIdx);
-    final Match derived = baseMatch.derive().setSourcePlan(newPlan);
+    // Probe against the virtually re-rooted tree, copy the plan only if the probe succeeds.
     final int joiner = joinTree.joinerOf(rootJoineeIdx);
+    final boolean flipped = joinTree.isFlippedBy(rootJoineeIdx);
+    final Match derived =
+        baseMatch.deriveIfJoinMatch(op, joiner, flipped, () -> joinTree.mkRootedBy(rootJoineeIdx));
+    if (derived == null) return null;
 
     if (baseMatch.matchRootNode() == joinTree.rootJoiner()) derived.setMatchRootNode(joiner);
-
-    if (derived.matchOne(op, joiner)) return derived;
-    else return null;
+    return derived;
   }
 
   private boolean allowFlip() {
@@ -100,6 +100,11 @@ final class LinearJoinTree {
     return joineeIndex >= 0 || joinKindOf(plan, rootJoiner()).isInner();
   }
 
+  /** Whether the join keys of the new root are swapped if re-rooted by the joinee. */
+  boolean isFlippedBy(int joineeIdx) {
+    return joineeIdx == -1;
+  }
+
   PlanContext mkRootedBy(int joineeIdx) {
     if (joineeIdx >= joinees.length - 2) return plan;
 
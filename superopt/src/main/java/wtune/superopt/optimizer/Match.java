@@ -9,6 +9,7 @@ import wtune.sql.plan.*;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
@@ -38,9 +39,17 @@ class Match {
   private PlanContext modifiedPlan;
   private int modifiedRootNode;
 
+  // Set only while probing a virtually re-rooted join tree, see deriveIfJoinMatch.
+  private boolean flipJoinKeys;
+
   Match(Substitution rule) {
+    this(rule, null);
+  }
+
+  /** `cache` holds the negative results of constraint checks during an optimization. */
+  Match(Substitution rule, ConstraintCache cache) {
     this.rule = rule;
-    this.model = new Model(rule.constraints());
+    this.model = new Model(rule.constraints(), cache);
     this.matchRootNode = NO_SUCH_NODE;
     this.matchStartNode = NO_SUCH_NODE;
     this.lastMatchedNode = NO_SUCH_NODE;
@@ -133,8 +142,70 @@ class Match {
     return true;
   }
 
+  /**
+   * Match `op` against `nodeId` of `plan`. Returns a derived match on success, otherwise null.
+   *
+   * <p>The matching is done in place and undone afterwards, thus this match is left untouched and
+   * a failed attempt allocates nothing.
+   */
+  Match deriveIfMatch(Op op, int nodeId, PlanContext plan) {
+    return deriveIfMatch0(op, nodeId, plan, false, null);
+  }
+
+  /**
+   * Match `op` against `joiner` as the root of a re-rooted join tree, without the re-rooted plan.
+   *
+   * <p>Re-rooting moves join nodes around but leaves each of them intact, except that the join
+   * keys of the new root are swapped if `flipKeys`. Thus `op` is matched against `joiner` in the
+   * current plan as is, and `reRoot` is invoked to materialize the re-rooted plan only on success.
+   * The derived match then re-checks its constraints against the materialized plan.
+   */
+  Match deriveIfJoinMatch(Join op, int joiner, boolean flipKeys, Supplier<PlanContext> reRoot) {
+    return deriveIfMatch0(op, joiner, sourcePlan, flipKeys, reRoot);
+  }
+
+  private Match deriveIfMatch0(
+      Op op, int nodeId, PlanContext plan, boolean flipKeys, Supplier<PlanContext> reRoot) {
+    final PlanContext sourcePlan = this.sourcePlan;
+    final int matchStartNode = this.matchStartNode;
+    final int lastMatchedNode = this.lastMatchedNode;
+    final Op lastMatchedOp = this.lastMatchedOp;
+    final int mark = model.mark();
+
+    setSourcePlan(plan);
+    flipJoinKeys = flipKeys;
+    final Match derived = matchOne(op, nodeId) ? derive() : null;
+    flipJoinKeys = false;
+
+    model.rollback(mark);
+    setSourcePlan(sourcePlan);
+    this.matchStartNode = matchStartNode;
+    this.lastMatchedNode = lastMatchedNode;
+    this.lastMatchedOp = lastMatchedOp;
+
+    if (derived != null && reRoot != null) derived.setSourcePlan(reRoot.get());
+    return derived;
+  }
+
+  /** Match `op` against `nodeId`. Assignments of a failed matching are rolled back. */
   boolean matchOne(Op op, int nodeId) {
-    boolean result;
+    final int mark = model.mark();
+    if (probeOne(op, nodeId)) {
+      setLastMatchPoint(nodeId, op);
+      return true;
+    } else {
+      model.rollback(mark);
+      return false;
+    }
+  }
+
+  /**
+   * Check whether `op` can match `nodeId` by assigning the symbols of `op` to the model only. The
+   * assignments are kept regardless of the result; callers roll them back to a {@link
+   * Model#mark()}.
+   */
+  boolean probeOne(Op op, int nodeId) {
+    final boolean result;
     switch (op.kind()) {
       case INPUT:
         result = matchInput((Input) op, nodeId);
@@ -162,7 +233,6 @@ class Match {
         throw new IllegalArgumentException("unknown operator: " + op.kind());
     }
 
-    if (result) setLastMatchPoint(nodeId, op);
     return result;
   }
 
@@ -181,8 +251,10 @@ class Match {
     if (!infoCache.isEquiJoin(nodeId)) return false;
 
     final var keys = infoCache.getJoinKeyOf(nodeId);
-    return model.assign(joinOp.lhsAttrs(), keys.getLeft())
-        && model.assign(joinOp.rhsAttrs(), keys.getRight())
+    final List<Value> lhsKeys = flipJoinKeys ? keys.getRight() : keys.getLeft();
+    final List<Value> rhsKeys = flipJoinKeys ? keys.getLeft() : keys.getRight();
+    return model.assign(joinOp.lhsAttrs(), lhsKeys)
+        && model.assign(joinOp.rhsAttrs(), rhsKeys)
         && model.checkConstraints();
   }
 
@@ -1,19 +1,116 @@
 package wtune.superopt.optimizer;
 
+import com.google.common.hash.Hashing;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import wtune.common.utils.BaseCongruence;
 import wtune.common.utils.BaseCongruentClass;
 import wtune.sql.plan.PlanContext;
 import wtune.sql.plan.PlanKind;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.singleton;
 import static wtune.sql.plan.PlanSupport.stringifyNode;
 
 class Memo extends BaseCongruence<String, SubPlan> {
+  // Max number of keys retained. Non-positive means unlimited.
+  private final int capacity;
+  // Hashes of the keys of dominated plans, i.e., plans evicted by a cheaper one in their group,
+  // to the group. Such plans are never explored again, only their registration and group matter.
+  private TLongObjectMap<OptGroup> dominated;
+  // Max number of keys retained during the exploration.
+  private int peakSize;
+
+  Memo() {
+    this(0);
+  }
+
+  Memo(int capacity) {
+    this.capacity = capacity;
+  }
+
   boolean isRegistered(SubPlan node) {
-    return classes.containsKey(extractKey(node));
+    return isRegistered0(extractKey(node));
   }
 
   boolean isRegistered(PlanContext plan, int nodeId) {
-    return classes.containsKey(extractKey(new SubPlan(plan, nodeId)));
+    return isRegistered0(extractKey(new SubPlan(plan, nodeId)));
+  }
+
+  int size() {
+    return classes.size();
+  }
+
+  int peakSize() {
+    return Math.max(peakSize, classes.size());
+  }
+
+  int numDominated() {
+    return dominated == null ? 0 : dominated.size();
+  }
+
+  /**
+   * Compact the memo if it exceeds the capacity. Returns false if the memo is still nearly full
+   * after compaction, in which case further exploration should stop.
+   */
+  boolean ensureCapacity() {
+    peakSize = Math.max(peakSize, classes.size());
+    if (capacity <= 0 || classes.size() <= capacity) return true;
+    compact();
+    // Leave some headroom, otherwise the memo would be compacted on almost every insertion.
+    return classes.size() <= capacity - capacity / 10;
+  }
+
+  /**
+   * Release the keys of dominated plans from the memo. They are remembered by a 64-bit hash, so
+   * that they are still regarded as registered, and still resolve to their group.
+   *
+   * <p>The only loss is that a group can no longer be merged via a released key. This may miss some
+   * rewritings, but never produces a wrong one.
+   */
+  void compact() {
+    if (dominated == null) dominated = new TLongObjectHashMap<>(classes.size());
+
+    final Iterator<Map.Entry<String, BaseCongruentClass<SubPlan>>> iter =
+        classes.entrySet().iterator();
+    while (iter.hasNext()) {
+      final Map.Entry<String, BaseCongruentClass<SubPlan>> entry = iter.next();
+      final String key = entry.getKey();
+      final OptGroup group = (OptGroup) entry.getValue();
+      if (group.isLive(key)) continue;
+      // `OptGroup.merge` re-points the elements of every group object, so it is safe to keep one.
+      dominated.put(hash(key), group);
+      iter.remove();
+    }
+  }
+
+  @Override
+  public Set<SubPlan> eqClassOf(SubPlan subPlan) {
+    final OptGroup group = groupOf(extractKey(subPlan));
+    return group != null ? group : singleton(subPlan);
+  }
+
+  @Override
+  public Set<SubPlan> mkEqClass(SubPlan subPlan) {
+    final OptGroup group = groupOf(extractKey(subPlan));
+    return group != null ? group : super.mkEqClass(subPlan);
+  }
+
+  private OptGroup groupOf(String key) {
+    final OptGroup group = (OptGroup) classes.get(key);
+    if (group != null || dominated == null) return group;
+    return dominated.get(hash(key));
+  }
+
+  private boolean isRegistered0(String key) {
+    return classes.containsKey(key) || (dominated != null && dominated.containsKey(hash(key)));
+  }
+
+  private static long hash(String key) {
+    return Hashing.murmur3_128().hashUnencodedChars(key).asLong();
   }
 
   @Override
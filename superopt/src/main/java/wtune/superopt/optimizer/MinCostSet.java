@@ -6,16 +6,21 @@ import java.util.*;
 
 class MinCostSet implements Set<SubPlan> {
   private final Map<String, SubPlan> subPlans;
-  private final Set<String> evicted;
+  // The groups sharing this set as their elements. See `OptGroup::merge`.
+  private List<OptGroup> groups;
   private Complexity minCost;
 
   MinCostSet() {
     this.subPlans = new HashMap<>();
-    this.evicted = new HashSet<>();
   }
 
-  public Set<String> evicted() {
-    return evicted;
+  List<OptGroup> groups() {
+    if (groups == null) groups = new ArrayList<>(2);
+    return groups;
+  }
+
+  boolean containsKey(String key) {
+    return subPlans.containsKey(key);
   }
 
   @Override
@@ -23,13 +28,9 @@ class MinCostSet implements Set<SubPlan> {
     final Complexity cost = Complexity.mk(subPlan.plan(), subPlan.nodeId());
     final int cmp = minCost == null ? -1 : cost.compareTo(minCost);
     // the new plan is more costly, abandon it
-    if (cmp > 0) {
-      evicted.add(subPlan.toString());
-      return false;
-    }
+    if (cmp > 0) return false;
     // the new plan is cheaper, abandon existing ones
     if (cmp < 0) {
-      evicted.addAll(subPlans.keySet());
       subPlans.clear();
       minCost = cost;
     }
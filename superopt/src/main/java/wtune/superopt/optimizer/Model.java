@@ -1,7 +1,6 @@
 package wtune.superopt.optimizer;
 
 import com.google.common.collect.Iterables;
-import wtune.common.utils.Lazy;
 import wtune.sql.ast.constants.ConstraintKind;
 import wtune.sql.plan.*;
 import wtune.sql.schema.Column;
@@ -21,35 +20,70 @@ import static wtune.superopt.optimizer.OptimizerSupport.TWEAK_ENABLE_QUERY_AS_EQ
 import static wtune.superopt.optimizer.OptimizerSupport.optimizerTweaks;
 import static wtune.common.utils.IterableSupport.*;
 
+/**
+ * Assignments of the source-side symbols of a rule.
+ *
+ * <p>Assignments are kept in a flat array indexed by {@link SymbolIndex}. Every assignment is
+ * recorded in an undo trail, so that a matcher can try an alternative in place and {@link
+ * #rollback(int)} to a {@link #mark()} if it fails. Only the alternatives that survive need a
+ * {@link #derive()}d copy.
+ *
+ * <p>Constraints are checked incrementally: assigning a symbol marks the constraints on its watch
+ * list (see {@link SymbolIndex}) as pending, and {@link #checkConstraints()} checks only the
+ * pending ones.
+ */
 class Model {
-  private final Model base;
   private final Constraints constraints;
-  private final Lazy<Map<Symbol, Object>> assignments;
+  private final SymbolIndex index;
+  private final Object[] assignments;
+  private final ConstraintCache cache; // nullable
+  // Bit set of the indices of constraints to be (re-)checked.
+  private final long[] pending;
+
+  // Undo trail: the ordinal of each assignment and the value it overwrote.
+  private int[] trailOrdinals;
+  private Object[] trailValues;
+  private int trailSize;
 
   private PlanContext plan;
 
   private Model(Model other) {
-    this.base = other;
     this.constraints = other.constraints;
-    this.assignments = Lazy.mk(HashMap::new);
+    this.index = other.index;
+    this.assignments = other.assignments.clone();
+    this.cache = other.cache;
+    this.pending = other.pending.clone();
     this.plan = other.plan;
   }
 
   Model(Constraints constraints) {
-    this.base = null;
+    this(constraints, null);
+  }
+
+  Model(Constraints constraints, ConstraintCache cache) {
     this.constraints = constraints;
-    this.assignments = Lazy.mk(HashMap::new);
+    this.index = SymbolIndex.of(constraints);
+    this.assignments = new Object[index.size()];
+    this.cache = cache;
+    this.pending = new long[index.watchedMask().length];
+  }
+
+  static boolean isChecked(Constraint.Kind kind) {
+    return kind == Constraint.Kind.AttrsSub
+        || kind == Constraint.Kind.Unique
+        || kind == Constraint.Kind.Reference;
   }
 
   Model setPlan(PlanContext plan) {
+    if (plan != this.plan) {
+      // The passed checks may not hold in another plan.
+      final long[] watched = index.watchedMask();
+      for (int i = 0; i < pending.length; ++i) pending[i] |= watched[i];
+    }
     this.plan = plan;
     return this;
   }
 
-  Model base() {
-    return base;
-  }
-
   PlanContext plan() {
     return plan;
   }
@@ -63,7 +97,26 @@ class Model {
   }
 
   void reset() {
-    if (assignments.isInitialized()) assignments.get().clear();
+    Arrays.fill(assignments, null);
+    Arrays.fill(pending, 0L);
+    trailSize = 0;
+  }
+
+  /** The current position of the undo trail. */
+  int mark() {
+    return trailSize;
+  }
+
+  /** Undo the assignments made since `mark`. */
+  void rollback(int mark) {
+    assert mark <= trailSize;
+    while (trailSize > mark) {
+      --trailSize;
+      assignments[trailOrdinals[trailSize]] = trailValues[trailSize];
+      trailValues[trailSize] = null;
+      // A check passed after the mark may have seen the undone assignment.
+      watch(trailOrdinals[trailSize]);
+    }
   }
 
   boolean isAssigned(Symbol sym) {
@@ -97,11 +150,15 @@ class Model {
     assert sym.kind() != Symbol.Kind.SCHEMA || assignment instanceof List<?>;
     assert sym.kind() != Symbol.Kind.FUNC || assignment instanceof List<?>;
 
-    assignments.get().put(sym, assignment);
+    final int ordinal = index.ordinalOf(sym);
+    if (ordinal < 0) throw new IllegalArgumentException("not a source symbol: " + sym);
+
+    pushTrail(ordinal);
+    assignments[ordinal] = assignment;
+    watch(ordinal);
 
-    for (Symbol eqSym : constraints.eqClassOf(sym)) {
-      if (eqSym == sym) continue;
-      final Object otherAssignment = of(eqSym);
+    for (int eqOrdinal : index.eqOrdinalsOf(ordinal)) {
+      final Object otherAssignment = assignments[eqOrdinal];
       if (otherAssignment != null && !checkCompatible(sym.kind(), assignment, otherAssignment)) {
         return false;
       }
@@ -111,14 +168,36 @@ class Model {
   }
 
   boolean checkConstraints() {
-    return all(constraints, this::checkConstraint);
+    for (int i = 0; i < pending.length; ++i) {
+      while (pending[i] != 0) {
+        final int bit = Long.numberOfTrailingZeros(pending[i]);
+        if (!checkConstraint(constraints.get((i << 6) + bit))) return false;
+        pending[i] &= ~(1L << bit);
+      }
+    }
+    return true;
   }
 
   private <T> T of(Symbol sym) {
-    final Object o = assignments.get().get(sym);
-    if (o != null) return (T) o;
-    else if (base != null) return base.of(sym);
-    else return null;
+    final int ordinal = index.ordinalOf(sym);
+    return ordinal < 0 ? null : (T) assignments[ordinal];
+  }
+
+  private void watch(int ordinal) {
+    for (int watcher : index.watchersOf(ordinal)) pending[watcher >>> 6] |= 1L << watcher;
+  }
+
+  private void pushTrail(int ordinal) {
+    if (trailOrdinals == null) {
+      trailOrdinals = new int[assignments.length + 1];
+      trailValues = new Object[assignments.length + 1];
+    } else if (trailSize == trailOrdinals.length) {
+      trailOrdinals = Arrays.copyOf(trailOrdinals, trailSize << 1);
+      trailValues = Arrays.copyOf(trailValues, trailSize << 1);
+    }
+    trailOrdinals[trailSize] = ordinal;
+    trailValues[trailSize] = assignments[ordinal];
+    ++trailSize;
   }
 
   private boolean checkCompatible(Symbol.Kind kind, Object v0, Object v1) {
@@ -184,7 +263,8 @@ class Model {
     if (attrs == null) return true; // not assigned yet, pass
 
     final List<Column> columns = tryResolveColumns(attrs);
-    if (columns == null) return false; // some attrs has no backed column
+    // some attrs has no backed column
+    if (columns == null) return false;
 
     //    if (none(columns, column -> isParticipateIn(column, UNIQUE))) return false;
 
@@ -231,9 +311,12 @@ class Model {
     final List<Column> referredCols = tryResolveColumns(referredAttrs);
     if (referredCols == null) return false;
 
+    // Columns are resolved per plan, but the FK lookup depends on the schema alone.
+    if (isCachedFailure(reference, referringColumns, referredCols)) return false;
     final var fks = findIC(plan.schema(), referringColumns, FOREIGN);
     if (!referringColumns.equals(referredCols)
-        && linearFind(fks, it -> it.refColumns().equals(referredCols)) == null) return false;
+        && linearFind(fks, it -> it.refColumns().equals(referredCols)) == null)
+      return cacheFailure(reference, referringColumns, referredCols);
 
     final Integer surface = ofTable(referredTableSym);
     if (surface == null) return true;
@@ -255,6 +338,15 @@ class Model {
     return true;
   }
 
+  private boolean isCachedFailure(Constraint constraint, Object values0, Object values1) {
+    return cache != null && cache.isFailed(constraint, values0, values1);
+  }
+
+  private boolean cacheFailure(Constraint constraint, Object values0, Object values1) {
+    if (cache != null) cache.setFailed(constraint, values0, values1);
+    return false;
+  }
+
   private List<Value> ofOutAttrs(Symbol sym) {
     if (sym.kind() == Symbol.Kind.TABLE) {
       final Integer nodeId = ofTable(sym);
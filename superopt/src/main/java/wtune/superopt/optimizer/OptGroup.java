@@ -1,29 +1,42 @@
 package wtune.superopt.optimizer;
 
 import wtune.common.utils.BaseCongruentClass;
+import wtune.sql.plan.PlanKind;
 
 import java.util.Collection;
-import java.util.Set;
+import java.util.List;
 
 class OptGroup extends BaseCongruentClass<SubPlan> {
   protected OptGroup(Memo congruence) {
     super(congruence);
+    groups().add(this);
   }
 
   @Override
   protected void merge(BaseCongruentClass<SubPlan> other) {
-    super.merge(other);
+    // Plans evicted from `other` are still bound to groups sharing other's elements.
+    // Instead of tracking the evicted keys, track those groups and re-point them.
+    final List<OptGroup> otherGroups = ((OptGroup) other).groups();
 
-    ((MinCostSet) elements).evicted().addAll(((OptGroup) other).evicted());
+    super.merge(other);
 
-    final Memo memo = (Memo) this.congruence;
-    for (String key : ((OptGroup) other).evicted()) {
-      ((OptGroup) memo.eqClassAt(key)).elements = elements;
+    final List<OptGroup> groups = groups();
+    for (OptGroup group : otherGroups) {
+      group.elements = elements;
+      groups.add(group);
     }
   }
 
-  private Set<String> evicted() {
-    return ((MinCostSet) elements).evicted();
+  boolean isLive(String key) {
+    final MinCostSet subPlans = (MinCostSet) elements;
+    if (subPlans.containsKey(key)) return true;
+    // Keys of Input nodes are not the plan strings. Conservatively regard them as live.
+    for (SubPlan subPlan : subPlans) if (subPlan.rootKind() == PlanKind.Input) return true;
+    return false;
+  }
+
+  private List<OptGroup> groups() {
+    return ((MinCostSet) elements).groups();
   }
 
   @Override
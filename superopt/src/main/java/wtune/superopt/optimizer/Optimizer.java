@@ -18,6 +18,25 @@ public interface Optimizer {
 
   void setTimeout(long timeout);
 
+  /**
+   * Switch to the anytime mode: the most promising plans are explored first, and the
+   * optimization stops after `budget` memo entries have been explored, returning the best plans
+   * found so far. Unlike the timeout, the result doesn't depend on the machine. Non-positive value
+   * means unlimited.
+   */
+  void setBudget(int budget);
+
+  /**
+   * Bound the memory used by the memo to about `capacity` sub-plans. Keys of dominated sub-plans
+   * are compacted into hashes when the bound is reached. If it is still nearly reached after that,
+   * the exploration stops and the best plans found so far are returned. Non-positive value means
+   * unlimited.
+   */
+  void setMemoCapacity(int capacity);
+
+  /** Max number of sub-plans keyed in the memo during the last optimization. */
+  int memoPeakSize();
+
   void setTracing(boolean flag);
 
   void setExtended(boolean extension);
@@ -26,6 +45,21 @@ public interface Optimizer {
 
   void setKeepOriginal(boolean keepOriginal);
 
+  /** Record per-rule match/fire metrics into `statistics`. Null disables the recording. */
+  void setRuleStatistics(RuleStatistics statistics);
+
+  /**
+   * Try the candidate rules in descending order of historical yield recorded in the rule
+   * statistics, and skip the ones deemed unprofitable. No effect without rule statistics.
+   */
+  void setAdaptiveRuleOrder(boolean flag);
+
+  /**
+   * Share exploration outcomes of sub-plans with the other optimizers holding `cache`, e.g., those
+   * of the other statements of the same app. Null disables the sharing.
+   */
+  void setRewriteCache(RewriteCache cache);
+
   List<OptimizationStep> traceOf(PlanContext plan);
 
   static Optimizer mk(SubstitutionBank bank) {
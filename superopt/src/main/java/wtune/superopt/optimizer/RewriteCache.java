@@ -0,0 +1,83 @@
+package wtune.superopt.optimizer;
+
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.substitution.Substitution;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static wtune.sql.plan.PlanSupport.stringifyCanonical;
+
+/**
+ * Exploration outcomes of sub-plans, shared by the optimizers of the statements of an app.
+ *
+ * <p>An entry is keyed by the canonical form of a sub-plan (see {@link
+ * wtune.sql.plan.PlanSupport#stringifyCanonical(PlanContext, int)}), and records the rules that
+ * match it. Whether a rule matches is decided by the sub-plan's structure (including the tables of
+ * the outer attributes it refers to) and the schema alone, thus when a sub-plan of the same form
+ * shows up in another statement, only the recorded rules are tried, rather than matching every
+ * candidate rule again. A matched rule may still fail to apply, since the rewritten sub-plan is
+ * rebound and normalized within the whole plan, so it is recorded and tried again as well. Most
+ * candidates never match, so the cost of a recurring sub-plan is mostly that of its rewrites.
+ *
+ * <p>Only sub-plans explored completely (i.e., not cut short by the timeout, the budget or the memo
+ * capacity) are recorded. Entries are evicted in LRU order beyond the capacity. The instance is not
+ * thread-safe, and should be {@link #reset()} when switching to another app (i.e., schema).
+ */
+public class RewriteCache {
+  private final Map<String, List<Substitution>> entries;
+  private int numHits, numMisses;
+
+  private RewriteCache(int capacity) {
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, List<Substitution>> eldest) {
+            return capacity > 0 && size() > capacity;
+          }
+        };
+  }
+
+  public static RewriteCache mk() {
+    return new RewriteCache(0);
+  }
+
+  /** Make a cache retaining at most `capacity` entries. Non-positive means unlimited. */
+  public static RewriteCache mk(int capacity) {
+    return new RewriteCache(capacity);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public int numHits() {
+    return numHits;
+  }
+
+  public int numMisses() {
+    return numMisses;
+  }
+
+  public void reset() {
+    entries.clear();
+    numHits = numMisses = 0;
+  }
+
+  String keyOf(PlanContext plan, int nodeId) {
+    return stringifyCanonical(plan, nodeId);
+  }
+
+  /** Returns the rules that match the sub-plan of `key`, or null if unknown. */
+  List<Substitution> lookup(String key) {
+    final List<Substitution> rules = entries.get(key);
+    if (rules != null) ++numHits;
+    else ++numMisses;
+    return rules;
+  }
+
+  void record(String key, List<Substitution> matchedRules) {
+    entries.put(key, matchedRules);
+  }
+}
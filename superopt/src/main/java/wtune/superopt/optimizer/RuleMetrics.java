@@ -0,0 +1,43 @@
+package wtune.superopt.optimizer;
+
+import wtune.common.utils.IntMetric;
+import wtune.common.utils.LongMetric;
+import wtune.common.utils.Metric;
+import wtune.common.utils.Metrics;
+
+import java.util.List;
+
+public class RuleMetrics implements Metrics<RuleMetrics> {
+  // The rule is returned by the fingerprint lookup.
+  public final IntMetric numProbed = new IntMetric("#Probed");
+  // Full matches found for the rule.
+  public final IntMetric numMatched = new IntMetric("#Matched");
+  // Matches that are successfully instantiated into a new plan.
+  public final IntMetric numInstantiated = new IntMetric("#Instantiated");
+  // New plans that survive in the memo group, i.e., not more costly than the known ones.
+  public final IntMetric numFired = new IntMetric("#Fired");
+  // New plans that are strictly cheaper than the plan being transformed.
+  public final IntMetric numImproved = new IntMetric("#Improved");
+  public final LongMetric elapsedMatch = new LongMetric("Match(ns)");
+  public final LongMetric elapsedInstantiate = new LongMetric("Instantiate(ns)");
+
+  private final List<Metric> metrics =
+      List.of(
+          numProbed,
+          numMatched,
+          numInstantiated,
+          numFired,
+          numImproved,
+          elapsedMatch,
+          elapsedInstantiate);
+
+  @Override
+  public List<Metric> metrics() {
+    return metrics;
+  }
+
+  @Override
+  public String toString() {
+    return stringify(new StringBuilder()).toString();
+  }
+}
@@ -0,0 +1,94 @@
+package wtune.superopt.optimizer;
+
+import wtune.common.utils.Metric;
+import wtune.superopt.substitution.Substitution;
+
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Per-rule {@link RuleMetrics} collected by an optimizer.
+ *
+ * <p>One instance may be shared by the optimizers of a whole run, so that the statistics of
+ * earlier statements guide the rule ordering of later ones (see {@link
+ * Optimizer#setAdaptiveRuleOrder(boolean)}). The instance is not thread-safe: use one per thread
+ * and {@link #accumulate(RuleStatistics)} them afterwards.
+ */
+public class RuleStatistics {
+  private final Map<Substitution, RuleMetrics> metrics;
+  private final int skipThreshold;
+
+  private RuleStatistics(int skipThreshold) {
+    this.metrics = new IdentityHashMap<>();
+    this.skipThreshold = skipThreshold;
+  }
+
+  public static RuleStatistics mk() {
+    return new RuleStatistics(0);
+  }
+
+  /**
+   * Make a statistics whose adaptive ordering skips a rule that has been probed for at least
+   * `skipThreshold` times without ever firing. Non-positive threshold means never skip.
+   */
+  public static RuleStatistics mk(int skipThreshold) {
+    return new RuleStatistics(skipThreshold);
+  }
+
+  public RuleMetrics metricsOf(Substitution rule) {
+    return metrics.computeIfAbsent(rule, ignored -> new RuleMetrics());
+  }
+
+  public Collection<Substitution> rules() {
+    return metrics.keySet();
+  }
+
+  public void reset() {
+    metrics.clear();
+  }
+
+  public void accumulate(RuleStatistics other) {
+    for (var pair : other.metrics.entrySet()) metricsOf(pair.getKey()).accumulate(pair.getValue());
+  }
+
+  /** Fraction of probes that end up with a cheaper plan, smoothed for rarely probed rules. */
+  double yieldOf(Substitution rule) {
+    final RuleMetrics m = metrics.get(rule);
+    if (m == null) return 0.5;
+    return (m.numImproved.value() + m.numFired.value() + 1.0) / (2 * m.numProbed.value() + 2.0);
+  }
+
+  boolean isUnprofitable(Substitution rule) {
+    if (skipThreshold <= 0) return false;
+    final RuleMetrics m = metrics.get(rule);
+    return m != null && m.numFired.value() == 0 && m.numProbed.value() >= skipThreshold;
+  }
+
+  /** Stable-sort the candidates by descending historical yield, dropping unprofitable ones. */
+  List<Substitution> arrange(Iterable<Substitution> candidates) {
+    final List<Substitution> arranged = new ArrayList<>();
+    for (Substitution rule : candidates) if (!isUnprofitable(rule)) arranged.add(rule);
+    if (arranged.size() > 1) {
+      final Map<Substitution, Double> yields = new IdentityHashMap<>(arranged.size());
+      for (Substitution rule : arranged) yields.put(rule, yieldOf(rule));
+      arranged.sort(Comparator.comparingDouble(yields::get).reversed());
+    }
+    return arranged;
+  }
+
+  /** Dump as TSV, one line per rule, ordered by rule id. */
+  public void dump(PrintWriter writer) {
+    final List<Substitution> rules = new ArrayList<>(metrics.keySet());
+    rules.sort(Comparator.comparingInt(Substitution::id));
+
+    writer.print("ruleId");
+    for (Metric metric : new RuleMetrics().metrics()) writer.print("\t" + metric.name());
+    writer.println();
+
+    for (Substitution rule : rules) {
+      writer.print(rule.id());
+      for (Metric metric : metrics.get(rule).metrics()) writer.print("\t" + metric.value());
+      writer.println();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package wtune.superopt.optimizer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import wtune.superopt.constraint.Constraint;
+import wtune.superopt.constraint.Constraints;
+import wtune.superopt.fragment.Symbol;
+import wtune.superopt.fragment.Symbols;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Dense ordinals of the source-side symbols of a rule, which index the assignments of a {@link
+ * Model}. The eq-class of each symbol is pre-resolved to ordinals as well.
+ *
+ * <p>Besides, each symbol has a watch list: the indices of the constraints (in the rule's {@link
+ * Constraints}) that involve the symbol and are actually checked by {@link Model}. Only these
+ * constraints need a re-check after the symbol is assigned.
+ *
+ * <p>Computed once per rule and shared by all threads.
+ */
+class SymbolIndex {
+  private static final LoadingCache<Constraints, SymbolIndex> CACHE =
+      CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(SymbolIndex::new));
+
+  private final Map<Symbol, Integer> ordinals;
+  private final Symbol[] symbols;
+  private final int[][] eqOrdinals;
+  private final int[][] watchers;
+  private final long[] watchedMask;
+
+  private SymbolIndex(Constraints constraints) {
+    final Symbols sourceSyms = constraints.sourceSymbols();
+    this.ordinals = new IdentityHashMap<>();
+    for (Symbol.Kind kind : Symbol.Kind.values())
+      for (Symbol sym : sourceSyms.symbolsOf(kind)) ordinals.putIfAbsent(sym, ordinals.size());
+
+    this.symbols = new Symbol[ordinals.size()];
+    for (var pair : ordinals.entrySet()) symbols[pair.getValue()] = pair.getKey();
+
+    this.eqOrdinals = new int[symbols.length][];
+    for (int i = 0; i < symbols.length; ++i) {
+      final int[] buffer = new int[symbols.length];
+      int count = 0;
+      for (Symbol eqSym : constraints.eqClassOf(symbols[i])) {
+        final int ordinal = ordinalOf(eqSym);
+        if (ordinal >= 0 && ordinal != i) buffer[count++] = ordinal;
+      }
+      eqOrdinals[i] = count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    }
+
+    this.watchers = new int[symbols.length][];
+    this.watchedMask = new long[(constraints.size() + 63) >>> 6];
+    final int[] counts = new int[symbols.length];
+    final int[][] buffers = new int[symbols.length][constraints.size()];
+    for (int i = 0, bound = constraints.size(); i < bound; ++i) {
+      final Constraint constraint = constraints.get(i);
+      if (!Model.isChecked(constraint.kind())) continue;
+
+      watchedMask[i >>> 6] |= 1L << i;
+      for (Symbol sym : constraint.symbols()) {
+        final int ordinal = ordinalOf(sym);
+        if (ordinal < 0) continue;
+        final int[] buffer = buffers[ordinal];
+        if (counts[ordinal] == 0 || buffer[counts[ordinal] - 1] != i) buffer[counts[ordinal]++] = i;
+      }
+    }
+    for (int i = 0; i < symbols.length; ++i) watchers[i] = Arrays.copyOf(buffers[i], counts[i]);
+  }
+
+  static SymbolIndex of(Constraints constraints) {
+    return CACHE.getUnchecked(constraints);
+  }
+
+  int size() {
+    return symbols.length;
+  }
+
+  /** -1 if `sym` is not a source-side symbol of the rule. */
+  int ordinalOf(Symbol sym) {
+    final Integer ordinal = ordinals.get(sym);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  Symbol symbolAt(int ordinal) {
+    return symbols[ordinal];
+  }
+
+  /** Indices of the checked constraints that involve the symbol at `ordinal`. */
+  int[] watchersOf(int ordinal) {
+    return watchers[ordinal];
+  }
+
+  /** Bit set of the indices of all checked constraints. */
+  long[] watchedMask() {
+    return watchedMask;
+  }
+
+  /** Ordinals of the other symbols in the eq-class of the symbol at `ordinal`. */
+  int[] eqOrdinalsOf(int ordinal) {
+    return eqOrdinals[ordinal];
+  }
+}
@@ -0,0 +1,103 @@
+package wtune.superopt.runner;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import wtune.common.utils.Args;
+import wtune.superopt.util.StageEvent;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static wtune.common.utils.IOSupport.checkFileExists;
+
+/**
+ * Summarize the {@link StageEvent}s in a Flight Recorder file into hotspot tables: per stage, per
+ * (rule, stage), and per subject (statement or template pair).
+ *
+ * <p>Example: run `RewriteQuery` with {@code -XX:StartFlightRecording=filename=rewrite.jfr}, then
+ * run this with {@code -f rewrite.jfr}.
+ */
+public class AnalyzeEvents implements Runner {
+  private Path file;
+  private int top;
+
+  @Override
+  public void prepare(String[] argStrings) {
+    final Args args = Args.parse(argStrings, 1);
+    final String fileName = args.getOptional("f", "file", String.class, "profile.jfr");
+    top = args.getOptional("top", int.class, 20);
+
+    file = RunnerSupport.dataDir().resolve(fileName);
+    checkFileExists(file);
+  }
+
+  @Override
+  public void run() throws Exception {
+    final Map<String, Stat> byStage = new TreeMap<>();
+    final Map<String, Stat> byRule = new HashMap<>();
+    final Map<String, Stat> bySubject = new HashMap<>();
+
+    try (final RecordingFile recording = new RecordingFile(file)) {
+      while (recording.hasMoreEvents()) {
+        final RecordedEvent event = recording.readEvent();
+        if (!event.getEventType().getName().equals(StageEvent.NAME)) continue;
+
+        final String stage = event.getString("stage");
+        final String outcome = event.getString("outcome");
+        final int rule = event.getInt("rule");
+        final String subject = event.getString("subject");
+        final long nanos = event.getDuration().toNanos();
+
+        byStage.computeIfAbsent(stage, Stat::new).add(nanos, outcome);
+        if (rule != 0)
+          byRule.computeIfAbsent(rule + "\t" + stage, Stat::new).add(nanos, outcome);
+        // Verification is nested in enumeration, don't count twice.
+        if (subject != null && !StageEvent.VERIFY.equals(stage))
+          bySubject.computeIfAbsent(subject, Stat::new).add(nanos, null);
+      }
+    }
+
+    System.out.println("===== Stages =====");
+    System.out.println("stage\tcount\ttotal(ms)\tmean(us)\tmax(us)\toutcomes");
+    for (Stat stat : byStage.values()) stat.print();
+
+    System.out.println();
+    System.out.printf("===== Top %d (rule, stage) =====\n", top);
+    System.out.println("rule\tstage\tcount\ttotal(ms)\tmean(us)\tmax(us)\toutcomes");
+    printTop(byRule.values());
+
+    System.out.println();
+    System.out.printf("===== Top %d subjects =====\n", top);
+    System.out.println("subject\tcount\ttotal(ms)\tmean(us)\tmax(us)\toutcomes");
+    printTop(bySubject.values());
+  }
+
+  private void printTop(Collection<Stat> stats) {
+    final List<Stat> sorted = new ArrayList<>(stats);
+    sorted.sort(Comparator.comparingLong((Stat it) -> it.total).reversed());
+    for (Stat stat : sorted.subList(0, Math.min(top, sorted.size()))) stat.print();
+  }
+
+  private static class Stat {
+    private final String key;
+    private final Map<String, Integer> outcomes = new TreeMap<>();
+    private long count, total, max;
+
+    private Stat(String key) {
+      this.key = key;
+    }
+
+    private void add(long nanos, String outcome) {
+      ++count;
+      total += nanos;
+      max = Math.max(max, nanos);
+      if (outcome != null) outcomes.merge(outcome, 1, Integer::sum);
+    }
+
+    private void print() {
+      System.out.printf(
+          "%s\t%d\t%.1f\t%.1f\t%.1f\t%s\n",
+          key, count, total / 1e6, total / 1e3 / count, max / 1e3, outcomes);
+    }
+  }
+}
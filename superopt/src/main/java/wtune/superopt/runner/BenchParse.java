@@ -0,0 +1,86 @@
+package wtune.superopt.runner;
+
+import wtune.common.utils.Args;
+import wtune.sql.SqlSupport;
+import wtune.stmt.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures the parsing throughput over the statements in wtune.db, for each dialect separately.
+ * Each round parses every statement once. The first round runs with a cold DFA cache, thus it is
+ * reported separately from the rest.
+ */
+public class BenchParse implements Runner {
+  private int rounds;
+  private boolean twoStage;
+  private String targetApp;
+
+  @Override
+  public void prepare(String[] argStrings) throws Exception {
+    final Args args = Args.parse(argStrings, 1);
+    rounds = args.getOptional("rounds", int.class, 5);
+    twoStage = args.getOptional("twoStage", boolean.class, true);
+    targetApp = args.getOptional("app", String.class, null);
+    if (rounds <= 1) throw new IllegalArgumentException("rounds must be larger than 1: " + rounds);
+  }
+
+  @Override
+  public void run() throws Exception {
+    final List<Statement> stmts =
+        targetApp == null ? Statement.findAll() : Statement.findByApp(targetApp);
+
+    final Map<String, List<String>> sqls = new TreeMap<>();
+    for (Statement stmt : stmts)
+      sqls.computeIfAbsent(stmt.app().dbType(), ignored -> new ArrayList<>()).add(stmt.rawSql());
+
+    SqlSupport.muteParsingError();
+    SqlSupport.setTwoStageParsing(twoStage);
+
+    System.out.printf("mode: %s%n", twoStage ? "SLL+LL" : "LL");
+    for (var pair : sqls.entrySet()) benchDialect(pair.getKey(), pair.getValue());
+  }
+
+  private void benchDialect(String dbType, List<String> sqls) {
+    final long coldElapsed = parseAll(dbType, sqls);
+    long warmElapsed = 0;
+    for (int i = 1; i < rounds; ++i) warmElapsed += parseAll(dbType, sqls);
+
+    final int numFailed = countFailure(dbType, sqls);
+    final long numWarmParsed = (long) sqls.size() * (rounds - 1);
+    System.out.printf(
+        "%s: #stmts=%d #failed=%d cold=%.1f stmt/s warm=%.1f stmt/s%n",
+        dbType,
+        sqls.size(),
+        numFailed,
+        throughput(sqls.size(), coldElapsed),
+        throughput(numWarmParsed, warmElapsed));
+  }
+
+  private static long parseAll(String dbType, List<String> sqls) {
+    final long start = System.nanoTime();
+    for (String sql : sqls) tryParse(dbType, sql);
+    return System.nanoTime() - start;
+  }
+
+  private static int countFailure(String dbType, List<String> sqls) {
+    int numFailed = 0;
+    for (String sql : sqls) if (!tryParse(dbType, sql)) ++numFailed;
+    return numFailed;
+  }
+
+  private static boolean tryParse(String dbType, String sql) {
+    try {
+      return SqlSupport.parseSql(dbType, sql) != null;
+    } catch (RuntimeException ex) {
+      return false;
+    }
+  }
+
+  private static double throughput(long numParsed, long elapsedNanos) {
+    return elapsedNanos == 0 ? 0 : numParsed * 1e9 / elapsedNanos;
+  }
+}
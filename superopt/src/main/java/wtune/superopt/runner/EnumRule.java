@@ -2,8 +2,8 @@ package wtune.superopt.runner;
 
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.commons.lang3.tuple.Pair;
+import wtune.common.io.ResultSink;
 import wtune.common.utils.Args;
-import wtune.common.utils.IOSupport;
 import wtune.superopt.constraint.ConstraintSupport;
 import wtune.superopt.constraint.EnumerationMetrics;
 import wtune.superopt.fragment.Fragment;
@@ -11,17 +11,25 @@ import wtune.superopt.fragment.FragmentSupport;
 import wtune.superopt.fragment.FragmentSupportSPES;
 import wtune.superopt.fragment.SymbolNaming;
 import wtune.superopt.substitution.Substitution;
+import wtune.superopt.util.StageEvent;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -35,10 +43,12 @@ import static wtune.superopt.fragment.FragmentSupportSPES.enumFragmentsSPES;
 
 public class EnumRule implements Runner {
   private final Lock outLock = new ReentrantLock();
-  private final Lock errLock = new ReentrantLock();
 
   private Path success, failure, err, checkpoint;
   private Path prevFailure, prevCheckpoint;
+  private Path queueDir;
+  private int batchSize;
+  private long leaseTimeout;
   private boolean useSpes;
   private int verbosity;
   private long timeout;
@@ -106,6 +116,13 @@ public class EnumRule implements Runner {
     final String prevFailureFile = args.getOptional("failure", String.class, null);
     prevFailure = prevFailureFile == null ? null : dataDir.resolve(prevFailureFile);
 
+    final String queue = args.getOptional("queue", String.class, null);
+    queueDir = queue == null ? null : dataDir.resolve(queue);
+    batchSize = args.getOptional("batch", int.class, 16);
+    leaseTimeout = args.getOptional("lease", long.class, 600L) * 1000;
+    if (batchSize <= 0) throw new IllegalArgumentException("invalid batch size: " + batchSize);
+    if (leaseTimeout <= 0) throw new IllegalArgumentException("invalid lease: " + leaseTimeout);
+
     final String from = args.getOptional("from", String.class, "0,0");
     final String[] split = from.split(",");
     iBegin = parseInt(split[0]);
@@ -115,6 +132,7 @@ public class EnumRule implements Runner {
   @Override
   public void run() throws Exception {
     if (target != null) fromTarget();
+    else if (queueDir != null) fromQueue();
     else if (prevFailure != null) fromFailures();
     else fromEnumeration();
   }
@@ -220,6 +238,87 @@ public class EnumRule implements Runner {
     }
   }
 
+  /**
+   * Enumerate the pairs through a work queue shared by workers on several nodes (see {@link
+   * LeaseQueue}). The pairs are split dynamically, rather than by `-partition`, and the completed
+   * batches in the queue act as the checkpoint: re-running with the same queue resumes.
+   */
+  private void fromQueue() throws InterruptedException, ExecutionException {
+    final List<Fragment> templates = useSpes ? enumFragmentsSPES() : enumFragments();
+    final int numTemplates = templates.size();
+    final int totalPairs = (numTemplates * (numTemplates + 1)) >> 1;
+
+    final int[] pairI = new int[totalPairs], pairJ = new int[totalPairs];
+    for (int i = 0; i < numTemplates; ++i)
+      for (int j = i; j < numTemplates; ++j) {
+        final int ordinal = ordinal(numTemplates, i, j);
+        pairI[ordinal] = i;
+        pairJ[ordinal] = j;
+      }
+
+    threadPool = Executors.newFixedThreadPool(parallelism);
+
+    try (final LeaseQueue queue = LeaseQueue.open(queueDir, totalPairs, batchSize, leaseTimeout);
+        final ProgressBar pb = new ProgressBar("Batches", queue.numBatches())) {
+      final List<Future<?>> futures = new ArrayList<>(parallelism);
+      for (int n = 0; n < parallelism; ++n)
+        futures.add(
+            threadPool.submit(
+                () -> {
+                  int batch;
+                  while ((batch = queue.claim()) >= 0) {
+                    try {
+                      final StringWriter successBuf = new StringWriter();
+                      final StringWriter failureBuf = new StringWriter();
+                      final StringWriter errBuf = new StringWriter();
+                      try (final PrintWriter successOut = new PrintWriter(successBuf);
+                          final PrintWriter failureOut = new PrintWriter(failureBuf);
+                          final PrintWriter errOut = new PrintWriter(errBuf)) {
+                        for (int k = queue.begin(batch), end = queue.end(batch); k < end; ++k) {
+                          final Fragment f0 = templates.get(pairI[k]);
+                          final Fragment f1 = secondOf(f0, templates.get(pairJ[k]));
+                          try {
+                            final List<String> rules = enumerateRules(f0, f1);
+                            if (rules != null) rules.forEach(successOut::println);
+                          } catch (Throwable ex) {
+                            printError(errOut, f0, f1, ex);
+                            printFailure(failureOut, f0, f1);
+                          }
+                        }
+                      }
+                      queue.complete(
+                          batch,
+                          Map.of(
+                              "success.txt", successBuf.toString(),
+                              "failure.txt", failureBuf.toString(),
+                              "err.txt", errBuf.toString()));
+                      pb.step();
+
+                    } catch (Throwable ex) {
+                      queue.release(batch);
+                      throw ex;
+                    }
+                  }
+                  return null;
+                }));
+
+      try {
+        for (Future<?> future : futures) future.get();
+      } finally {
+        // On failure, stop the other workers before the queue is closed under them. A worker in
+        // the middle of a batch finishes its current pair (bounded by the timeout) first.
+        threadPool.shutdownNow();
+        threadPool.awaitTermination(leaseTimeout, TimeUnit.MILLISECONDS);
+      }
+
+      if (queue.isFinished()) {
+        queue.merge("success.txt", queueDir.resolve("success.txt"));
+        queue.merge("failure.txt", queueDir.resolve("failure.txt"));
+        queue.merge("err.txt", queueDir.resolve("err.txt"));
+      }
+    }
+  }
+
   private void fromTarget() {
     try {
       final SymbolNaming naming = SymbolNaming.mk();
@@ -285,64 +384,77 @@ public class EnumRule implements Runner {
   }
 
   private void enumerate0(Fragment f0_, Fragment f1_, int i, int j) {
-    boolean outLocked = false, errLocked = false;
     final Fragment f0 = f0_;
-    final Fragment f1;
-    if (f0_ != f1_) f1 = f1_;
-    else {
-      f1 = f1_.copy();
-      FragmentSupport.setupFragment(f1);
-    }
+    final Fragment f1 = secondOf(f0_, f1_);
 
+    final ResultSink successSink = ResultSink.of(success);
+    final ResultSink checkpointSink = ResultSink.of(checkpoint);
     try {
-      final List<Substitution> rules =
-          !useSpes ? enumConstraints(f0, f1, timeout) : enumConstraintsSPES(f0, f1, timeout);
-      if (rules == null) {
-        numSkipped.incrementAndGet();
-        return;
-      }
+      final List<String> serializedRules = enumerateRules(f0, f1);
+      if (serializedRules == null) return;
 
-      final List<String> serializedRules = map(rules, Substitution::toString);
+      // The checkpoint is appended only after the rules it covers are written.
+      if (i >= 0 && j >= 0)
+        successSink.append(
+            out -> serializedRules.forEach(out::println),
+            () -> checkpointSink.append(out -> out.printf("%d,%d\n", i, j)));
+      else successSink.append(out -> serializedRules.forEach(out::println));
 
-      outLock.lock();
-      outLocked = true;
+    } catch (Throwable ex) {
+      ResultSink.of(err).append(out -> printError(out, f0, f1, ex));
+      ResultSink.of(failure).append(out -> printFailure(out, f0, f1));
 
-      if (verbosity >= 4) {
+    } finally {
+      if (i >= 0 && j >= 0 && isLastPair(i, j))
+        successSink.append(
+            out -> {}, () -> checkpointSink.append(out -> out.printf("finished\n")));
+    }
+  }
+
+  /** Returns the serialized rules, or null if the pair is skipped. */
+  private List<String> enumerateRules(Fragment f0, Fragment f1) {
+    if (StageEvent.isRecording()) StageEvent.setSubject(f0 + "|" + f1);
+    final List<Substitution> rules =
+        !useSpes ? enumConstraints(f0, f1, timeout) : enumConstraintsSPES(f0, f1, timeout);
+    if (rules == null) {
+      numSkipped.incrementAndGet();
+      return null;
+    }
+
+    final List<String> serializedRules = map(rules, Substitution::toString);
+
+    if (verbosity >= 4) {
+      outLock.lock();
+      try {
         System.out.println("Current Metrics ==>");
         System.out.println(ConstraintSupport.getEnumerationMetric());
         System.out.println("<==");
+      } finally {
+        outLock.unlock();
       }
+    }
 
-      IOSupport.appendTo(success, out -> serializedRules.forEach(out::println));
-      if (i >= 0 && j >= 0) IOSupport.appendTo(checkpoint, out -> out.printf("%d,%d\n", i, j));
+    return serializedRules;
+  }
 
-    } catch (Throwable ex) {
-      errLock.lock();
-      errLocked = true;
-
-      IOSupport.appendTo(
-          err,
-          err -> {
-            err.print(f0);
-            err.print('|');
-            err.println(f1);
-            ex.printStackTrace(err);
-            err.println("====");
-          });
-
-      IOSupport.appendTo(
-          failure,
-          err -> {
-            err.print(f0);
-            err.print('|');
-            err.println(f1);
-          });
+  private static Fragment secondOf(Fragment f0, Fragment f1) {
+    if (f0 != f1) return f1;
+    final Fragment copy = f1.copy();
+    FragmentSupport.setupFragment(copy);
+    return copy;
+  }
 
-    } finally {
-      if (i >= 0 && j >= 0 && isLastPair(i, j))
-        IOSupport.appendTo(checkpoint, out -> out.printf("finished\n"));
-      if (outLocked) outLock.unlock();
-      if (errLocked) errLock.unlock();
-    }
+  private static void printError(PrintWriter out, Fragment f0, Fragment f1, Throwable ex) {
+    out.print(f0);
+    out.print('|');
+    out.println(f1);
+    ex.printStackTrace(out);
+    out.println("====");
+  }
+
+  private static void printFailure(PrintWriter out, Fragment f0, Fragment f1) {
+    out.print(f0);
+    out.print('|');
+    out.println(f1);
   }
 }
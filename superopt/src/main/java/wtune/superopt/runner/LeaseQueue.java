@@ -0,0 +1,299 @@
+package wtune.superopt.runner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Work queue on a shared directory, through which workers on several nodes split a range of work
+ * items. No service other than the file system is involved.
+ *
+ * <p>Items [0, total) are grouped into batches of `batchSize`. A worker claims a batch by
+ * atomically creating its lease file, keeps the lease alive by touching the file, and upon
+ * completion publishes the results of the batch and then marks it done. A lease not touched for
+ * `leaseTimeout` is expired: the worker holding it is considered dead and the batch is claimed
+ * again. Should the worker be merely slow, the batch is published twice, the latter replacing the
+ * former.
+ *
+ * <p>Each claim of a batch creates the lease file of the next epoch, and lease files are never
+ * removed. Thus, of the workers taking over an expired lease, exactly one creates the next epoch,
+ * and a worker with a stale view can't take over a lease that was taken over meanwhile: the epoch
+ * it tries to create exists. A lease is held as long as it is of the latest epoch. A released one
+ * is expired at once, by setting its modification time to 0.
+ *
+ * <p>Layout of the directory:
+ *
+ * <ul>
+ *   <li>meta: total and batchSize. Workers joining a queue must agree on them.
+ *   <li>leases/b.e: the lease of batch b at epoch e, holding the id of its owner.
+ *   <li>results/b.name: result `name` of batch b.
+ *   <li>done/b: batch b is completed, i.e., the checkpoint.
+ * </ul>
+ *
+ * Time is read from the file system (the modification time of a freshly touched file), thus the
+ * clocks of the nodes needn't agree.
+ */
+class LeaseQueue implements AutoCloseable {
+  private final Path dir, leases, results, done;
+  private final int total, batchSize, numBatches;
+  private final long leaseTimeout;
+  private final String owner;
+  private final Map<Integer, Integer> held; // batch -> epoch of its lease
+  private final Map<Integer, Integer> nextEpochs; // batch -> a lower bound of its next epoch
+  private final ScheduledExecutorService heartbeat;
+
+  private LeaseQueue(Path dir, int total, int batchSize, long leaseTimeoutMillis) {
+    this.dir = dir;
+    this.leases = dir.resolve("leases");
+    this.results = dir.resolve("results");
+    this.done = dir.resolve("done");
+    this.total = total;
+    this.batchSize = batchSize;
+    this.numBatches = (total + batchSize - 1) / batchSize;
+    this.leaseTimeout = leaseTimeoutMillis;
+    this.owner = ownerId();
+    this.held = new ConcurrentHashMap<>();
+    this.nextEpochs = new ConcurrentHashMap<>();
+    this.heartbeat =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              final Thread thread = new Thread(r, "lease-heartbeat");
+              thread.setDaemon(true);
+              return thread;
+            });
+    final long period = Math.max(1, leaseTimeoutMillis / 3);
+    heartbeat.scheduleAtFixedRate(this::renewAll, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  static LeaseQueue open(Path dir, int total, int batchSize, long leaseTimeoutMillis) {
+    if (total < 0) throw new IllegalArgumentException("invalid total: " + total);
+    if (batchSize <= 0) throw new IllegalArgumentException("invalid batch size: " + batchSize);
+    if (leaseTimeoutMillis <= 0)
+      throw new IllegalArgumentException("invalid lease timeout: " + leaseTimeoutMillis);
+
+    try {
+      Files.createDirectories(dir.resolve("leases"));
+      Files.createDirectories(dir.resolve("results"));
+      Files.createDirectories(dir.resolve("done"));
+
+      final String meta = total + "," + batchSize;
+      final Path metaFile = dir.resolve("meta");
+      final Path tmp = Files.createTempFile(dir, "meta", ".tmp");
+      Files.writeString(tmp, meta);
+      try {
+        Files.move(tmp, metaFile); // fails if exists
+      } catch (FileAlreadyExistsException ex) {
+        Files.deleteIfExists(tmp);
+        final String existing = Files.readString(metaFile).trim();
+        if (!existing.equals(meta))
+          throw new IllegalArgumentException(
+              "queue %s is of (total,batchSize)=(%s), not (%s)".formatted(dir, existing, meta));
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+
+    return new LeaseQueue(dir, total, batchSize, leaseTimeoutMillis);
+  }
+
+  int numBatches() {
+    return numBatches;
+  }
+
+  /** The first item of the batch. */
+  int begin(int batch) {
+    return batch * batchSize;
+  }
+
+  /** The item next to the last one of the batch. */
+  int end(int batch) {
+    return Math.min(total, (batch + 1) * batchSize);
+  }
+
+  /**
+   * Claim a batch. Returns -1 if all batches are done. Blocks while the remaining batches are all
+   * leased by live workers, since any of them may expire.
+   */
+  int claim() throws InterruptedException {
+    while (true) {
+      final long now = fsNow();
+      boolean allDone = true;
+      // Start from a random batch, so that workers seldom race for the same one.
+      final int start = numBatches == 0 ? 0 : ThreadLocalRandom.current().nextInt(numBatches);
+      for (int k = 0; k < numBatches; ++k) {
+        final int batch = (start + k) % numBatches;
+        if (isDone(batch)) continue;
+        allDone = false;
+        if (tryLease(batch, now)) return batch;
+      }
+      if (allDone) return -1;
+      Thread.sleep(Math.min(leaseTimeout, 5000));
+    }
+  }
+
+  /**
+   * Publish the results of a batch and mark it done. `batchResults` maps a name to the content.
+   * Each result is replaced atomically, thus a reader sees either the whole content or nothing.
+   */
+  void complete(int batch, Map<String, String> batchResults) {
+    try {
+      for (var pair : batchResults.entrySet()) {
+        final Path tmp = Files.createTempFile(results, batch + ".", ".tmp");
+        Files.writeString(tmp, pair.getValue(), StandardCharsets.UTF_8);
+        Files.move(tmp, resultFile(batch, pair.getKey()), ATOMIC_MOVE, REPLACE_EXISTING);
+      }
+      try {
+        Files.createFile(done.resolve(String.valueOf(batch)));
+      } catch (FileAlreadyExistsException ignored) {
+        // Completed also by a worker that took over an expired lease.
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    } finally {
+      release(batch);
+    }
+  }
+
+  /** Give up a batch without completing it, so that others can claim it at once. */
+  synchronized void release(int batch) {
+    final Integer epoch = held.remove(batch);
+    if (epoch == null) return;
+    try {
+      // Kept rather than deleted, so that the epochs of the batch only grow.
+      Files.setLastModifiedTime(leaseFile(batch, epoch), FileTime.fromMillis(0));
+    } catch (IOException ignored) {
+      // Expires anyway.
+    }
+  }
+
+  boolean isDone(int batch) {
+    return Files.exists(done.resolve(String.valueOf(batch)));
+  }
+
+  boolean isFinished() {
+    for (int batch = 0; batch < numBatches; ++batch) if (!isDone(batch)) return false;
+    return true;
+  }
+
+  /** Concatenate result `name` of all batches, in batch order, into `target`. */
+  void merge(String name, Path target) {
+    try {
+      final Path tmp = Files.createTempFile(dir, name, ".tmp");
+      try (final var out = Files.newOutputStream(tmp)) {
+        for (int batch = 0; batch < numBatches; ++batch) {
+          final Path file = resultFile(batch, name);
+          if (Files.exists(file)) Files.copy(file, out);
+        }
+      }
+      Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  @Override
+  public void close() {
+    heartbeat.shutdownNow();
+    for (Integer batch : held.keySet()) release(batch);
+  }
+
+  private boolean tryLease(int batch, long now) {
+    try {
+      final int epoch = latestEpoch(batch);
+      if (epoch >= 0) {
+        final long touched = Files.getLastModifiedTime(leaseFile(batch, epoch)).toMillis();
+        if (now - touched < leaseTimeout) return false;
+      }
+
+      // Never leased or expired. Only one of the workers racing here creates the next epoch.
+      final Path lease = leaseFile(batch, epoch + 1);
+      Files.createFile(lease); // atomic, fails if exists
+      Files.writeString(lease, owner);
+      held.put(batch, epoch + 1);
+      // Done by others between the check and the lease.
+      if (isDone(batch)) {
+        release(batch);
+        return false;
+      }
+      return true;
+
+    } catch (FileAlreadyExistsException ex) {
+      return false; // lost the race
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /** The latest epoch of the batch, -1 if never leased. */
+  private int latestEpoch(int batch) {
+    int next = nextEpochs.getOrDefault(batch, 0);
+    while (Files.exists(leaseFile(batch, next))) ++next;
+    nextEpochs.merge(batch, next, Math::max);
+    return next - 1;
+  }
+
+  private void renewAll() {
+    held.forEach(this::renew);
+  }
+
+  private synchronized void renew(int batch, int epoch) {
+    if (!Integer.valueOf(epoch).equals(held.get(batch))) return; // released meanwhile
+    try {
+      // Taken over once a later epoch exists.
+      if (Files.exists(leaseFile(batch, epoch + 1))) held.remove(batch, epoch);
+      // Rewritten rather than setting the time, so that the file system's clock is used.
+      else Files.writeString(leaseFile(batch, epoch), owner);
+    } catch (IOException ignored) {
+    }
+  }
+
+  private long fsNow() {
+    try {
+      // A file per call, since the threads of a worker claim concurrently.
+      final Path clock = Files.createTempFile(dir, "clock", null);
+      final long now = Files.getLastModifiedTime(clock).toMillis();
+      Files.deleteIfExists(clock);
+      return now;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private Path leaseFile(int batch, int epoch) {
+    return leases.resolve(batch + "." + epoch);
+  }
+
+  private Path resultFile(int batch, String name) {
+    return results.resolve(batch + "." + name);
+  }
+
+  private static String ownerId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (IOException ex) {
+      host = "unknown";
+    }
+    // Unique per queue instance, thus several workers may run in a JVM.
+    return host
+        + "-"
+        + ManagementFactory.getRuntimeMXBean().getPid()
+        + "-"
+        + Integer.toHexString(System.identityHashCode(new Object()));
+  }
+}
@@ -0,0 +1,54 @@
+package wtune.superopt.runner;
+
+import wtune.common.utils.Args;
+import wtune.stmt.support.Workflow;
+
+import java.nio.file.Path;
+
+import static wtune.common.utils.IOSupport.checkFileExists;
+
+/**
+ * Load the statements of an app from its raw logs into wtune.db. The logs default to
+ * "logs/&lt;app&gt;/stmts.log" and "logs/&lt;app&gt;/traces.log" under the data dir.
+ *
+ * <p>By default, the log is read sequentially, optionally only the range [-start, -end). With
+ * "-ingest", the whole log is read in parallel (by "-parallel" threads) and only one statement
+ * per shape is saved. See {@link Workflow#ingestSQL}.
+ */
+public class LoadStmts implements Runner {
+  private String appName;
+  private Path logPath, tracePath;
+  private boolean ingest;
+  private int parallelism;
+  private int rangeStart, rangeEnd;
+
+  @Override
+  public void prepare(String[] argStrings) throws Exception {
+    final Args args = Args.parse(argStrings, 1);
+    appName = args.getRequired("app", String.class);
+    logPath = pathOf(args.getOptional("log", String.class, null));
+    tracePath = pathOf(args.getOptional("trace", String.class, null));
+    ingest = args.getOptional("ingest", boolean.class, false);
+    parallelism =
+        args.getOptional("parallel", int.class, Runtime.getRuntime().availableProcessors());
+    rangeStart = args.getOptional("start", int.class, 0);
+    rangeEnd = args.getOptional("end", int.class, Integer.MAX_VALUE);
+
+    if (logPath != null) checkFileExists(logPath);
+    if (parallelism <= 0) throw new IllegalArgumentException("invalid '-parallel': " + parallelism);
+    if (rangeStart < 0 || rangeEnd < rangeStart)
+      throw new IllegalArgumentException("invalid range: [%d, %d)".formatted(rangeStart, rangeEnd));
+    if (ingest && (rangeStart != 0 || rangeEnd != Integer.MAX_VALUE))
+      throw new IllegalArgumentException("'-ingest' reads the whole log, no range is allowed");
+  }
+
+  private static Path pathOf(String path) {
+    return path == null ? null : Path.of(path);
+  }
+
+  @Override
+  public void run() throws Exception {
+    if (ingest) Workflow.ingestSQL(appName, logPath, tracePath, parallelism);
+    else Workflow.loadSQL(appName, logPath, tracePath, rangeStart, rangeEnd);
+  }
+}
@@ -2,6 +2,7 @@ package wtune.superopt.runner;
 
 import me.tongfei.progressbar.ProgressBar;
 import wtune.common.datasource.DbSupport;
+import wtune.common.io.ResultSink;
 import wtune.common.utils.Args;
 import wtune.common.utils.IOSupport;
 import wtune.sql.ast.SqlNode;
@@ -207,19 +208,16 @@ public class PickMinCost implements Runner {
     if (stmtId > 0) return true;
 
     if (!isNullOrEmpty(group.traces)) {
-      IOSupport.appendTo(
-          outOptFile,
+      ResultSink.of(outOptFile).append(
           writer ->
               writer.printf(
                   "%s\t%d\t%s\t%s\n",
                   group.appName, group.stmtId, group.sqls.get(idx), group.traces.get(idx)));
-      IOSupport.appendTo(
-          outTraceFile,
+      ResultSink.of(outTraceFile).append(
           writer ->
               writer.printf("%s\t%d\t%d\t%s\n", group.appName, group.stmtId, idx, group.traces.get(idx)));
     } else {
-      IOSupport.appendTo(
-          outOptFile,
+      ResultSink.of(outOptFile).append(
           writer ->
               writer.printf("%s\t%d\t%s\n", group.appName, group.stmtId, group.sqls.get(idx)));
     }
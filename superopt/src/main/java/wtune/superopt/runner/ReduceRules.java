@@ -19,6 +19,7 @@ public class ReduceRules implements Runner {
   private Path inFile;
   private Path outFile;
   private Path additionalFile;
+  private int parallelism;
 
   @Override
   public void prepare(String[] argStrings) throws IOException {
@@ -27,6 +28,9 @@ public class ReduceRules implements Runner {
     final String inFileName = args.getOptional("R", "rules", String.class, "rules/rules.raw.txt");
     final String outFileName = args.getOptional("o", "output", String.class, "rules/rules.txt");
     final String addFileName = args.getOptional("a", String.class, "rules/rules.test.txt");
+    parallelism = args.getOptional("parallelism", int.class, 1);
+
+    if (parallelism <= 0) throw new IllegalArgumentException("invalid parallelism: " + parallelism);
 
     inFile = dataDir.resolve(inFileName);
     outFile = dataDir.resolve(outFileName);
@@ -55,7 +59,7 @@ public class ReduceRules implements Runner {
     int pass = 1;
     while (true) {
       final int oldSize = reducedBank.size();
-      reducedBank = SubstitutionSupport.reduceBank(reducedBank);
+      reducedBank = SubstitutionSupport.reduceBank(reducedBank, parallelism);
       final int minSize = reducedBank.size();
 
       System.out.printf("Pass %d: %d -> %d\n", pass++, oldSize, minSize);
@@ -1,22 +1,28 @@
 package wtune.superopt.runner;
 
 import me.tongfei.progressbar.ProgressBar;
+import wtune.common.io.ResultSink;
 import wtune.common.utils.Args;
 import wtune.common.utils.IOSupport;
 import wtune.sql.ast.SqlNode;
 import wtune.sql.plan.PlanContext;
 import wtune.sql.plan.PlanKind;
 import wtune.sql.plan.PlanSupport;
-import wtune.sql.schema.Schema;
 import wtune.stmt.Statement;
+import wtune.stmt.support.PreparedStmt;
+import wtune.stmt.support.StmtPipeline;
 import wtune.superopt.optimizer.OptimizationStep;
 import wtune.superopt.optimizer.Optimizer;
 import wtune.superopt.optimizer.OptimizerSupport;
+import wtune.superopt.optimizer.RewriteCache;
+import wtune.superopt.optimizer.RuleStatistics;
 import wtune.superopt.substitution.Substitution;
 import wtune.superopt.substitution.SubstitutionBank;
 import wtune.superopt.substitution.SubstitutionSupport;
+import wtune.superopt.util.StageEvent;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
@@ -27,19 +33,23 @@ import static wtune.common.utils.Commons.countOccurrences;
 import static wtune.common.utils.Commons.joining;
 import static wtune.common.utils.IterableSupport.all;
 import static wtune.sql.plan.PlanSupport.*;
-import static wtune.sql.support.action.NormalizationSupport.normalizeAst;
 import static wtune.superopt.optimizer.OptimizerSupport.*;
-import static wtune.superopt.runner.RunnerSupport.parseIntArg;
+import static wtune.superopt.runner.RunnerSupport.*;
 
 public class RewriteQuery implements Runner {
   private Path out, err;
-  private Path rulesOut;
+  private Path rulesOut, ruleStatsOut, memOut;
   private String targetApp;
   private int stmtId;
-  private boolean single, excludeNonEssential;
+  private boolean single, excludeNonEssential, adaptiveRuleOrder;
   private int verbosity;
+  private int budget, memoCapacity;
   private SubstitutionBank rules;
   private Map<Integer, Substitution> ruleRecord;
+  private RuleStatistics ruleStatistics;
+  private RewriteCache rewriteCache;
+  private String cachedApp;
+  private StmtPipeline pipeline;
 
   @Override
   public void prepare(String[] argStrings) throws IOException {
@@ -66,6 +76,18 @@ public class RewriteQuery implements Runner {
     if (single && stmtId > 0) verbosity = Integer.MAX_VALUE;
 
     excludeNonEssential = args.getOptional("E", boolean.class, false);
+    budget = args.getOptional("budget", int.class, 0);
+    memoCapacity = args.getOptional("memoCapacity", int.class, 0);
+
+    final int parseThreads =
+        args.getOptional("parseThreads", int.class, Runtime.getRuntime().availableProcessors());
+    pipeline = StmtPipeline.mk(parseThreads);
+
+    final boolean collectRuleStats = args.getOptional("ruleStats", boolean.class, false);
+    adaptiveRuleOrder = args.getOptional("adaptive", boolean.class, false);
+    final int skipThreshold = args.getOptional("skipThreshold", int.class, 0);
+    if (collectRuleStats || adaptiveRuleOrder) ruleStatistics = RuleStatistics.mk(skipThreshold);
+    if (args.getOptional("cacheRewrites", boolean.class, false)) rewriteCache = RewriteCache.mk();
 
     final Path dataDir = RunnerSupport.dataDir();
     final String ruleFileName = args.getOptional("R", "rules", String.class, "rules/rules.txt");
@@ -86,6 +108,8 @@ public class RewriteQuery implements Runner {
     out = dir.resolve("1_query.tsv");
     err = dir.resolve("1_err.txt");
     rulesOut = dir.resolve("1_rules.tsv");
+    ruleStatsOut = dir.resolve("1_rule_stats.tsv");
+    memOut = dir.resolve("1_memory.tsv");
 
     if (ruleFileName.contains("spes")) Files.createFile(dir.resolve("use_spes"));
     if (ruleFileName.contains("merged")) Files.createFile(dir.resolve("use_merged"));
@@ -97,11 +121,13 @@ public class RewriteQuery implements Runner {
     addOptimizerTweaks(TWEAK_SORT_FILTERS_BEFORE_OUTPUT);
 
     if (single && stmtId > 0) {
-      optimizeOne(Statement.findOne(targetApp, stmtId));
+      optimizeOne(pipeline.prepare(Statement.findOne(targetApp, stmtId)));
     } else {
       optimizeAll(collectToRun());
     }
     storeRules();
+    storeRuleStatistics();
+    if (verbosity >= 3 && cachedApp != null) printCacheSummary();
   }
 
   private List<Statement> collectToRun() {
@@ -122,22 +148,27 @@ public class RewriteQuery implements Runner {
 
   private void optimizeAll(List<Statement> stmts) {
     try (final ProgressBar pb = new ProgressBar("Optimization", stmts.size())) {
-      for (Statement stmt : stmts) {
-        optimizeOne(stmt);
-        pb.step();
-      }
+      pipeline.forEach(
+          stmts,
+          prepared -> {
+            optimizeOne(prepared);
+            pb.step();
+          });
     }
   }
 
-  private void optimizeOne(Statement stmt) {
+  private void optimizeOne(PreparedStmt prepared) {
+    final Statement stmt = prepared.stmt();
+    if (StageEvent.isRecording()) StageEvent.setSubject(stmt.toString());
     if (verbosity >= 3) {
       System.out.println("begin optimize " + stmt);
-      if (verbosity >= 4) System.out.println(stmt.ast().toString(false));
+      if (verbosity >= 4 && prepared.ast() != null)
+        System.out.println(prepared.ast().toString(false));
     }
 
     PlanContext plan = null;
     try {
-      plan = parsePlan(stmt);
+      plan = planOf(prepared);
       if (plan == null) return;
 
       if (isSimple(plan)) {
@@ -146,13 +177,24 @@ public class RewriteQuery implements Runner {
       }
 
       final Optimizer optimizer = Optimizer.mk(rules);
-      optimizer.setTimeout(5000);
+      if (budget > 0) optimizer.setBudget(budget);
+      else optimizer.setTimeout(5000);
+      optimizer.setMemoCapacity(memoCapacity);
       optimizer.setTracing(true);
+      optimizer.setRuleStatistics(ruleStatistics);
+      optimizer.setAdaptiveRuleOrder(adaptiveRuleOrder);
+      optimizer.setRewriteCache(rewriteCacheOf(stmt));
 
       final Set<PlanContext> optimized = optimizer.optimize(plan);
+      final int memoSize = optimizer.memoPeakSize();
+      if (single) System.out.printf("Peak memo size: %d\n", memoSize);
+      else
+        ResultSink.of(memOut).append(
+            writer -> writer.printf("%s\t%d\t%d\n", stmt.appName(), stmt.stmtId(), memoSize));
+
       if (optimized.isEmpty()) return;
 
-      final List<String> optimizedSql = new ArrayList<>(optimized.size());
+      final List<SqlNode> optimizedSql = new ArrayList<>(optimized.size());
       final List<String> traces = new ArrayList<>(optimized.size());
       final Set<Substitution> rules = new HashSet<>();
       for (PlanContext opt : optimized) {
@@ -179,7 +221,7 @@ public class RewriteQuery implements Runner {
           OptimizerSupport.dumpTrace(optimizer, opt);
         }
 
-        optimizedSql.add(sqlNode.toString());
+        optimizedSql.add(sqlNode);
 
         final String trace = joining(",", steps, it -> String.valueOf(it.ruleId()));
         traces.add(trace);
@@ -189,13 +231,13 @@ public class RewriteQuery implements Runner {
 
       if (single) return;
 
-      IOSupport.appendTo(
-          out,
+      ResultSink.of(out).append(
           writer -> {
-            for (int i = 0, bound = optimizedSql.size(); i < bound; i++)
-              writer.printf(
-                  "%s\t%d\t%d\t%s\t%s\n",
-                  stmt.appName(), stmt.stmtId(), i, optimizedSql.get(i), traces.get(i));
+            for (int i = 0, bound = optimizedSql.size(); i < bound; i++) {
+              writer.printf("%s\t%d\t%d\t", stmt.appName(), stmt.stmtId(), i);
+              optimizedSql.get(i).formatTo(writer, true);
+              writer.printf("\t%s\n", traces.get(i));
+            }
           });
 
 
@@ -208,14 +250,13 @@ public class RewriteQuery implements Runner {
     } catch (Throwable ex) {
       if (verbosity >= 1) System.err.println("fail to optimize stmt " + stmt);
       if (verbosity >= 2) {
-        System.err.println(stmt.ast().toString(false));
+        if (prepared.ast() != null) System.err.println(prepared.ast().toString(false));
         if (plan != null) System.err.println(stringifyTree(plan, plan.root(), false, false));
         ex.printStackTrace();
       }
       if (single) return;
 
-      IOSupport.appendTo(
-          err,
+      ResultSink.of(err).append(
           writer -> {
             writer.print(" >");
             writer.println(stmt);
@@ -224,50 +265,51 @@ public class RewriteQuery implements Runner {
     }
   }
 
-  private PlanContext parsePlan(Statement stmt) {
-    final Schema schema = stmt.app().schema("base", true);
-    try {
-      final SqlNode ast = stmt.ast();
-
-      if (ast == null) {
-        if (verbosity >= 1) System.err.println("fail to parse sql " + stmt);
-        return null;
-      }
-
-      if (!PlanSupport.isSupported(ast)) {
-        if (verbosity >= 1)
-          System.err.println("fail to parse plan " + stmt + " due to unsupported SQL feature");
-        return null;
-      }
-
-      ast.context().setSchema(schema);
-      normalizeAst(ast);
-
-      final PlanContext plan = assemblePlan(ast, schema);
-
-      if (plan == null) {
-        if (verbosity >= 1)
-          System.err.println(
-              "fail to parse plan " + stmt + " due to " + PlanSupport.getLastError());
-      }
+  private RewriteCache rewriteCacheOf(Statement stmt) {
+    if (rewriteCache == null) return null;
+    // Entries are valid only under the same schema.
+    if (!stmt.appName().equals(cachedApp)) {
+      if (verbosity >= 3 && cachedApp != null) printCacheSummary();
+      rewriteCache.reset();
+      cachedApp = stmt.appName();
+    }
+    return rewriteCache;
+  }
 
-      return plan;
+  private void printCacheSummary() {
+    System.out.printf(
+        "rewrite cache of %s: %d entries, %d hits, %d misses\n",
+        cachedApp, rewriteCache.size(), rewriteCache.numHits(), rewriteCache.numMisses());
+  }
 
-    } catch (Throwable ex) {
-      if (verbosity >= 1) {
+  private PlanContext planOf(PreparedStmt prepared) {
+    if (prepared.isOk()) return prepared.plan();
+    if (verbosity < 1) return null;
+
+    final Statement stmt = prepared.stmt();
+    switch (prepared.status()) {
+      case PARSE_FAILED:
+        System.err.println("fail to parse sql " + stmt);
+        break;
+      case UNSUPPORTED:
+        System.err.println("fail to parse plan " + stmt + " due to unsupported SQL feature");
+        break;
+      case PLAN_FAILED:
+        System.err.println("fail to parse plan " + stmt + " due to " + prepared.error());
+        break;
+      case EXCEPTION:
         System.err.println("fail to parse sql/plan " + stmt + " due to exception");
-        ex.printStackTrace();
-      }
-      return null;
+        prepared.exception().printStackTrace();
+        break;
     }
+    return null;
   }
 
   private void storeRules() {
     ArrayList<Integer> rules = new ArrayList<>(ruleRecord.keySet());
     Collections.sort(rules);
     for (Integer ruleId : rules) {
-      IOSupport.appendTo(
-              rulesOut,
+      ResultSink.of(rulesOut).append(
               writer -> {
                 writer.printf(
                         "%d\t%s\n",
@@ -277,6 +319,17 @@ public class RewriteQuery implements Runner {
     }
   }
 
+  private void storeRuleStatistics() throws IOException {
+    if (ruleStatistics == null) return;
+    if (single) {
+      ruleStatistics.dump(new PrintWriter(System.out, true));
+      return;
+    }
+    try (final PrintWriter writer = IOSupport.newPrintWriter(ruleStatsOut)) {
+      ruleStatistics.dump(writer);
+    }
+  }
+
   private static boolean isTooComplex(String sql) {
     return countOccurrences(sql.toLowerCase(Locale.ROOT), "join") >= 10;
   }
@@ -59,5 +59,7 @@ public class UpdateOptStmts implements Runner {
         UpdateStmts.updateCalciteOptStmts(Statement.mkCalcite(app, stmtId, rawSql, trace));
       else UpdateStmts.updateOptStmts(Statement.mk(app, stmtId, rawSql, trace), optimizerType);
     }
+
+    if (!calcite) UpdateStmts.flushOptStmts(optimizerType);
   }
 }
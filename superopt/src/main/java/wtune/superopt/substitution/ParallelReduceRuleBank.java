@@ -0,0 +1,234 @@
+package wtune.superopt.substitution;
+
+import me.tongfei.progressbar.ProgressBar;
+import wtune.common.utils.ListSupport;
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.util.Fingerprint;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableCollection;
+import static wtune.superopt.substitution.ReduceRuleBank.*;
+
+/**
+ * Parallel counterpart of {@link ReduceRuleBank}.
+ *
+ * <p>The sequential reducer decides rules one by one, each decision observing the bank left by
+ * the previous ones. Here the decisions are made speculatively in waves: every pending rule is
+ * checked concurrently against an immutable snapshot of the bank, while recording the
+ * fingerprints that the optimizer looked up during the check. Then the outcomes are committed in
+ * the original order. An outcome is committed only if none of the looked-up fingerprints belongs
+ * to a rule that is removed earlier in the same wave or whose decision is still unsettled, since
+ * otherwise the snapshot may differ from what the sequential reducer would have seen. Rules failing
+ * this check are re-evaluated in the next wave against the updated snapshot. The first pending rule
+ * is always committed, so each wave makes progress, and the result is identical to the sequential
+ * one regardless of the parallelism.
+ */
+class ParallelReduceRuleBank {
+  private final SubstitutionBank bank;
+  private final int parallelism;
+
+  ParallelReduceRuleBank(SubstitutionBank bank, int parallelism) {
+    if (parallelism <= 0) throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+    this.bank = bank;
+    this.parallelism = parallelism;
+  }
+
+  SubstitutionBank reduce() {
+    removeUselessRules(bank);
+
+    final List<Substitution> rules = new ArrayList<>(bank.rules());
+    // Computed up-front: both lazily initialize the rule's naming, which is not thread-safe.
+    final Map<Substitution, String> fingerprints = new IdentityHashMap<>(rules.size());
+    for (Substitution rule : rules) {
+      rule.canonicalStringify();
+      fingerprints.put(rule, Fingerprint.mk(rule._0()).toString());
+    }
+
+    final Set<Substitution> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+    final ExecutorService threadPool = Executors.newFixedThreadPool(parallelism);
+
+    try (final ProgressBar pb = new ProgressBar("Reduce", rules.size())) {
+      List<Substitution> pending = rules;
+      int wave = 0;
+      while (!pending.isEmpty()) {
+        final Snapshot snapshot = new Snapshot(rules, fingerprints, removed, bank.isExtended());
+        final List<Future<Outcome>> futures = new ArrayList<>(pending.size());
+        for (Substitution rule : pending)
+          futures.add(threadPool.submit(() -> speculate(snapshot, rule)));
+
+        final Set<String> unsettled = new HashSet<>();
+        final List<Substitution> deferred = new ArrayList<>();
+        for (int i = 0, bound = pending.size(); i < bound; ++i) {
+          final Substitution rule = pending.get(i);
+          final Outcome outcome = await(futures.get(i));
+
+          if (!Collections.disjoint(outcome.probed, unsettled)) {
+            deferred.add(rule);
+            unsettled.add(fingerprints.get(rule));
+            continue;
+          }
+
+          pb.step();
+          if (outcome.error != null) System.err.println(wave + " " + rule);
+          if (outcome.isImplied) {
+            removed.add(rule);
+            unsettled.add(fingerprints.get(rule));
+          }
+        }
+
+        pending = deferred;
+        ++wave;
+      }
+
+    } finally {
+      threadPool.shutdownNow();
+    }
+
+    for (Substitution rule : removed) bank.remove(rule);
+    return bank;
+  }
+
+  private static Outcome speculate(Snapshot snapshot, Substitution rule) {
+    final Set<String> probed = new HashSet<>();
+    try {
+      final PlanContext plan = mkProbingPlan(rule);
+      if (plan == null) return new Outcome(true, probed, null);
+
+      final boolean isCappedByProj = completePlan(plan);
+
+      final Set<String> optimized0 =
+          optimizeAsString(plan, snapshot.probe(null, probed), isCappedByProj);
+      final Set<String> optimized1 =
+          optimizeAsString(plan, snapshot.probe(rule, probed), isCappedByProj);
+
+      return new Outcome(isImplied(plan, optimized0, optimized1), probed, null);
+
+    } catch (Throwable ex) {
+      // Consistent with the sequential reducer: a rule that breaks the optimizer is dropped.
+      return new Outcome(true, probed, ex);
+    }
+  }
+
+  private static Outcome await(Future<Outcome> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+  }
+
+  private static class Outcome {
+    private final boolean isImplied;
+    private final Set<String> probed;
+    private final Throwable error;
+
+    private Outcome(boolean isImplied, Set<String> probed, Throwable error) {
+      this.isImplied = isImplied;
+      this.probed = probed;
+      this.error = error;
+    }
+  }
+
+  /** Immutable fingerprint index over the rules that survive so far. */
+  private static class Snapshot {
+    private final List<Substitution> rules;
+    private final Set<Substitution> members; // by identity, for contains()
+    private final Map<String, List<Substitution>> fingerprintIndex;
+    private final boolean isExtended;
+
+    private Snapshot(
+        List<Substitution> allRules,
+        Map<Substitution, String> fingerprints,
+        Set<Substitution> removed,
+        boolean isExtended) {
+      this.rules = new ArrayList<>(allRules.size() - removed.size());
+      this.members = Collections.newSetFromMap(new IdentityHashMap<>(allRules.size()));
+      this.fingerprintIndex = new HashMap<>(2048);
+      this.isExtended = isExtended;
+
+      for (Substitution rule : allRules) {
+        if (removed.contains(rule)) continue;
+        rules.add(rule);
+        members.add(rule);
+        final String fingerprint = fingerprints.get(rule);
+        fingerprintIndex.computeIfAbsent(fingerprint, ignored -> new ArrayList<>(32)).add(rule);
+      }
+    }
+
+    private SubstitutionBank probe(Substitution excluded, Set<String> probed) {
+      return new ProbingBank(this, excluded, probed);
+    }
+  }
+
+  /**
+   * Read-only view of a snapshot, optionally hiding one rule, that records every fingerprint
+   * looked up through it.
+   */
+  private static class ProbingBank implements SubstitutionBank {
+    private final Snapshot snapshot;
+    private final Substitution excluded;
+    private final Set<String> probed;
+
+    private ProbingBank(Snapshot snapshot, Substitution excluded, Set<String> probed) {
+      this.snapshot = snapshot;
+      this.excluded = excluded;
+      this.probed = probed;
+    }
+
+    @Override
+    public int size() {
+      return snapshot.rules.size() - (excluded == null ? 0 : 1);
+    }
+
+    @Override
+    public boolean add(Substitution substitution) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Substitution rule) {
+      return rule != excluded && snapshot.members.contains(rule);
+    }
+
+    @Override
+    public boolean isExtended() {
+      return snapshot.isExtended;
+    }
+
+    @Override
+    public void remove(Substitution substitution) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeIf(Predicate<Substitution> check) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Substitution> rules() {
+      if (excluded == null) return unmodifiableCollection(snapshot.rules);
+      return ListSupport.filter(snapshot.rules, it -> it != excluded);
+    }
+
+    @Override
+    public Iterable<Substitution> ruleOfFingerprint(Fingerprint fingerprint) {
+      final String key = fingerprint.fingerprint();
+      probed.add(key);
+
+      final List<Substitution> rules = snapshot.fingerprintIndex.getOrDefault(key, emptyList());
+      if (excluded == null || !rules.contains(excluded)) return rules;
+      return ListSupport.filter(rules, it -> it != excluded);
+    }
+  }
+}
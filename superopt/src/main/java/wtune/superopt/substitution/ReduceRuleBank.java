@@ -27,13 +27,7 @@ class ReduceRuleBank {
   }
 
   SubstitutionBank reduce() {
-    addOptimizerTweaks(TWEAK_DISABLE_JOIN_FLIP);
-    if (bank.isExtended()) addOptimizerTweaks(TWEAK_ENABLE_EXTENSIONS);
-
-    bank.removeIf(ReduceRuleBank::isUselessHeuristic1);
-    bank.removeIf(ReduceRuleBank::isUselessHeuristic2);
-    bank.removeIf(ReduceRuleBank::isJoinFlipRule);
-    if (bank.isExtended()) bank.removeIf(ReduceRuleBank::isWrongDueToBug);
+    removeUselessRules(bank);
 
     try (final ProgressBar pb = new ProgressBar("Reduce", bank.size())) {
       final List<Substitution> rules = new ArrayList<>(bank.rules());
@@ -57,6 +51,16 @@ class ReduceRuleBank {
     return bank;
   }
 
+  static void removeUselessRules(SubstitutionBank bank) {
+    addOptimizerTweaks(TWEAK_DISABLE_JOIN_FLIP);
+    if (bank.isExtended()) addOptimizerTweaks(TWEAK_ENABLE_EXTENSIONS);
+
+    bank.removeIf(ReduceRuleBank::isUselessHeuristic1);
+    bank.removeIf(ReduceRuleBank::isUselessHeuristic2);
+    bank.removeIf(ReduceRuleBank::isJoinFlipRule);
+    if (bank.isExtended()) bank.removeIf(ReduceRuleBank::isWrongDueToBug);
+  }
+
   private static boolean isUselessHeuristic1(Substitution rule) {
     // All LHS attrs symbols are required equal.
     final Constraints constraints = rule.constraints();
@@ -99,17 +103,22 @@ class ReduceRuleBank {
 
     final boolean isCappedByProj = completePlan(plan);
 
-    final String str = stringifyTree(plan, plan.root());
     final Set<String> optimized0 = optimizeAsString(plan, bank, isCappedByProj);
     bank.remove(rule);
     final Set<String> optimized1 = optimizeAsString(plan, bank, isCappedByProj);
+
+    return isImplied(plan, optimized0, optimized1);
+  }
+
+  static boolean isImplied(PlanContext plan, Set<String> optimized0, Set<String> optimized1) {
+    final String str = stringifyTree(plan, plan.root());
     optimized0.remove(str);
     optimized1.remove(str);
 
     return !optimized1.isEmpty() && optimized1.containsAll(optimized0);
   }
 
-  private static Set<String> optimizeAsString(
+  static Set<String> optimizeAsString(
       PlanContext plan, SubstitutionBank rules, boolean isCappedByProj) {
     final Optimizer optimizer = Optimizer.mk(rules);
     //    optimizer.setTracing(true);
@@ -123,7 +132,7 @@ class ReduceRuleBank {
     return SetSupport.map(optimized, it -> stringifyTree(it, it.root(), true));
   }
 
-  private static boolean completePlan(PlanContext plan) {
+  static boolean completePlan(PlanContext plan) {
     final int oldRoot = plan.root();
     final PlanKind oldRootKind = plan.kindOf(oldRoot);
     if (oldRootKind != PlanKind.Join && !oldRootKind.isFilter()) return false;
@@ -141,7 +150,7 @@ class ReduceRuleBank {
     return true;
   }
 
-  private static PlanContext mkProbingPlan(Substitution rule) {
+  static PlanContext mkProbingPlan(Substitution rule) {
     final var pair = rule.isExtended() ? SubstitutionSupport.translateAsPlan2(rule) : SubstitutionSupport.translateAsPlan(rule);
     final PlanContext left = pair.getLeft(), right = pair.getRight();
     if (left == null || right == null) return null;
@@ -37,6 +37,11 @@ public class SubstitutionSupport {
     return new ReduceRuleBank(bank).reduce();
   }
 
+  public static SubstitutionBank reduceBank(SubstitutionBank bank, int parallelism) {
+    if (parallelism <= 1) return reduceBank(bank);
+    return new ParallelReduceRuleBank(bank, parallelism).reduce();
+  }
+
   public static Pair<PlanContext, PlanContext> translateAsPlan(Substitution rule) {
     return new PlanTranslator(rule).translate();
   }
@@ -1,6 +1,7 @@
 package wtune.superopt.util;
 
 import wtune.sql.ast.constants.JoinKind;
+import wtune.sql.plan.InfoCache;
 import wtune.sql.plan.PlanContext;
 import wtune.sql.plan.PlanKind;
 import wtune.superopt.fragment.OpKind;
@@ -12,11 +13,16 @@ public class PlanComplexity implements Complexity {
   private final int[] opCounts;
 
   PlanComplexity(PlanContext plan, int rootId) {
-    this.opCounts = new int[OpKind.values().length + 1];
-    countOps(plan, rootId);
+    this.opCounts = countOps(plan, rootId);
   }
 
-  private void countOps(PlanContext plan, int nodeId) {
+  /* The counts of each subtree is cached in the plan's InfoCache and composed from children's. */
+  private static int[] countOps(PlanContext plan, int nodeId) {
+    final InfoCache infoCache = plan.infoCache();
+    final int[] cached = infoCache.getOpCountsOf(nodeId);
+    if (cached != null) return cached;
+
+    final int[] opCounts = new int[OpKind.values().length + 1];
     final PlanKind nodeKind = plan.kindOf(nodeId);
     if (nodeKind == PlanKind.Join) {
       final JoinKind joinKind = joinKindOf(plan, nodeId);
@@ -30,8 +36,13 @@ public class PlanComplexity implements Complexity {
       if (nodeKind == PlanKind.Proj && isDedup(plan, nodeId)) ++opCounts[opCounts.length - 1];
     }
 
-    for (int i = 0, bound = nodeKind.numChildren(); i < bound; i++)
-      countOps(plan, plan.childOf(nodeId, i));
+    for (int i = 0, bound = nodeKind.numChildren(); i < bound; i++) {
+      final int[] childCounts = countOps(plan, plan.childOf(nodeId, i));
+      for (int j = 0; j < opCounts.length; ++j) opCounts[j] += childCounts[j];
+    }
+
+    infoCache.putOpCountsOf(nodeId, opCounts);
+    return opCounts;
   }
 
   @Override
@@ -0,0 +1,97 @@
+package wtune.superopt.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a stage of the optimizer or the rule enumerator.
+ *
+ * <p>Recorded with {@code -XX:StartFlightRecording=filename=<file>.jfr}, and summarized by the
+ * runner `AnalyzeEvents`. Unless a recording is running, {@link #begin(String)} returns null and
+ * nothing is allocated, thus the instrumentation costs only a flag check.
+ *
+ * <p>Usage:
+ *
+ * <pre>{@code
+ * final StageEvent event = StageEvent.begin(StageEvent.MATCH);
+ * String outcome = "ERROR";
+ * try {
+ *   ... // the stage
+ *   outcome = ...;
+ * } finally {
+ *   StageEvent.end(event, ruleId, outcome);
+ * }
+ * }</pre>
+ *
+ * The subject (the statement under optimization, or the template pair under enumeration) is
+ * per-thread, set by the runner via {@link #setSubject(String)}.
+ */
+@Name(StageEvent.NAME)
+@Label("WeTune Stage")
+@Category({"WeTune"})
+@Description("A stage of the optimizer or the rule enumerator")
+@StackTrace(false)
+public class StageEvent extends Event {
+  public static final String NAME = "wtune.Stage";
+
+  public static final String PREPROCESS = "preprocess";
+  public static final String FAST_MATCH = "fastMatchRules";
+  public static final String MATCH = "match";
+  public static final String INSTANTIATE = "assembleModifiedPlan";
+  public static final String NORMALIZE = "normalizePlan";
+  public static final String ENUMERATE = "enumerate";
+  public static final String VERIFY = "verify";
+
+  private static final EventType TYPE = EventType.getEventType(StageEvent.class);
+  private static final ThreadLocal<String> SUBJECT = new ThreadLocal<>();
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Subject")
+  @Description("The statement, or the template pair")
+  String subject;
+
+  @Label("Rule")
+  @Description("Id of the rule involved, or 0 if none")
+  int rule;
+
+  @Label("Outcome")
+  String outcome;
+
+  public static boolean isRecording() {
+    return TYPE.isEnabled();
+  }
+
+  public static void setSubject(String subject) {
+    SUBJECT.set(subject);
+  }
+
+  /** Returns the started event, or null if the event is not being recorded. */
+  public static StageEvent begin(String stage) {
+    if (!TYPE.isEnabled()) return null;
+    final StageEvent event = new StageEvent();
+    event.stage = stage;
+    event.begin();
+    return event;
+  }
+
+  public static void end(StageEvent event, String outcome) {
+    end(event, 0, outcome);
+  }
+
+  public static void end(StageEvent event, int rule, String outcome) {
+    if (event == null) return;
+    event.end();
+    if (!event.shouldCommit()) return;
+    event.subject = SUBJECT.get();
+    event.rule = rule;
+    event.outcome = outcome;
+    event.commit();
+  }
+}
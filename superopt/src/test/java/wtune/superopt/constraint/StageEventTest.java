@@ -0,0 +1,80 @@
+package wtune.superopt.constraint;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wtune.superopt.fragment.Fragment;
+import wtune.superopt.runner.AnalyzeEvents;
+import wtune.superopt.util.StageEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.superopt.constraint.ConstraintSupport.enumConstraints;
+
+@Tag("enumeration")
+@Tag("fast")
+class StageEventTest {
+  private static final String SUBJECT = "Proj(InnerJoin(Input,Input))|Proj(Input)";
+
+  private static String analyze(Path file) throws Exception {
+    final AnalyzeEvents analyzer = new AnalyzeEvents();
+    analyzer.prepare(new String[] {"AnalyzeEvents", "-f", file.toString()});
+
+    final PrintStream stdout = System.out;
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(buffer, true));
+    try {
+      analyzer.run();
+    } finally {
+      System.setOut(stdout);
+    }
+    return buffer.toString();
+  }
+
+  @Test
+  void testRecordEnumeration(@TempDir Path dir) throws Exception {
+    final Path file = dir.resolve("enum.jfr");
+    final Fragment f0 = Fragment.parse("Proj(InnerJoin(Input,Input))", null);
+    final Fragment f1 = Fragment.parse("Proj(Input)", null);
+
+    try (final Recording recording = new Recording()) {
+      recording.enable(StageEvent.class);
+      recording.start();
+      assertTrue(StageEvent.isRecording());
+      StageEvent.setSubject(SUBJECT);
+      assertFalse(enumConstraints(f0, f1, 900000).isEmpty());
+      recording.stop();
+      recording.dump(file);
+    } finally {
+      StageEvent.setSubject(null);
+    }
+
+    final Map<String, Integer> counts = new HashMap<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (!event.getEventType().getName().equals(StageEvent.NAME)) continue;
+      final String stage = event.getString("stage"), outcome = event.getString("outcome");
+      assertEquals(SUBJECT, event.getString("subject"));
+      assertNotNull(outcome, stage);
+      assertFalse(outcome.equals("ERROR") || outcome.equals("??"), stage + ": " + outcome);
+      counts.merge(stage, 1, Integer::sum);
+    }
+    assertTrue(counts.getOrDefault(StageEvent.ENUMERATE, 0) > 0);
+    assertTrue(counts.getOrDefault(StageEvent.VERIFY, 0) > 0);
+
+    final String summary = analyze(file);
+    assertTrue(summary.contains("===== Stages ====="), summary);
+    assertTrue(summary.contains(StageEvent.ENUMERATE + "\t"), summary);
+    assertTrue(summary.contains(StageEvent.VERIFY + "\t"), summary);
+    // Verification is nested in enumeration, thus the subject counts the enumeration only.
+    final int numEnums = counts.get(StageEvent.ENUMERATE);
+    assertTrue(summary.contains(SUBJECT + "\t" + numEnums + "\t"), summary);
+  }
+}
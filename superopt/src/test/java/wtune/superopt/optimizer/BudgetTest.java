@@ -0,0 +1,56 @@
+package wtune.superopt.optimizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.substitution.Substitution;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.sql.plan.PlanSupport.translateAsAst;
+import static wtune.superopt.TestHelper.bankForTest;
+import static wtune.superopt.TestHelper.parsePlan;
+import static wtune.superopt.optimizer.OptimizerSupport.TWEAK_KEEP_ORIGINAL_PLAN;
+import static wtune.superopt.optimizer.OptimizerSupport.setOptimizerTweaks;
+
+@Tag("optimizer")
+@Tag("fast")
+public class BudgetTest {
+  private static final String SQL =
+      "SELECT DISTINCT a.i FROM a "
+          + "WHERE a.i IN (SELECT b.x FROM b WHERE b.y IN (SELECT c.u FROM c WHERE c.v = 'x'))";
+
+  private static int numProbed(RuleStatistics stats) {
+    int total = 0;
+    for (Substitution rule : stats.rules()) total += stats.metricsOf(rule).numProbed.value();
+    return total;
+  }
+
+  private static Set<PlanContext> optimize(int budget, RuleStatistics stats) {
+    final Optimizer optimizer = Optimizer.mk(bankForTest());
+    optimizer.setBudget(budget);
+    optimizer.setRuleStatistics(stats);
+    return optimizer.optimize(parsePlan(SQL));
+  }
+
+  @Test
+  void testBudget() {
+    setOptimizerTweaks(TWEAK_KEEP_ORIGINAL_PLAN);
+    try {
+      final RuleStatistics unlimited = RuleStatistics.mk();
+      assertFalse(optimize(0, unlimited).isEmpty());
+
+      for (int budget : new int[] {1, 2, 8}) {
+        final RuleStatistics stats = RuleStatistics.mk();
+        final Set<PlanContext> plans = optimize(budget, stats);
+        // The exploration stops early, but still yields plans that are complete.
+        assertFalse(plans.isEmpty(), "budget " + budget);
+        for (PlanContext plan : plans) assertNotNull(translateAsAst(plan, plan.root(), false));
+        assertTrue(numProbed(stats) <= numProbed(unlimited), "budget " + budget);
+      }
+    } finally {
+      setOptimizerTweaks(0);
+    }
+  }
+}
@@ -5,11 +5,14 @@ import org.junit.jupiter.api.Test;
 import wtune.sql.plan.PlanContext;
 import wtune.sql.plan.PlanSupport;
 import wtune.superopt.fragment.Join;
+import wtune.superopt.fragment.Op;
 import wtune.superopt.substitution.Substitution;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.superopt.TestHelper.bankForTest;
 
 @Tag("fast")
 @Tag("optimizer")
@@ -55,4 +58,80 @@ public class JoinMatcherTest {
 
     helper.mkJoinTree("c Join d On d.p=c.u Join a On d.q=a.i");
   }
+
+  private static final String[] JOIN_TREES = {
+    "a Join b On a.i=b.x",
+    "a Join b On b.x=a.i",
+    "a Left Join b On a.j=b.x",
+    "b Left Join a On b.y=a.i",
+    "a Join b On a.i=b.x Join c On b.y=c.u",
+    "a Join b On a.i=b.x Left Join c On b.y=c.u",
+    "a Join b On a.i=b.x Join c On a.j=c.u Join d On c.u=d.p",
+    "d Join c On d.p=c.u Join a On d.q=a.i",
+    "c Join d On d.p=c.u Join a On d.q=a.i",
+    "a Join b On a.i=b.x And a.j=b.y Join c On c.u=b.z",
+    "a Join b On a.i=b.x Join c On a.j>c.u",
+  };
+
+  private static void collectJoins(Op op, List<Join> joins) {
+    if (op.kind().isJoin()) joins.add((Join) op);
+    for (Op pred : op.predecessors()) collectJoins(pred, joins);
+  }
+
+  private static String keysOf(Match match, Join op) {
+    final Model model = match.model();
+    return model.ofAttrs(op.lhsAttrs()) + "|" + model.ofAttrs(op.rhsAttrs());
+  }
+
+  @Test
+  void testProbeSameAsReRoot() {
+    final List<Substitution> rules = new ArrayList<>(bankForTest().rules());
+    rules.add(rule);
+
+    int numAccepted = 0, numRejected = 0;
+    for (String snippet : JOIN_TREES) {
+      final LinearJoinTree tree = helper.mkJoinTree(snippet);
+      final PlanContext plan = helper.plan();
+
+      for (int i = tree.numJoiners() - 1; i >= -1; --i) {
+        if (!tree.isEligibleRoot(i)) continue;
+        final int rootJoineeIdx = i;
+        final int joiner = tree.joinerOf(i);
+        final PlanContext reRooted = tree.mkRootedBy(i);
+
+        for (Substitution candidate : rules) {
+          final List<Join> joins = new ArrayList<>();
+          collectJoins(candidate._0().root(), joins);
+
+          for (Join op : joins) {
+            // Copy and re-root first, then match in the copy.
+            final Match expected =
+                new Match(candidate).setSourcePlan(reRooted).deriveIfMatch(op, joiner, reRooted);
+            // Match in the original plan as if it were re-rooted.
+            final Match actual =
+                new Match(candidate)
+                    .setSourcePlan(plan)
+                    .deriveIfJoinMatch(
+                        op, joiner, tree.isFlippedBy(i), () -> tree.mkRootedBy(rootJoineeIdx));
+
+            final String msg = "%s rooted by %d, rule %d".formatted(snippet, i, candidate.id());
+            assertEquals(expected != null, actual != null, msg);
+            if (expected == null) {
+              ++numRejected;
+              continue;
+            }
+            ++numAccepted;
+            assertEquals(keysOf(expected, op), keysOf(actual, op), msg);
+            assertEquals(
+                PlanSupport.stringifyTree(reRooted, reRooted.root()),
+                PlanSupport.stringifyTree(actual.sourcePlan(), actual.sourcePlan().root()),
+                msg);
+          }
+        }
+      }
+    }
+
+    assertTrue(numAccepted > 0);
+    assertTrue(numRejected > 0);
+  }
 }
@@ -0,0 +1,77 @@
+package wtune.superopt.optimizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.common.utils.ArraySupport;
+import wtune.sql.plan.PlanContext;
+import wtune.superopt.fragment.OpKind;
+import wtune.superopt.util.Complexity;
+
+import java.util.Comparator;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.superopt.TestHelper.bankForTest;
+import static wtune.superopt.TestHelper.parsePlan;
+import static wtune.superopt.optimizer.OptimizerSupport.TWEAK_KEEP_ORIGINAL_PLAN;
+import static wtune.superopt.optimizer.OptimizerSupport.setOptimizerTweaks;
+
+@Tag("optimizer")
+@Tag("fast")
+public class MemoTest {
+  private static SubPlan subPlanOf(String sql) {
+    final PlanContext plan = parsePlan(sql);
+    return new SubPlan(plan, plan.root());
+  }
+
+  @Test
+  void testCompact() {
+    final SubPlan costly = subPlanOf("SELECT a.i FROM a WHERE a.i IN (SELECT b.x FROM b)");
+    final SubPlan cheap = subPlanOf("SELECT a.i FROM a");
+
+    final Memo memo = new Memo(1);
+    final Set<SubPlan> group = memo.mkEqClass(costly);
+    group.add(cheap); // evicts `costly`
+    assertFalse(group.contains(costly));
+
+    memo.compact();
+    assertFalse(memo.keys().contains(costly.toString()));
+    assertTrue(memo.isRegistered(costly));
+    assertEquals(1, memo.numDominated());
+    // The dominated plan still resolves to its group.
+    assertEquals(group, memo.eqClassOf(costly));
+    assertEquals(group, memo.mkEqClass(costly));
+    assertTrue(memo.eqClassOf(costly).contains(cheap));
+  }
+
+  private static int[] bestCostOf(Set<PlanContext> plans) {
+    final Comparator<int[]> cmp =
+        Comparator.<int[]>comparingInt(it -> it[OpKind.INPUT.ordinal()])
+            .thenComparingInt(ArraySupport::sum);
+    int[] best = null;
+    for (PlanContext plan : plans) {
+      final int[] cost = Complexity.mk(plan, plan.root()).opCounts();
+      if (best == null || cmp.compare(cost, best) < 0) best = cost;
+    }
+    return best;
+  }
+
+  @Test
+  void testBounded() {
+    final String sql =
+        "SELECT DISTINCT a.i FROM a "
+            + "WHERE a.i IN (SELECT b.x FROM b WHERE b.y IN (SELECT c.u FROM c))";
+    setOptimizerTweaks(TWEAK_KEEP_ORIGINAL_PLAN);
+    try {
+      final Optimizer unbounded = Optimizer.mk(bankForTest());
+      final int[] expected = bestCostOf(unbounded.optimize(parsePlan(sql)));
+      assertNotNull(expected);
+
+      final Optimizer bounded = Optimizer.mk(bankForTest());
+      bounded.setMemoCapacity(Math.max(16, unbounded.memoPeakSize() / 2));
+      assertArrayEquals(expected, bestCostOf(bounded.optimize(parsePlan(sql))));
+    } finally {
+      setOptimizerTweaks(0);
+    }
+  }
+}
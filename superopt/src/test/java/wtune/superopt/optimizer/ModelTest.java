@@ -0,0 +1,97 @@
+package wtune.superopt.optimizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.common.datasource.DbSupport;
+import wtune.sql.SqlSupport;
+import wtune.sql.plan.PlanContext;
+import wtune.sql.plan.PlanSupport;
+import wtune.sql.plan.Value;
+import wtune.sql.plan.ValuesRegistry;
+import wtune.sql.schema.SchemaSupport;
+import wtune.superopt.fragment.Input;
+import wtune.superopt.fragment.Join;
+import wtune.superopt.fragment.Symbol;
+import wtune.superopt.substitution.Substitution;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("fast")
+@Tag("optimizer")
+public class ModelTest {
+  private final Substitution rule =
+      Substitution.parse(
+          "InnerJoin<a0 a1>(Input<t0>,Input<t1>)|"
+              + "LeftJoin<a2 a3>(Input<t2>,Input<t3>)|"
+              + "AttrsSub(a0,t0);AttrsSub(a1,t1);NotNull(t0,a0);Reference(t0,a0,t1,a1);"
+              + "TableEq(t2,t0);TableEq(t3,t1);AttrsEq(a2,a0);AttrsEq(a3,a1)");
+
+  @Test
+  void testRollback() {
+    final Join join = (Join) rule._0().root();
+    final Symbol t0 = ((Input) join.predecessors()[0]).table();
+    final Symbol t1 = ((Input) join.predecessors()[1]).table();
+
+    final Model model = new Model(rule.constraints());
+    assertTrue(model.assign(t0, 1));
+
+    final int mark = model.mark();
+    assertTrue(model.assign(t1, 2));
+    assertTrue(model.assign(t0, 3));
+    assertEquals(3, model.ofTable(t0));
+
+    final Model derived = model.derive();
+    model.rollback(mark);
+
+    assertEquals(1, model.ofTable(t0));
+    assertFalse(model.isAssigned(t1));
+    assertEquals(3, derived.ofTable(t0));
+    assertEquals(2, derived.ofTable(t1));
+    assertFalse(model.isAssigned(rule._1().symbols().symbolsOf(Symbol.Kind.TABLE).get(0)));
+  }
+
+  @Test
+  void testWatchers() {
+    final Join join = (Join) rule._0().root();
+    final SymbolIndex index = SymbolIndex.of(rule.constraints());
+    assertSame(index, SymbolIndex.of(rule.constraints()));
+
+    // AttrsSub(a0,t0) and Reference(t0,a0,t1,a1); NotNull is not checked.
+    assertArrayEquals(new int[] {0, 3}, index.watchersOf(index.ordinalOf(join.lhsAttrs())));
+    assertArrayEquals(new int[] {1, 3}, index.watchersOf(index.ordinalOf(join.rhsAttrs())));
+  }
+
+  @Test
+  void testCacheAcrossPlans() {
+    final PlanContext plan0 =
+        PlanSupport.assemblePlan(
+            SqlSupport.parseSql(
+                DbSupport.MySQL,
+                "Select sub.x, sub.y From (Select a.i As x, a.j + 1 As y From a) As sub"),
+            SchemaSupport.parseSchema(DbSupport.MySQL, "Create Table a (i int, j int)"));
+    final PlanContext plan1 = plan0.copy();
+
+    // In plan1, `x` is rebound to the computed column, thus no longer resolves to `a.i`.
+    final ValuesRegistry valuesReg = plan1.valuesReg();
+    final Value x = plan0.valuesReg().valuesOf(plan0.root()).get(0);
+    final Value y = plan0.valuesReg().valuesOf(plan0.root()).get(1);
+    valuesReg.bindValueRefs(valuesReg.exprOf(x), valuesReg.valueRefsOf(valuesReg.exprOf(y)));
+    assertNotNull(PlanSupport.tryResolveColumn(plan0, x));
+    assertNull(PlanSupport.tryResolveColumn(plan1, x));
+
+    final Join join = (Join) rule._0().root();
+    final ConstraintCache cache = new ConstraintCache();
+    final Model model1 = new Model(rule.constraints(), cache).setPlan(plan1);
+    assertTrue(model1.assign(join.lhsAttrs(), List.of(x)));
+    assertTrue(model1.assign(join.rhsAttrs(), List.of(x)));
+    assertFalse(model1.checkConstraints());
+
+    // The failure in plan1 must not leak into plan0.
+    final Model model0 = new Model(rule.constraints(), cache).setPlan(plan0);
+    assertTrue(model0.assign(join.lhsAttrs(), List.of(x)));
+    assertTrue(model0.assign(join.rhsAttrs(), List.of(x)));
+    assertTrue(model0.checkConstraints());
+  }
+}
@@ -0,0 +1,62 @@
+package wtune.superopt.optimizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.sql.plan.PlanContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.sql.plan.PlanSupport.translateAsAst;
+import static wtune.superopt.TestHelper.bankForTest;
+import static wtune.superopt.TestHelper.parsePlan;
+
+@Tag("optimizer")
+@Tag("fast")
+public class RewriteCacheTest {
+  // Sharing sub-queries and join cores, some of which refer to attributes of different outer
+  // tables, or sit in plans where a rewrite fails to normalize.
+  private static final String[] SQLS = {
+    "SELECT a.i FROM a WHERE a.i IN (SELECT b.x FROM b)",
+    "SELECT a.j FROM a WHERE a.i IN (SELECT b.x FROM b) AND a.k = 1",
+    "SELECT c.v FROM c WHERE c.u IN (SELECT b.x FROM b)",
+    "SELECT DISTINCT a.i FROM a WHERE a.i IN (SELECT b.x FROM b WHERE b.y IN (SELECT c.u FROM c))",
+    "SELECT DISTINCT b.y FROM b WHERE b.y IN (SELECT c.u FROM c)",
+    "SELECT a.i FROM a WHERE EXISTS (SELECT 1 FROM b WHERE b.x = a.i)",
+    "SELECT c.u FROM c WHERE EXISTS (SELECT 1 FROM b WHERE b.x = c.u)",
+    "SELECT d.p FROM d WHERE EXISTS (SELECT 1 FROM b WHERE b.x = d.p)",
+    "SELECT DISTINCT a.i FROM a INNER JOIN b ON a.i = b.x",
+    "SELECT a.i FROM a INNER JOIN b ON a.i = b.x WHERE b.y = 1",
+    "SELECT d.q FROM d INNER JOIN c ON d.p = c.u",
+    "SELECT d.q FROM d LEFT JOIN c ON d.p = c.u WHERE d.r = 1",
+    "SELECT COUNT(a.i) FROM a INNER JOIN b ON a.i = b.x GROUP BY a.j",
+    "SELECT a.i FROM a WHERE a.i IN (SELECT b.x FROM b INNER JOIN c ON b.y = c.u)",
+  };
+
+  private static Set<String> optimize(String sql, RewriteCache cache) {
+    final Optimizer optimizer = Optimizer.mk(bankForTest());
+    optimizer.setRewriteCache(cache);
+    final Set<String> optimized = new TreeSet<>();
+    for (PlanContext plan : optimizer.optimize(parsePlan(sql)))
+      optimized.add(translateAsAst(plan, plan.root(), false).toString());
+    return optimized;
+  }
+
+  @Test
+  void testSameAsUncached() {
+    final List<Set<String>> expected = new ArrayList<>(SQLS.length);
+    for (String sql : SQLS) expected.add(optimize(sql, null));
+
+    final RewriteCache cache = RewriteCache.mk();
+    // Twice, the latter round on a warm cache.
+    for (int round = 0; round < 2; ++round)
+      for (int i = 0; i < SQLS.length; ++i)
+        assertEquals(expected.get(i), optimize(SQLS[i], cache), "round " + round + ": " + SQLS[i]);
+
+    assertTrue(cache.size() > 0);
+    assertTrue(cache.numHits() > 0);
+  }
+}
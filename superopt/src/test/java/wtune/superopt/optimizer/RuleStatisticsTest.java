@@ -0,0 +1,55 @@
+package wtune.superopt.optimizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.superopt.substitution.Substitution;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("optimizer")
+@Tag("fast")
+public class RuleStatisticsTest {
+  private static final String RULE0 =
+      "Proj<a0 s0>(Input<t0>)|Proj*<a1 s1>(Input<t1>)|AttrsSub(a0,t0);Unique(t0,a0);TableEq(t1,t0);AttrsEq(a1,a0);SchemaEq(s1,s0)";
+  private static final String RULE1 =
+      "Proj*<a0 s0>(Input<t0>)|Proj<a1 s1>(Input<t1>)|AttrsSub(a0,t0);Unique(t0,a0);TableEq(t1,t0);AttrsEq(a1,a0);SchemaEq(s1,s0)";
+  private static final String RULE2 =
+      "Proj<a0 s0>(Input<t0>)|Proj<a1 s1>(Input<t1>)|AttrsSub(a0,t0);TableEq(t1,t0);AttrsEq(a1,a0);SchemaEq(s1,s0)";
+
+  @Test
+  void testArrange() {
+    final Substitution rule0 = Substitution.parse(RULE0);
+    final Substitution rule1 = Substitution.parse(RULE1);
+    final Substitution rule2 = Substitution.parse(RULE2);
+    final List<Substitution> candidates = List.of(rule0, rule1, rule2);
+
+    final RuleStatistics stats0 = RuleStatistics.mk();
+    assertEquals(candidates, stats0.arrange(candidates));
+
+    // rule0: never probed, rule1: productive, rule2: probed many times, never fired
+    final RuleStatistics stats1 = RuleStatistics.mk(10);
+    stats1.metricsOf(rule1).numProbed.add(4);
+    stats1.metricsOf(rule1).numFired.add(3);
+    stats1.metricsOf(rule1).numImproved.add(3);
+    stats1.metricsOf(rule2).numProbed.add(10);
+    stats0.accumulate(stats1);
+
+    assertEquals(List.of(rule1, rule0, rule2), stats0.arrange(candidates));
+    assertEquals(List.of(rule1, rule0), stats1.arrange(candidates));
+  }
+
+  @Test
+  void testAccumulate() {
+    final Substitution rule = Substitution.parse(RULE0);
+    final RuleStatistics stats0 = RuleStatistics.mk(), stats1 = RuleStatistics.mk();
+    stats0.metricsOf(rule).numProbed.add(2);
+    stats1.metricsOf(rule).numProbed.add(3);
+    stats1.metricsOf(rule).numFired.increment();
+
+    stats0.accumulate(stats1);
+    assertEquals(5, stats0.metricsOf(rule).numProbed.value());
+    assertEquals(1, stats0.metricsOf(rule).numFired.value());
+  }
+}
@@ -0,0 +1,184 @@
+package wtune.superopt.runner;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag("fast")
+class LeaseQueueTest {
+  @Test
+  void testClaimDisjoint(@TempDir Path dir) throws Exception {
+    try (final LeaseQueue q0 = LeaseQueue.open(dir, 10, 3, 60_000);
+        final LeaseQueue q1 = LeaseQueue.open(dir, 10, 3, 60_000)) {
+      assertEquals(4, q0.numBatches());
+      assertEquals(9, q0.begin(3));
+      assertEquals(10, q0.end(3));
+
+      final Set<Integer> claimed = new HashSet<>();
+      for (int i = 0; i < 2; ++i) {
+        assertTrue(claimed.add(q0.claim()));
+        assertTrue(claimed.add(q1.claim()));
+      }
+      assertEquals(Set.of(0, 1, 2, 3), claimed);
+
+      for (int batch : claimed) q0.complete(batch, Map.of());
+      assertTrue(q1.isFinished());
+      assertEquals(-1, q1.claim());
+    }
+  }
+
+  @Test
+  void testClaimConcurrently(@TempDir Path dir) throws Exception {
+    final int numThreads = 8;
+    final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try (final LeaseQueue q = LeaseQueue.open(dir, numThreads, 1, 60_000)) {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<Integer>> futures = new ArrayList<>(numThreads);
+      for (int i = 0; i < numThreads; ++i)
+        futures.add(
+            pool.submit(
+                () -> {
+                  start.await();
+                  return q.claim();
+                }));
+      start.countDown();
+
+      final Set<Integer> claimed = new HashSet<>();
+      for (Future<Integer> future : futures) assertTrue(claimed.add(future.get()));
+      assertEquals(numThreads, claimed.size());
+      assertFalse(claimed.contains(-1));
+
+      for (int batch : claimed) q.complete(batch, Map.of());
+      assertTrue(q.isFinished());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void testReclaimExpired(@TempDir Path dir) throws Exception {
+    try (final LeaseQueue q0 = LeaseQueue.open(dir, 1, 1, 60_000);
+        final LeaseQueue q1 = LeaseQueue.open(dir, 1, 1, 60_000)) {
+      assertEquals(0, q0.claim());
+
+      // The holder is gone for longer than the timeout.
+      final Path lease = dir.resolve("leases").resolve("0.0");
+      final long past = Files.getLastModifiedTime(lease).toMillis() - 120_000;
+      Files.setLastModifiedTime(lease, FileTime.fromMillis(past));
+      assertEquals(0, q1.claim());
+      assertTrue(Files.exists(dir.resolve("leases").resolve("0.1")));
+
+      q1.complete(0, Map.of("out.txt", "b\n"));
+      q0.complete(0, Map.of("out.txt", "a\n")); // the slow one publishes again
+      assertTrue(q0.isFinished());
+    }
+  }
+
+  @Test
+  void testReleaseThenClaim(@TempDir Path dir) throws Exception {
+    try (final LeaseQueue q0 = LeaseQueue.open(dir, 1, 1, 60_000);
+        final LeaseQueue q1 = LeaseQueue.open(dir, 1, 1, 60_000)) {
+      assertEquals(0, q0.claim());
+      q0.release(0);
+      // Claimable at once, at the next epoch.
+      assertEquals(0, q1.claim());
+      assertTrue(Files.exists(dir.resolve("leases").resolve("0.0")));
+      assertTrue(Files.exists(dir.resolve("leases").resolve("0.1")));
+      q1.complete(0, Map.of());
+      assertEquals(-1, q0.claim());
+    }
+  }
+
+  private static final int NUM_ITEMS = 40;
+  private static final long LEASE_TIMEOUT = 2_000;
+
+  /**
+   * A worker in a child JVM. It claims and completes batches until all are done. A crashing one
+   * halts after its first claim, leaving the lease to expire. Args: dir, crashing.
+   */
+  static class Worker {
+    public static void main(String[] args) throws Exception {
+      final Path dir = Path.of(args[0]);
+      final boolean crashing = Boolean.parseBoolean(args[1]);
+      final LeaseQueue queue = LeaseQueue.open(dir, NUM_ITEMS, 1, LEASE_TIMEOUT);
+      int batch;
+      while ((batch = queue.claim()) >= 0) {
+        if (crashing) Runtime.getRuntime().halt(0);
+        // Fails if another live worker has claimed it, since none is slow enough to expire.
+        Files.createFile(dir.resolve("claims").resolve(String.valueOf(batch)));
+        Thread.sleep(10);
+        queue.complete(batch, Map.of("out.txt", batch + "\n"));
+      }
+      queue.close();
+    }
+  }
+
+  private static List<Process> startWorkers(Path dir, int count, boolean crashing)
+      throws Exception {
+    final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    final List<Process> workers = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i)
+      workers.add(
+          new ProcessBuilder(
+                  java,
+                  "-cp",
+                  System.getProperty("java.class.path"),
+                  Worker.class.getName(),
+                  dir.toString(),
+                  String.valueOf(crashing))
+              .inheritIO()
+              .start());
+    return workers;
+  }
+
+  @Test
+  @Tag("slow")
+  @Timeout(120)
+  void testClaimAcrossJvms(@TempDir Path dir) throws Exception {
+    Files.createDirectories(dir.resolve("claims"));
+    // Leave two expired leases, which the others then race to take over.
+    for (Process crashed : startWorkers(dir, 2, true)) assertEquals(0, crashed.waitFor());
+    for (Process worker : startWorkers(dir, 4, false)) assertEquals(0, worker.waitFor());
+
+    try (final LeaseQueue q = LeaseQueue.open(dir, NUM_ITEMS, 1, LEASE_TIMEOUT)) {
+      assertTrue(q.isFinished());
+      q.merge("out.txt", dir.resolve("out.txt"));
+    }
+    final List<String> expected = new ArrayList<>(NUM_ITEMS);
+    for (int i = 0; i < NUM_ITEMS; ++i) expected.add(String.valueOf(i));
+    assertEquals(expected, Files.readAllLines(dir.resolve("out.txt")));
+    try (final var claims = Files.list(dir.resolve("claims"))) {
+      assertEquals(NUM_ITEMS, claims.count());
+    }
+  }
+
+  @Test
+  void testMerge(@TempDir Path dir) throws Exception {
+    try (final LeaseQueue q = LeaseQueue.open(dir, 3, 1, 60_000)) {
+      int batch;
+      while ((batch = q.claim()) >= 0) q.complete(batch, Map.of("out.txt", batch + "\n"));
+
+      final Path target = dir.resolve("out.txt");
+      q.merge("out.txt", target);
+      assertEquals("0\n1\n2\n", Files.readString(target));
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> LeaseQueue.open(dir, 4, 1, 60_000));
+  }
+}
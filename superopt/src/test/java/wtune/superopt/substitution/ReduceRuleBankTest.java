@@ -0,0 +1,36 @@
+package wtune.superopt.substitution;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static wtune.superopt.substitution.SubstitutionSupport.loadBank;
+
+@Tag("slow")
+@Tag("substitution")
+class ReduceRuleBankTest {
+  private static final Path RULES = Path.of("wtune_data", "rules", "rules.test.txt");
+
+  private static Set<Integer> idsOf(SubstitutionBank bank) {
+    final Set<Integer> ids = new TreeSet<>();
+    for (Substitution rule : bank.rules()) ids.add(rule.id());
+    return ids;
+  }
+
+  @Test
+  void testParallelSameAsSequential() throws IOException {
+    final Set<Integer> expected = idsOf(new ReduceRuleBank(loadBank(RULES)).reduce());
+
+    // Waves of several sizes, so that both commits and deferrals happen.
+    for (int parallelism : new int[] {2, 4, 16}) {
+      final SubstitutionBank reduced =
+          new ParallelReduceRuleBank(loadBank(RULES), parallelism).reduce();
+      assertEquals(expected, idsOf(reduced), "parallelism " + parallelism);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package wtune.superopt.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import wtune.sql.ast.constants.JoinKind;
+import wtune.sql.plan.PlanContext;
+import wtune.sql.plan.PlanKind;
+import wtune.superopt.fragment.OpKind;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static wtune.common.tree.TreeContext.NO_SUCH_NODE;
+import static wtune.sql.plan.PlanSupport.isDedup;
+import static wtune.sql.plan.PlanSupport.joinKindOf;
+import static wtune.superopt.TestHelper.parsePlan;
+
+@Tag("fast")
+public class ComplexityTest {
+  // Counts the ops from scratch, bypassing the cache in InfoCache.
+  private static void recount(PlanContext plan, int nodeId, int[] opCounts) {
+    final PlanKind kind = plan.kindOf(nodeId);
+    if (kind == PlanKind.Join) {
+      if (joinKindOf(plan, nodeId).isInner()) ++opCounts[OpKind.INNER_JOIN.ordinal()];
+      else ++opCounts[OpKind.LEFT_JOIN.ordinal()];
+    } else {
+      if (kind.ordinal() > PlanKind.Join.ordinal()) ++opCounts[kind.ordinal() + 1];
+      else ++opCounts[kind.ordinal()];
+      if (kind == PlanKind.Proj && isDedup(plan, nodeId)) ++opCounts[opCounts.length - 1];
+    }
+    for (int i = 0, bound = kind.numChildren(); i < bound; ++i)
+      recount(plan, plan.childOf(nodeId, i), opCounts);
+  }
+
+  private static void assertCounts(PlanContext plan) {
+    final int[] expected = new int[OpKind.values().length + 1];
+    recount(plan, plan.root(), expected);
+    assertArrayEquals(expected, Complexity.mk(plan, plan.root()).opCounts());
+  }
+
+  private static int find(PlanContext plan, int nodeId, PlanKind kind) {
+    if (plan.kindOf(nodeId) == kind) return nodeId;
+    for (int i = 0, bound = plan.kindOf(nodeId).numChildren(); i < bound; ++i) {
+      final int found = find(plan, plan.childOf(nodeId, i), kind);
+      if (found != NO_SUCH_NODE) return found;
+    }
+    return NO_SUCH_NODE;
+  }
+
+  /* Replace `nodeId` with `replacement` (a child of `nodeId`) */
+  private static void replace(PlanContext plan, int nodeId, int replacement) {
+    final int parent = plan.parentOf(nodeId);
+    final int index = plan.childOf(parent, 0) == nodeId ? 0 : 1;
+    plan.detachNode(replacement);
+    plan.detachNode(nodeId);
+    plan.setChild(parent, index, replacement);
+  }
+
+  @Test
+  void testCachedOpCounts() {
+    final PlanContext plan =
+        parsePlan("SELECT DISTINCT a.i FROM a JOIN b ON a.i = b.x WHERE a.j = 1 AND b.y = 2");
+    assertCounts(plan); // warm up the cache
+
+    plan.infoCache().putJoinKindOf(find(plan, plan.root(), PlanKind.Join), JoinKind.LEFT_JOIN);
+    assertCounts(plan);
+
+    final int proj = find(plan, plan.root(), PlanKind.Proj);
+    plan.infoCache().putDeduplicatedOf(proj, false);
+    assertCounts(plan);
+
+    // A copy starts warm, and editing it leaves the original intact.
+    final PlanContext copy = plan.copy();
+    final int[] before = Complexity.mk(plan, plan.root()).opCounts().clone();
+    final int filter = find(copy, copy.root(), PlanKind.Filter);
+    replace(copy, filter, copy.childOf(filter, 0));
+    assertCounts(copy);
+    assertCounts(plan);
+    assertArrayEquals(before, Complexity.mk(plan, plan.root()).opCounts());
+
+    // Node ids are renumbered by compaction.
+    copy.deleteNode(filter);
+    copy.compact();
+    assertCounts(copy);
+
+    final int join = find(copy, copy.root(), PlanKind.Join);
+    replace(copy, join, copy.childOf(join, 1));
+    assertCounts(copy);
+  }
+}
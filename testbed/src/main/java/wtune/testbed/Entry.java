@@ -1,5 +1,7 @@
 package wtune.testbed;
 
+import wtune.common.io.ResultSink;
+import wtune.testbed.profile.CalcitePool;
 import wtune.testbed.runner.Runner;
 
 import java.io.ByteArrayInputStream;
@@ -34,9 +36,18 @@ public class Entry {
       return;
     }
 
+    // Cache Calcite's compiled plans across connections. Takes effect only before it is loaded.
+    if (System.getProperty("calcite.bindable.cache.maxSize") == null)
+      System.setProperty("calcite.bindable.cache.maxSize", "1024");
+
     final Runner runner = (Runner) cls.getConstructor().newInstance();
-    runner.prepare(args);
-    runner.run();
-    runner.stop();
+    try {
+      runner.prepare(args);
+      runner.run();
+      runner.stop();
+    } finally {
+      CalcitePool.closeAll();
+      ResultSink.closeAll();
+    }
   }
 }
@@ -0,0 +1,121 @@
+package wtune.testbed.profile;
+
+import com.google.common.collect.Iterables;
+import org.apache.calcite.adapter.jdbc.JdbcSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.schema.SchemaPlus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pool of Calcite connections wrapping a database, one pool per (jdbcUrl, username).
+ *
+ * <p>All connections of a pool share a single {@link JdbcSchema}, thus the tables and their row
+ * types are discovered from the database only once. A pool is warmed upon creation: the metadata
+ * is loaded and a query over one of the tables is planned and executed, so that Calcite's generated
+ * metadata handlers and the code of the JDBC adapter are in place before the first profiled query.
+ *
+ * <p>A connection goes back to its pool when the executor holding it is closed. Pools live across
+ * statements and are closed by {@link #closeAll()} at the end of a run.
+ */
+public class CalcitePool {
+  private static final String SCHEMA_NAME = "default";
+  private static final String JDBC_DRIVER = "net.sf.log4jdbc.DriverSpy";
+  private static final ConcurrentMap<String, CalcitePool> POOLS = new ConcurrentHashMap<>();
+
+  private final DataSource dataSource;
+  private final Deque<CalciteConnection> idle;
+  private JdbcSchema schema;
+  private boolean closed;
+
+  private CalcitePool(DataSource dataSource) {
+    this.dataSource = dataSource;
+    this.idle = new ArrayDeque<>();
+  }
+
+  static CalcitePool of(Properties dbProperties) {
+    final String url = dbProperties.getProperty("jdbcUrl");
+    final String user = dbProperties.getProperty("username");
+    final String password = dbProperties.getProperty("password");
+    return POOLS.computeIfAbsent(
+        url + "|" + user,
+        ignored -> mk(JdbcSchema.dataSource(url, JDBC_DRIVER, user, password)));
+  }
+
+  public static void closeAll() {
+    POOLS.values().forEach(CalcitePool::close);
+    POOLS.clear();
+  }
+
+  synchronized CalciteConnection acquire() throws SQLException {
+    if (closed) throw new IllegalStateException("pool is closed");
+    final CalciteConnection conn = idle.poll();
+    return conn != null && !conn.isClosed() ? conn : newConnection();
+  }
+
+  synchronized void release(Connection conn) {
+    if (!closed) idle.push((CalciteConnection) conn);
+    else closeQuietly(conn);
+  }
+
+  synchronized void close() {
+    closed = true;
+    idle.forEach(CalcitePool::closeQuietly);
+    idle.clear();
+  }
+
+  static CalcitePool mk(DataSource dataSource) {
+    final CalcitePool pool = new CalcitePool(dataSource);
+    try {
+      pool.warmup();
+    } catch (SQLException ex) {
+      throw new RuntimeException(ex);
+    }
+    return pool;
+  }
+
+  private CalciteConnection newConnection() throws SQLException {
+    final CalciteConnection conn =
+        DriverManager.getConnection("jdbc:calcite:caseSensitive=false")
+            .unwrap(CalciteConnection.class);
+    final SchemaPlus rootSchema = conn.getRootSchema();
+    // The schema is resolved by name from the root, thus can be shared across connections.
+    if (schema == null)
+      schema = JdbcSchema.create(rootSchema, SCHEMA_NAME, dataSource, null, null);
+    rootSchema.add(SCHEMA_NAME, schema);
+    conn.setSchema(SCHEMA_NAME);
+    return conn;
+  }
+
+  private synchronized void warmup() throws SQLException {
+    final CalciteConnection conn = newConnection();
+    for (String tableName : schema.getTableNames())
+      schema.getTable(tableName).getRowType(conn.getTypeFactory());
+
+    final String tableName = Iterables.getFirst(schema.getTableNames(), null);
+    if (tableName != null)
+      try (final Statement stmt = conn.createStatement();
+          final ResultSet rs =
+              stmt.executeQuery("SELECT * FROM \"%s\" LIMIT 1".formatted(tableName))) {
+        while (rs.next()) ;
+      }
+    idle.push(conn);
+  }
+
+  private static void closeQuietly(Connection conn) {
+    try {
+      conn.close();
+    } catch (SQLException ignored) {
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package wtune.testbed.profile;
+
+/**
+ * Result of profiling a statement against its rewritten one. The verdict is null unless they are
+ * profiled adaptively.
+ */
+public record Comparison(Metric base, Metric opt, Verdict verdict) {}
@@ -1,13 +1,11 @@
 package wtune.testbed.profile;
 
 import com.zaxxer.hikari.HikariDataSource;
-import org.apache.calcite.jdbc.CalciteConnection;
 import wtune.common.datasource.DbSupport;
 import wtune.common.datasource.SQLSyntaxAdaptor;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
@@ -24,40 +22,18 @@ class ExecutorFactoryImpl implements ExecutorFactory {
     return dataSource.getConnection();
   }
 
-  private Connection calciteConnection() throws SQLException{
-    Properties info = new Properties();
-    info.put("model", "inline:{" +
-            "  version: '1.0'," +
-            "  defaultSchema: '" + "default" + "'," +
-            "  schemas: [" +
-            "    {" +
-            "      name: '" + "default" + "'," +
-            "      type: 'custom'," +
-            "      factory: 'org.apache.calcite.adapter.jdbc.JdbcSchema$Factory'," +
-            "      operand: {" +
-            "        jdbcDriver: 'net.sf.log4jdbc.DriverSpy'," +
-            "        jdbcUrl:'" + dbProperties.getProperty("jdbcUrl") + "'," +
-            "        jdbcUser: '" + dbProperties.getProperty("username") + "'," +
-            "        jdbcPassword: '" + dbProperties.getProperty("password") + "'" +
-            "      }" +
-            "    }" +
-            "  ]" +
-            "}");
-
-    return DriverManager
-            .getConnection("jdbc:calcite:caseSensitive=false", info)
-            .unwrap(CalciteConnection.class);
-  }
-
   @Override
   public Executor mk(String sql, boolean useSqlServer, boolean calciteConn) {
     try {
-      final Connection conn = calciteConn ? calciteConnection() : connection();
+      if (calciteConn) {
+        final CalcitePool pool = CalcitePool.of(dbProperties);
+        sql = SQLSyntaxAdaptor.adaptToCalciteWrapper(sql);
+        if (useSqlServer) sql = SQLSyntaxAdaptor.adaptToSQLServer(sql);
+        return new ExecutorImpl(pool.acquire(), sql, pool);
+      }
 
-      if (calciteConn) sql = SQLSyntaxAdaptor.adaptToCalciteWrapper(sql);
       if (useSqlServer) sql = SQLSyntaxAdaptor.adaptToSQLServer(sql);
-
-      return new ExecutorImpl(conn, sql);
+      return new ExecutorImpl(connection(), sql);
     } catch (SQLException ex) {
       throw new RuntimeException(ex);
     }
@@ -23,13 +23,19 @@ import java.util.Map;
 class ExecutorImpl extends PreparedStatementActuator implements Executor {
   protected final String sql;
   protected final Connection conn;
+  private final CalcitePool pool; // where `conn` goes back upon close, nullable
 
   protected PreparedStatement stmt;
   protected ResultSet resultSet;
 
   ExecutorImpl(Connection conn, String sql) {
+    this(conn, sql, null);
+  }
+
+  ExecutorImpl(Connection conn, String sql, CalcitePool pool) {
     this.conn = conn;
     this.sql = sql;
+    this.pool = pool;
     System.out.println(sql);
   }
 
@@ -82,7 +88,8 @@ class ExecutorImpl extends PreparedStatementActuator implements Executor {
   @Override
   public void close() {
     if (stmt != null) performSQL(stmt::close);
-    performSQL(conn::close);
+    if (pool != null) pool.release(conn);
+    else performSQL(conn::close);
   }
 
   @Override
@@ -0,0 +1,121 @@
+package wtune.testbed.profile;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * Profile a pair of statements interleaved, and stop as soon as their difference is decided.
+ *
+ * <p>Each cycle executes both statements with the same parameters, in alternating order (so that a
+ * drift of the database affects both alike), and takes the log of their latency ratio. The running
+ * mean of the log ratios is bounded by a confidence interval. Profiling stops once the interval
+ * lies within {@link #EQUIVALENCE} (no meaningful difference), or excludes 0 (an improvement or a
+ * regression), or the cycle cap or the time budget is reached.
+ *
+ * <p>The interval is checked after every cycle, thus a strict z is used to compensate for the
+ * repeated checks.
+ */
+class InterleavedComparison {
+  private static final int MIN_CYCLES = 10;
+  private static final double Z = 3.29; // two-sided 99.9%
+  private static final double EQUIVALENCE = Math.log(1.05);
+  private static final long TIME_BUDGET = 20_000_000_000L; // 20 seconds for the pair
+  private static final long LONG_RUNNING = 5_000_000_000L;
+
+  private final Profiler base, opt;
+  private final int maxWarmup, maxCycles;
+
+  private int cycles;
+  private boolean longRunning;
+  private double mean, m2; // Welford's running mean and sum of squared deviations
+  private long spent;
+
+  InterleavedComparison(Profiler base, Profiler opt, int maxWarmup, int maxCycles) {
+    this.base = base;
+    this.opt = opt;
+    this.maxWarmup = maxWarmup;
+    this.maxCycles = maxCycles;
+  }
+
+  /** Returns the verdict, or null on failure. */
+  static Verdict run(Profiler base, Profiler opt, ProfileConfig config) {
+    if (config.dryRun()) return Verdict.UNDECIDED;
+    return new InterleavedComparison(base, opt, config.warmupCycles(), config.profileCycles())
+        .run();
+  }
+
+  private Verdict run() {
+    if (!warmup()) return null;
+    if (longRunning) return Verdict.UNDECIDED;
+
+    System.out.print(" profile interleaved: ");
+    Verdict verdict = Verdict.UNDECIDED;
+    while (cycles < maxCycles && spent < TIME_BUDGET) {
+      if (cycles % 5 == 0) System.out.print(" " + cycles);
+      if (!measure(cycles)) return null;
+      if ((verdict = decide()) != Verdict.UNDECIDED) break;
+    }
+    System.out.println();
+
+    Profiler.LOG.log(
+        Level.INFO,
+        "{0}: {1} after {2} cycles, latency ratio {3,number,#.###}",
+        base.statement(),
+        verdict,
+        cycles,
+        Math.exp(mean));
+    return verdict;
+  }
+
+  private boolean warmup() {
+    for (int i = 0; i < maxWarmup; ++i) {
+      final long elapsed0 = base.runCycle(i, false), elapsed1 = opt.runCycle(i, false);
+      if (elapsed0 < 0 || elapsed1 < 0) return false;
+
+      if (i == 0 && Math.max(elapsed0, elapsed1) >= LONG_RUNNING) {
+        // Needn't repeatedly run a long-running one. Take the first run as its latency.
+        base.metric().addRecord(elapsed0);
+        opt.metric().addRecord(elapsed1);
+        cycles = 1;
+        longRunning = true;
+        return true;
+      }
+      // Warmup takes at most a quarter of the budget.
+      if ((spent += elapsed0 + elapsed1) >= TIME_BUDGET / 4) break;
+    }
+    spent = 0;
+    return true;
+  }
+
+  private boolean measure(int cycle) {
+    final boolean baseFirst = (cycle & 1) == 0;
+    final Profiler first = baseFirst ? base : opt, second = baseFirst ? opt : base;
+    final long elapsed0 = first.runCycle(cycle, true);
+    if (elapsed0 < 0) return false;
+    final long elapsed1 = second.runCycle(cycle, true);
+    if (elapsed1 < 0) return false;
+
+    addSample(baseFirst ? elapsed0 : elapsed1, baseFirst ? elapsed1 : elapsed0);
+    return true;
+  }
+
+  void addSample(long baseElapsed, long optElapsed) {
+    final double x = Math.log(Math.max(optElapsed, 1L) / (double) Math.max(baseElapsed, 1L));
+
+    ++cycles;
+    final double delta = x - mean;
+    mean += delta / cycles;
+    m2 += delta * (x - mean);
+    spent += baseElapsed + optElapsed;
+  }
+
+  Verdict decide() {
+    if (cycles < MIN_CYCLES) return Verdict.UNDECIDED;
+
+    final double halfWidth = Z * Math.sqrt(m2 / (cycles - 1) / cycles);
+    final double lower = mean - halfWidth, upper = mean + halfWidth;
+    if (lower > -EQUIVALENCE && upper < EQUIVALENCE) return Verdict.EQUIVALENT;
+    if (upper < 0) return Verdict.IMPROVED;
+    if (lower > 0) return Verdict.REGRESSED;
+    return Verdict.UNDECIDED;
+  }
+}
@@ -5,6 +5,8 @@ public interface Metric {
 
   long atPercentile(double percentile);
 
+  int numRecords();
+
   static Metric mk(int nExpectedRecords) {
     return new MetricImpl(nExpectedRecords);
   }
@@ -25,4 +25,9 @@ public class MetricImpl implements Metric {
     if (!sorted) records.sort();
     return records.get((int) (percentile * records.size()));
   }
+
+  @Override
+  public int numRecords() {
+    return records.size();
+  }
 }
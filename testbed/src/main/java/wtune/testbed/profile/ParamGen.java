@@ -12,161 +12,143 @@ import wtune.testbed.util.MathHelper;
 import java.lang.System.Logger.Level;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.Temporal;
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
 
 import static wtune.sql.SqlSupport.simpleName;
 
+/**
+ * Generator of the value of a parameter.
+ *
+ * <p>The modifier chain of the parameter is a program of a stack machine. It is compiled once into
+ * a tree of functions, with the column generators bound and the function calls resolved ahead.
+ * Generating a value under the current seeds is then a plain evaluation of the tree.
+ */
 class ParamGen {
-  private final ParamsGen ctx;
+  /** Result of a failed generation. */
+  static final Object FAILED = new Object();
+
   private final ParamDesc param;
-  private final Deque<Object> stack;
+  private final Fn fn; // null if the modifier chain cannot be compiled
 
-  ParamGen(ParamsGen ctx, ParamDesc param) {
-    this.ctx = ctx;
+  private ParamGen(ParamDesc param, Fn fn) {
     this.param = param;
-    this.stack = new LinkedList<>();
+    this.fn = fn;
   }
 
-  boolean generate() {
-    stack.clear();
-
+  static ParamGen compile(ParamsGen ctx, ParamDesc param) {
+    final Deque<Fn> stack = new ArrayDeque<>(4);
     for (ParamModifier modifier : param.modifiers())
-      if (!applyModifier(modifier)) {
+      if (!compileModifier(ctx, modifier, stack)) {
         Profiler.LOG.log(
             Level.ERROR, "cannot apply modifier {0} when generate {1}", modifier, param.index());
-        return false;
+        return new ParamGen(param, null);
       }
 
-    return stack.size() == 1;
+    return new ParamGen(param, stack.size() == 1 ? stack.peek() : null);
+  }
+
+  ParamDesc param() {
+    return param;
   }
 
-  Object value() {
-    return stack.peekFirst();
+  /** Generate the value under the current seeds. Returns {@link #FAILED} if impossible. */
+  Object generate() {
+    return fn == null ? FAILED : fn.eval();
   }
 
-  private boolean applyModifier(ParamModifier modifier) {
+  private interface Fn {
+    Object eval();
+  }
+
+  private static boolean compileModifier(ParamsGen ctx, ParamModifier modifier, Deque<Fn> stack) {
     final Object[] modifierArgs = modifier.args();
     switch (modifier.type()) {
       case COLUMN_VALUE:
         {
           final Relation relation = (Relation) modifierArgs[0];
           final Column column = (Column) modifierArgs[1];
-
-          final int rowNum = ctx.seedOf(relation);
           final Generator generator = ctx.generators().bind(Element.ofColumn(column));
-
-          final Object obj = generator.generate(rowNum);
-          if (obj == null) return false;
-          stack.push(obj);
+          stack.push(
+              () -> {
+                final Object obj = generator.generate(ctx.seedOf(relation));
+                return obj == null ? FAILED : obj;
+              });
           return true;
         }
 
       case NEQ:
-        {
-          final Object top = stack.peekFirst();
-          if (top instanceof String) {
-            stack.pop();
-            stack.push("xxx"); // a value never be generated by wetune
-            return true;
-          } else if (top instanceof Boolean) {
-            stack.pop();
-            stack.push(!(Boolean) top);
-            return true;
-          }
-        }
-        // otherwise fall through to INCREASE
-
+        return pushUnary(stack, ParamGen::negate);
       case INCREASE:
-        {
-          final Object top = stack.peekFirst();
-          if (top instanceof Number) return applyUnaryArithOp(it -> MathHelper.add(it, 100));
-          else if (top instanceof Temporal) {
-            return applyUnaryTimeOp(it -> it.plus(1, findSupportedTimeUnit(it)));
-
-          } else return false;
-        }
+        return pushUnary(stack, ParamGen::increase);
       case DECREASE:
-        {
-          final Object top = stack.peekFirst();
-          if (top instanceof Number) return applyUnaryArithOp(it -> MathHelper.sub(it, 100));
-          else if (top instanceof Temporal) {
-            return applyUnaryTimeOp(it -> it.minus(1, findSupportedTimeUnit(it)));
-
-          } else return false;
-        }
+        return pushUnary(stack, ParamGen::decrease);
       case INVERSE:
-        return applyUnaryArithOp(MathHelper::inverse);
+        return pushUnary(
+            stack, it -> it instanceof Number ? nonNull(MathHelper.inverse((Number) it)) : FAILED);
 
       case ADD:
-        return applyBinaryArithOp(MathHelper::add);
+        return pushBinaryArith(stack, MathHelper::add);
       case SUBTRACT:
-        return applyBinaryArithOp(MathHelper::sub);
+        return pushBinaryArith(stack, MathHelper::sub);
       case TIMES:
-        return applyBinaryArithOp(MathHelper::mul);
+        return pushBinaryArith(stack, MathHelper::mul);
       case DIVIDE:
-        return applyBinaryArithOp(MathHelper::div);
+        return pushBinaryArith(stack, MathHelper::div);
 
       case LIKE:
         if (modifierArgs.length > 0) {
           assert modifierArgs.length == 2;
-          String str = (String) stack.pop();
-          if ((boolean) modifierArgs[0]) str = '%' + str.substring(0, 1);
-          if ((boolean) modifierArgs[1]) str = str.substring(0, 1) + '%';
-          stack.push(str);
+          final boolean leading = (boolean) modifierArgs[0], trailing = (boolean) modifierArgs[1];
+          return pushUnary(
+              stack,
+              it -> {
+                String str = (String) it;
+                if (leading) str = '%' + str.substring(0, 1);
+                if (trailing) str = str.substring(0, 1) + '%';
+                return str;
+              });
         }
         return true;
       case REGEX:
+        return pushUnary(stack, it -> it + ".*");
+
+      case DIRECT_VALUE:
         {
-          final String str = (String) stack.pop();
-          stack.push(str + ".*");
+          final Object value = modifierArgs[0];
+          stack.push(() -> value);
           return true;
         }
 
-      case DIRECT_VALUE:
-        stack.push(modifierArgs[0]);
-        return true;
-
       case INVOKE_FUNC:
-        return applyFunc(modifierArgs);
+        return compileFunc(modifierArgs, stack);
 
       case INVOKE_AGG:
-        stack.push(1000); // sloppy handling
+        stack.push(() -> 1000); // sloppy handling
         return true;
 
       case MATCHING:
-        {
-          final Object top = stack.pop();
-          assert top instanceof String;
-          final String s = (String) top;
-          stack.push(((String) top).substring(0, Math.max(1, s.indexOf('-'))));
-          return true;
-        }
-      case CHECK_NULL: // do nothing
-        if (stack.pop() == null) stack.push(ParamsGen.IS_NULL);
-        else stack.push(ParamsGen.NOT_NULL);
-        return true;
-
+        return pushUnary(
+            stack,
+            it -> {
+              final String s = (String) it;
+              return s.substring(0, Math.max(1, s.indexOf('-')));
+            });
+
+      case CHECK_NULL:
+        return pushUnary(stack, it -> it == null ? ParamsGen.IS_NULL : ParamsGen.NOT_NULL);
       case CHECK_NULL_NOT:
-        if (stack.pop() == null) stack.push(ParamsGen.NOT_NULL);
-        else stack.push(ParamsGen.IS_NULL);
-        return true;
-
+        return pushUnary(stack, it -> it == null ? ParamsGen.NOT_NULL : ParamsGen.IS_NULL);
       case CHECK_BOOL_NOT:
-        {
-          stack.push(!(Boolean) stack.pop());
-          return true;
-        }
+        return pushUnary(stack, it -> !(Boolean) it);
 
       case TUPLE_ELEMENT:
-      case ARRAY_ELEMENT:
-        final Object top = stack.pop(); // duplicate the element
-        stack.push(List.of(top, top));
-        return true;
+      case ARRAY_ELEMENT: // duplicate the element
+        return pushUnary(stack, it -> List.of(it, it));
 
       case CHECK_BOOL: // do nothing
       case MAKE_TUPLE: // not longer used
@@ -180,66 +162,97 @@ class ParamGen {
     }
   }
 
-  private boolean applyBinaryArithOp(BiFunction<Number, Number, Number> func) {
-    final Object right = stack.pop();
-    final Object left = stack.pop();
-    assert left instanceof Number && right instanceof Number;
+  private static boolean compileFunc(Object[] modifierArgs, Deque<Fn> stack) {
+    final String funcName = simpleName((String) modifierArgs[0]);
+    final int argCount = (Integer) modifierArgs[1];
+    if (stack.size() < argCount) return false;
+
+    final Fn[] args = new Fn[argCount];
+    for (int i = 0; i < argCount; i++) args[i] = stack.pop();
 
-    final Number result = func.apply((Number) left, (Number) right);
-    if (result == null) return false;
+    switch (funcName) {
+      case "upper":
+        return pushFunc(stack, args, values -> ((String) values[0]).toUpperCase());
+      case "lower":
+        return pushFunc(stack, args, values -> ((String) values[0]).toLowerCase());
+      case "coalesce":
+        return pushFunc(stack, args, values -> ArraySupport.linearFind(values, Objects::nonNull));
+      case "string_to_array":
+        return pushFunc(stack, args, values -> values[0]);
+      case "length":
+        return pushFunc(stack, args, values -> ((String) values[0]).length());
+      default:
+        return false;
+    }
+  }
 
-    stack.push(result);
+  private static boolean pushFunc(Deque<Fn> stack, Fn[] args, Func func) {
+    stack.push(
+        () -> {
+          final Object[] values = new Object[args.length];
+          for (int i = 0; i < args.length; i++)
+            if ((values[i] = args[i].eval()) == FAILED) return FAILED;
+          return func.apply(values);
+        });
     return true;
   }
 
-  private boolean applyUnaryArithOp(Function<Number, Number> func) {
-    final Object o = stack.pop();
-    assert o instanceof Number;
-
-    final Number result = func.apply((Number) o);
-    if (result == null) return false;
+  private interface Func {
+    Object apply(Object[] values);
+  }
 
-    stack.push(result);
+  private static boolean pushUnary(Deque<Fn> stack, UnaryOperator<Object> op) {
+    if (stack.isEmpty()) return false;
+    final Fn operand = stack.pop();
+    stack.push(
+        () -> {
+          final Object value = operand.eval();
+          return value == FAILED ? FAILED : op.apply(value);
+        });
     return true;
   }
 
-  private boolean applyUnaryTimeOp(Function<Temporal, Temporal> func) {
-    final Object top = stack.pop();
-    assert top instanceof Temporal;
-
-    stack.push(func.apply((Temporal) top));
+  private static boolean pushBinaryArith(Deque<Fn> stack, BinaryOperator<Number> op) {
+    if (stack.size() < 2) return false;
+    final Fn right = stack.pop(), left = stack.pop();
+    stack.push(
+        () -> {
+          final Object l = left.eval(), r = right.eval();
+          if (!(l instanceof Number) || !(r instanceof Number)) return FAILED;
+          return nonNull(op.apply((Number) l, (Number) r));
+        });
     return true;
   }
 
-  private boolean applyFunc(Object[] modifierArgs) {
-    final String funcName = simpleName((String) modifierArgs[0]);
-    final int argCount = (Integer) modifierArgs[1];
+  private static Object negate(Object value) {
+    if (value instanceof String) return "xxx"; // a value never be generated by wetune
+    if (value instanceof Boolean) return !(Boolean) value;
+    return increase(value);
+  }
 
-    final Object[] args = new Object[argCount];
-    for (int i = 0; i < argCount; i++) args[i] = stack.pop();
+  private static Object increase(Object value) {
+    if (value instanceof Number) return nonNull(MathHelper.add((Number) value, 100));
+    if (value instanceof Temporal) {
+      final Temporal t = (Temporal) value;
+      return t.plus(1, findSupportedTimeUnit(t));
+    }
+    return FAILED;
+  }
 
-    switch (funcName) {
-      case "upper":
-        stack.push(((String) args[0]).toUpperCase());
-        return true;
-      case "lower":
-        stack.push(((String) args[0]).toLowerCase());
-        return true;
-      case "coalesce":
-        stack.push(ArraySupport.linearFind(args, Objects::nonNull));
-        return true;
-      case "string_to_array":
-        stack.push(args[0]);
-        return true;
-      case "length":
-        stack.push(((String) args[0]).length());
-        return true;
-      default:
-        return false;
+  private static Object decrease(Object value) {
+    if (value instanceof Number) return nonNull(MathHelper.sub((Number) value, 100));
+    if (value instanceof Temporal) {
+      final Temporal t = (Temporal) value;
+      return t.minus(1, findSupportedTimeUnit(t));
     }
+    return FAILED;
+  }
+
+  private static Object nonNull(Object value) {
+    return value == null ? FAILED : value;
   }
 
-  private ChronoUnit findSupportedTimeUnit(Temporal t) {
+  private static ChronoUnit findSupportedTimeUnit(Temporal t) {
     final ChronoUnit[] values = ChronoUnit.values();
     for (int i = ChronoUnit.SECONDS.ordinal(), bound = values.length; i < bound; i++) {
       if (t.isSupported(values[i])) return values[i];
@@ -0,0 +1,335 @@
+package wtune.testbed.profile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Store of generated parameters, one file per workload tag.
+ *
+ * <p>An entry is keyed by a statement key (which identifies the statement and its variant) and the
+ * seeds that the parameters are generated with. It holds the parameters of every profile cycle as
+ * typed columns, one per parameter, identified by the parameter's index in the statement. Thus
+ * nothing of the statement (e.g., ParamDesc) is persisted and the file survives class changes.
+ *
+ * <p>The file is memory-mapped and only the entry headers are scanned upon opening. Entries are
+ * appended; the last one of a key wins. Thread-safe.
+ */
+public class ParamStore {
+  private static final long MAGIC = 0x5754504152414d31L; // "WTPARAM1"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private static final byte NULL = 0,
+      INT = 1,
+      DOUBLE = 2,
+      DECIMAL = 3,
+      BOOL = 4,
+      STRING = 5,
+      DATETIME = 6,
+      DATE = 7,
+      TIME = 8,
+      NOT_NULL = 9,
+      IS_NULL = 10,
+      LIST = 11,
+      LONG = 12,
+      BYTES = 13,
+      ARRAY = 14;
+
+  private static final System.Logger LOG = System.getLogger("profile");
+  private static final Set<Class<?>> REJECTED = ConcurrentHashMap.newKeySet();
+
+  private final Path path;
+  private final ByteBuffer mapped; // entries in the file upon opening, nullable
+  private final Map<String, ByteBuffer> entries;
+  private FileChannel out;
+
+  private ParamStore(Path path, ByteBuffer mapped) {
+    this.path = path;
+    this.mapped = mapped;
+    this.entries = new HashMap<>();
+  }
+
+  public static ParamStore open(Path path) {
+    try {
+      if (!Files.exists(path)) return new ParamStore(path, null);
+
+      final ByteBuffer buf;
+      try (final FileChannel channel = FileChannel.open(path, READ)) {
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      if (buf.remaining() < HEADER_SIZE || buf.getLong() != MAGIC || buf.getInt() != VERSION) {
+        Files.delete(path); // of another version, rebuilt
+        return new ParamStore(path, null);
+      }
+
+      final ParamStore store = new ParamStore(path, buf);
+      final int end = store.scan();
+      if (end < buf.limit())
+        try (final FileChannel channel = FileChannel.open(path, WRITE)) {
+          channel.truncate(end); // drop a partially written entry
+        }
+      return store;
+
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /** Returns the rows of parameters, or null if absent. */
+  synchronized Rows get(String key, int profileSeed, int populationSeed) {
+    final ByteBuffer entry = entries.get(key);
+    if (entry == null) return null;
+
+    final ByteBuffer buf = entry.duplicate();
+    if (buf.getInt() != profileSeed || buf.getInt() != populationSeed) return null;
+
+    final int[] indices = new int[buf.getInt()];
+    for (int i = 0; i < indices.length; ++i) indices[i] = buf.getInt();
+
+    final int numRows = buf.getInt();
+    final List<Object[]> rows = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; ++i) rows.add(new Object[indices.length]);
+    for (int col = 0; col < indices.length; ++col)
+      for (int row = 0; row < numRows; ++row) rows.get(row)[col] = readValue(buf);
+
+    return new Rows(indices, rows);
+  }
+
+  /**
+   * Put the rows of parameters. Returns false if any value is of unsupported type (e.g., an
+   * InputStream, which can't be replayed), in which case nothing is stored.
+   */
+  synchronized boolean put(String key, int profileSeed, int populationSeed, Rows rows) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    try (final DataOutputStream data = new DataOutputStream(bytes)) {
+      writeString(data, key);
+      final int bodyOffset = data.size();
+      data.writeInt(profileSeed);
+      data.writeInt(populationSeed);
+
+      final int[] indices = rows.paramIndices();
+      data.writeInt(indices.length);
+      for (int index : indices) data.writeInt(index);
+
+      final List<Object[]> values = rows.rows();
+      data.writeInt(values.size());
+      for (int col = 0; col < indices.length; ++col)
+        for (Object[] row : values) if (!writeValue(data, row[col])) return false;
+
+      data.flush();
+      final byte[] entry = bytes.toByteArray();
+      append(entry);
+      entries.put(key, ByteBuffer.wrap(entry, bodyOffset, entry.length - bodyOffset).slice());
+      return true;
+
+    } catch (IOException ex) {
+      return false; // The store is only an optimization.
+    }
+  }
+
+  public synchronized void close() {
+    if (out == null) return;
+    try {
+      out.close();
+    } catch (IOException ignored) {
+    }
+    out = null;
+  }
+
+  /** Parameters of every profile cycle. `rows[i][j]` is the value of `paramIndices[j]`. */
+  record Rows(int[] paramIndices, List<Object[]> rows) {}
+
+  //// Layout
+  // header: magic, version
+  // entry: length of the rest of the entry, key, profileSeed, populationSeed,
+  //        #params, param indices, #rows, and then the cells column by column.
+  // cell: type tag, value. A list (or an array) is its size followed by the cells of the elements,
+  // a byte array is its length followed by the bytes.
+  // A string is the length of its UTF-8 bytes (-1 for null), followed by the bytes.
+
+  private int scan() {
+    final ByteBuffer buf = mapped;
+    int offset = buf.position();
+    while (buf.limit() - offset >= Integer.BYTES) {
+      final int length = buf.getInt(offset);
+      final int start = offset + Integer.BYTES;
+      if (length < 0 || buf.limit() - start < length) break;
+
+      try {
+        buf.position(start);
+        final String key = readString(buf);
+        entries.put(key, buf.slice(buf.position(), start + length - buf.position()));
+      } catch (RuntimeException ex) {
+        break; // corrupted
+      }
+      offset = start + length;
+    }
+    return offset;
+  }
+
+  private void append(byte[] entry) throws IOException {
+    if (out == null) {
+      Files.createDirectories(path.toAbsolutePath().getParent());
+      out = FileChannel.open(path, CREATE, WRITE);
+      if (out.size() == 0) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putInt(VERSION).flip();
+        out.write(header, 0);
+      }
+      out.position(out.size());
+    }
+
+    final ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + entry.length);
+    buf.putInt(entry.length).put(entry).flip();
+    while (buf.hasRemaining()) out.write(buf);
+  }
+
+  private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) out.writeByte(NULL);
+    else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof BigDecimal) {
+      out.writeByte(DECIMAL);
+      writeString(out, value.toString());
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOL);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof LocalDateTime) {
+      final LocalDateTime dateTime = (LocalDateTime) value;
+      out.writeByte(DATETIME);
+      out.writeLong(dateTime.toLocalDate().toEpochDay());
+      out.writeLong(dateTime.toLocalTime().toNanoOfDay());
+    } else if (value instanceof LocalDate) {
+      out.writeByte(DATE);
+      out.writeLong(((LocalDate) value).toEpochDay());
+    } else if (value instanceof LocalTime) {
+      out.writeByte(TIME);
+      out.writeLong(((LocalTime) value).toNanoOfDay());
+    } else if (value instanceof ParamsGen.NotNull) out.writeByte(NOT_NULL);
+    else if (value instanceof ParamsGen.IsNull) out.writeByte(IS_NULL);
+    else if (value instanceof List) {
+      final List<?> list = (List<?>) value;
+      out.writeByte(LIST);
+      out.writeInt(list.size());
+      for (Object element : list) if (!writeValue(out, element)) return false;
+    } else if (value instanceof byte[]) {
+      final byte[] bytes = (byte[]) value;
+      out.writeByte(BYTES);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else if (value instanceof Object[]) {
+      final Object[] array = (Object[]) value;
+      out.writeByte(ARRAY);
+      out.writeInt(array.length);
+      for (Object element : array) if (!writeValue(out, element)) return false;
+    } else {
+      if (REJECTED.add(value.getClass()))
+        LOG.log(WARNING, "parameters of type {0} are not stored", value.getClass().getName());
+      return false;
+    }
+
+    return true;
+  }
+
+  private static Object readValue(ByteBuffer buf) {
+    final byte type = buf.get();
+    switch (type) {
+      case NULL:
+        return null;
+      case INT:
+        return buf.getInt();
+      case LONG:
+        return buf.getLong();
+      case DOUBLE:
+        return buf.getDouble();
+      case DECIMAL:
+        return new BigDecimal(readString(buf));
+      case BOOL:
+        return buf.get() != 0;
+      case STRING:
+        return readString(buf);
+      case DATETIME:
+        {
+          final LocalDate date = LocalDate.ofEpochDay(buf.getLong());
+          return LocalDateTime.of(date, LocalTime.ofNanoOfDay(buf.getLong()));
+        }
+      case DATE:
+        return LocalDate.ofEpochDay(buf.getLong());
+      case TIME:
+        return LocalTime.ofNanoOfDay(buf.getLong());
+      case NOT_NULL:
+        return ParamsGen.NOT_NULL;
+      case IS_NULL:
+        return ParamsGen.IS_NULL;
+      case LIST:
+        {
+          final int size = buf.getInt();
+          final List<Object> list = new ArrayList<>(size);
+          for (int i = 0; i < size; ++i) list.add(readValue(buf));
+          return list;
+        }
+      case BYTES:
+        {
+          final byte[] bytes = new byte[buf.getInt()];
+          buf.get(bytes);
+          return bytes;
+        }
+      case ARRAY:
+        {
+          final Object[] array = new Object[buf.getInt()];
+          for (int i = 0; i < array.length; ++i) array[i] = readValue(buf);
+          return array;
+        }
+      default:
+        throw new IllegalStateException("unknown type tag: " + type);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buf) {
+    final int length = buf.getInt();
+    if (length < 0) return null;
+    final byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
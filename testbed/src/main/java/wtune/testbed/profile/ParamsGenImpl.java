@@ -25,6 +25,7 @@ public class ParamsGenImpl implements ParamsGen {
   private List<Relation> pivotRelations;
   private Map<Relation, Integer> seeds;
   private Map<ParamDesc, Object> values;
+  private List<ParamGen> paramGens; // compiled lazily, once
 
   ParamsGenImpl(Params params, Generators generators) {
     this.params = params;
@@ -82,16 +83,25 @@ public class ParamsGenImpl implements ParamsGen {
 
   @Override
   public boolean generateAll() {
-    if (values == null) values = new IdentityHashMap<>();
-    else values.clear();
-    return params.forEach(this::generateOne);
+    if (paramGens == null) paramGens = compileParams();
+
+    // A fresh map per call: the values of earlier calls may still be held by the caller.
+    values = new IdentityHashMap<>(paramGens.size() << 1);
+    for (ParamGen gen : paramGens) {
+      final Object value = gen.generate();
+      if (value == ParamGen.FAILED) return false;
+      values.put(gen.param(), value);
+    }
+    return true;
   }
 
-  private boolean generateOne(ParamDesc param) {
-    final ParamGen gen = new ParamGen(this, param);
-    if (!gen.generate()) return false;
-    values.put(param, gen.value());
-    return true;
+  private List<ParamGen> compileParams() {
+    final List<ParamGen> gens = new ArrayList<>();
+    params.forEach(
+        param -> {
+          gens.add(ParamGen.compile(this, param));
+        });
+    return gens;
   }
 
   private boolean setPivotSeed0(Relation relation, int seed) {
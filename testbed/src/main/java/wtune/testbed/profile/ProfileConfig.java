@@ -3,8 +3,6 @@ package wtune.testbed.profile;
 import wtune.stmt.Statement;
 import wtune.testbed.population.Generators;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Properties;
 import java.util.function.Function;
 
@@ -23,13 +21,18 @@ public interface ProfileConfig {
 
   boolean calciteConn();
 
+  /** Whether a pair is profiled interleaved, until the difference is decided. */
+  boolean adaptive();
+
   Generators generators();
 
   ExecutorFactory executorFactory();
 
-  ObjectOutputStream savedParamOut(Statement stmt);
+  /** Where the generated parameters are kept across runs. Nullable. */
+  ParamStore paramStore();
 
-  ObjectInputStream saveParamIn(Statement stmt);
+  /** The key of `stmt`'s parameters in the {@link #paramStore()}. */
+  String paramKeyOf(Statement stmt);
 
   void setWarmupCycles(int x);
 
@@ -43,11 +46,13 @@ public interface ProfileConfig {
 
   void setCalciteConn(boolean calciteConn);
 
+  void setAdaptive(boolean adaptive);
+
   void setGenerators(Generators generators);
 
   void setDbProperties(Properties properties);
 
-  void setParamSaveFile(Function<Statement, String> mapFunc);
+  void setParamStore(ParamStore store, Function<Statement, String> keyFunc);
 
   static ProfileConfig mk(Generators generators) {
     return new ProfileConfigImpl(requireNonNull(generators));
@@ -3,12 +3,6 @@ package wtune.testbed.profile;
 import wtune.stmt.Statement;
 import wtune.testbed.population.Generators;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.function.Function;
 
@@ -18,9 +12,11 @@ class ProfileConfigImpl implements ProfileConfig {
   private boolean dryRun;
   private boolean useSqlServer;
   private boolean calciteConn;
+  private boolean adaptive;
   private Generators generators;
   private ExecutorFactory factory;
-  private Function<Statement, String> paramSaveFile;
+  private ParamStore paramStore;
+  private Function<Statement, String> paramKey;
 
   ProfileConfigImpl(Generators generators) {
     this.warmupCycles = 100;
@@ -60,6 +56,11 @@ class ProfileConfigImpl implements ProfileConfig {
     return calciteConn;
   }
 
+  @Override
+  public boolean adaptive() {
+    return adaptive;
+  }
+
   @Override
   public Generators generators() {
     return generators;
@@ -71,32 +72,13 @@ class ProfileConfigImpl implements ProfileConfig {
   }
 
   @Override
-  public ObjectInputStream saveParamIn(Statement stmt) {
-    if (paramSaveFile == null) return null;
-
-    final String fileName = paramSaveFile.apply(stmt);
-    try {
-      final Path path = Paths.get(fileName);
-
-      if (Files.exists(path)) return new ObjectInputStream(Files.newInputStream(path));
-      else return null;
-
-    } catch (IOException ex) {
-      return null;
-    }
+  public ParamStore paramStore() {
+    return paramStore;
   }
 
   @Override
-  public ObjectOutputStream savedParamOut(Statement stmt) {
-    if (paramSaveFile == null) return null;
-    final String fileName = paramSaveFile.apply(stmt);
-    try {
-      final Path path = Paths.get(fileName);
-      Files.createDirectories(path.getParent());
-      return new ObjectOutputStream(Files.newOutputStream(path));
-    } catch (IOException ex) {
-      return null;
-    }
+  public String paramKeyOf(Statement stmt) {
+    return paramKey.apply(stmt);
   }
 
   @Override
@@ -129,6 +111,11 @@ class ProfileConfigImpl implements ProfileConfig {
     this.calciteConn = calciteConn;
   }
 
+  @Override
+  public void setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+
   @Override
   public void setGenerators(Generators generators) {
     this.generators = generators;
@@ -141,7 +128,8 @@ class ProfileConfigImpl implements ProfileConfig {
   }
 
   @Override
-  public void setParamSaveFile(Function<Statement, String> mapFunc) {
-    this.paramSaveFile = mapFunc;
+  public void setParamStore(ParamStore store, Function<Statement, String> keyFunc) {
+    this.paramStore = store;
+    this.paramKey = keyFunc;
   }
 }
@@ -11,9 +11,6 @@ import wtune.sql.support.resolution.Params;
 import wtune.sql.support.resolution.ResolutionSupport;
 import wtune.stmt.Statement;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.List;
 
 import static wtune.common.utils.ListSupport.tail;
@@ -54,7 +51,18 @@ public interface ProfileSupport {
     params.forEach(ProfileSupport::installParamMarker);
   }
 
-  static Pair<Metric, Metric> compare(Statement stmt0, Statement stmt1, ProfileConfig config) {
+  static Comparison compare(Statement stmt0, Statement stmt1, ProfileConfig config) {
+    final Pair<Profiler, Profiler> profilers = prepare(stmt0, stmt1, config);
+    return profilers == null ? null : compare(profilers, config);
+  }
+
+  /**
+   * Setup the statements and generate their parameters, without connecting to the database.
+   *
+   * <p>Each pair has its own config and generators, thus pairs can be prepared in parallel ahead
+   * of {@link #compare(Pair, ProfileConfig)}.
+   */
+  static Pair<Profiler, Profiler> prepare(Statement stmt0, Statement stmt1, ProfileConfig config) {
     setupParams(stmt0);
     setupParams(stmt1);
 
@@ -72,16 +80,34 @@ public interface ProfileSupport {
       trySaveParams(profiler1, config);
     }
 
-    System.out.println(stmt0 + ".base ");
-    if (!profiler0.run()) return null;
-    System.out.println(stmt1 + ".opt ");
-    if (!profiler1.run()) return null;
+    return Pair.of(profiler0, profiler1);
+  }
 
-    profiler0.close();
-    profiler1.close();
-    config.executorFactory().close();
+  /**
+   * Profile a pair of {@link #prepare(Statement, Statement, ProfileConfig)}d statements. The number
+   * of cycles spent is the {@link Metric#numRecords()}.
+   */
+  static Comparison compare(Pair<Profiler, Profiler> profilers, ProfileConfig config) {
+    final Profiler profiler0 = profilers.getLeft(), profiler1 = profilers.getRight();
+    Verdict verdict = null;
+    try {
+      if (config.adaptive()) {
+        System.out.println(profiler0.statement() + ".base vs. " + profiler1.statement() + ".opt ");
+        verdict = InterleavedComparison.run(profiler0, profiler1, config);
+        if (verdict == null) return null;
+      } else {
+        System.out.println(profiler0.statement() + ".base ");
+        if (!profiler0.run()) return null;
+        System.out.println(profiler1.statement() + ".opt ");
+        if (!profiler1.run()) return null;
+      }
+    } finally {
+      profiler0.close();
+      profiler1.close();
+      config.executorFactory().close();
+    }
 
-    return Pair.of(profiler0.metric(), profiler1.metric());
+    return new Comparison(profiler0.metric(), profiler1.metric(), verdict);
   }
 
   static boolean dryRunStmt(Statement stmt0, ProfileConfig config) {
@@ -151,21 +177,14 @@ public interface ProfileSupport {
   }
 
   private static boolean tryReadParams(Profiler profiler, ProfileConfig config) {
-    final ObjectInputStream stream = config.saveParamIn(profiler.statement());
-    if (stream == null) return false;
-    try (stream) {
-      return profiler.readParams(stream);
-    } catch (IOException | ClassNotFoundException e) {
-      return false;
-    }
+    final ParamStore store = config.paramStore();
+    if (store == null) return false;
+    return profiler.readParams(store, config.paramKeyOf(profiler.statement()));
   }
 
   private static void trySaveParams(Profiler profiler, ProfileConfig config) {
-    final ObjectOutputStream stream = config.savedParamOut(profiler.statement());
-    if (stream == null) return;
-    try (stream) {
-      profiler.saveParams(stream);
-    } catch (IOException ignored) {
-    }
+    final ParamStore store = config.paramStore();
+    if (store == null) return;
+    profiler.saveParams(store, config.paramKeyOf(profiler.statement()));
   }
 }
@@ -3,9 +3,6 @@ package wtune.testbed.profile;
 import gnu.trove.list.TIntList;
 import wtune.stmt.Statement;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.System.Logger;
 
 public interface Profiler {
@@ -27,13 +24,19 @@ public interface Profiler {
 
   boolean runOnce();
 
+  /**
+   * Execute the `cycle`-th parameters once. The latency is added to the {@link #metric()} if
+   * `record`. Returns the latency in nanoseconds, or -1 on failure.
+   */
+  long runCycle(int cycle, boolean record);
+
   void close();
 
   static Profiler make(Statement stmt, ProfileConfig config) {
     return new ProfilerImpl(stmt, config);
   }
 
-  void saveParams(ObjectOutputStream stream) throws IOException;
+  void saveParams(ParamStore store, String key);
 
-  boolean readParams(ObjectInputStream stream) throws IOException, ClassNotFoundException;
+  boolean readParams(ParamStore store, String key);
 }
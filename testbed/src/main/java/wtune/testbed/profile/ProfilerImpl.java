@@ -7,11 +7,10 @@ import wtune.sql.support.resolution.Params;
 import wtune.stmt.Statement;
 import wtune.testbed.util.RandomHelper;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.System.Logger.Level;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,7 +23,7 @@ class ProfilerImpl implements Profiler {
   private final Statement statement;
   private final ProfileConfig config;
   private final ParamsGen paramsGen;
-  private final Executor executor;
+  private Executor executor; // created upon the first run, so that preparation needs no connection
   private final Metric metric;
 
   private boolean probing;
@@ -44,11 +43,6 @@ class ProfilerImpl implements Profiler {
 
     final Params params = stmt.ast().context().getAdditionalInfo(PARAMS);
     this.paramsGen = ParamsGen.mk(params, config.generators());
-    this.executor =
-        config.dryRun()
-            ? null
-            : config.executorFactory().mk(
-                    stmt.ast().toString(), config.useSqlServer(), config.calciteConn());
     this.metric = Metric.mk(config.profileCycles());
     this.warmupCycles = config.warmupCycles();
     this.profileCycles = config.profileCycles();
@@ -172,44 +166,94 @@ class ProfilerImpl implements Profiler {
     return run0(0);
   }
 
+  @Override
+  public long runCycle(int cycle, boolean record) {
+    if (config.dryRun()) return 0;
+    probing = false;
+    recording = record;
+    return exec(cycle);
+  }
+
   @Override
   public void close() {
     if (executor != null) executor.close();
   }
 
   @Override
-  public void saveParams(ObjectOutputStream stream) throws IOException {
-    if (stream == null) return;
-    stream.writeInt(config.randomSeed());
-    stream.writeInt(config.generators().config().randomSeed());
-    stream.writeObject(params);
+  public void saveParams(ParamStore store, String key) {
+    if (store == null || params == null || params.isEmpty()) return;
+
+    final List<ParamDesc> descs = new ArrayList<>(params.get(0).keySet());
+    descs.sort(Comparator.comparingInt(ParamDesc::index));
+    final int[] indices = new int[descs.size()];
+    for (int i = 0; i < indices.length; ++i) indices[i] = descs.get(i).index();
+
+    final List<Object[]> rows = new ArrayList<>(params.size());
+    for (Map<ParamDesc, Object> values : params) {
+      final Object[] row = new Object[indices.length];
+      for (int i = 0; i < row.length; ++i) row[i] = values.get(descs.get(i));
+      rows.add(row);
+    }
+
+    final int populationSeed = config.generators().config().randomSeed();
+    store.put(key, config.randomSeed(), populationSeed, new ParamStore.Rows(indices, rows));
   }
 
   @Override
-  public boolean readParams(ObjectInputStream stream) throws IOException, ClassNotFoundException {
-    if (stream == null) return false;
-    final int profileSeed = stream.readInt();
-    final int populationSeed = stream.readInt();
-    if (populationSeed != config.generators().config().randomSeed()
-        || profileSeed != config.randomSeed()) return false;
-
-    this.params = (List<Map<ParamDesc, Object>>) stream.readObject();
+  public boolean readParams(ParamStore store, String key) {
+    if (store == null) return false;
+    final int populationSeed = config.generators().config().randomSeed();
+    final ParamStore.Rows rows = store.get(key, config.randomSeed(), populationSeed);
+    if (rows == null) return false;
+
+    final Map<Integer, ParamDesc> descs = new HashMap<>();
+    paramsGen.params().forEach((ParamDesc it) -> descs.put(it.index(), it));
+
+    // The stored rows must cover exactly the parameters of the statement, otherwise it changed.
+    final int[] indices = rows.paramIndices();
+    if (indices.length != descs.size()) return false;
+    final ParamDesc[] columns = new ParamDesc[indices.length];
+    for (int i = 0; i < indices.length; ++i)
+      if ((columns[i] = descs.get(indices[i])) == null) return false; // statement changed
+
+    final List<Map<ParamDesc, Object>> params = new ArrayList<>(rows.rows().size());
+    for (Object[] row : rows.rows()) {
+      final Map<ParamDesc, Object> values = new HashMap<>(columns.length);
+      for (int i = 0; i < columns.length; ++i) values.put(columns[i], row[i]);
+      params.add(values);
+    }
+
+    this.params = params;
     return true;
   }
 
+  private Executor executor() {
+    if (executor == null)
+      executor =
+          config
+              .executorFactory()
+              .mk(statement.ast().toString(), config.useSqlServer(), config.calciteConn());
+    return executor;
+  }
+
   private boolean run0(int cycle) {
+    return exec(cycle) >= 0;
+  }
+
+  private long exec(int cycle) {
+    final Executor executor = executor();
     final Map<ParamDesc, Object> params = this.params.get(cycle % this.params.size());
-    if (!executor.installParams(params)) return false;
+    if (!executor.installParams(params)) return -1;
 
     final long elapsed = executor.execute();
-    if (elapsed < 0) return false;
+    if (elapsed < 0) return -1;
     executor.endOne();
 
     if (probing) maxProbingElapsed = Math.max(maxProbingElapsed, elapsed);
 
     if (recording) metric.addRecord(elapsed);
 
-    return true;
+    return elapsed;
   }
 
   private void adjustNumCycles() {
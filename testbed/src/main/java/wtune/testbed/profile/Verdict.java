@@ -0,0 +1,13 @@
+package wtune.testbed.profile;
+
+/** How a rewritten statement compares to its original, as decided by an adaptive profile. */
+public enum Verdict {
+  /** The rewritten one is faster. */
+  IMPROVED,
+  /** The rewritten one is slower. */
+  REGRESSED,
+  /** The latencies differ by less than the margin of equivalence. */
+  EQUIVALENT,
+  /** Not decided within the budget, or not measured interleaved (e.g., a long-running pair). */
+  UNDECIDED
+}
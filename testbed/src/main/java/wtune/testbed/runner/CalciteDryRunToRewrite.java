@@ -10,6 +10,8 @@ import wtune.stmt.Statement;
 import wtune.stmt.support.OptimizerType;
 import wtune.testbed.population.Generators;
 import wtune.testbed.population.PopulationConfig;
+import wtune.testbed.profile.CalcitePool;
+import wtune.testbed.profile.ParamStore;
 import wtune.testbed.profile.ProfileConfig;
 
 import java.io.IOException;
@@ -18,7 +20,6 @@ import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.lang.System.Logger.Level.WARNING;
@@ -42,6 +43,7 @@ public class CalciteDryRunToRewrite implements Runner {
   private boolean collectRewritten;
   private Path prevOutFile;
   private Path outFile;
+  private ParamStore paramStore; // shared by all statements of a run
 
   static {
     try {
@@ -95,20 +97,26 @@ public class CalciteDryRunToRewrite implements Runner {
 
     final List<String> failures = new ArrayList<>();
 
-    final List<Statement> stmtPool = getStmtPool();
-    try (final ProgressBar pb = new ProgressBar("CalciteDryRun", stmtPool.size())) {
-      for (Statement stmt : stmtPool) {
-        if (stmts != null && !stmts.contains(stmt.toString())) continue;
-
-        IOSupport.appendTo(
-            CALCITE_REWRITE_LOG_FILE_PATH,
-            writer -> writer.printf("=====%s\n".formatted(stmt.toString())));
-
-        if (!runOne(stmt.original())) {
-          failures.add(stmt.toString());
+    paramStore = ParamStore.open(Runner.dataDir().resolve("params").resolve(tag + ".params"));
+    try {
+      final List<Statement> stmtPool = getStmtPool();
+      try (final ProgressBar pb = new ProgressBar("CalciteDryRun", stmtPool.size())) {
+        for (Statement stmt : stmtPool) {
+          if (stmts != null && !stmts.contains(stmt.toString())) continue;
+
+          IOSupport.appendTo(
+              CALCITE_REWRITE_LOG_FILE_PATH,
+              writer -> writer.printf("=====%s\n".formatted(stmt.toString())));
+
+          if (!runOne(stmt.original())) {
+            failures.add(stmt.toString());
+          }
+          pb.step();
         }
-        pb.step();
       }
+    } finally {
+      paramStore.close();
+      CalcitePool.closeAll();
     }
     LOG.log(WARNING, "failed to run {0}", failures);
 
@@ -128,7 +136,7 @@ public class CalciteDryRunToRewrite implements Runner {
     config.setUseSqlServer(false);
     config.setCalciteConn(true);
     config.setDbProperties(getCalciteWrappedDbProps(original.app()));
-    config.setParamSaveFile(getParamSaveFile());
+    config.setParamStore(paramStore, CalciteDryRunToRewrite::paramKeyOf);
     config.setWarmupCycles(10);
     config.setProfileCycles(100);
 
@@ -150,11 +158,10 @@ public class CalciteDryRunToRewrite implements Runner {
     return DbSupport.dbPropsCalciteWrap(app.dbType(), dbName);
   }
 
-  private Function<Statement, String> getParamSaveFile() {
-    return stmt ->
-        stmt.isRewritten()
-            ? "wtune_data/params/%s_%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType(), tag)
-            : "wtune_data/params/%s_%s_%s".formatted(stmt, "base", tag);
+  private static String paramKeyOf(Statement stmt) {
+    return stmt.isRewritten()
+        ? "%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType())
+        : "%s_%s".formatted(stmt, "base");
   }
 
   private void collectFromLog() throws IOException {
@@ -1,8 +1,8 @@
 package wtune.testbed.runner;
 
 import me.tongfei.progressbar.ProgressBar;
+import wtune.common.io.ResultSink;
 import wtune.common.utils.Args;
-import wtune.common.utils.IOSupport;
 import wtune.common.utils.SetSupport;
 import wtune.sql.ast.SqlNode;
 import wtune.sql.ast.SqlNodes;
@@ -110,8 +110,7 @@ public class GenerateTableData implements Runner {
           if (verbosity >= 1)
             System.err.printf("failed to populate tables for %s: %s\n", appName, failed);
 
-          IOSupport.appendTo(
-              failure,
+          ResultSink.of(failure).append(
               writer -> {
                 writer.print(appName);
                 writer.print(':');
@@ -9,17 +9,27 @@ import wtune.common.utils.SetSupport;
 import wtune.stmt.App;
 import wtune.stmt.Statement;
 import wtune.stmt.support.OptimizerType;
+import wtune.stmt.support.StmtSnapshot;
 import wtune.testbed.population.Generators;
 import wtune.testbed.population.PopulationConfig;
+import wtune.testbed.profile.CalcitePool;
+import wtune.testbed.profile.Comparison;
 import wtune.testbed.profile.Metric;
+import wtune.testbed.profile.ParamStore;
 import wtune.testbed.profile.ProfileConfig;
+import wtune.testbed.profile.ProfileSupport;
+import wtune.testbed.profile.Profiler;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.WARNING;
@@ -37,11 +47,15 @@ public class Profile implements Runner {
   private Path out;
   private boolean useSqlServer;
   private boolean dryRun;
+  private boolean adaptive;
+  private int parallelism;
+  private int batchSize;
 
   // Determine the optimized statement pool
   private String optimizedBy;
 
   private Blacklist blacklist;
+  private ParamStore paramStore; // shared by all statements of a run
 
   private void initBlackList() {
     blacklist = new Blacklist();
@@ -63,6 +77,11 @@ public class Profile implements Runner {
     tag = args.getOptional("tag", String.class, GenerateTableData.BASE);
     useSqlServer = args.getOptional("sqlserver", boolean.class, true);
     dryRun = args.getOptional("dry", boolean.class, false);
+    adaptive = args.getOptional("adaptive", boolean.class, false);
+    parallelism =
+        args.getOptional("parallel", int.class, Runtime.getRuntime().availableProcessors());
+    batchSize = args.getOptional("batch", int.class, 256);
+    if (batchSize <= 0) throw new IllegalArgumentException("invalid '-batch': " + batchSize);
 
     optimizedBy = args.getOptional("opt", "optimizer", String.class, "WeTune");
 
@@ -85,24 +104,39 @@ public class Profile implements Runner {
   public void run() throws Exception {
     final List<String> failures = new ArrayList<>();
 
-    final List<Statement> stmtPool = getStmtPool();
+    final List<Statement> targets = new ArrayList<>();
     boolean started = (startStmt == null);
-    try (final ProgressBar pb = new ProgressBar("Profile", stmtPool.size())) {
-      for (Statement stmt : stmtPool) {
-        if (stmts != null && !stmts.contains(stmt.toString())) continue;
-        if (appNames != null && !appNames.contains(stmt.appName())) continue;
-        if (blacklist != null && blacklist.isBlocked(tag, stmt)) continue;
-        if (!started) {
-          if (startStmt.equals(stmt.toString())) started = true;
-          else continue;
-        }
+    for (Statement stmt : getStmtPool()) {
+      if (stmts != null && !stmts.contains(stmt.toString())) continue;
+      if (appNames != null && !appNames.contains(stmt.appName())) continue;
+      if (blacklist != null && blacklist.isBlocked(tag, stmt)) continue;
+      if (!started) {
+        if (startStmt.equals(stmt.toString())) started = true;
+        else continue;
+      }
+      targets.add(stmt);
+    }
 
-        if (!runOne(stmt.original(), stmt.rewritten(OptimizerType.valueOf(optimizedBy)))) {
-          LOG.log(WARNING, "failed to profile {0}", stmt.original());
-          failures.add(stmt.toString());
+    paramStore = ParamStore.open(Runner.dataDir().resolve("params").resolve(tag + ".params"));
+    final ExecutorService threadPool =
+        parallelism <= 1 ? null : Executors.newFixedThreadPool(parallelism, daemonThread());
+    try (final ProgressBar pb = new ProgressBar("Profile", targets.size())) {
+      // Parameters of a batch are generated ahead, so nothing else runs while profiling it.
+      // Only one batch of prepared statements, along with their parameters, is held at a time.
+      for (int start = 0, total = targets.size(); start < total; start += batchSize) {
+        final List<Statement> batch = targets.subList(start, Math.min(total, start + batchSize));
+        for (Prepared p : prepareAll(batch, threadPool)) {
+          if (!runOne(p)) {
+            LOG.log(WARNING, "failed to profile {0}", p.original());
+            failures.add(p.original().toString());
+          }
+          pb.step();
         }
-        pb.step();
       }
+    } finally {
+      if (threadPool != null) threadPool.shutdownNow();
+      paramStore.close();
+      CalcitePool.closeAll();
     }
 
     LOG.log(WARNING, "failed to profile {0}", failures);
@@ -110,29 +144,65 @@ public class Profile implements Runner {
 
   private List<Statement> getStmtPool() {
     final OptimizerType type = OptimizerType.valueOf(optimizedBy);
-    return Statement.findAllRewritten(type);
+    // Loaded via the snapshot, so that original() and rewritten() need no further lookups.
+    return StmtSnapshot.load().rewritten(type);
   }
 
-  private boolean runOne(Statement original, Statement rewritten) {
+  private List<Prepared> prepareAll(List<Statement> targets, ExecutorService threadPool) {
+    final OptimizerType type = OptimizerType.valueOf(optimizedBy);
+    final List<Prepared> prepared = new ArrayList<>(targets.size());
+    if (threadPool == null) {
+      for (Statement stmt : targets)
+        prepared.add(prepareOne(stmt.original(), stmt.rewritten(type)));
+      return prepared;
+    }
+
+    final List<Future<Prepared>> futures = new ArrayList<>(targets.size());
+    for (Statement stmt : targets) {
+      final Statement original = stmt.original(), rewritten = stmt.rewritten(type);
+      futures.add(threadPool.submit(() -> prepareOne(original, rewritten)));
+    }
+    for (Future<Prepared> future : futures) prepared.add(await(future));
+    return prepared;
+  }
+
+  private Prepared prepareOne(Statement original, Statement rewritten) {
     final PopulationConfig popConfig = GenerateTableData.mkConfig(tag);
     final ProfileConfig config = ProfileConfig.mk(Generators.make(popConfig));
     config.setDryRun(dryRun);
+    config.setAdaptive(adaptive);
     config.setUseSqlServer(useSqlServer);
     config.setDbProperties(getDbProps(original.app()));
-    config.setParamSaveFile(getParamSaveFile());
+    config.setParamStore(paramStore, Profile::paramKeyOf);
     config.setWarmupCycles(10);
     config.setProfileCycles(100);
 
+    try {
+      final var profilers = ProfileSupport.prepare(original, rewritten, config);
+      return new Prepared(original, rewritten, config, profilers);
+    } catch (Exception e) {
+      LOG.log(ERROR, "failed to prepare {0}", original);
+      return new Prepared(original, rewritten, config, null);
+    }
+  }
+
+  private boolean runOne(Prepared prepared) {
+    final Statement original = prepared.original(), rewritten = prepared.rewritten();
+    if (prepared.profilers() == null) {
+      LOG.log(ERROR, "failed to profile {0}", original);
+      return false;
+    }
+
     LOG.log(System.Logger.Level.INFO, "start profile {0}", original);
 
     try {
-      final Pair<Metric, Metric> comp = compare(original, rewritten, config);
+      final Comparison comp = compare(prepared.profilers(), prepared.config());
       if (comp == null) {
         LOG.log(ERROR, "failed to profile {0}", original);
         return false;
       }
 
-      final Metric metric0 = comp.getLeft(), metric1 = comp.getRight();
+      final Metric metric0 = comp.base(), metric1 = comp.opt();
       LOG.log(
           System.Logger.Level.INFO,
           "{0} {1,number,#}\t{2,number,#}\t{3,number,#}",
@@ -148,7 +218,7 @@ public class Profile implements Runner {
           metric1.atPercentile(0.9),
           metric1.atPercentile(0.99));
 
-      logResult(original, tag, metric0, metric1);
+      logResult(original, tag, comp);
       return true;
     } catch (Exception e) {
       LOG.log(ERROR, "failed to profile {0}", original);
@@ -163,33 +233,74 @@ public class Profile implements Runner {
     else return DbSupport.dbProps(app.dbType(), dbName);
   }
 
-  private void logResult(Statement stmt, String tag, Metric metric0, Metric metric1) {
+  /**
+   * Append a pair of lines `app;stmtId;tag_base|tag_opt;p50;p90;p99;cycles;verdict` to the output.
+   * `cycles` is the number of measured executions of the statement. `verdict` is that of an
+   * adaptive profile (see {@link wtune.testbed.profile.Verdict}), empty otherwise. Both fields are
+   * absent in outputs of older versions, {@link UpdateProfileData} accepts either.
+   */
+  /**
+   * Append the lines `app;stmtId;tag_base;p50;p90;p99;cycles;verdict` and the same of `tag_opt`.
+   * `cycles` is the number of measured runs, `verdict` is empty unless profiled adaptively. The
+   * last two fields are absent in outputs of older versions. See {@link UpdateProfileData}.
+   */
+  private void logResult(Statement stmt, String tag, Comparison comp) {
+    final Metric metric0 = comp.base(), metric1 = comp.opt();
+    final String verdict = Objects.toString(comp.verdict(), "");
     IOSupport.appendTo(
         out,
         writer -> {
           writer.printf(
-              "%s;%d;%s;%d;%d;%d\n",
+              "%s;%d;%s;%d;%d;%d;%d;%s\n",
               stmt.appName(),
               stmt.stmtId(),
               tag + "_base",
               metric0.atPercentile(0.5),
               metric0.atPercentile(0.9),
-              metric0.atPercentile(0.99));
+              metric0.atPercentile(0.99),
+              metric0.numRecords(),
+              verdict);
           writer.printf(
-              "%s;%d;%s;%d;%d;%d\n",
+              "%s;%d;%s;%d;%d;%d;%d;%s\n",
               stmt.appName(),
               stmt.stmtId(),
               tag + "_opt",
               metric1.atPercentile(0.5),
               metric1.atPercentile(0.9),
-              metric1.atPercentile(0.99));
+              metric1.atPercentile(0.99),
+              metric1.numRecords(),
+              verdict);
         });
   }
 
-  private Function<Statement, String> getParamSaveFile() {
-    return stmt ->
-        stmt.isRewritten()
-            ? "wtune_data/params/%s_%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType(), tag)
-            : "wtune_data/params/%s_%s_%s".formatted(stmt, "base", tag);
+  private static Prepared await(Future<Prepared> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    } catch (ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+  }
+
+  private static ThreadFactory daemonThread() {
+    return runnable -> {
+      final Thread thread = new Thread(runnable, "profile-prepare");
+      thread.setDaemon(true);
+      return thread;
+    };
   }
+
+  private static String paramKeyOf(Statement stmt) {
+    return stmt.isRewritten()
+        ? "%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType())
+        : "%s_%s".formatted(stmt, "base");
+  }
+
+  private record Prepared(
+      Statement original,
+      Statement rewritten,
+      ProfileConfig config,
+      Pair<Profiler, Profiler> profilers) {}
 }
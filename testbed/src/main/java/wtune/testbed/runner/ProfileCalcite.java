@@ -1,6 +1,5 @@
 package wtune.testbed.runner;
 
-import org.apache.commons.lang3.tuple.Pair;
 import wtune.common.datasource.DbSupport;
 import wtune.common.utils.Args;
 import wtune.common.utils.IOSupport;
@@ -9,7 +8,9 @@ import wtune.stmt.Statement;
 import wtune.stmt.support.OptimizerType;
 import wtune.testbed.population.Generators;
 import wtune.testbed.population.PopulationConfig;
+import wtune.testbed.profile.Comparison;
 import wtune.testbed.profile.Metric;
+import wtune.testbed.profile.ParamStore;
 import wtune.testbed.profile.ProfileConfig;
 
 import java.nio.file.Files;
@@ -17,7 +18,6 @@ import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.function.Function;
 
 import static java.lang.System.Logger.Level.WARNING;
 import static java.util.Arrays.asList;
@@ -34,6 +34,7 @@ public class ProfileCalcite implements Runner {
   private boolean useSqlServer;
   private boolean dryRun;
   private Blacklist blacklist;
+  private ParamStore paramStore; // shared by all statements of a run
 
   public void prepare(String[] argStrings) throws Exception {
     final Args args = Args.parse(argStrings, 1);
@@ -61,21 +62,26 @@ public class ProfileCalcite implements Runner {
     final List<String> failuresCalcite = new ArrayList<>();
     final List<String> failuresWeTune = new ArrayList<>();
 
-    final List<Statement> stmtPool = Statement.findAllCalcite();
-    for (Statement original : stmtPool) {
-      if (stmts != null && !stmts.contains(original.toString())) continue;
-      if (blacklist != null && blacklist.isBlocked(tag, original)) continue;
-
-      final Statement rewrittenCalcite = original.rewritten(OptimizerType.Calcite);
-      final Statement rewrittenWeTune = original.rewritten();
-      if (rewrittenCalcite != null && !runPair(original, rewrittenCalcite, true)) {
-        LOG.log(WARNING, "failed to profile {0} with its calcite rewritten version", original);
-        failuresCalcite.add(original.toString());
-      }
-      if (rewrittenWeTune != null && !runPair(original, rewrittenWeTune, false)) {
-        LOG.log(WARNING, "failed to profile {0} with its wetune rewritten version", original);
-        failuresWeTune.add(original.toString());
+    paramStore = ParamStore.open(Runner.dataDir().resolve("params").resolve(tag + ".params"));
+    try {
+      final List<Statement> stmtPool = Statement.findAllCalcite();
+      for (Statement original : stmtPool) {
+        if (stmts != null && !stmts.contains(original.toString())) continue;
+        if (blacklist != null && blacklist.isBlocked(tag, original)) continue;
+
+        final Statement rewrittenCalcite = original.rewritten(OptimizerType.Calcite);
+        final Statement rewrittenWeTune = original.rewritten();
+        if (rewrittenCalcite != null && !runPair(original, rewrittenCalcite, true)) {
+          LOG.log(WARNING, "failed to profile {0} with its calcite rewritten version", original);
+          failuresCalcite.add(original.toString());
+        }
+        if (rewrittenWeTune != null && !runPair(original, rewrittenWeTune, false)) {
+          LOG.log(WARNING, "failed to profile {0} with its wetune rewritten version", original);
+          failuresWeTune.add(original.toString());
+        }
       }
+    } finally {
+      paramStore.close();
     }
     LOG.log(WARNING, "failed to profile {0} with its calcite rewritten version", failuresCalcite);
     LOG.log(WARNING, "failed to profile {0} with its wetune rewritten version", failuresWeTune);
@@ -92,12 +98,12 @@ public class ProfileCalcite implements Runner {
         calciteRewrite ? "of calcite version" : "");
 
     try {
-      final Pair<Metric, Metric> comp = compare(original, rewritten, config);
+      final Comparison comp = compare(original, rewritten, config);
       if (comp == null) {
         return false;
       }
 
-      final Metric metricOriginal = comp.getLeft(), metricRewritten = comp.getRight();
+      final Metric metricOriginal = comp.base(), metricRewritten = comp.opt();
       LOG.log(
           System.Logger.Level.INFO,
           "{0} {1,number,#}\t{2,number,#}\t{3,number,#}",
@@ -126,7 +132,7 @@ public class ProfileCalcite implements Runner {
     config.setDryRun(dryRun);
     config.setUseSqlServer(useSqlServer);
     config.setDbProperties(getDbProps(stmt.app()));
-    config.setParamSaveFile(getParamSaveFile());
+    config.setParamStore(paramStore, ProfileCalcite::paramKeyOf);
     config.setWarmupCycles(10);
     config.setProfileCycles(100);
     return config;
@@ -162,10 +168,9 @@ public class ProfileCalcite implements Runner {
         });
   }
 
-  private Function<Statement, String> getParamSaveFile() {
-    return stmt ->
-        stmt.isRewritten()
-            ? "wtune_data/params/%s_%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType(), tag)
-            : "wtune_data/params/%s_%s_%s".formatted(stmt, "base", tag);
+  private static String paramKeyOf(Statement stmt) {
+    return stmt.isRewritten()
+        ? "%s_%s_%s".formatted(stmt, "opt", stmt.optimizerType())
+        : "%s_%s".formatted(stmt, "base");
   }
 }
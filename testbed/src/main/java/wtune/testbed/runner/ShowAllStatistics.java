@@ -4,6 +4,8 @@ import wtune.common.utils.Args;
 import wtune.common.utils.IOSupport;
 import wtune.stmt.Statement;
 import wtune.stmt.support.OptimizerType;
+import wtune.stmt.support.StmtSnapshot;
+import wtune.stmt.support.Timing;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -39,6 +41,7 @@ public class ShowAllStatistics implements Runner {
   private static final double BOUND_INVALID = -0.05;
   private Set<String> rulesRecord;
   private Map<String, String> rulesPool;
+  private StmtSnapshot snapshot;
 
   public static void main(String[] args) throws Exception {
     args = new String[]{"ShowAllStatistics", "-all"};
@@ -208,6 +211,7 @@ public class ShowAllStatistics implements Runner {
     if (workloadExist.get(ZIPF)) sbOptInfo.append("\t%s".formatted("zipfImprove"));
     if (workloadExist.get(LARGE)) sbOptInfo.append("\t%s".formatted("largeImprove"));
     if (workloadExist.get(LARGE_ZIPF)) sbOptInfo.append("\t%s".formatted("large_zipfImprove"));
+    sbOptInfo.append("\t%s".formatted("timings"));
     IOSupport.appendTo(outOptInfo, writer -> writer.printf("%s\n", sbOptInfo.toString()));
   }
 
@@ -388,6 +392,11 @@ public class ShowAllStatistics implements Runner {
     }
   }
 
+  private StmtSnapshot snapshot() {
+    if (snapshot == null) snapshot = StmtSnapshot.load();
+    return snapshot;
+  }
+
   private class StatementStatistic {
     private final Statement stmt;
     private Double baseImprove;
@@ -396,7 +405,7 @@ public class ShowAllStatistics implements Runner {
     private Double large_zipfImprove;
 
     public StatementStatistic(String appName, int stmtId) {
-      this.stmt = Statement.findOne(appName, stmtId);
+      this.stmt = snapshot().original(appName, stmtId);
     }
 
     public void updateProfile(double val, String workloadType) {
@@ -424,7 +433,18 @@ public class ShowAllStatistics implements Runner {
 
       final StringBuilder sb = new StringBuilder();
       sb.append(String.format("%s\t%d\t%s", stmt.appName(), stmt.stmtId(), stmt.rewritten(optimizer).stackTrace()));
-      return getImprovement(base, zipf, large, largeZipf, sb);
+      getImprovement(base, zipf, large, largeZipf, sb);
+      return sb.append('\t').append(timings()).toString();
+    }
+
+    // The timings recorded in the database, as "tag:p50/p90/p99" separated by commas.
+    private String timings() {
+      final List<Timing> timings = snapshot().timingsOf(stmt.appName(), stmt.stmtId());
+      if (timings.isEmpty()) return "null";
+      final StringJoiner joiner = new StringJoiner(",");
+      for (Timing t : timings)
+        joiner.add("%s:%d/%d/%d".formatted(t.tag(), t.p50(), t.p90(), t.p99()));
+      return joiner.toString();
     }
 
     private String getImprovement(boolean base, boolean zipf, boolean large, boolean largeZipf, StringBuilder sb) {
@@ -539,7 +559,7 @@ public class ShowAllStatistics implements Runner {
 
     public AllStatementStatistic(String appName, int stmtId) {
       if (appName.equals("calcite_test")) this.stmt = Statement.findOneCalcite(appName, stmtId);
-      else this.stmt = Statement.findOne(appName, stmtId);
+      else this.stmt = snapshot().original(appName, stmtId);
     }
 
     public void updateImprove(double val) {
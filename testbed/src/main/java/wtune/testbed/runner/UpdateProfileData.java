@@ -10,6 +10,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
+/**
+ * Store the improvements in a profile output of {@link Profile} to wtune.db. The number of cycles,
+ * which is absent in outputs of older versions, is stored aside if present. The verdict is not
+ * stored.
+ */
 public class UpdateProfileData implements Runner {
   private Path profileFile;
   private OptimizerType optimizer;
@@ -49,11 +54,24 @@ public class UpdateProfileData implements Runner {
           p50Opt = Long.parseLong(optProfile[3]),
           p90Opt = Long.parseLong(optProfile[4]),
           p99Opt = Long.parseLong(optProfile[5]);
+      // The number of cycles is absent in profiles of older versions.
+      final int cycles = baseProfile.length > 6 ? Integer.parseInt(baseProfile[6]) : 0;
       final StmtProfile profile =
           StmtProfile.mk(
-              appName, appId, workloadType, p50Base, p90Base, p99Base, p50Opt, p90Opt, p99Opt);
+              appName,
+              appId,
+              workloadType,
+              p50Base,
+              p90Base,
+              p99Base,
+              p50Opt,
+              p90Opt,
+              p99Opt,
+              cycles);
 
       UpdateProfile.updateProfile(profile, optimizer);
     }
+
+    UpdateProfile.flushProfile(optimizer);
   }
 }
@@ -0,0 +1,71 @@
+package wtune.testbed.profile;
+
+import org.apache.calcite.adapter.jdbc.JdbcSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalcitePoolTest {
+  private static CalcitePool mkPool(Path dir) throws SQLException {
+    final String url = "jdbc:sqlite:" + dir.resolve("pool.db");
+    try (final Connection conn = DriverManager.getConnection(url);
+        final Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE t (x INT)");
+      stmt.execute("INSERT INTO t VALUES (1), (2), (3)");
+    }
+    return CalcitePool.mk(JdbcSchema.dataSource(url, "org.sqlite.JDBC", null, null));
+  }
+
+  private static int count(Connection conn) throws SQLException {
+    try (final Statement stmt = conn.createStatement();
+        final ResultSet rs = stmt.executeQuery("SELECT x FROM \"t\"")) {
+      int count = 0;
+      while (rs.next()) ++count;
+      return count;
+    }
+  }
+
+  @Test
+  void testBorrowReleaseClose(@TempDir Path dir) throws SQLException {
+    final CalcitePool pool = mkPool(dir);
+
+    // The warm-up connection is kept idle and handed out first.
+    final CalciteConnection first = pool.acquire();
+    final CalciteConnection second = pool.acquire();
+    assertNotSame(first, second);
+    assertEquals(3, count(first));
+    assertEquals(3, count(second));
+
+    pool.release(first);
+    assertSame(first, pool.acquire());
+    pool.release(first);
+
+    // A connection closed by its borrower is not handed out again.
+    second.close();
+    pool.release(second);
+    final CalciteConnection third = pool.acquire();
+    assertNotSame(second, third);
+    assertFalse(third.isClosed());
+    assertEquals(3, count(third));
+    final CalciteConnection fourth = pool.acquire();
+    assertSame(first, fourth);
+    pool.release(fourth);
+
+    // Idle connections are closed with the pool, borrowed ones once they come back.
+    pool.close();
+    assertTrue(fourth.isClosed());
+    assertFalse(third.isClosed());
+    pool.release(third);
+    assertTrue(third.isClosed());
+    assertThrows(IllegalStateException.class, pool::acquire);
+  }
+}
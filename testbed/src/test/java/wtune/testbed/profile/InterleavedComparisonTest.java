@@ -0,0 +1,42 @@
+package wtune.testbed.profile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterleavedComparisonTest {
+  private static final long BASE = 1_000_000L;
+
+  // Feed `n` pairs whose latency ratio is `ratio`, perturbed by at most +-`noise`.
+  private static InterleavedComparison feed(int n, double ratio, double noise) {
+    final InterleavedComparison comparison = new InterleavedComparison(null, null, 0, 1000);
+    final Random random = new Random(n);
+    for (int i = 0; i < n; ++i) {
+      final double factor = 1 + noise * (2 * random.nextDouble() - 1);
+      comparison.addSample(BASE, (long) (BASE * ratio * factor));
+    }
+    return comparison;
+  }
+
+  @Test
+  void testVerdicts() {
+    assertEquals(Verdict.IMPROVED, feed(10, 0.5, 0.1).decide());
+    assertEquals(Verdict.REGRESSED, feed(10, 2.0, 0.1).decide());
+    assertEquals(Verdict.EQUIVALENT, feed(10, 1.0, 0.01).decide());
+    // Too few cycles, however obvious.
+    assertEquals(Verdict.UNDECIDED, feed(9, 0.5, 0.1).decide());
+  }
+
+  @Test
+  void testNoisyUndecided() {
+    final InterleavedComparison comparison = new InterleavedComparison(null, null, 0, 1000);
+    for (int i = 0; i < 100; ++i) comparison.addSample(BASE, i % 2 == 0 ? BASE / 2 : BASE * 2);
+    assertEquals(Verdict.UNDECIDED, comparison.decide());
+
+    // A consistent difference stands out of the noise eventually.
+    for (int i = 0; i < 1000; ++i) comparison.addSample(BASE, BASE / 2);
+    assertEquals(Verdict.IMPROVED, comparison.decide());
+  }
+}
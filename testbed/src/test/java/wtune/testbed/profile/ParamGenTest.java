@@ -0,0 +1,246 @@
+package wtune.testbed.profile;
+
+import org.junit.jupiter.api.Test;
+import wtune.common.utils.ArraySupport;
+import wtune.sql.schema.Column;
+import wtune.sql.support.resolution.ParamDesc;
+import wtune.sql.support.resolution.ParamModifier;
+import wtune.sql.support.resolution.Params;
+import wtune.sql.support.resolution.Relation;
+import wtune.stmt.Statement;
+import wtune.testbed.common.Element;
+import wtune.testbed.population.Generators;
+import wtune.testbed.population.PopulationConfig;
+import wtune.testbed.util.MathHelper;
+import wtune.testbed.util.RandomHelper;
+
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static wtune.sql.SqlSupport.simpleName;
+import static wtune.sql.support.resolution.Params.PARAMS;
+
+public class ParamGenTest {
+  private static final String[] SQLS = {
+    "SELECT o.ORDER_ID FROM blc_order AS o WHERE o.NAME = 'x' AND o.ORDER_TOTAL > 10",
+    "SELECT o.ORDER_ID FROM blc_order AS o "
+        + "WHERE o.ORDER_ID + 1 = 5 AND o.ORDER_SUBTOTAL * 2 < 100 AND o.CUSTOMER_ID - 3 >= 0",
+    "SELECT o.ORDER_ID FROM blc_order AS o "
+        + "WHERE o.NAME LIKE '%abc%' AND o.EMAIL_ADDRESS LIKE 'x%' AND o.ORDER_STATUS <> 'done'",
+    "SELECT o.ORDER_ID FROM blc_order AS o "
+        + "WHERE UPPER(o.NAME) = 'X' AND LOWER(o.ORDER_NUMBER) = 'y' AND o.ORDER_ID IN (1, 2, 3)",
+    "SELECT o.ORDER_ID FROM blc_order AS o WHERE o.IS_PREVIEW = 1 "
+        + "AND o.SUBMIT_DATE >= '2020-01-01' AND o.DATE_UPDATED < '2021-01-01' "
+        + "AND o.LOCALE_CODE IS NULL AND o.CURRENCY_CODE IS NOT NULL",
+    "SELECT o.ORDER_ID FROM blc_order AS o WHERE o.ORDER_ID BETWEEN 1 AND 10 "
+        + "AND o.TOTAL_TAX <> 0 AND o.DATE_CREATED <> '2020-01-01'",
+    "SELECT o.ORDER_ID FROM blc_order AS o INNER JOIN blc_order_item AS i "
+        + "ON o.ORDER_ID = i.ORDER_ID WHERE i.NAME = 'x' AND i.QUANTITY > 2 "
+        + "AND o.CUSTOMER_ID = 3 LIMIT 10 OFFSET 20",
+  };
+
+  private static Generators mkGenerators() {
+    final PopulationConfig config = PopulationConfig.mk();
+    config.setDefaultUnitCount(10_000);
+    config.setDefaultRandGen(RandomHelper::makeUniformRand);
+    return Generators.make(config);
+  }
+
+  @Test
+  void testCompiledSameAsInterpreted() {
+    int numCompared = 0, numFailed = 0;
+    for (int i = 0; i < SQLS.length; ++i) {
+      final Statement stmt = Statement.mk("broadleaf", i + 1, SQLS[i], null);
+      ProfileSupport.setupParams(stmt);
+      final Params params = stmt.ast().context().getAdditionalInfo(PARAMS);
+      final ParamsGen ctx = ParamsGen.mk(params, mkGenerators());
+
+      final List<ParamDesc> descs = new ArrayList<>(params.numParams());
+      params.forEach((ParamDesc it) -> descs.add(it));
+      assertFalse(descs.isEmpty(), SQLS[i]);
+      final List<ParamGen> compiled = new ArrayList<>(descs.size());
+      for (ParamDesc desc : descs) compiled.add(ParamGen.compile(ctx, desc));
+
+      for (int seed0 = 0; seed0 < 64; seed0 += 7) {
+        final int seed = ParamsGen.setEligibleSeed(ctx, seed0);
+        if (seed < 0) continue;
+
+        for (int j = 0; j < descs.size(); ++j) {
+          final Object expected = interpret(ctx, descs.get(j));
+          final Object actual = compiled.get(j).generate();
+          final String msg = "%s, param %d, seed %d".formatted(SQLS[i], j, seed);
+          if (expected == ParamGen.FAILED) {
+            assertSame(ParamGen.FAILED, actual, msg);
+            ++numFailed;
+          } else {
+            assertTrue(Objects.deepEquals(expected, actual), msg + ": " + expected + " " + actual);
+          }
+          ++numCompared;
+        }
+      }
+    }
+    assertTrue(numCompared > numFailed);
+  }
+
+  //// The interpreter that generated the values before the modifier chains were compiled.
+
+  private static Object interpret(ParamsGen ctx, ParamDesc param) {
+    final Deque<Object> stack = new LinkedList<>(); // may hold nulls
+    try {
+      for (ParamModifier modifier : param.modifiers())
+        if (!apply(ctx, modifier, stack)) return ParamGen.FAILED;
+    } catch (NoSuchElementException ex) {
+      return ParamGen.FAILED; // too few operands, rejected when compiling
+    }
+    return stack.size() == 1 ? stack.peek() : ParamGen.FAILED;
+  }
+
+  private static boolean apply(ParamsGen ctx, ParamModifier modifier, Deque<Object> stack) {
+    final Object[] args = modifier.args();
+    switch (modifier.type()) {
+      case COLUMN_VALUE:
+        {
+          final Relation relation = (Relation) args[0];
+          final Column column = (Column) args[1];
+          final Object obj =
+              ctx.generators().bind(Element.ofColumn(column)).generate(ctx.seedOf(relation));
+          return obj != null && push(stack, obj);
+        }
+      case NEQ:
+        {
+          final Object top = stack.peek();
+          if (top instanceof String) {
+            stack.pop();
+            return push(stack, "xxx");
+          }
+          if (top instanceof Boolean) return push(stack, !(Boolean) stack.pop());
+        }
+        // otherwise fall through to INCREASE
+      case INCREASE:
+        return applyOffset(stack, true);
+      case DECREASE:
+        return applyOffset(stack, false);
+      case INVERSE:
+        {
+          final Object top = stack.pop();
+          return top instanceof Number && push(stack, MathHelper.inverse((Number) top));
+        }
+      case ADD:
+      case SUBTRACT:
+      case TIMES:
+      case DIVIDE:
+        {
+          final Object right = stack.pop(), left = stack.pop();
+          if (!(left instanceof Number) || !(right instanceof Number)) return false;
+          final Number l = (Number) left, r = (Number) right;
+          return push(
+              stack,
+              switch (modifier.type()) {
+                case ADD -> MathHelper.add(l, r);
+                case SUBTRACT -> MathHelper.sub(l, r);
+                case TIMES -> MathHelper.mul(l, r);
+                default -> MathHelper.div(l, r);
+              });
+        }
+      case LIKE:
+        if (args.length > 0) {
+          String str = (String) stack.pop();
+          if ((boolean) args[0]) str = '%' + str.substring(0, 1);
+          if ((boolean) args[1]) str = str.substring(0, 1) + '%';
+          stack.push(str);
+        }
+        return true;
+      case REGEX:
+        return push(stack, stack.pop() + ".*");
+      case DIRECT_VALUE:
+        stack.push(args[0]);
+        return true;
+      case INVOKE_FUNC:
+        return applyFunc(args, stack);
+      case INVOKE_AGG:
+        return push(stack, 1000);
+      case MATCHING:
+        {
+          final String s = (String) stack.pop();
+          return push(stack, s.substring(0, Math.max(1, s.indexOf('-'))));
+        }
+      case CHECK_NULL:
+        return push(stack, stack.pop() == null ? ParamsGen.IS_NULL : ParamsGen.NOT_NULL);
+      case CHECK_NULL_NOT:
+        return push(stack, stack.pop() == null ? ParamsGen.NOT_NULL : ParamsGen.IS_NULL);
+      case CHECK_BOOL_NOT:
+        return push(stack, !(Boolean) stack.pop());
+      case TUPLE_ELEMENT:
+      case ARRAY_ELEMENT:
+        {
+          final Object top = stack.pop();
+          return push(stack, List.of(top, top));
+        }
+      case CHECK_BOOL:
+      case MAKE_TUPLE:
+      case GEN_OFFSET:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  // Push `value` unless it is null, which is a failure.
+  private static boolean push(Deque<Object> stack, Object value) {
+    if (value == null) return false;
+    stack.push(value);
+    return true;
+  }
+
+  private static boolean applyOffset(Deque<Object> stack, boolean increase) {
+    final Object top = stack.pop();
+    if (top instanceof Number) {
+      final Number n = (Number) top;
+      return push(stack, increase ? MathHelper.add(n, 100) : MathHelper.sub(n, 100));
+    }
+    if (top instanceof Temporal) {
+      final Temporal t = (Temporal) top;
+      return push(stack, increase ? t.plus(1, unitOf(t)) : t.minus(1, unitOf(t)));
+    }
+    return false;
+  }
+
+  private static boolean applyFunc(Object[] modifierArgs, Deque<Object> stack) {
+    final String funcName = simpleName((String) modifierArgs[0]);
+    final int argCount = (Integer) modifierArgs[1];
+    if (stack.size() < argCount) return false;
+
+    final Object[] args = new Object[argCount];
+    for (int i = 0; i < argCount; i++) args[i] = stack.pop();
+    switch (funcName) {
+      case "upper":
+        return push(stack, ((String) args[0]).toUpperCase());
+      case "lower":
+        return push(stack, ((String) args[0]).toLowerCase());
+      case "coalesce":
+        stack.push(ArraySupport.linearFind(args, Objects::nonNull));
+        return true;
+      case "string_to_array":
+        stack.push(args[0]);
+        return true;
+      case "length":
+        return push(stack, ((String) args[0]).length());
+      default:
+        return false;
+    }
+  }
+
+  private static ChronoUnit unitOf(Temporal t) {
+    final ChronoUnit[] units = ChronoUnit.values();
+    for (int i = ChronoUnit.SECONDS.ordinal(); i < units.length; i++)
+      if (t.isSupported(units[i])) return units[i];
+    throw new IllegalArgumentException();
+  }
+}
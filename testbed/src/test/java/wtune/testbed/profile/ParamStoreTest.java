@@ -0,0 +1,115 @@
+package wtune.testbed.profile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParamStoreTest {
+  private static ParamStore.Rows rowsOf(Object... values) {
+    final int[] indices = new int[values.length];
+    for (int i = 0; i < indices.length; ++i) indices[i] = i * 2;
+    final List<Object[]> rows = new ArrayList<>(2);
+    rows.add(values);
+    rows.add(values.clone());
+    return new ParamStore.Rows(indices, rows);
+  }
+
+  private static void assertRowsEquals(ParamStore.Rows expected, ParamStore.Rows actual) {
+    assertNotNull(actual);
+    assertArrayEquals(expected.paramIndices(), actual.paramIndices());
+    assertEquals(expected.rows().size(), actual.rows().size());
+    for (int i = 0; i < expected.rows().size(); ++i)
+      assertArrayEquals(expected.rows().get(i), actual.rows().get(i));
+  }
+
+  @Test
+  void testRoundTrip(@TempDir Path dir) {
+    final Path file = dir.resolve("test.params");
+    final ParamStore.Rows rows =
+        rowsOf(
+            null,
+            1,
+            1L << 40,
+            1.5,
+            new BigDecimal("3.14159265358979323846"),
+            true,
+            "abc\u00e9",
+            LocalDateTime.of(2020, 2, 29, 12, 30, 15, 123456789),
+            LocalDate.of(1999, 12, 31),
+            LocalTime.of(23, 59, 59),
+            ParamsGen.NOT_NULL,
+            ParamsGen.IS_NULL,
+            List.of(1, "x", List.of(2L)),
+            new byte[] {0, -1, 127},
+            new Object[] {1, null, new byte[] {1}});
+    final ParamStore.Rows other = rowsOf(42);
+
+    final ParamStore store = ParamStore.open(file);
+    assertTrue(store.put("q0", 1, 2, rowsOf(0)));
+    assertTrue(store.put("q0", 1, 2, rows)); // the last one wins
+    assertTrue(store.put("q1", 3, 4, other));
+    assertRowsEquals(rows, store.get("q0", 1, 2));
+    store.close();
+
+    final ParamStore reopened = ParamStore.open(file);
+    assertRowsEquals(rows, reopened.get("q0", 1, 2));
+    assertRowsEquals(other, reopened.get("q1", 3, 4));
+    assertNull(reopened.get("q0", 1, 3)); // of other seeds
+    assertNull(reopened.get("q2", 1, 2));
+    reopened.close();
+  }
+
+  @Test
+  void testTruncatedTail(@TempDir Path dir) throws Exception {
+    final Path file = dir.resolve("test.params");
+    final ParamStore store = ParamStore.open(file);
+    assertTrue(store.put("q0", 1, 2, rowsOf(1, "a")));
+    store.close();
+    final long complete = Files.size(file);
+
+    final ParamStore store1 = ParamStore.open(file);
+    assertTrue(store1.put("q1", 1, 2, rowsOf(2, "b")));
+    store1.close();
+
+    // Crashed in the middle of writing the second entry.
+    try (final FileChannel channel = FileChannel.open(file, WRITE)) {
+      channel.truncate(Files.size(file) - 3);
+    }
+
+    final ParamStore recovered = ParamStore.open(file);
+    assertEquals(complete, Files.size(file)); // the partial entry is dropped
+    assertRowsEquals(rowsOf(1, "a"), recovered.get("q0", 1, 2));
+    assertNull(recovered.get("q1", 1, 2));
+
+    assertTrue(recovered.put("q1", 1, 2, rowsOf(3, "c")));
+    recovered.close();
+
+    final ParamStore reopened = ParamStore.open(file);
+    assertRowsEquals(rowsOf(1, "a"), reopened.get("q0", 1, 2));
+    assertRowsEquals(rowsOf(3, "c"), reopened.get("q1", 1, 2));
+    reopened.close();
+  }
+
+  @Test
+  void testUnsupported(@TempDir Path dir) {
+    final Path file = dir.resolve("test.params");
+    final ParamStore store = ParamStore.open(file);
+    assertFalse(store.put("q0", 1, 2, rowsOf(1, new ByteArrayInputStream(new byte[1]))));
+    assertFalse(store.put("q0", 1, 2, rowsOf(List.of(new ByteArrayInputStream(new byte[1])))));
+    assertNull(store.get("q0", 1, 2));
+    store.close();
+  }
+}